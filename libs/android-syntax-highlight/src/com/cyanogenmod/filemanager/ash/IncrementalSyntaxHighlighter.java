@@ -0,0 +1,486 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.ash;
+
+import android.os.Handler;
+import android.os.Process;
+import android.text.Spannable;
+import android.text.TextUtils;
+import android.text.style.ForegroundColorSpan;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A class that highlights a document incrementally, with an incremental
+ * {@link SyntaxHighlightProcessor}.</br>
+ * </br>
+ * The highlighter keeps the start position and the scanner state of every line. Only
+ * the edited lines and the visible lines (the viewport) are highlighted. The lines are
+ * tokenized in a background thread from a copy of the text, and the spans are handed
+ * in batches to the UI thread. After an edit, the tokenization stops when the scanner
+ * state of a line is the same as before the edit, so typing in a big document only
+ * highlights a few lines.</br>
+ * </br>
+ * IMP! All the methods of this class must be called from the UI thread (the thread of
+ * the handler).
+ */
+public class IncrementalSyntaxHighlighter {
+
+    private static final String TAG = "IncrementalSyntaxHighlighter"; //$NON-NLS-1$
+
+    // The time to wait for more edits before highlight
+    private static final long DELAY = 50L;
+
+    // An unknown scanner state
+    private static final int UNKNOWN = -1;
+
+    // The flags of a line
+    private static final byte EDITED = 1;
+    private static final byte PAINTED = 2;
+
+    private static final ExecutorService sExecutor =
+            Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    Thread t = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    }, TAG);
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    /**
+     * The tokenization of a range of lines.
+     */
+    private static class Job implements Runnable {
+        final IncrementalSyntaxHighlighter mHighlighter;
+        final SyntaxHighlightProcessor mProcessor;
+        final Spannable mSpannable;
+        final int mGeneration;
+        final String mText;
+        final int mBegin;
+        final int mFirstLine;
+        final int mStartState;
+
+        // The results
+        final SpanBatch mBatch = new SpanBatch();
+        int[] mStarts = new int[16];
+        int[] mEndStates = new int[16];
+        int[] mSpanEnds = new int[16];
+        int mCount;
+        boolean mEof;
+
+        Job(IncrementalSyntaxHighlighter highlighter, Spannable spanable, String text,
+                int begin, int firstLine, int startState) {
+            super();
+            this.mHighlighter = highlighter;
+            this.mProcessor = highlighter.mProcessor;
+            this.mSpannable = spanable;
+            this.mGeneration = highlighter.mGeneration;
+            this.mText = text;
+            this.mBegin = begin;
+            this.mFirstLine = firstLine;
+            this.mStartState = startState;
+        }
+
+        @Override
+        public void run() {
+            try {
+                final String text = this.mText;
+                final int length = text.length();
+                int state = this.mStartState;
+                int pos = 0;
+                while (true) {
+                    int nl = text.indexOf('\n', pos);
+                    int end = nl == -1 ? length : nl;
+                    if (end > pos && text.charAt(end - 1) == '\r') {
+                        end--;
+                    }
+                    state = this.mProcessor.tokenizeLine(
+                            text.subSequence(pos, end), this.mBegin + pos, state, this.mBatch);
+                    addLine(this.mBegin + pos, state);
+                    if (nl == -1) {
+                        this.mEof = true;
+                        break;
+                    }
+                    pos = nl + 1;
+                    if (pos == length) {
+                        break;
+                    }
+                }
+            } catch (Exception ex) {
+                // An error in a syntax processor, should not break down the editor
+                Log.e(TAG, "Syntax highlight failed.", ex); //$NON-NLS-1$
+                this.mCount = 0;
+            }
+            this.mHighlighter.mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    Job.this.mHighlighter.onJobDone(Job.this);
+                }
+            });
+        }
+
+        private void addLine(int start, int endState) {
+            if (this.mCount == this.mStarts.length) {
+                int capacity = this.mCount * 2;
+                this.mStarts = Arrays.copyOf(this.mStarts, capacity);
+                this.mEndStates = Arrays.copyOf(this.mEndStates, capacity);
+                this.mSpanEnds = Arrays.copyOf(this.mSpanEnds, capacity);
+            }
+            this.mStarts[this.mCount] = start;
+            this.mEndStates[this.mCount] = endState;
+            this.mSpanEnds[this.mCount] = this.mBatch.size();
+            this.mCount++;
+        }
+    }
+
+    final SyntaxHighlightProcessor mProcessor;
+    final Handler mHandler;
+
+    private Spannable mSpannable;
+    int mGeneration;
+    private boolean mRunning;
+
+    // The lines: the start position, the scanner state at the start, and the flags
+    private int[] mStarts;
+    private int[] mStates;
+    private byte[] mFlags;
+    private int mLineCount;
+    // If the last known line is the last line of the document
+    private boolean mKnownEnd;
+    // The first line to tokenize. The states of the lines up to this line are right
+    private int mNext;
+
+    private int mViewportStart;
+    private int mViewportEnd;
+    private int mRemovedNewLines;
+
+    private final Runnable mStartJob = new Runnable() {
+        @Override
+        public void run() {
+            startJob();
+        }
+    };
+
+    /**
+     * Constructor of <code>IncrementalSyntaxHighlighter</code>
+     *
+     * @param processor An incremental syntax highlight processor
+     * @param handler A handler of the UI thread
+     */
+    public IncrementalSyntaxHighlighter(SyntaxHighlightProcessor processor, Handler handler) {
+        super();
+        if (!processor.isIncremental()) {
+            throw new IllegalArgumentException("Not an incremental processor"); //$NON-NLS-1$
+        }
+        this.mProcessor = processor;
+        this.mHandler = handler;
+        this.mStarts = new int[64];
+        this.mStates = new int[64];
+        this.mFlags = new byte[64];
+    }
+
+    /**
+     * Method that starts the highlight of a document. All the spans of the document are
+     * removed, and the lines are highlighted when they are visible.
+     *
+     * @param spanable The document
+     */
+    public void setText(Spannable spanable) {
+        this.mSpannable = spanable;
+        this.mGeneration++;
+        this.mProcessor.clear(spanable);
+        this.mStarts[0] = 0;
+        this.mStates[0] = this.mProcessor.getInitialState();
+        this.mFlags[0] = 0;
+        this.mLineCount = 1;
+        this.mKnownEnd = false;
+        this.mNext = 0;
+        this.mRemovedNewLines = 0;
+        schedule();
+    }
+
+    /**
+     * Method that stops the highlight of the document. The spans are not removed.
+     */
+    public void stop() {
+        this.mSpannable = null;
+        this.mGeneration++;
+        this.mHandler.removeCallbacks(this.mStartJob);
+    }
+
+    /**
+     * Method that sets the visible region of the document.
+     *
+     * @param start The start of the visible text
+     * @param end The end of the visible text
+     */
+    public void setViewport(int start, int end) {
+        if (start == this.mViewportStart && end == this.mViewportEnd) {
+            return;
+        }
+        this.mViewportStart = start;
+        this.mViewportEnd = end;
+        schedule();
+    }
+
+    /**
+     * Method that must be called from <code>TextWatcher.beforeTextChanged</code>.
+     *
+     * @param s The document
+     * @param start The start of the text that will be replaced
+     * @param count The length of the text that will be replaced
+     */
+    public void beforeTextChanged(CharSequence s, int start, int count) {
+        if (s != this.mSpannable) return;
+        this.mRemovedNewLines = countNewLines(s, start, start + count);
+    }
+
+    /**
+     * Method that must be called from <code>TextWatcher.onTextChanged</code>.
+     *
+     * @param s The document
+     * @param start The start of the replaced text
+     * @param before The length of the replaced text
+     * @param count The length of the new text
+     */
+    public void onTextChanged(CharSequence s, int start, int before, int count) {
+        if (s != this.mSpannable) return;
+        this.mGeneration++;
+
+        final int line = findLine(start);
+        final int removed = this.mRemovedNewLines;
+        this.mRemovedNewLines = 0;
+        this.mFlags[line] = EDITED;
+        if (line < this.mNext) {
+            this.mNext = line;
+        }
+        if (line == this.mLineCount - 1) {
+            // The end of the line isn't known. The new lines are found when the line
+            // is tokenized
+            this.mKnownEnd = this.mKnownEnd && countNewLines(s, start, start + count) == 0;
+            schedule();
+            return;
+        }
+
+        // Move the lines after the edited text, and add the new lines
+        final int inserted = countNewLines(s, start, start + count);
+        final int firstOld = Math.min(this.mLineCount, line + 1 + removed);
+        final int tail = this.mLineCount - firstOld;
+        final int firstNew = line + 1 + inserted;
+        ensureCapacity(firstNew + tail);
+        System.arraycopy(this.mStarts, firstOld, this.mStarts, firstNew, tail);
+        System.arraycopy(this.mStates, firstOld, this.mStates, firstNew, tail);
+        System.arraycopy(this.mFlags, firstOld, this.mFlags, firstNew, tail);
+        final int delta = count - before;
+        for (int i = firstNew; i < firstNew + tail; i++) {
+            this.mStarts[i] += delta;
+        }
+        int p = line + 1;
+        for (int i = start; i < start + count; i++) {
+            if (s.charAt(i) == '\n') {
+                this.mStarts[p] = i + 1;
+                this.mStates[p] = UNKNOWN;
+                this.mFlags[p] = EDITED;
+                p++;
+            }
+        }
+        this.mLineCount = firstNew + tail;
+        schedule();
+    }
+
+    private void schedule() {
+        if (this.mSpannable == null) return;
+        this.mHandler.removeCallbacks(this.mStartJob);
+        this.mHandler.postDelayed(this.mStartJob, DELAY);
+    }
+
+    /**
+     * Method that starts the tokenization of the lines that need to be highlighted (the
+     * edited and the visible ones), if any.
+     */
+    void startJob() {
+        final Spannable spanable = this.mSpannable;
+        if (this.mRunning || spanable == null) return;
+        final int length = spanable.length();
+
+        // The first line: the first line that needs tokenization, or the first visible
+        // line that isn't highlighted
+        int from = this.mNext;
+        for (int i = findLine(this.mViewportStart); i < this.mNext
+                && this.mStarts[i] <= this.mViewportEnd; i++) {
+            if ((this.mFlags[i] & PAINTED) == 0) {
+                from = i;
+                break;
+            }
+        }
+
+        // The last line: the last visible line, or the last edited line
+        int end = Math.min(length, this.mViewportEnd);
+        for (int i = this.mLineCount - 1; i >= this.mNext; i--) {
+            if ((this.mFlags[i] & EDITED) != 0) {
+                end = Math.max(end, Math.min(length, this.mStarts[i]));
+                break;
+            }
+        }
+        if (from >= this.mLineCount || this.mStarts[from] > end) {
+            return;
+        }
+        int nl = TextUtils.indexOf(spanable, '\n', end);
+        end = nl == -1 ? length : nl + 1;
+
+        int begin = this.mStarts[from];
+        String text = spanable.subSequence(begin, end).toString();
+        this.mRunning = true;
+        sExecutor.execute(new Job(this, spanable, text, begin, from, this.mStates[from]));
+    }
+
+    /**
+     * Method invoked in the UI thread when a job ends. Applies the spans of the lines
+     * that need to be highlighted.
+     *
+     * @param job The job
+     */
+    void onJobDone(Job job) {
+        this.mRunning = false;
+        final Spannable spanable = this.mSpannable;
+        if (job.mGeneration != this.mGeneration || job.mSpannable != spanable) {
+            // The document changed. Start again
+            schedule();
+            return;
+        }
+        if (job.mCount == 0) {
+            return;
+        }
+
+        final int end = job.mBegin + job.mText.length();
+        int state = job.mStartState;
+        int line = job.mFirstLine;
+        for (int k = 0; k < job.mCount; k++, line++) {
+            final int start = job.mStarts[k];
+            final int next = k + 1 < job.mCount ? job.mStarts[k + 1] : end;
+            // The end of the line (the separator, or the end of the document)
+            final int lineEnd = k + 1 == job.mCount && job.mEof ? end : next - 1;
+            boolean sameState = true;
+            if (line >= this.mLineCount) {
+                ensureCapacity(line + 1);
+                this.mStarts[line] = start;
+                this.mFlags[line] = 0;
+                this.mLineCount++;
+            } else {
+                sameState = this.mStates[line] == state;
+            }
+            this.mStates[line] = state;
+
+            // Paint the edited and the visible lines, and the painted lines whose state
+            // has changed
+            byte flags = this.mFlags[line];
+            boolean visible = start <= this.mViewportEnd && next >= this.mViewportStart;
+            boolean painted = (flags & PAINTED) != 0;
+            if ((flags & EDITED) != 0 || (painted && !sameState) || (visible && !painted)) {
+                ForegroundColorSpan[] spans =
+                        spanable.getSpans(start, lineEnd, ForegroundColorSpan.class);
+                for (ForegroundColorSpan span : spans) {
+                    spanable.removeSpan(span);
+                }
+                job.mBatch.apply(spanable, k == 0 ? 0 : job.mSpanEnds[k - 1],
+                        job.mSpanEnds[k], 0);
+                painted = true;
+            }
+            this.mFlags[line] = painted ? PAINTED : 0;
+            state = job.mEndStates[k];
+        }
+
+        if (job.mEof) {
+            // All the lines of the document are known
+            this.mLineCount = line;
+            this.mKnownEnd = true;
+            this.mNext = line;
+        } else if (line >= this.mLineCount) {
+            ensureCapacity(line + 1);
+            this.mStarts[line] = end;
+            this.mStates[line] = state;
+            this.mFlags[line] = 0;
+            this.mLineCount++;
+            this.mNext = line;
+        } else if (line > this.mNext) {
+            // If the state of the next line didn't change, the next lines (up to the next
+            // edited line) don't need to be tokenized again
+            boolean converged = this.mStates[line] == state;
+            this.mStates[line] = state;
+            this.mNext = line;
+            if (converged) {
+                while (this.mNext < this.mLineCount
+                        && (this.mFlags[this.mNext] & EDITED) == 0) {
+                    this.mNext++;
+                }
+                if (this.mNext == this.mLineCount && !this.mKnownEnd) {
+                    this.mNext--;
+                }
+            } else {
+                // The line was painted with the old state. Paint it again when visible
+                this.mFlags[line] &= ~PAINTED;
+            }
+        }
+
+        // Continue with the pending lines
+        startJob();
+    }
+
+    private int findLine(int position) {
+        int lo = 0;
+        int hi = this.mLineCount - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (this.mStarts[mid] <= position) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > this.mStarts.length) {
+            int newCapacity = Math.max(capacity, this.mStarts.length * 2);
+            this.mStarts = Arrays.copyOf(this.mStarts, newCapacity);
+            this.mStates = Arrays.copyOf(this.mStates, newCapacity);
+            this.mFlags = Arrays.copyOf(this.mFlags, newCapacity);
+        }
+    }
+
+    private static int countNewLines(CharSequence s, int start, int end) {
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            if (s.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.ash;
+
+import android.text.Spannable;
+import android.text.Spanned;
+import android.text.style.ForegroundColorSpan;
+
+import java.util.Arrays;
+
+/**
+ * A batch of color spans, stored in primitive arrays. The spans can be collected in
+ * a background thread and applied later to the <code>Spannable</code> in the UI thread.
+ */
+public final class SpanBatch {
+
+    private int[] mColors;
+    private int[] mStarts;
+    private int[] mEnds;
+    private int mSize;
+
+    /**
+     * Constructor of <code>SpanBatch</code>
+     */
+    public SpanBatch() {
+        super();
+        this.mColors = new int[16];
+        this.mStarts = new int[16];
+        this.mEnds = new int[16];
+        this.mSize = 0;
+    }
+
+    /**
+     * Method that adds a span to the batch. Empty spans are ignored.
+     *
+     * @param color The color of the span
+     * @param start The start of the span
+     * @param end The end of the span
+     */
+    public void add(int color, int start, int end) {
+        if (start == end) return;
+        if (this.mSize == this.mColors.length) {
+            int capacity = this.mSize * 2;
+            this.mColors = Arrays.copyOf(this.mColors, capacity);
+            this.mStarts = Arrays.copyOf(this.mStarts, capacity);
+            this.mEnds = Arrays.copyOf(this.mEnds, capacity);
+        }
+        this.mColors[this.mSize] = color;
+        this.mStarts[this.mSize] = start;
+        this.mEnds[this.mSize] = end;
+        this.mSize++;
+    }
+
+    /**
+     * Method that returns the number of spans of the batch.
+     *
+     * @return int The number of spans
+     */
+    public int size() {
+        return this.mSize;
+    }
+
+    /**
+     * Method that removes all the spans of the batch.
+     */
+    public void clear() {
+        this.mSize = 0;
+    }
+
+    /**
+     * Method that sets the spans of the batch in a <code>Spannable</code>.
+     *
+     * @param spanable The spannable
+     */
+    public void apply(Spannable spanable) {
+        apply(spanable, 0, this.mSize, 0);
+    }
+
+    /**
+     * Method that sets a range of the spans of the batch in a <code>Spannable</code>.
+     *
+     * @param spanable The spannable
+     * @param from The first span of the batch to set
+     * @param to The end (exclusive) of the spans to set
+     * @param delta The offset to add to the positions of the spans
+     */
+    public void apply(Spannable spanable, int from, int to, int delta) {
+        for (int i = from; i < to; i++) {
+            spanable.setSpan(
+                    new ForegroundColorSpan(this.mColors[i]),
+                    this.mStarts[i] + delta,
+                    this.mEnds[i] + delta,
+                    Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        }
+    }
+}
@@ -76,6 +76,46 @@ public abstract class SyntaxHighlightProcessor {
      */
     public abstract void cancel();
 
+    /**
+     * Method that returns if the processor can highlight a document line by line, from
+     * the scanner state of the previous line. The incremental processors can be used by
+     * {@link IncrementalSyntaxHighlighter}.
+     *
+     * @return boolean If the processor implements {@link #tokenizeLine}
+     */
+    @SuppressWarnings("static-method")
+    public boolean isIncremental() {
+        return false;
+    }
+
+    /**
+     * Method that returns the scanner state at the start of a document
+     *
+     * @return int The initial state (never negative)
+     */
+    @SuppressWarnings("static-method")
+    public int getInitialState() {
+        return 0;
+    }
+
+    /**
+     * Method that highlights a line of a document. This method must not change the
+     * processor, so it can be called from a background thread.<br/>
+     * <br/>
+     * The default implementation doesn't highlight the line and keeps the state. The
+     * incremental processors must override it.
+     *
+     * @param line The line (without the line separator)
+     * @param start The start position of the line within the document
+     * @param state The scanner state at the start of the line
+     * @param batch The batch where to add the spans of the line
+     * @return int The scanner state at the end of the line (never negative)
+     */
+    @SuppressWarnings("static-method")
+    public int tokenizeLine(CharSequence line, int start, int state, SpanBatch batch) {
+        return state;
+    }
+
     /**
      * Method that clear all the existent spans
      *
@@ -22,6 +22,7 @@ import android.text.style.ForegroundColorSpan;
 import com.cyanogenmod.filemanager.ash.HighlightColors;
 import com.cyanogenmod.filemanager.ash.ISyntaxHighlightResourcesResolver;
 import com.cyanogenmod.filemanager.ash.RegExpUtil;
+import com.cyanogenmod.filemanager.ash.SpanBatch;
 import com.cyanogenmod.filemanager.ash.SyntaxHighlightProcessor;
 import com.cyanogenmod.filemanager.ash.scanners.NewLineScanner;
 import com.cyanogenmod.filemanager.ash.scanners.NewLineScanner.NewLineScannerListener;
@@ -43,7 +44,7 @@ import java.util.regex.Pattern;
  * </ul>
  * </br>
  * IMP! This class is not thread safe. Calling "process" methods should be
- * done in a synchronous way.
+ * done in a synchronous way. {@link #tokenizeLine} can be called from any thread.
  */
 public class PropertiesSyntaxHighlightProcessor extends SyntaxHighlightProcessor {
 
@@ -55,8 +56,13 @@ public class PropertiesSyntaxHighlightProcessor extends SyntaxHighlightProcessor
     private static final Pattern ASSIGNMENT = Pattern.compile("="); //$NON-NLS-1$
     private static final Pattern ARGUMENT = Pattern.compile("\\{\\d+\\}"); //$NON-NLS-1$
 
+    // The scanner states of the lines
+    private static final int STATE_DEFAULT = 0;
+    private static final int STATE_MULTILINE = 1;
+
     protected Spannable mSpannable;
     private boolean mMultiLine;
+    private final SpanBatch mBatch = new SpanBatch();
 
     private int mKeyColor;
     private int mAssignmentColor;
@@ -204,6 +210,23 @@ public class PropertiesSyntaxHighlightProcessor extends SyntaxHighlightProcessor
         // Not needed by this processor
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isIncremental() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int tokenizeLine(CharSequence line, int start, int state, SpanBatch batch) {
+        return highlightLine(line, start, line.length() + start, state == STATE_MULTILINE, batch)
+                ? STATE_MULTILINE : STATE_DEFAULT;
+    }
+
     /**
      * A method to process every new line
      *
@@ -222,13 +245,29 @@ public class PropertiesSyntaxHighlightProcessor extends SyntaxHighlightProcessor
             this.mSpannable.removeSpan(spans[i]);
         }
 
+        this.mBatch.clear();
+        this.mMultiLine = highlightLine(newline, start, end, this.mMultiLine, this.mBatch);
+        this.mBatch.apply(this.mSpannable);
+    }
+
+    /**
+     * A method that highlights a line
+     *
+     * @param newline The newline
+     * @param start The start position of the line
+     * @param end The end position of the line
+     * @param multiLine If the previous line continues in this line
+     * @param batch The batch where to add the spans
+     * @return boolean If this line continues in the next line
+     */
+    private boolean highlightLine(CharSequence newline, int start, int end,
+            boolean multiLine, SpanBatch batch) {
         // Find comment
         Matcher cm = COMMENT.matcher(newline);
         if (cm.matches()) {
             // All the line is a comment
-            setSpan(this.mSpannable, this.mCommentColor, start, end);
-            this.mMultiLine = false;
-            return;
+            batch.add(this.mCommentColor, start, end);
+            return false;
         }
 
         // Has multiline
@@ -236,11 +275,11 @@ public class PropertiesSyntaxHighlightProcessor extends SyntaxHighlightProcessor
         boolean ml = mlm.matches();
 
         //Find the assignment
-        int k = this.mMultiLine ? -1 : start;
+        int k = multiLine ? -1 : start;
         int v = start;
         int v2 = 0;
         int a = -1;
-        if (!this.mMultiLine) {
+        if (!multiLine) {
             Matcher am = ASSIGNMENT.matcher(newline);
             if (am.find()) {
                 // Assignment found
@@ -251,31 +290,31 @@ public class PropertiesSyntaxHighlightProcessor extends SyntaxHighlightProcessor
         }
 
         // All the string is a key
-        if (!this.mMultiLine && a == -1) {
-            setSpan(this.mSpannable, this.mKeyColor, start, end);
+        if (!multiLine && a == -1) {
+            batch.add(this.mKeyColor, start, end);
 
         } else {
             // Key
-            if (!this.mMultiLine) {
-                setSpan(this.mSpannable, this.mKeyColor, k, a);
+            if (!multiLine) {
+                batch.add(this.mKeyColor, k, a);
             }
             // Assignment
-            if (!this.mMultiLine) {
-                setSpan(this.mSpannable, this.mAssignmentColor, a, a + 1);
+            if (!multiLine) {
+                batch.add(this.mAssignmentColor, a, a + 1);
             }
             // Value
-            setSpan(this.mSpannable, this.mValueColor, v, end);
+            batch.add(this.mValueColor, v, end);
             // Argument
             Matcher argm = ARGUMENT.matcher(newline);
             while (argm.find(v2)) {
                 int s = start + argm.start();
                 int e = start + argm.end();
-                setSpan(this.mSpannable, this.mArgumentColor, s, e);
+                batch.add(this.mArgumentColor, s, e);
                 v2 = argm.end();
             }
         }
 
         // Multiline?
-        this.mMultiLine = ml;
+        return ml;
     }
 }
@@ -37,13 +37,16 @@ import com.cyanogenmod.filemanager.preferences.FileManagerSettings;
 import com.cyanogenmod.filemanager.preferences.ObjectStringIdentifier;
 import com.cyanogenmod.filemanager.preferences.Preferences;
 import com.cyanogenmod.filemanager.providers.secure.SecureCacheCleanupService;
+import com.cyanogenmod.filemanager.service.FileNameIndexService;
 import com.cyanogenmod.filemanager.service.MimeTypeIndexService;
 import com.cyanogenmod.filemanager.ui.ThemeManager;
 import com.cyanogenmod.filemanager.ui.ThemeManager.Theme;
 import com.cyanogenmod.filemanager.util.AIDHelper;
 import com.cyanogenmod.filemanager.util.AndroidHelper;
+import com.cyanogenmod.filemanager.util.ListingCache;
 import com.cyanogenmod.filemanager.util.MimeTypeHelper;
 import com.cyanogenmod.filemanager.util.StorageHelper;
+import com.cyanogenmod.filemanager.util.ThumbnailCache;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -190,12 +193,27 @@ public final class FileManagerApplication extends Application {
             MimeTypeIndexService.indexFileRoot(this, storageVolume.getPath());
         }
 
+        // Bring up to date the file name index of the storage volumes used by the searches
+        for (StorageVolume storageVolume : storageVolumes) {
+            FileNameIndexService.indexFileRoot(this, storageVolume.getPath());
+        }
+
 
         // Schedule in case not scheduled (i.e. never booted with this app on device
         SecureCacheCleanupService.scheduleCleanup(getApplicationContext());
 
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        ThumbnailCache.getInstance(this).trimMemory(level);
+        ListingCache.getInstance().trimMemory(level);
+    }
+
     /**
      * {@inheritDoc}
      */
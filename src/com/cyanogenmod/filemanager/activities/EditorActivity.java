@@ -26,6 +26,7 @@ import android.content.DialogInterface.OnClickListener;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.res.Configuration;
+import android.graphics.Rect;
 import android.graphics.Typeface;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
@@ -35,6 +36,7 @@ import android.os.Handler;
 import android.preference.PreferenceActivity;
 import android.text.Editable;
 import android.text.InputType;
+import android.text.Layout;
 import android.text.SpannableStringBuilder;
 import android.text.TextWatcher;
 import android.util.Log;
@@ -43,9 +45,13 @@ import android.view.LayoutInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+import android.widget.AbsListView;
+import android.widget.AbsListView.OnScrollListener;
 import android.widget.AdapterView;
 import android.widget.AdapterView.OnItemClickListener;
 import android.widget.ArrayAdapter;
+import android.widget.BaseAdapter;
 import android.widget.EditText;
 import android.widget.ImageView;
 import android.widget.ListPopupWindow;
@@ -64,6 +70,7 @@ import com.cyanogenmod.filemanager.adapters.HighlightedSimpleMenuListAdapter;
 import com.cyanogenmod.filemanager.adapters.SimpleMenuListAdapter;
 import com.cyanogenmod.filemanager.ash.HighlightColors;
 import com.cyanogenmod.filemanager.ash.ISyntaxHighlightResourcesResolver;
+import com.cyanogenmod.filemanager.ash.IncrementalSyntaxHighlighter;
 import com.cyanogenmod.filemanager.ash.SyntaxHighlightFactory;
 import com.cyanogenmod.filemanager.ash.SyntaxHighlightProcessor;
 import com.cyanogenmod.filemanager.commands.AsyncResultListener;
@@ -82,12 +89,14 @@ import com.cyanogenmod.filemanager.ui.ThemeManager.Theme;
 import com.cyanogenmod.filemanager.ui.policy.PrintActionPolicy;
 import com.cyanogenmod.filemanager.ui.widgets.ButtonItem;
 import com.cyanogenmod.filemanager.util.AndroidHelper;
+import com.cyanogenmod.filemanager.util.CharsetDetector;
 import com.cyanogenmod.filemanager.util.CommandHelper;
 import com.cyanogenmod.filemanager.util.DialogHelper;
 import com.cyanogenmod.filemanager.util.ExceptionUtil;
 import com.cyanogenmod.filemanager.util.ExceptionUtil.OnRelaunchCommandResult;
 import com.cyanogenmod.filemanager.util.FileHelper;
 import com.cyanogenmod.filemanager.util.MediaHelper;
+import com.cyanogenmod.filemanager.util.PagedDocument;
 import com.cyanogenmod.filemanager.util.ResourcesHelper;
 import com.cyanogenmod.filemanager.util.StringHelper;
 import org.mozilla.universalchardet.UniversalDetector;
@@ -100,9 +109,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -112,6 +126,9 @@ public class EditorActivity extends Activity implements TextWatcher {
 
     private static final String TAG = "EditorActivity"; //$NON-NLS-1$
 
+    // The pages read before and after the visible pages of the big files
+    private static final int PAGED_PREFETCH_MARGIN = 3;
+
     private static boolean DEBUG = false;
 
     private static final int WRITE_RETRIES = 3;
@@ -261,6 +278,103 @@ public class EditorActivity extends Activity implements TextWatcher {
         }
     }
 
+    /**
+     * An adapter that displays the pages of a {@link PagedDocument}. Only the visible pages
+     * are decoded and displayed. The pages that aren't in memory are read in background,
+     * and a placeholder is displayed meanwhile.
+     */
+    private class PagedDocumentAdapter extends BaseAdapter {
+        private final PagedDocument mDocument;
+        // The pages being read, and the pages that couldn't be read. Only accessed from
+        // the main thread
+        private final Set<Integer> mLoadingPages;
+        private final Set<Integer> mFailedPages;
+
+        public PagedDocumentAdapter(PagedDocument document) {
+            super();
+            this.mDocument = document;
+            this.mLoadingPages = new HashSet<Integer>();
+            this.mFailedPages = new HashSet<Integer>();
+        }
+
+        @Override
+        public int getCount() {
+            return this.mDocument.getPageCount();
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @return String The text of the page, or <code>null</code> while it's read
+         * in background
+         */
+        @Override
+        public String getItem(int position) {
+            String text = this.mDocument.getCachedPage(position);
+            if (text == null) {
+                if (this.mFailedPages.contains(Integer.valueOf(position))) {
+                    return ""; //$NON-NLS-1$
+                }
+                // Not prefetched yet. Don't block the main thread
+                requestPage(position);
+            }
+            return text;
+        }
+
+        private void requestPage(final int position) {
+            if (!this.mLoadingPages.add(Integer.valueOf(position))) {
+                return;
+            }
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    boolean read = false;
+                    try {
+                        PagedDocumentAdapter.this.mDocument.getPage(position);
+                        read = true;
+                    } catch (IOException ex) {
+                        Log.e(TAG, "Failed to read the page " + position, ex); //$NON-NLS-1$
+                    }
+                    final boolean failed = !read;
+                    EditorActivity.this.mHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            Integer page = Integer.valueOf(position);
+                            PagedDocumentAdapter.this.mLoadingPages.remove(page);
+                            if (failed) {
+                                PagedDocumentAdapter.this.mFailedPages.add(page);
+                            }
+                            notifyDataSetChanged();
+                        }
+                    });
+                }
+            });
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return position;
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            TextView v = (TextView)convertView;
+            if (v == null) {
+                final Context context = parent.getContext();
+                Theme theme = ThemeManager.getCurrentTheme(context);
+                v = (TextView)LayoutInflater.from(context).inflate(
+                        R.layout.editor_page, parent, false);
+                theme.setTextColor(context, v, "text_color"); //$NON-NLS-1$
+            }
+            String text = getItem(position);
+            if (text == null) {
+                text = parent.getContext().getString(R.string.loading_message);
+            }
+            v.setText(text);
+            return v;
+        }
+    }
+
     /**
      * Internal interface to notify progress update
      */
@@ -282,18 +396,31 @@ public class EditorActivity extends Activity implements TextWatcher {
         long mSize;
         FileSystemObject mReadFso;
         OnProgressListener mListener;
-        boolean mDetectEncoding = false;
         UniversalDetector mDetector;
         String mDetectedEncoding;
+        boolean mBinaryDetected;
+
+        // The decoder of the text, when the charset is known before the read
+        CharsetDecoder mDecoder;
+        ByteBuffer mPending;
+        CharBuffer mChars;
+        StringBuilder mText;
 
         /**
          * Constructor of <code>AsyncReader</code>. For enclosing access.
+         *
+         * @param charset The charset detected before the read, or <code>null</code> to
+         * detect the charset from the read data
          */
-        public AsyncReader(boolean detectEncoding) {
+        public AsyncReader(CharsetDetector.Result charset) {
             super();
-            mDetectEncoding = detectEncoding;
-            if (mDetectEncoding) {
+            if (charset == null) {
                 mDetector = new UniversalDetector(null);
+            } else if (charset.isBinary()) {
+                mBinaryDetected = true;
+            } else {
+                mDecoder = charset.newDecoder();
+                mDetectedEncoding = charset.getCharset();
             }
         }
 
@@ -302,7 +429,14 @@ public class EditorActivity extends Activity implements TextWatcher {
          */
         @Override
         public void onAsyncStart() {
-            this.mByteBuffer = new ByteArrayOutputStream((int)this.mReadFso.getSize());
+            if (this.mDecoder != null) {
+                // Decode the text while is read. Don't buffer the raw data
+                this.mText = new StringBuilder((int)this.mReadFso.getSize());
+                this.mChars = CharBuffer.allocate(8192);
+                this.mPending = null;
+            } else {
+                this.mByteBuffer = new ByteArrayOutputStream((int)this.mReadFso.getSize());
+            }
             this.mSize = 0;
         }
 
@@ -311,7 +445,12 @@ public class EditorActivity extends Activity implements TextWatcher {
          */
         @Override
         public void onAsyncEnd(boolean cancelled) {
-            if (!cancelled && StringHelper.isBinaryData(mByteBuffer.toByteArray())) {
+            if (this.mDecoder != null) {
+                if (!cancelled) {
+                    decode(new byte[0], true);
+                }
+            } else if (!cancelled && (this.mBinaryDetected
+                    || StringHelper.isBinaryData(mByteBuffer.toByteArray()))) {
                 EditorActivity.this.mBinary = true;
                 EditorActivity.this.mReadOnly = true;
             } else if (mDetector != null) {
@@ -339,10 +478,15 @@ public class EditorActivity extends Activity implements TextWatcher {
             try {
                 if (result == null) return;
                 byte[] partial = (byte[]) result;
-                if (mDetectEncoding) {
-                    mDetector.handleData(partial, 0, partial.length);
+                if (this.mDecoder != null) {
+                    decode(partial, false);
+                } else {
+                    // The detector needs no more data once is done
+                    if (mDetector != null && !mDetector.isDone()) {
+                        mDetector.handleData(partial, 0, partial.length);
+                    }
+                    this.mByteBuffer.write(partial, 0, partial.length);
                 }
-                this.mByteBuffer.write(partial, 0, partial.length);
                 this.mSize += partial.length;
                 if (this.mListener != null && this.mReadFso != null) {
                     int progress = 0;
@@ -356,6 +500,41 @@ public class EditorActivity extends Activity implements TextWatcher {
             }
         }
 
+        private void decode(byte[] data, boolean endOfInput) {
+            // Join the bytes of a char split between two partial results
+            ByteBuffer in;
+            if (this.mPending != null) {
+                in = ByteBuffer.allocate(this.mPending.remaining() + data.length);
+                in.put(this.mPending);
+                in.put(data);
+                in.flip();
+            } else {
+                in = ByteBuffer.wrap(data);
+            }
+            while (this.mDecoder.decode(in, this.mChars, endOfInput).isOverflow()) {
+                drainChars();
+            }
+            if (endOfInput) {
+                while (this.mDecoder.flush(this.mChars).isOverflow()) {
+                    drainChars();
+                }
+            }
+            drainChars();
+
+            this.mPending = null;
+            if (in.hasRemaining()) {
+                this.mPending = ByteBuffer.allocate(in.remaining());
+                this.mPending.put(in);
+                this.mPending.flip();
+            }
+        }
+
+        private void drainChars() {
+            this.mChars.flip();
+            this.mText.append(this.mChars);
+            this.mChars.clear();
+        }
+
         /**
          * {@inheritDoc}
          */
@@ -484,6 +663,13 @@ public class EditorActivity extends Activity implements TextWatcher {
     private int mBufferSize;
     private long mMaxFileSize;
 
+    /**
+     * The document of the files too big to be edited, displayed in pages.
+     * @hide
+     */
+    PagedDocument mDocument;
+    private boolean mPrefetching;
+
     /**
      * @hide
      */
@@ -553,6 +739,11 @@ public class EditorActivity extends Activity implements TextWatcher {
      * @hide
      */
     SyntaxHighlightProcessor mSyntaxHighlightProcessor;
+    /**
+     * @hide
+     */
+    IncrementalSyntaxHighlighter mIncrementalHighlighter;
+    private final Rect mVisibleRect = new Rect();
     private int mEditStart;
     private int mEditEnd;
 
@@ -654,6 +845,21 @@ public class EditorActivity extends Activity implements TextWatcher {
             /**NON BLOCK**/
         }
 
+        // Stop the syntax highlight
+        if (this.mIncrementalHighlighter != null) {
+            this.mIncrementalHighlighter.stop();
+        }
+
+        // Close the paged document
+        if (this.mDocument != null) {
+            try {
+                this.mDocument.close();
+            } catch (IOException ex) {
+                /**NON BLOCK**/
+            }
+            this.mDocument = null;
+        }
+
         //All destroy. Continue
         super.onDestroy();
     }
@@ -711,6 +917,20 @@ public class EditorActivity extends Activity implements TextWatcher {
         this.mEditor.setText(null);
         this.mEditor.addTextChangedListener(this);
         this.mEditor.setEnabled(false);
+        this.mEditor.getViewTreeObserver().addOnScrollChangedListener(
+                new ViewTreeObserver.OnScrollChangedListener() {
+                    @Override
+                    public void onScrollChanged() {
+                        updateHighlightViewport();
+                    }
+                });
+        this.mEditor.getViewTreeObserver().addOnGlobalLayoutListener(
+                new ViewTreeObserver.OnGlobalLayoutListener() {
+                    @Override
+                    public void onGlobalLayout() {
+                        updateHighlightViewport();
+                    }
+                });
         this.mWordWrapView = (ViewGroup)findViewById(R.id.editor_word_wrap_view);
         this.mNoWordWrapView = (ViewGroup)findViewById(R.id.editor_no_word_wrap_view);
         this.mWordWrapView.setVisibility(View.VISIBLE);
@@ -794,6 +1014,43 @@ public class EditorActivity extends Activity implements TextWatcher {
         }
     }
 
+    /**
+     * Method that highlights the text of the editor. The incremental processors only
+     * highlight in background the visible text and the edited lines.
+     * @hide
+     */
+    /**package**/ void highlightText() {
+        if (this.mIncrementalHighlighter != null) {
+            this.mIncrementalHighlighter.setText(this.mEditor.getText());
+            updateHighlightViewport();
+        } else {
+            this.mSyntaxHighlightProcessor.process(this.mEditor.getText());
+        }
+    }
+
+    /**
+     * Method that sets the visible text of the editor (and a screen before and after it)
+     * as the viewport of the incremental syntax highlight.
+     * @hide
+     */
+    /**package**/ void updateHighlightViewport() {
+        if (this.mIncrementalHighlighter == null || !this.mSyntaxHighlight) {
+            return;
+        }
+        Layout layout = this.mEditor.getLayout();
+        if (layout == null || !this.mEditor.getLocalVisibleRect(this.mVisibleRect)) {
+            return;
+        }
+        int padding = this.mEditor.getTotalPaddingTop();
+        int top = layout.getLineForVertical(this.mVisibleRect.top - padding);
+        int bottom = layout.getLineForVertical(this.mVisibleRect.bottom - padding);
+        int margin = bottom - top;
+        top = Math.max(0, top - margin);
+        bottom = Math.min(layout.getLineCount() - 1, bottom + margin);
+        this.mIncrementalHighlighter.setViewport(
+                layout.getLineStart(top), layout.getLineEnd(bottom));
+    }
+
     /**
      * Method that toggles the syntax highlight property of the editor
      * @hide
@@ -803,9 +1060,12 @@ public class EditorActivity extends Activity implements TextWatcher {
             if (this.mSyntaxHighlightProcessor != null) {
                 try {
                     if (this.mSyntaxHighlight) {
+                        if (this.mIncrementalHighlighter != null) {
+                            this.mIncrementalHighlighter.stop();
+                        }
                         this.mSyntaxHighlightProcessor.clear(this.mEditor.getText());
                     } else {
-                        this.mSyntaxHighlightProcessor.process(this.mEditor.getText());
+                        highlightText();
                     }
                 } catch (Exception ex) {
                     // An error in a syntax library, should not break down app.
@@ -826,7 +1086,7 @@ public class EditorActivity extends Activity implements TextWatcher {
             if (this.mSyntaxHighlightProcessor != null) {
                 try {
                     this.mSyntaxHighlightProcessor.initialize();
-                    this.mSyntaxHighlightProcessor.process(this.mEditor.getText());
+                    highlightText();
                 } catch (Exception ex) {
                     // An error in a syntax library, should not break down app.
                     Log.e(TAG, "Syntax highlight failed.", ex); //$NON-NLS-1$
@@ -1036,8 +1296,13 @@ public class EditorActivity extends Activity implements TextWatcher {
                 Log.e(TAG, "Failed to get file reference", e); //$NON-NLS-1$
             }
 
-            // Check that we can handle the length of the file (by device)
+            // Check that we can handle the length of the file (by device). Files that
+            // can't be edited are displayed in read-only pages, if they can be read directly
             if (this.mMaxFileSize < this.mFso.getSize()) {
+                if (!this.mFso.isSecure() && !this.mFso.isRemote() && f.canRead()) {
+                    asyncReadPaged(f);
+                    return;
+                }
                 DialogHelper.showToast(
                         this, R.string.editor_file_exceed_size_msg, Toast.LENGTH_SHORT);
                 return;
@@ -1049,6 +1314,10 @@ public class EditorActivity extends Activity implements TextWatcher {
             this.mSyntaxHighlightProcessor = shpFactory.getSyntaxHighlightProcessor(f);
             if (this.mSyntaxHighlightProcessor != null) {
                 this.mSyntaxHighlightProcessor.initialize();
+                if (this.mSyntaxHighlightProcessor.isIncremental()) {
+                    this.mIncrementalHighlighter = new IncrementalSyntaxHighlighter(
+                            this.mSyntaxHighlightProcessor, this.mHandler);
+                }
             }
 
             // Check that we have read access
@@ -1176,8 +1445,7 @@ public class EditorActivity extends Activity implements TextWatcher {
                             if (activity.mSyntaxHighlight &&
                                     activity.mSyntaxHighlightProcessor != null) {
                                 try {
-                                    activity.mSyntaxHighlightProcessor.process(
-                                            activity.mEditor.getText());
+                                    activity.highlightText();
                                 } catch (Exception ex) {
                                     // An error in a syntax library, should not break down app.
                                     Log.e(TAG, "Syntax highlight failed.", ex); //$NON-NLS-1$
@@ -1268,9 +1536,21 @@ public class EditorActivity extends Activity implements TextWatcher {
 
                 // Read the file in an async listener
                 try {
+                    // Detect the charset of the local files from a sample of the file,
+                    // so the file can be decoded while is read
+                    CharsetDetector.Result charset = null;
+                    File file = new File(fso.getFullPath());
+                    if (!fso.isSecure() && !fso.isRemote() && file.canRead()) {
+                        try {
+                            charset = CharsetDetector.detect(file);
+                        } catch (IOException ex) {
+                            Log.w(TAG, "Failed to detect the charset of " + file, ex); //$NON-NLS-1$
+                        }
+                    }
+
                     while (true) {
                         // Configure the reader
-                        this.mReader = new AsyncReader(true);
+                        this.mReader = new AsyncReader(charset);
                         this.mReader.mReadFso = fso;
                         this.mReader.mListener = new OnProgressListener() {
                             @Override
@@ -1318,17 +1598,21 @@ public class EditorActivity extends Activity implements TextWatcher {
                         }
                         Log.i(TAG, "Bytes read: " + data.length()); //$NON-NLS-1$
                     } else {
-                        String data;
-                        if (this.mReader.mDetectedEncoding != null) {
+                        CharSequence data;
+                        if (this.mReader.mText != null) {
+                            // Already decoded
+                            data = this.mReader.mText;
+                        } else if (this.mReader.mDetectedEncoding != null) {
                             data = new String(this.mReader.mByteBuffer.toByteArray(),
                                               this.mReader.mDetectedEncoding);
                         } else {
                             data = new String(this.mReader.mByteBuffer.toByteArray());
                         }
                         this.mReader.mBuffer = new SpannableStringBuilder(data);
-                        Log.i(TAG, "Bytes read: " + data.getBytes().length); //$NON-NLS-1$
+                        Log.i(TAG, "Bytes read: " + this.mReader.mSize); //$NON-NLS-1$
                     }
                     this.mReader.mByteBuffer = null;
+                    this.mReader.mText = null;
 
                     // 100%
                     this.changeToDisplaying = true;
@@ -1374,8 +1658,7 @@ public class EditorActivity extends Activity implements TextWatcher {
                         if (activity.mSyntaxHighlight &&
                             activity.mSyntaxHighlightProcessor != null) {
                             try {
-                                activity.mSyntaxHighlightProcessor.process(
-                                        activity.mEditor.getText());
+                                activity.highlightText();
                             } catch (Exception ex) {
                                 // An error in a syntax library, should not break down app.
                                 Log.e(TAG, "Syntax highlight failed.", ex); //$NON-NLS-1$
@@ -1503,6 +1786,150 @@ public class EditorActivity extends Activity implements TextWatcher {
         mReadTask.execute(this.mFso);
     }
 
+    /**
+     * Method that opens in background a file too big to be edited, and displays it in
+     * read-only pages. Only the visible pages (and a margin around them) are read.
+     *
+     * @param file The file to open
+     * @hide
+     */
+    void asyncReadPaged(final File file) {
+        AsyncTask<Void, Void, PagedDocument> mReadTask =
+                new AsyncTask<Void, Void, PagedDocument>() {
+
+            private Exception mCause;
+
+            @Override
+            protected void onPreExecute() {
+                EditorActivity.this.mProgressBar.setIndeterminate(true);
+                EditorActivity.this.mProgress.setVisibility(View.VISIBLE);
+            }
+
+            @Override
+            protected PagedDocument doInBackground(Void... params) {
+                PagedDocument document = null;
+                try {
+                    document = new PagedDocument(file);
+                    if (!document.isPageable()) {
+                        document.close();
+                        return null;
+                    }
+                    // Read the first pages
+                    for (int i = 0; i < Math.min(PAGED_PREFETCH_MARGIN,
+                            document.getPageCount()); i++) {
+                        document.getPage(i);
+                    }
+                    return document;
+                } catch (Exception e) {
+                    this.mCause = e;
+                    if (document != null) {
+                        try {
+                            document.close();
+                        } catch (IOException ex) {
+                            /**NON BLOCK**/
+                        }
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            protected void onPostExecute(PagedDocument document) {
+                final EditorActivity activity = EditorActivity.this;
+                activity.mProgressBar.setIndeterminate(false);
+                activity.mProgress.setVisibility(View.GONE);
+                if (document == null) {
+                    if (this.mCause != null) {
+                        ExceptionUtil.translateException(activity, this.mCause);
+                    } else {
+                        DialogHelper.showToast(activity,
+                                R.string.editor_file_exceed_size_msg, Toast.LENGTH_SHORT);
+                    }
+                    return;
+                }
+                if (activity.isFinishing() || activity.isDestroyed()) {
+                    try {
+                        document.close();
+                    } catch (IOException ex) {
+                        /**NON BLOCK**/
+                    }
+                    return;
+                }
+
+                // Displayed in a list, like the binary files
+                activity.mDocument = document;
+                activity.mBinary = true;
+                activity.mReadOnly = true;
+                activity.mPrint.setVisibility(View.GONE);
+                activity.mWordWrapView.setVisibility(View.GONE);
+                activity.mNoWordWrapView.setVisibility(View.GONE);
+                activity.mBinaryEditor.setVisibility(View.VISIBLE);
+                activity.mBinaryEditor.setAdapter(new PagedDocumentAdapter(document));
+                activity.mBinaryEditor.setOnScrollListener(new OnScrollListener() {
+                    @Override
+                    public void onScrollStateChanged(AbsListView view, int scrollState) {
+                        /**NON BLOCK**/
+                    }
+
+                    @Override
+                    public void onScroll(AbsListView view, int firstVisibleItem,
+                            int visibleItemCount, int totalItemCount) {
+                        prefetchPages(firstVisibleItem, visibleItemCount);
+                    }
+                });
+
+                DialogHelper.showToast(
+                        activity, R.string.editor_read_only_mode, Toast.LENGTH_SHORT);
+            }
+        };
+        mReadTask.execute();
+    }
+
+    /**
+     * Method that reads in background the pages around the visible ones, so they are
+     * ready when the user scrolls.
+     *
+     * @param first The first visible page
+     * @param count The number of visible pages
+     * @hide
+     */
+    void prefetchPages(int first, int count) {
+        final PagedDocument document = this.mDocument;
+        if (document == null || this.mPrefetching) {
+            return;
+        }
+        final int from = Math.max(0, first - PAGED_PREFETCH_MARGIN);
+        final int to = Math.min(document.getPageCount(), first + count + PAGED_PREFETCH_MARGIN);
+        boolean cached = true;
+        for (int i = from; i < to && cached; i++) {
+            cached = document.getCachedPage(i) != null;
+        }
+        if (cached) {
+            return;
+        }
+
+        this.mPrefetching = true;
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = from; i < to; i++) {
+                        document.getPage(i);
+                    }
+                } catch (IOException ex) {
+                    Log.w(TAG, "Failed to prefetch the pages", ex); //$NON-NLS-1$
+                } finally {
+                    EditorActivity.this.mHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            EditorActivity.this.mPrefetching = false;
+                        }
+                    });
+                }
+            }
+        });
+    }
+
     private void checkAndWrite() {
         // Check that we have write access
         try {
@@ -1651,7 +2078,11 @@ public class EditorActivity extends Activity implements TextWatcher {
      */
     @Override
     public void beforeTextChanged(
-            CharSequence s, int start, int count, int after) {/**NON BLOCK**/}
+            CharSequence s, int start, int count, int after) {
+        if (this.mIncrementalHighlighter != null) {
+            this.mIncrementalHighlighter.beforeTextChanged(s, start, count);
+        }
+    }
 
     /**
      * {@inheritDoc}
@@ -1660,6 +2091,9 @@ public class EditorActivity extends Activity implements TextWatcher {
     public void onTextChanged(CharSequence s, int start, int before, int count) {
         this.mEditStart = start;
         this.mEditEnd = start + count;
+        if (this.mIncrementalHighlighter != null) {
+            this.mIncrementalHighlighter.onTextChanged(s, start, before, count);
+        }
     }
 
     /**
@@ -1668,7 +2102,7 @@ public class EditorActivity extends Activity implements TextWatcher {
     @Override
     public void afterTextChanged(Editable s) {
         setDirty(true);
-        if (this.mSyntaxHighlightProcessor != null) {
+        if (this.mSyntaxHighlightProcessor != null && this.mIncrementalHighlighter == null) {
             this.mSyntaxHighlightProcessor.process(s, this.mEditStart, this.mEditEnd);
         }
     }
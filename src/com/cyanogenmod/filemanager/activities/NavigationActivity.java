@@ -237,7 +237,7 @@ public class NavigationActivity extends Activity
                         // Case sensitive sort
                         if (key.compareTo(FileManagerSettings.
                                 SETTINGS_CASE_SENSITIVE_SORT.getId()) == 0) {
-                            getCurrentNavigationView().refresh();
+                            getCurrentNavigationView().resort();
                             return;
                         }
 
@@ -2274,7 +2274,11 @@ public class NavigationActivity extends Activity
     public void onRequestRefresh(Object o, boolean clearSelection) {
         if (o instanceof FileSystemObject) {
             // Refresh only the item
-            this.getCurrentNavigationView().refresh((FileSystemObject)o);
+            this.getCurrentNavigationView().refreshChanges((FileSystemObject)o);
+        } else if (o == null && clearSelection) {
+            // Operations over the selection (copy, move, compress, ...). The
+            // changes are reported by the directory observer, if possible
+            getCurrentNavigationView().refreshChanges(null);
         } else if (o == null) {
             // Refresh all
             getCurrentNavigationView().refresh();
@@ -2390,7 +2394,14 @@ public class NavigationActivity extends Activity
                                             ((Boolean)setting.getDefaultValue()).booleanValue());
                             Preferences.savePreference(setting, Boolean.valueOf(!newval), false);
                         }
-                        getCurrentNavigationView().refresh();
+                        if (setting.compareTo(FileManagerSettings.SETTINGS_SORT_MODE) == 0
+                                || setting.compareTo(
+                                        FileManagerSettings.SETTINGS_SHOW_DIRS_FIRST) == 0) {
+                            // Only the order changes. Sort again the current listing
+                            getCurrentNavigationView().resort();
+                        } else {
+                            getCurrentNavigationView().refresh();
+                        }
                     }
                 } catch (Exception e) {
                     Log.e(TAG, "Error applying navigation option", e); //$NON-NLS-1$
@@ -30,6 +30,7 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.cyanogenmod.filemanager.R;
+import com.cyanogenmod.filemanager.model.DirectorySnapshot;
 import com.cyanogenmod.filemanager.model.FileSystemObject;
 import com.cyanogenmod.filemanager.model.ParentDirectory;
 import com.cyanogenmod.filemanager.preferences.FileManagerSettings;
@@ -42,11 +43,17 @@ import com.cyanogenmod.filemanager.util.MimeTypeHelper;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 
 /**
- * An implementation of {@link ArrayAdapter} for display file system objects.
+ * An implementation of {@link ArrayAdapter} for display file system objects.<br/>
+ * <br/>
+ * The adapter is backed by its own list (usually a {@link DirectorySnapshot}), so the
+ * file system objects of the rows are only built when they are displayed.
  */
 public class FileSystemObjectAdapter
     extends ArrayAdapter<FileSystemObject> implements OnClickListener {
@@ -83,6 +90,8 @@ public class FileSystemObjectAdapter
     }
 
     private IconHolder mIconHolder;
+    private List<FileSystemObject> mFiles;
+    private boolean mNotifyOnChange;
     private final int mItemViewResourceId;
     private HashSet<FileSystemObject> mSelectedItems;
     private final boolean mPickable;
@@ -112,7 +121,9 @@ public class FileSystemObjectAdapter
     public FileSystemObjectAdapter(
             Context context, List<FileSystemObject> files,
             int itemViewResourceId, boolean pickable) {
-        super(context, RESOURCE_ITEM_NAME, files);
+        super(context, RESOURCE_ITEM_NAME, new ArrayList<FileSystemObject>());
+        this.mFiles = files;
+        this.mNotifyOnChange = true;
         this.mItemViewResourceId = itemViewResourceId;
         this.mSelectedItems = new HashSet<FileSystemObject>();
         this.mPickable = pickable;
@@ -167,15 +178,142 @@ public class FileSystemObjectAdapter
      * @return FileSystemObject The file system object reference
      */
     public FileSystemObject getItem(String path) {
-        int cc = getCount();
-        for (int i = 0; i < cc; i++) {
-          //File system object info
-            FileSystemObject fso = getItem(i);
-            if (fso.getFullPath().compareTo(path) == 0) {
-                return fso;
-            }
+        int index = DirectorySnapshot.indexOf(this.mFiles, path);
+        return index >= 0 ? getItem(index) : null;
+    }
+
+    /**
+     * Method that replaces the file system objects of the adapter.
+     *
+     * @param files The new list of file system objects
+     */
+    public void setFiles(List<FileSystemObject> files) {
+        this.mFiles = files;
+        if (this.mNotifyOnChange) {
+            notifyDataSetChanged();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getCount() {
+        return this.mFiles.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public FileSystemObject getItem(int position) {
+        return this.mFiles.get(position);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getPosition(FileSystemObject item) {
+        return this.mFiles.indexOf(item);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getItemId(int position) {
+        return position;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void add(FileSystemObject object) {
+        this.mFiles.add(object);
+        onChanged();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addAll(Collection<? extends FileSystemObject> collection) {
+        this.mFiles.addAll(collection);
+        onChanged();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addAll(FileSystemObject... items) {
+        this.mFiles.addAll(Arrays.asList(items));
+        onChanged();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void insert(FileSystemObject object, int index) {
+        this.mFiles.add(index, object);
+        onChanged();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove(FileSystemObject object) {
+        this.mFiles.remove(object);
+        onChanged();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        this.mFiles.clear();
+        onChanged();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sort(Comparator<? super FileSystemObject> comparator) {
+        Collections.sort(this.mFiles, comparator);
+        onChanged();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setNotifyOnChange(boolean notifyOnChange) {
+        super.setNotifyOnChange(notifyOnChange);
+        this.mNotifyOnChange = notifyOnChange;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void notifyDataSetChanged() {
+        super.notifyDataSetChanged();
+        this.mNotifyOnChange = true;
+    }
+
+    /**
+     * Method invoked when the list of file system objects changed.
+     */
+    private void onChanged() {
+        if (this.mNotifyOnChange) {
+            notifyDataSetChanged();
         }
-        return null;
     }
 
     /**
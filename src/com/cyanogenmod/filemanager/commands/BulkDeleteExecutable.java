@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands;
+
+import java.util.List;
+
+/**
+ * An interface that represents an executable for delete several files and folders
+ * (recursively) at once.<br/>
+ * <br/>
+ * The executable doesn't fail when some of the paths can't be deleted. The paths that
+ * weren't deleted are returned as result (and notified to the listener).
+ */
+public interface BulkDeleteExecutable extends WritableExecutable {
+
+    /**
+     * An interface for receive the progress of the deletion.
+     */
+    public interface OnBulkDeleteListener {
+        /**
+         * Invoked when a path was processed. Could be invoked from any thread.
+         *
+         * @param path The path
+         * @param deleted If the path was deleted
+         */
+        void onDeleteProgress(String path, boolean deleted);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    List<String> getResult();
+}
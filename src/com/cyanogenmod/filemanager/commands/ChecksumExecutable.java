@@ -28,17 +28,57 @@ public interface ChecksumExecutable extends AsyncResultExecutable {
         /**
          * MD5 digest algorithm
          */
-        MD5,
+        MD5("MD5"), //$NON-NLS-1$
         /**
          * SHA-1 digest algorithm
          */
-        SHA1
+        SHA1("SHA-1"), //$NON-NLS-1$
+        /**
+         * SHA-256 digest algorithm
+         */
+        SHA256("SHA-256"), //$NON-NLS-1$
+        /**
+         * CRC-32 checksum
+         */
+        CRC32(null);
+
+        private final String mAlgorithm;
+
+        private CHECKSUMS(String algorithm) {
+            this.mAlgorithm = algorithm;
+        }
+
+        /**
+         * Method that returns the name of the {@link java.security.MessageDigest} algorithm
+         *
+         * @return String The name of the algorithm, or <code>null</code> if the checksum
+         * isn't a message digest (CRC-32)
+         */
+        public String getAlgorithm() {
+            return this.mAlgorithm;
+        }
+    }
+
+    /**
+     * An interface for receive the progress of the checksum calculation. The async result
+     * listener of the executable is notified if it implements this interface.
+     */
+    public interface OnChecksumProgressListener {
+        /**
+         * Invoked when a new chunk of a file was digested.
+         *
+         * @param file The file being digested
+         * @param read The number of bytes already digested
+         * @param total The size of the file
+         */
+        void onChecksumProgress(String file, long read, long total);
     }
 
     /**
-     * Method that returns the calculated MD5 [0] and SHA-1 [1] digests
+     * Method that returns the calculated digests, indexed by the ordinal of
+     * {@link CHECKSUMS}. The checksums not supported by the executable are <code>null</code>.
      *
-     * @return String[] The calculated MD5 [0] and SHA-1 [1] digests
+     * @return String[] The calculated digests
      */
     String[] getResult();
 
@@ -130,6 +130,22 @@ public interface ExecutableCreator {
     DeleteFileExecutable createDeleteFileExecutable(String file) throws CommandNotFoundException,
             NoSuchFileOrDirectory, InsufficientPermissionsException;
 
+    /**
+     * Method that creates an executable for delete several files and directories at once.
+     *
+     * @param paths The absolute paths to the files and directories to be deleted
+     * @param listener The listener where to return the progress (optional)
+     * @return BulkDeleteExecutable A {@link BulkDeleteExecutable} executable
+     * implementation reference
+     * @throws CommandNotFoundException If the executable can't be created
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     */
+    BulkDeleteExecutable createBulkDeleteExecutable(
+            String[] paths, BulkDeleteExecutable.OnBulkDeleteListener listener)
+            throws CommandNotFoundException,
+            NoSuchFileOrDirectory, InsufficientPermissionsException;
+
     /**
      * Method that creates an executable for retrieve the disk usage.
      * for all filesystems
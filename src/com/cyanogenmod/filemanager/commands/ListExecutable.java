@@ -41,6 +41,27 @@ public interface ListExecutable extends SyncResultExecutable {
         FILEINFO
     }
 
+    /**
+     * An interface for receive chunks of the listing while the directory is being listed.
+     */
+    public interface OnPartialListListener {
+        /**
+         * Invoked when a new chunk of the listing is available.
+         *
+         * @param files The new files listed (not sorted)
+         */
+        void onPartialList(List<FileSystemObject> files);
+    }
+
+    /**
+     * Method that sets the listener that receives chunks of the listing while
+     * the directory is being listed. Executables that can't list in chunks
+     * ignore the listener, and the full result is available when the executable ends.
+     *
+     * @param listener The listener
+     */
+    void setOnPartialListListener(OnPartialListListener listener);
+
     /**
      * {@inheritDoc}
      */
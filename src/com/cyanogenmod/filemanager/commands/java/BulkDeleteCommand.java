@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.java;
+
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.commands.BulkDeleteExecutable;
+import com.cyanogenmod.filemanager.console.ExecutionException;
+import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
+import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
+import com.cyanogenmod.filemanager.model.MountPoint;
+import com.cyanogenmod.filemanager.util.DeleteWalker;
+import com.cyanogenmod.filemanager.util.MountPointHelper;
+
+import java.util.List;
+
+
+/**
+ * A class for delete several files and folders at once, in parallel.
+ *
+ * @see DeleteWalker
+ */
+public class BulkDeleteCommand extends Program implements BulkDeleteExecutable {
+
+    private static final String TAG = "BulkDeleteCommand"; //$NON-NLS-1$
+
+    private final String[] mPaths;
+    private final int mParallelism;
+    private final OnBulkDeleteListener mListener;
+    private List<String> mFailed;
+
+    /**
+     * Constructor of <code>BulkDeleteCommand</code>.
+     *
+     * @param paths The absolute paths of the files and folders to delete
+     * @param parallelism The number of threads
+     * @param listener The listener where to return the progress (optional)
+     */
+    public BulkDeleteCommand(String[] paths, int parallelism, OnBulkDeleteListener listener) {
+        super();
+        this.mPaths = paths;
+        this.mParallelism = parallelism;
+        this.mListener = listener;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> getResult() {
+        return this.mFailed;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute()
+            throws InsufficientPermissionsException, NoSuchFileOrDirectory, ExecutionException {
+        if (isTrace()) {
+            Log.v(TAG,
+                    String.format("Deleting %d paths", //$NON-NLS-1$
+                            Integer.valueOf(this.mPaths.length)));
+        }
+
+        this.mFailed = new DeleteWalker(this.mParallelism).delete(this.mPaths, this.mListener);
+
+        if (isTrace()) {
+            Log.v(TAG, String.format("Result: OK. Not deleted: %d", //$NON-NLS-1$
+                    Integer.valueOf(this.mFailed.size())));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MountPoint getSrcWritableMountPoint() {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MountPoint getDstWritableMountPoint() {
+        if (this.mPaths.length == 0) {
+            return null;
+        }
+        return MountPointHelper.getMountPointFromDirectory(this.mPaths[0]);
+    }
+}
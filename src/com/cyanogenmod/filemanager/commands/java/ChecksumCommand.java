@@ -18,23 +18,20 @@ package com.cyanogenmod.filemanager.commands.java;
 
 import android.util.Log;
 
-import com.android.internal.util.HexDump;
 import com.cyanogenmod.filemanager.commands.AsyncResultListener;
 import com.cyanogenmod.filemanager.commands.ChecksumExecutable;
 import com.cyanogenmod.filemanager.console.ExecutionException;
 import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
 import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
+import com.cyanogenmod.filemanager.util.ChecksumCalculator;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStream;
-import java.security.MessageDigest;
-import java.util.Locale;
 
 /**
- * A class for calculate MD5 and SHA-1 checksums of a file system object.<br />
+ * A class for calculate MD5, SHA-1, SHA-256 and CRC-32 checksums of a file system
+ * object. The file is read only once.<br />
  * <br />
- * Partial results are returned in order (MD5 -> SHA1)
+ * Partial results are returned in order (MD5 -> SHA1 -> SHA256 -> CRC32)
  */
 public class ChecksumCommand extends Program implements ChecksumExecutable {
 
@@ -43,6 +40,7 @@ public class ChecksumCommand extends Program implements ChecksumExecutable {
     private final File mSrc;
     private final String[] mChecksums;
     private final AsyncResultListener mAsyncResultListener;
+    private final ChecksumCalculator mCalculator;
 
     private boolean mCancelled;
     private final Object mSync = new Object();
@@ -57,8 +55,9 @@ public class ChecksumCommand extends Program implements ChecksumExecutable {
             String src, AsyncResultListener asyncResultListener) {
         super();
         this.mAsyncResultListener = asyncResultListener;
-        this.mChecksums = new String[]{null, null};
+        this.mChecksums = new String[CHECKSUMS.values().length];
         this.mSrc = new File(src);
+        this.mCalculator = new ChecksumCalculator(Runtime.getRuntime().availableProcessors());
     }
 
     /**
@@ -89,16 +88,24 @@ public class ChecksumCommand extends Program implements ChecksumExecutable {
             throw new NoSuchFileOrDirectory(this.mSrc.getAbsolutePath());
         }
 
-        CHECKSUMS checksum = CHECKSUMS.MD5;
         try {
             if (this.mAsyncResultListener != null) {
                 this.mAsyncResultListener.onAsyncStart();
             }
 
-            // Calculate digests
-            calculateDigest(checksum);
-            checksum = CHECKSUMS.SHA1;
-            calculateDigest(checksum);
+            // Calculate all the digests at once
+            OnChecksumProgressListener progressListener = null;
+            if (this.mAsyncResultListener instanceof OnChecksumProgressListener) {
+                progressListener = (OnChecksumProgressListener)this.mAsyncResultListener;
+            }
+            String[] checksums = this.mCalculator.calculate(this.mSrc, progressListener);
+            checkCancelled();
+            for (int i = 0; i < checksums.length; i++) {
+                this.mChecksums[i] = checksums[i];
+                if (this.mAsyncResultListener != null) {
+                    this.mAsyncResultListener.onPartialResult(checksums[i]);
+                }
+            }
 
             if (this.mAsyncResultListener != null) {
                 this.mAsyncResultListener.onAsyncEnd(false);
@@ -126,8 +133,7 @@ public class ChecksumCommand extends Program implements ChecksumExecutable {
         } catch (Exception e) {
             Log.e(TAG,
                     String.format(
-                            "Fail to calculate %s checksum of file %s", //$NON-NLS-1$
-                            checksum.name(),
+                            "Fail to calculate the checksums of file %s", //$NON-NLS-1$
                             this.mSrc.getAbsolutePath()),
                     e);
             if (this.mAsyncResultListener != null) {
@@ -158,6 +164,7 @@ public class ChecksumCommand extends Program implements ChecksumExecutable {
             synchronized (this.mSync) {
                 this.mCancelled = true;
             }
+            this.mCalculator.cancel();
         } catch (Throwable _throw) {/**NON BLOCK**/}
         return true;
     }
@@ -218,46 +225,6 @@ public class ChecksumCommand extends Program implements ChecksumExecutable {
         return this.mAsyncResultListener;
     }
 
-    /**
-     * Method that calculate a digest of the file for the source file
-     *
-     * @param type The type of digest to obtain
-     * @throws InterruptedException If the operation was cancelled
-     * @throws Exception If an error occurs
-     */
-    private void calculateDigest(CHECKSUMS type) throws InterruptedException, Exception {
-
-        InputStream is = null;
-        try {
-            MessageDigest md = MessageDigest.getInstance(type.name());
-            is = new FileInputStream(this.mSrc);
-
-            // Start digesting
-            byte[] data = new byte[getBufferSize()];
-            int read = 0;
-            while ((read = is.read(data, 0, getBufferSize())) != -1) {
-                checkCancelled();
-                md.update(data, 0, read);
-            }
-            checkCancelled();
-
-            // Finally digest
-            this.mChecksums[type.ordinal()] =
-                    HexDump.toHexString(md.digest()).toLowerCase(Locale.ROOT);
-            checkCancelled();
-            if (this.mAsyncResultListener != null) {
-                this.mAsyncResultListener.onPartialResult(this.mChecksums[type.ordinal()]);
-            }
-
-        } finally {
-            try {
-                if (is != null) {
-                    is.close();
-                }
-            } catch (Exception e) {/**NON BLOCK**/}
-        }
-    }
-
     /**
      * Checks if the operation was cancelled
      *
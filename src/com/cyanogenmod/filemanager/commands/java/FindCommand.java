@@ -16,6 +16,7 @@
 
 package com.cyanogenmod.filemanager.commands.java;
 
+import android.os.CancellationSignal;
 import android.util.Log;
 
 import com.cyanogenmod.filemanager.commands.AsyncResultListener;
@@ -27,10 +28,14 @@ import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
 import com.cyanogenmod.filemanager.model.FileSystemObject;
 import com.cyanogenmod.filemanager.model.Query;
 import com.cyanogenmod.filemanager.util.FileHelper;
+import com.cyanogenmod.filemanager.util.FileNameIndex;
 import com.cyanogenmod.filemanager.util.SearchHelper;
 
 import java.io.File;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * A class for search files.
@@ -40,8 +45,11 @@ public class FindCommand extends Program implements FindExecutable {
     private static final String TAG = "FindCommand"; //$NON-NLS-1$
 
     private final String mDirectory;
+    private final Query mQuery;
     private final String[] mQueryRegExp;
     private final ConcurrentAsyncResultListener mAsyncResultListener;
+    private final FileNameIndex mIndex;
+    private final CancellationSignal mCancellationSignal;
 
     private volatile boolean mCancelled;
     private volatile boolean mEnded;
@@ -53,13 +61,17 @@ public class FindCommand extends Program implements FindExecutable {
      * @param directory The absolute directory where start the search
      * @param query The terms to be searched
      * @param asyncResultListener The partial result listener
+     * @param index The file name index. <code>null</code> to always walk the tree
      */
     public FindCommand(String directory, Query query,
-            ConcurrentAsyncResultListener asyncResultListener) {
+            ConcurrentAsyncResultListener asyncResultListener, FileNameIndex index) {
         super();
         this.mDirectory = directory;
+        this.mQuery = query;
         this.mQueryRegExp = createRegexp(directory, query);
         this.mAsyncResultListener = asyncResultListener;
+        this.mIndex = index;
+        this.mCancellationSignal = new CancellationSignal();
         if (mAsyncResultListener instanceof ConcurrentAsyncResultListener) {
             ((ConcurrentAsyncResultListener) mAsyncResultListener).onRegister();
         }
@@ -107,7 +119,11 @@ public class FindCommand extends Program implements FindExecutable {
 
         // Find the data
         if (ready) {
-            findRecursive(f);
+            if (this.mIndex != null && this.mIndex.isIndexed(this.mDirectory)) {
+                findIndexed();
+            } else {
+                findRecursive(f);
+            }
         }
 
         // record program's execution termination
@@ -131,6 +147,66 @@ public class FindCommand extends Program implements FindExecutable {
         }
     }
 
+    /**
+     * Method that search files in the file name index. The results of the index are
+     * reported immediately, and then the index is brought up to date (only the folders
+     * that changed are listed) and the new results are reported.
+     */
+    private void findIndexed() {
+        Set<String> reported = new HashSet<String>();
+        List<String> results = this.mIndex.query(this.mDirectory, this.mQuery);
+        if (!reportIndexed(results, reported)) {
+            return;
+        }
+        if (this.mIndex.refresh(this.mDirectory, this.mCancellationSignal)) {
+            results = this.mIndex.query(this.mDirectory, this.mQuery);
+            reportIndexed(results, reported);
+        }
+        if (isTrace()) {
+            Log.v(TAG, String.format("Index build rate: %.0f entries/s, " + //$NON-NLS-1$
+                    "query latency: %.1f ms", //$NON-NLS-1$
+                    this.mIndex.getBuildRate(), this.mIndex.getAverageQueryLatency()));
+        }
+    }
+
+    /**
+     * Method that reports the files found in the index that weren't reported yet.
+     *
+     * @param results The absolute paths of the files found in the index
+     * @param reported The absolute paths of the files already reported
+     * @return boolean If the search must continue
+     */
+    private boolean reportIndexed(List<String> results, Set<String> reported) {
+        for (String path : results) {
+            if (!reported.add(path)) {
+                continue;
+            }
+            // The index could be stale
+            File file = new File(path);
+            if (file.exists()) {
+                FileSystemObject fso = FileHelper.createFileSystemObject(file);
+                if (fso != null) {
+                    if (isTrace()) {
+                        Log.v(TAG, String.valueOf(fso));
+                    }
+                    if (this.mAsyncResultListener != null) {
+                        this.mAsyncResultListener.onPartialResult(fso);
+                    }
+                }
+            }
+
+            // Check if the process was cancelled
+            synchronized (this.mSync) {
+                if (this.mCancelled  || this.mEnded || (mAsyncResultListener != null
+                        && mAsyncResultListener.isCancelled())) {
+                    this.mSync.notify();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     /**
      * Method that search files recursively
      *
@@ -200,6 +276,7 @@ public class FindCommand extends Program implements FindExecutable {
                 // there won't be a corresponding lock.notify() otherwise
                 if (!mEnded) {
                     this.mCancelled = true;
+                    this.mCancellationSignal.cancel();
                     this.mSync.wait(5000L);
                 }
             }
@@ -217,6 +294,7 @@ public class FindCommand extends Program implements FindExecutable {
                 // ensure the program is running before attempting to terminate
                 if (!mEnded) {
                     this.mEnded = true;
+                    this.mCancellationSignal.cancel();
                     this.mSync.wait(5000L);
                 }
             }
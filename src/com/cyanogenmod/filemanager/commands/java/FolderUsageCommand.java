@@ -16,6 +16,7 @@
 
 package com.cyanogenmod.filemanager.commands.java;
 
+import android.content.Context;
 import android.util.Log;
 
 import com.cyanogenmod.filemanager.commands.AsyncResultListener;
@@ -24,22 +25,32 @@ import com.cyanogenmod.filemanager.console.ExecutionException;
 import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
 import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
 import com.cyanogenmod.filemanager.model.FolderUsage;
-import com.cyanogenmod.filemanager.util.FileHelper;
-import com.cyanogenmod.filemanager.util.MimeTypeHelper;
-import com.cyanogenmod.filemanager.util.MimeTypeHelper.MimeTypeCategory;
+import com.cyanogenmod.filemanager.util.FolderSizeIndex;
+import com.cyanogenmod.filemanager.util.FolderUsageWalker;
+import com.cyanogenmod.filemanager.util.FolderUsageWalker.OnWalkProgressListener;
 
 import java.io.File;
 
 /**
- * A class for retrieve the disk usage of a folder.
+ * A class for retrieve the disk usage of a folder.<br/>
+ * <br/>
+ * The folder tree is walked in parallel by a {@link FolderUsageWalker}, which only
+ * lists the folders that changed since they were stored in the {@link FolderSizeIndex}.
  */
 public class FolderUsageCommand extends Program implements FolderUsageExecutable {
 
     private static final String TAG = "FolderUsage"; //$NON-NLS-1$
 
+    // The interval between partial results (in milliseconds)
+    private static final long PARTIAL_RESULT_INTERVAL = 250L;
+
     private final String mDirectory;
     private final AsyncResultListener mAsyncResultListener;
-    private final FolderUsage mFolderUsage;
+    private final Context mCtx;
+    private final int mParallelism;
+    private final FolderSizeIndex mIndex;
+    private volatile FolderUsage mFolderUsage;
+    private FolderUsageWalker mWalker;
 
     private boolean mCancelled;
     private boolean mEnded;
@@ -50,12 +61,19 @@ public class FolderUsageCommand extends Program implements FolderUsageExecutable
      *
      * @param directory The absolute directory to compute
      * @param asyncResultListener The partial result listener
+     * @param ctx The current context
+     * @param parallelism The number of threads used to walk the folder
+     * @param index The index of folder sizes. <code>null</code> to walk the whole folder
      */
     public FolderUsageCommand(
-            String directory, AsyncResultListener asyncResultListener) {
+            String directory, AsyncResultListener asyncResultListener,
+            Context ctx, int parallelism, FolderSizeIndex index) {
         super();
         this.mDirectory = directory;
         this.mAsyncResultListener = asyncResultListener;
+        this.mCtx = ctx;
+        this.mParallelism = parallelism;
+        this.mIndex = index;
         this.mFolderUsage = new FolderUsage(directory);
         this.mCancelled = false;
         this.mEnded = false;
@@ -111,8 +129,22 @@ public class FolderUsageCommand extends Program implements FolderUsageExecutable
             }
         }
 
-        // Compute data recursively
-        computeRecursive(f);
+        // Compute data in parallel
+        final FolderUsageWalker walker =
+                new FolderUsageWalker(this.mCtx, this.mParallelism, false, this.mIndex);
+        synchronized (this.mSync) {
+            this.mWalker = walker;
+            if (this.mCancelled || this.mEnded) {
+                walker.cancel();
+            }
+        }
+        walker.walk(f, PARTIAL_RESULT_INTERVAL, new OnWalkProgressListener() {
+            @Override
+            public void onWalkProgress(FolderUsageWalker w) {
+                publish(w);
+            }
+        });
+        publish(walker);
 
         synchronized (this.mSync) {
             this.mEnded = true;
@@ -132,58 +164,16 @@ public class FolderUsageCommand extends Program implements FolderUsageExecutable
     }
 
     /**
-     * Method that computes the folder usage recursively
+     * Method that publishes the counters accumulated by the walker as a partial result.
      *
-     * @param folder The folder where to start the computation
+     * @param walker The walker
      */
-    private void computeRecursive(File folder) {
-        // Obtains the files and folders of the folders
-        try {
-            File[] files = folder.listFiles();
-            int c = 0;
-            if (files != null) {
-                int cc = files.length;
-                for (int i = 0; i < cc; i++) {
-                    if (files[i].isDirectory()) {
-                        this.mFolderUsage.addFolder();
-                        computeRecursive(files[i]);
-                    } else {
-                        this.mFolderUsage.addFile();
-                        // Compute statistics and size
-                        File file = files[i];
-                        String ext = FileHelper.getExtension(file.getName());
-                        MimeTypeCategory category =
-                                MimeTypeHelper.getCategoryFromExt(null,
-                                                                  ext,
-                                                                  file.getAbsolutePath());
-                        this.mFolderUsage.addFileToCategory(category);
-                        this.mFolderUsage.addSize(files[i].length());
-                    }
+    private void publish(FolderUsageWalker walker) {
+        this.mFolderUsage = walker.createFolderUsage(this.mDirectory);
 
-                    // Partial notification
-                    if (c % 5 == 0) {
-                        //If a listener is defined, then send the partial result
-                        if (getAsyncResultListener() != null) {
-                            getAsyncResultListener().onPartialResult(this.mFolderUsage);
-                        }
-                    }
-
-                    // Check if the process was cancelled
-                    try {
-                        synchronized (this.mSync) {
-                            if (this.mCancelled  || this.mEnded) {
-                                this.mSync.notify();
-                                break;
-                            }
-                        }
-                    } catch (Exception e) {/**NON BLOCK**/}
-                }
-            }
-        } finally {
-            //If a listener is defined, then send the partial result
-            if (getAsyncResultListener() != null) {
-                getAsyncResultListener().onPartialResult(this.mFolderUsage);
-            }
+        //If a listener is defined, then send the partial result
+        if (getAsyncResultListener() != null) {
+            getAsyncResultListener().onPartialResult(this.mFolderUsage);
         }
     }
 
@@ -209,6 +199,9 @@ public class FolderUsageCommand extends Program implements FolderUsageExecutable
                     return true;
                 }
                 this.mCancelled = true;
+                if (this.mWalker != null) {
+                    this.mWalker.cancel();
+                }
                 this.mSync.wait(5000L);
             }
         } catch (Exception e) {/**NON BLOCK**/}
@@ -223,6 +216,9 @@ public class FolderUsageCommand extends Program implements FolderUsageExecutable
         try {
             synchronized (this.mSync) {
                 this.mEnded = true;
+                if (this.mWalker != null) {
+                    this.mWalker.cancel();
+                }
                 this.mSync.wait(5000L);
             }
         } catch (Exception e) {/**NON BLOCK**/}
@@ -16,8 +16,12 @@
 
 package com.cyanogenmod.filemanager.commands.java;
 
+import android.content.Context;
+
 import com.cyanogenmod.filemanager.R;
 import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.commands.BulkDeleteExecutable;
+import com.cyanogenmod.filemanager.commands.BulkDeleteExecutable.OnBulkDeleteListener;
 import com.cyanogenmod.filemanager.commands.ChangeOwnerExecutable;
 import com.cyanogenmod.filemanager.commands.ChangePermissionsExecutable;
 import com.cyanogenmod.filemanager.commands.ChecksumExecutable;
@@ -59,6 +63,10 @@ import com.cyanogenmod.filemanager.model.Permissions;
 import com.cyanogenmod.filemanager.model.Query;
 import com.cyanogenmod.filemanager.model.User;
 import com.cyanogenmod.filemanager.preferences.CompressionMode;
+import com.cyanogenmod.filemanager.util.DeleteWalker;
+import com.cyanogenmod.filemanager.util.FileNameIndex;
+import com.cyanogenmod.filemanager.util.FolderSizeIndex;
+import com.cyanogenmod.filemanager.util.FolderUsageWalker;
 
 /**
  * A class for create shell {@link "Executable"} objects.
@@ -140,6 +148,16 @@ public class JavaExecutableCreator implements ExecutableCreator {
         return new DeleteFileCommand(file);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BulkDeleteExecutable createBulkDeleteExecutable(
+            String[] paths, OnBulkDeleteListener listener) throws CommandNotFoundException {
+        return new BulkDeleteCommand(
+                paths, DeleteWalker.getDefaultParallelism(this.mConsole.getCtx()), listener);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -183,7 +201,8 @@ public class JavaExecutableCreator implements ExecutableCreator {
     public FindExecutable createFindExecutable(
             String directory, Query query, ConcurrentAsyncResultListener asyncResultListener)
             throws CommandNotFoundException {
-        return new FindCommand(directory, query, asyncResultListener);
+        return new FindCommand(directory, query, asyncResultListener,
+                FileNameIndex.getInstance(this.mConsole.getCtx()));
     }
 
     /**
@@ -193,7 +212,9 @@ public class JavaExecutableCreator implements ExecutableCreator {
     public FolderUsageExecutable createFolderUsageExecutable(
             String directory, AsyncResultListener asyncResultListener)
             throws CommandNotFoundException {
-        return new FolderUsageCommand(directory, asyncResultListener);
+        Context ctx = this.mConsole.getCtx();
+        return new FolderUsageCommand(directory, asyncResultListener, ctx,
+                FolderUsageWalker.getDefaultParallelism(ctx), FolderSizeIndex.getInstance(ctx));
     }
 
     /**
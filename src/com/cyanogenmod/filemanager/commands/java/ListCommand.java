@@ -24,6 +24,7 @@ import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
 import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
 import com.cyanogenmod.filemanager.model.FileSystemObject;
 import com.cyanogenmod.filemanager.model.ParentDirectory;
+import com.cyanogenmod.filemanager.util.DirectoryListHelper;
 import com.cyanogenmod.filemanager.util.FileHelper;
 
 import java.io.File;
@@ -40,7 +41,8 @@ public class ListCommand extends Program implements ListExecutable {
 
     private final String mSrc;
     private final LIST_MODE mMode;
-    private final List<FileSystemObject> mFiles;
+    private List<FileSystemObject> mFiles;
+    private OnPartialListListener mOnPartialListListener;
 
     /**
      * Constructor of <code>ListCommand</code>. List mode.
@@ -55,6 +57,14 @@ public class ListCommand extends Program implements ListExecutable {
         this.mFiles = new ArrayList<FileSystemObject>();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setOnPartialListListener(OnPartialListListener listener) {
+        this.mOnPartialListListener = listener;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -93,17 +103,15 @@ public class ListCommand extends Program implements ListExecutable {
             throw new NoSuchFileOrDirectory(this.mSrc);
         }
         if (this.mMode.compareTo(LIST_MODE.DIRECTORY) == 0) {
-            File[] files = f.listFiles();
+            List<FileSystemObject> files = DirectoryListHelper.listDirectory(
+                    f, DirectoryListHelper.DEFAULT_CHUNK_SIZE, this.mOnPartialListListener);
             if (files != null) {
-                for (int i = 0; i < files.length; i++) {
-                    FileSystemObject fso = FileHelper.createFileSystemObject(files[i]);
-                    if (fso != null) {
-                        if (isTrace()) {
-                            Log.v(TAG, String.valueOf(fso));
-                        }
-                        this.mFiles.add(fso);
+                if (isTrace()) {
+                    for (FileSystemObject fso : files) {
+                        Log.v(TAG, String.valueOf(fso));
                     }
                 }
+                this.mFiles = files;
             }
 
             //Now if not is the root directory
@@ -18,25 +18,24 @@ package com.cyanogenmod.filemanager.commands.secure;
 
 import android.util.Log;
 
-import com.android.internal.util.HexDump;
 import com.cyanogenmod.filemanager.commands.AsyncResultListener;
 import com.cyanogenmod.filemanager.commands.ChecksumExecutable;
 import com.cyanogenmod.filemanager.console.ExecutionException;
 import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
 import com.cyanogenmod.filemanager.console.secure.SecureConsole;
+import com.cyanogenmod.filemanager.util.ChecksumCalculator;
 
 import de.schlichtherle.truezip.file.TFile;
 import de.schlichtherle.truezip.file.TFileInputStream;
 
 import java.io.File;
 import java.io.InputStream;
-import java.security.MessageDigest;
-import java.util.Locale;
 
 /**
- * A class for calculate MD5 and SHA-1 checksums of a file system object.<br />
+ * A class for calculate MD5, SHA-1, SHA-256 and CRC-32 checksums of a file system
+ * object. The file is read only once.<br />
  * <br />
- * Partial results are returned in order (MD5 -> SHA1)
+ * Partial results are returned in order (MD5 -> SHA1 -> SHA256 -> CRC32)
  */
 public class ChecksumCommand extends Program implements ChecksumExecutable {
 
@@ -45,6 +44,7 @@ public class ChecksumCommand extends Program implements ChecksumExecutable {
     private final File mSrc;
     private final String[] mChecksums;
     private final AsyncResultListener mAsyncResultListener;
+    private final ChecksumCalculator mCalculator;
 
     private boolean mCancelled;
     private final Object mSync = new Object();
@@ -60,8 +60,9 @@ public class ChecksumCommand extends Program implements ChecksumExecutable {
             AsyncResultListener asyncResultListener) {
         super(console);
         this.mAsyncResultListener = asyncResultListener;
-        this.mChecksums = new String[]{null, null};
+        this.mChecksums = new String[CHECKSUMS.values().length];
         this.mSrc = new File(src);
+        this.mCalculator = new ChecksumCalculator(Runtime.getRuntime().availableProcessors());
     }
 
     /**
@@ -92,16 +93,13 @@ public class ChecksumCommand extends Program implements ChecksumExecutable {
             throw new NoSuchFileOrDirectory(this.mSrc.getAbsolutePath());
         }
 
-        CHECKSUMS checksum = CHECKSUMS.MD5;
         try {
             if (this.mAsyncResultListener != null) {
                 this.mAsyncResultListener.onAsyncStart();
             }
 
-            // Calculate digests
-            calculateDigest(checksum, f);
-            checksum = CHECKSUMS.SHA1;
-            calculateDigest(checksum, f);
+            // Calculate all the digests at once
+            calculateDigests(f);
 
             if (this.mAsyncResultListener != null) {
                 this.mAsyncResultListener.onAsyncEnd(false);
@@ -129,8 +127,7 @@ public class ChecksumCommand extends Program implements ChecksumExecutable {
         } catch (Exception e) {
             Log.e(TAG,
                     String.format(
-                            "Fail to calculate %s checksum of file %s", //$NON-NLS-1$
-                            checksum.name(),
+                            "Fail to calculate the checksums of file %s", //$NON-NLS-1$
                             this.mSrc.getAbsolutePath()),
                     e);
             if (this.mAsyncResultListener != null) {
@@ -161,6 +158,7 @@ public class ChecksumCommand extends Program implements ChecksumExecutable {
             synchronized (this.mSync) {
                 this.mCancelled = true;
             }
+            this.mCalculator.cancel();
         } catch (Throwable _throw) {/**NON BLOCK**/}
         return true;
     }
@@ -222,36 +220,28 @@ public class ChecksumCommand extends Program implements ChecksumExecutable {
     }
 
     /**
-     * Method that calculate a digest of the file for the source file
+     * Method that calculate the digests of the source file
      *
-     * @param type The type of digest to obtain
-     * @pa
+     * @param file The real file
      * @throws InterruptedException If the operation was cancelled
      * @throws Exception If an error occurs
      */
-    private void calculateDigest(CHECKSUMS type, TFile file)
-            throws InterruptedException, Exception {
-
+    private void calculateDigests(TFile file) throws InterruptedException, Exception {
         InputStream is = null;
         try {
-            MessageDigest md = MessageDigest.getInstance(type.name());
             is = new TFileInputStream(file);
-
-            // Start digesting
-            byte[] data = new byte[getBufferSize()];
-            int read = 0;
-            while ((read = is.read(data, 0, getBufferSize())) != -1) {
-                checkCancelled();
-                md.update(data, 0, read);
+            OnChecksumProgressListener progressListener = null;
+            if (this.mAsyncResultListener instanceof OnChecksumProgressListener) {
+                progressListener = (OnChecksumProgressListener)this.mAsyncResultListener;
             }
+            String[] checksums =
+                    this.mCalculator.calculate(is, this.mSrc, file.length(), progressListener);
             checkCancelled();
-
-            // Finally digest
-            this.mChecksums[type.ordinal()] =
-                    HexDump.toHexString(md.digest()).toLowerCase(Locale.ROOT);
-            checkCancelled();
-            if (this.mAsyncResultListener != null) {
-                this.mAsyncResultListener.onPartialResult(this.mChecksums[type.ordinal()]);
+            for (int i = 0; i < checksums.length; i++) {
+                this.mChecksums[i] = checksums[i];
+                if (this.mAsyncResultListener != null) {
+                    this.mAsyncResultListener.onPartialResult(checksums[i]);
+                }
             }
 
         } finally {
@@ -69,6 +69,14 @@ public class ListCommand extends Program implements ListExecutable {
         return true;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setOnPartialListListener(OnPartialListListener listener) {
+        // The listing is parsed when the command ends. Chunks are not supported
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -17,6 +17,8 @@
 package com.cyanogenmod.filemanager.commands.secure;
 
 import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.commands.BulkDeleteExecutable;
+import com.cyanogenmod.filemanager.commands.BulkDeleteExecutable.OnBulkDeleteListener;
 import com.cyanogenmod.filemanager.commands.ChangeOwnerExecutable;
 import com.cyanogenmod.filemanager.commands.ChangePermissionsExecutable;
 import com.cyanogenmod.filemanager.commands.ChecksumExecutable;
@@ -139,6 +141,15 @@ public class SecureExecutableCreator implements ExecutableCreator {
         return new DeleteFileCommand(mConsole, file);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BulkDeleteExecutable createBulkDeleteExecutable(
+            String[] paths, OnBulkDeleteListener listener) throws CommandNotFoundException {
+        throw new CommandNotFoundException("Not implemented");
+    }
+
     /**
      * {@inheritDoc}
      */
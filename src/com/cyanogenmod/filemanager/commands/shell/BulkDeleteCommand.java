@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.shell;
+
+import com.cyanogenmod.filemanager.commands.BulkDeleteExecutable;
+import com.cyanogenmod.filemanager.console.CommandNotFoundException;
+import com.cyanogenmod.filemanager.console.ExecutionException;
+import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
+import com.cyanogenmod.filemanager.model.MountPoint;
+import com.cyanogenmod.filemanager.util.MountPointHelper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * A class for delete several files and folders (recursively) with a single
+ * <code>rm</code> invocation. The paths that still exist after the deletion
+ * are printed by the command, and returned as the paths that couldn't be deleted.
+ *
+ * {@link "http://unixhelp.ed.ac.uk/CGI/man-cgi?rm"}
+ */
+public class BulkDeleteCommand extends SyncResultProgram implements BulkDeleteExecutable {
+
+    private static final String ID = "rmbulk";  //$NON-NLS-1$
+
+    private final String[] mPaths;
+    private final OnBulkDeleteListener mListener;
+    private final List<String> mFailed;
+
+    /**
+     * Constructor of <code>BulkDeleteCommand</code>.
+     *
+     * @param paths The absolute paths of the files and folders to delete
+     * @param listener The listener where to return the progress (optional)
+     * @throws InvalidCommandDefinitionException If the command has an invalid definition
+     */
+    public BulkDeleteCommand(String[] paths, OnBulkDeleteListener listener)
+            throws InvalidCommandDefinitionException {
+        super(ID);
+        this.mPaths = paths;
+        this.mListener = listener;
+        this.mFailed = new ArrayList<String>();
+
+        // The paths are expanded twice: for delete them and for check them after
+        addExpandedArguments(paths, true);
+        addExpandedArguments(paths, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void parse(String in, String err) throws ParseException {
+        //Release the array
+        this.mFailed.clear();
+
+        // The paths that still exist
+        Set<String> existing = new HashSet<String>();
+        BufferedReader br = null;
+        try {
+            br = new BufferedReader(new StringReader(in));
+            String szLine = null;
+            while ((szLine = br.readLine()) != null) {
+                if (szLine.length() > 0) {
+                    existing.add(szLine);
+                }
+            }
+        } catch (IOException ioEx) {
+            throw new ParseException(ioEx.getMessage(), 0);
+
+        } finally {
+            try {
+                if (br != null) {
+                    br.close();
+                }
+            } catch (Throwable ex) {
+                /**NON BLOCK**/
+            }
+        }
+
+        for (String path : this.mPaths) {
+            boolean deleted = !existing.contains(path);
+            if (!deleted) {
+                this.mFailed.add(path);
+            }
+            if (this.mListener != null) {
+                this.mListener.onDeleteProgress(path, deleted);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> getResult() {
+        return this.mFailed;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void checkExitCode(int exitCode)
+            throws InsufficientPermissionsException, CommandNotFoundException, ExecutionException {
+        if (exitCode != 0) {
+            throw new ExecutionException("exitcode != 0"); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MountPoint getSrcWritableMountPoint() {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MountPoint getDstWritableMountPoint() {
+        if (this.mPaths.length == 0) {
+            return null;
+        }
+        return MountPointHelper.getMountPointFromDirectory(this.mPaths[0]);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isIndefinitelyWait() {
+        return true;
+    }
+}
@@ -28,7 +28,10 @@ import java.io.File;
 /**
  * A class for calculate MD5 and SHA-1 checksums of a file system object.<br />
  * <br />
- * Partial results are returned in order (MD5 -> SHA1)
+ * Partial results are returned in order (MD5 -> SHA1). The rest of checksums
+ * are not calculated, and the file is read once per checksum, because the shell
+ * has no tools for the rest of checksums nor for digesting a stream several times.
+ * So this command is only used when the application can't read the file.
  *
  * {@link "http://unixhelp.ed.ac.uk/CGI/man-cgi?md5sum"}
  * {@link "http://unixhelp.ed.ac.uk/CGI/man-cgi?sha1sum"}
@@ -53,7 +56,7 @@ public class ChecksumCommand extends AsyncResultProgram implements ChecksumExecu
     public ChecksumCommand(String src, AsyncResultListener asyncResultListener)
             throws InvalidCommandDefinitionException {
         super(ID, asyncResultListener, src);
-        this.mChecksums = new String[]{null, null};
+        this.mChecksums = new String[CHECKSUMS.values().length];
         this.mName = new File(src).getName();
     }
 
@@ -62,8 +65,9 @@ public class ChecksumCommand extends AsyncResultProgram implements ChecksumExecu
      */
     @Override
     public void onStartParsePartialResult() {
-        this.mChecksums[0] = null;
-        this.mChecksums[1] = null;
+        for (int i = 0; i < this.mChecksums.length; i++) {
+            this.mChecksums[i] = null;
+        }
         this.mChecksumsCounter = 0;
         this.mPartial = ""; //$NON-NLS-1$
     }
@@ -173,7 +177,7 @@ public class ChecksumCommand extends AsyncResultProgram implements ChecksumExecu
         int pos = line.indexOf(" "); //$NON-NLS-1$
         if (line.endsWith(this.mName) && pos != -1) {
             String digest = line.substring(0, pos).trim();
-            if (this.mChecksumsCounter < this.mChecksums.length) {
+            if (this.mChecksumsCounter <= CHECKSUMS.SHA1.ordinal()) {
                 this.mChecksums[this.mChecksumsCounter] = digest;
             }
             this.mChecksumsCounter++;
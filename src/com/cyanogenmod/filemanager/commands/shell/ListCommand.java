@@ -39,7 +39,8 @@ import java.util.List;
 
 
 /**
- * A class for list information about files and directories.
+ * A class for list information about files and directories. The directories are listed
+ * with a bulk stat invocation (see {@link ParseHelper#parseBulkStatOutput(byte[])}).
  *
  * {@link "http://unixhelp.ed.ac.uk/CGI/man-cgi?stat"}
  */
@@ -152,11 +153,7 @@ public class ListCommand extends SyncResultProgram implements ListExecutable {
             }
 
             // Add the parent directory
-            if (this.mParentDir != null &&
-                    this.mParentDir.compareTo(FileHelper.ROOT_DIRECTORY) != 0 &&
-                    this.mMode.compareTo(LIST_MODE.DIRECTORY) == 0) {
-                this.mFiles.add(0, new ParentDirectory(new File(this.mParentDir).getParent()));
-            }
+            addParentDirectory();
 
         } catch (IOException ioEx) {
             throw new ParseException(ioEx.getMessage(), 0);
@@ -175,6 +172,54 @@ public class ListCommand extends SyncResultProgram implements ListExecutable {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isParseRawOutput() {
+        // The directory listings are parsed at byte level
+        return this.mMode.compareTo(LIST_MODE.DIRECTORY) == 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void parse(byte[] in, String err) throws ParseException {
+        if (!isParseRawOutput()) {
+            super.parse(in, err);
+            return;
+        }
+
+        //Release the array
+        this.mFiles.clear();
+
+        // Parse the bulk stat listing
+        this.mFiles.addAll(ParseHelper.parseBulkStatOutput(in));
+
+        // Add the parent directory
+        addParentDirectory();
+    }
+
+    /**
+     * Method that adds the parent directory to the listing of a directory.
+     */
+    private void addParentDirectory() {
+        if (this.mParentDir != null &&
+                this.mParentDir.compareTo(FileHelper.ROOT_DIRECTORY) != 0 &&
+                this.mMode.compareTo(LIST_MODE.DIRECTORY) == 0) {
+            this.mFiles.add(0, new ParentDirectory(new File(this.mParentDir).getParent()));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setOnPartialListListener(OnPartialListListener listener) {
+        // The listing is parsed when the command ends. Chunks are not supported
+    }
+
     /**
      * {@inheritDoc}
      */
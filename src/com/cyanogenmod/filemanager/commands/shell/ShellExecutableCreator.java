@@ -17,6 +17,8 @@
 package com.cyanogenmod.filemanager.commands.shell;
 
 import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.commands.BulkDeleteExecutable;
+import com.cyanogenmod.filemanager.commands.BulkDeleteExecutable.OnBulkDeleteListener;
 import com.cyanogenmod.filemanager.commands.ChangeOwnerExecutable;
 import com.cyanogenmod.filemanager.commands.ChangePermissionsExecutable;
 import com.cyanogenmod.filemanager.commands.ChecksumExecutable;
@@ -168,6 +170,19 @@ public class ShellExecutableCreator implements ExecutableCreator {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BulkDeleteExecutable createBulkDeleteExecutable(
+            String[] paths, OnBulkDeleteListener listener) throws CommandNotFoundException {
+        try {
+            return new BulkDeleteCommand(paths, listener);
+        } catch (InvalidCommandDefinitionException icdEx) {
+            throw new CommandNotFoundException("BulkDeleteCommand", icdEx); //$NON-NLS-1$
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
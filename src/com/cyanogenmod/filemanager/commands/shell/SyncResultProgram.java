@@ -16,6 +16,7 @@
 
 package com.cyanogenmod.filemanager.commands.shell;
 
+import java.text.ParseException;
 
 /**
  * An abstract class that allow the consumption of the data when it's totally recovery.
@@ -48,4 +49,26 @@ public abstract class SyncResultProgram extends Program implements SyncResultPro
         super(id, prepare, args);
     }
 
+    /**
+     * Method that returns if the program parses the raw bytes of the standard output,
+     * instead of the decoded text.
+     *
+     * @return boolean If {@link #parse(byte[], String)} must be used to parse the result
+     */
+    @SuppressWarnings("static-method")
+    public boolean isParseRawOutput() {
+        return false;
+    }
+
+    /**
+     * Method that parse the raw result of a shell program invocation. By default, the
+     * standard output is decoded and parsed with {@link #parse(String, String)}.
+     *
+     * @param in The raw standard input buffer
+     * @param err The standard error buffer
+     * @throws ParseException If the output is not well-formed
+     */
+    public void parse(byte[] in, String err) throws ParseException {
+        parse(new String(in), err);
+    }
 }
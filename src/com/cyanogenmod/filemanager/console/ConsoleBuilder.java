@@ -17,6 +17,7 @@
 package com.cyanogenmod.filemanager.console;
 
 import android.content.Context;
+import android.content.res.Resources;
 import android.util.Log;
 import android.widget.Toast;
 
@@ -26,6 +27,7 @@ import com.cyanogenmod.filemanager.commands.shell.InvalidCommandDefinitionExcept
 import com.cyanogenmod.filemanager.console.java.JavaConsole;
 import com.cyanogenmod.filemanager.console.shell.NonPriviledgeConsole;
 import com.cyanogenmod.filemanager.console.shell.PrivilegedConsole;
+import com.cyanogenmod.filemanager.console.shell.ShellConsole;
 import com.cyanogenmod.filemanager.preferences.AccessMode;
 import com.cyanogenmod.filemanager.preferences.FileManagerSettings;
 import com.cyanogenmod.filemanager.preferences.Preferences;
@@ -117,7 +119,7 @@ public final class ConsoleBuilder {
         ConsoleHolder holder = null;
         try {
             //Create the console, destroy the current console, and marks as current
-            holder = new ConsoleHolder(
+            holder = createConsoleHolder(context,
                     createNonPrivilegedConsole(context));
             destroyConsole();
             sHolder = holder;
@@ -149,7 +151,7 @@ public final class ConsoleBuilder {
         ConsoleHolder holder = null;
         try {
             //Create the console, destroy the current console, and marks as current
-            holder = new ConsoleHolder(
+            holder = createConsoleHolder(context,
                     createAndCheckPrivilegedConsole(context));
             destroyConsole();
             sHolder = holder;
@@ -248,8 +250,8 @@ public final class ConsoleBuilder {
             //Is there a console allocated
             if (sHolder == null) {
                 sHolder = (superuserMode)
-                        ? new ConsoleHolder(createAndCheckPrivilegedConsole(context))
-                        : new ConsoleHolder(createNonPrivilegedConsole(context));
+                        ? createConsoleHolder(context, createAndCheckPrivilegedConsole(context))
+                        : createConsoleHolder(context, createNonPrivilegedConsole(context));
                 if (superuserMode) {
                     // Change also the background console to privileged
                     FileManagerApplication.changeBackgroundConsoleToPriviligedConsole();
@@ -259,6 +261,40 @@ public final class ConsoleBuilder {
         }
     }
 
+    /**
+     * Method that returns the pool of sessions of a console, if the console is
+     * the current console and it has a pool.
+     *
+     * @param console The console
+     * @return ConsolePool The pool of sessions of the console, or null
+     */
+    public static ConsolePool getConsolePool(Console console) {
+        ConsoleHolder holder = sHolder;
+        if (console != null && holder != null && holder.getConsole() == console) {
+            return holder.getPool();
+        }
+        return null;
+    }
+
+    /**
+     * Method that creates the holder of a console. Shell consoles are holden with
+     * a pool of sessions.
+     *
+     * @param context The current context
+     * @param console The allocated console
+     * @return ConsoleHolder The holder of the console
+     */
+    private static ConsoleHolder createConsoleHolder(Context context, Console console) {
+        if (console instanceof ShellConsole) {
+            Resources res = context.getResources();
+            ConsolePool pool = new ConsolePool(context, (ShellConsole)console,
+                    res.getInteger(R.integer.console_pool_sync_sessions),
+                    res.getInteger(R.integer.console_pool_async_sessions));
+            return new ConsoleHolder(console, pool);
+        }
+        return new ConsoleHolder(console);
+    }
+
     /**
      * Method that destroy the current console.
      */
@@ -22,6 +22,7 @@ package com.cyanogenmod.filemanager.console;
 public class ConsoleHolder {
 
     private final Console mConsole;
+    private final ConsolePool mPool;
     private boolean mDispose;
 
     /**
@@ -30,8 +31,20 @@ public class ConsoleHolder {
      * @param console An allocated console to be holden
      */
     public ConsoleHolder(Console console) {
+        this(console, null);
+    }
+
+    /**
+     * Constructor of <code>ConsoleHolder</code>.
+     *
+     * @param console An allocated console to be holden
+     * @param pool The pool of sessions of the console. <code>null</code> if the
+     * console hasn't a pool
+     */
+    public ConsoleHolder(Console console, ConsolePool pool) {
         super();
         this.mConsole = console;
+        this.mPool = pool;
     }
 
     /**
@@ -52,6 +65,15 @@ public class ConsoleHolder {
         return this.mConsole;
     }
 
+    /**
+     * Method that returns the pool of sessions of the console.
+     *
+     * @return ConsolePool The pool of sessions, or null if the console hasn't a pool
+     */
+    public ConsolePool getPool() {
+        return this.mPool;
+    }
+
     /**
      * Method that returns if the console is disposed.
      *
@@ -65,6 +87,13 @@ public class ConsoleHolder {
      * Method that dispose the console.
      */
     public void dispose() {
+        try {
+            if (this.mPool != null) {
+                this.mPool.dispose();
+            }
+        } catch (Exception e) {
+            /**NON BLOCK**/
+        }
         try {
             if (this.mConsole != null) {
                 this.mConsole.dealloc();
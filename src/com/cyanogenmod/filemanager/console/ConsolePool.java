@@ -0,0 +1,448 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.console;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.commands.AsyncResultExecutable;
+import com.cyanogenmod.filemanager.commands.Executable;
+import com.cyanogenmod.filemanager.console.shell.PrivilegedConsole;
+import com.cyanogenmod.filemanager.console.shell.ShellConsole;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A pool of shell console sessions of the same type (privileged or non-privileged)
+ * that allows independent commands to run concurrently.<br/>
+ * <br/>
+ * Synchronous commands are sent to a free session of the synchronous lane (the
+ * primary console is always the first session of this lane). Asynchronous programs
+ * (long jobs like find or folder usage) are sent to dedicated lanes, so they never
+ * block a simple listing. New sessions are allocated in background, on demand, up to
+ * the configured size of every lane.<br/>
+ * <br/>
+ * A session is reserved by the pool (under its lock) when it is selected, and released
+ * when the program returns, so concurrent callers never select the same free session.
+ */
+public class ConsolePool {
+
+    private static final String TAG = "ConsolePool"; //$NON-NLS-1$
+
+    /**
+     * A class that holds the utilization metrics of a session of the pool.
+     */
+    public static class SessionInfo {
+        private final int mId;
+        private final boolean mAsyncLane;
+        private final int mPendingExecutions;
+        private final long mExecutionCount;
+        private final long mBusyTime;
+        private final long mUpTime;
+
+        /**
+         * Constructor of <code>SessionInfo</code>.
+         *
+         * @param id The identifier of the session in the pool
+         * @param asyncLane If the session belongs to an asynchronous lane
+         * @param console The console of the session
+         */
+        SessionInfo(int id, boolean asyncLane, ShellConsole console) {
+            super();
+            this.mId = id;
+            this.mAsyncLane = asyncLane;
+            this.mPendingExecutions = console.getPendingExecutions();
+            this.mExecutionCount = console.getExecutionCount();
+            this.mBusyTime = console.getBusyTime();
+            this.mUpTime = console.getUpTime();
+        }
+
+        /**
+         * Method that returns the identifier of the session in the pool.
+         *
+         * @return int The identifier of the session
+         */
+        public int getId() {
+            return this.mId;
+        }
+
+        /**
+         * Method that returns if the session belongs to an asynchronous lane.
+         *
+         * @return boolean If the session belongs to an asynchronous lane
+         */
+        public boolean isAsyncLane() {
+            return this.mAsyncLane;
+        }
+
+        /**
+         * Method that returns the number of executions pending in the session.
+         *
+         * @return int The number of pending executions
+         */
+        public int getPendingExecutions() {
+            return this.mPendingExecutions;
+        }
+
+        /**
+         * Method that returns the number of programs executed by the session.
+         *
+         * @return long The number of programs executed
+         */
+        public long getExecutionCount() {
+            return this.mExecutionCount;
+        }
+
+        /**
+         * Method that returns the time (in milliseconds) that the session was busy.
+         *
+         * @return long The busy time
+         */
+        public long getBusyTime() {
+            return this.mBusyTime;
+        }
+
+        /**
+         * Method that returns the utilization of the session (busy time / up time).
+         *
+         * @return float The utilization of the session, between 0 and 1
+         */
+        public float getUtilization() {
+            if (this.mUpTime <= 0) {
+                return 0f;
+            }
+            return Math.min(1f, (float)this.mBusyTime / this.mUpTime);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return "SessionInfo [id=" + this.mId + ", asyncLane=" + this.mAsyncLane //$NON-NLS-1$ //$NON-NLS-2$
+                    + ", pending=" + this.mPendingExecutions //$NON-NLS-1$
+                    + ", executions=" + this.mExecutionCount //$NON-NLS-1$
+                    + ", busyTime=" + this.mBusyTime //$NON-NLS-1$
+                    + ", utilization=" + getUtilization() + "]"; //$NON-NLS-1$ //$NON-NLS-2$
+        }
+    }
+
+    private final Context mContext;
+    private final ShellConsole mPrimary;
+    private final boolean mPrivileged;
+    private final int mMaxSyncSessions;
+    private final int mMaxAsyncSessions;
+
+    private final List<ShellConsole> mSyncSessions;
+    private final List<ShellConsole> mAsyncSessions;
+    private final Map<ShellConsole, Integer> mReservations;
+    private boolean mGrowing;
+    private boolean mDisposed;
+
+    /**
+     * Constructor of <code>ConsolePool</code>.
+     *
+     * @param context The current context
+     * @param primary The primary console (the first session of the synchronous lane)
+     * @param syncSessions The maximum number of sessions of the synchronous lane
+     * @param asyncSessions The maximum number of sessions of the asynchronous lanes
+     */
+    public ConsolePool(
+            Context context, ShellConsole primary, int syncSessions, int asyncSessions) {
+        super();
+        this.mContext = context.getApplicationContext();
+        this.mPrimary = primary;
+        this.mPrivileged = primary instanceof PrivilegedConsole;
+        this.mMaxSyncSessions = Math.max(1, syncSessions);
+        this.mMaxAsyncSessions = Math.max(0, asyncSessions);
+        this.mSyncSessions = new ArrayList<ShellConsole>(this.mMaxSyncSessions);
+        this.mAsyncSessions = new ArrayList<ShellConsole>(this.mMaxAsyncSessions);
+        this.mReservations = new IdentityHashMap<ShellConsole, Integer>();
+        this.mSyncSessions.add(primary);
+    }
+
+    /**
+     * Method that returns the primary console of the pool.
+     *
+     * @return Console The primary console
+     */
+    public Console getPrimaryConsole() {
+        return this.mPrimary;
+    }
+
+    /**
+     * Method that executes a program in a session of the pool.
+     *
+     * @param executable The executable command to be executed
+     * @param ctx The current context
+     * @throws ConsoleAllocException If the console is not allocated
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws OperationTimeoutException If the operation exceeded the maximum time of wait
+     * @throws CommandNotFoundException If the executable program was not found
+     * @throws ExecutionException If the operation returns a invalid exit code
+     * @throws ReadOnlyFilesystemException If the operation writes in a read-only filesystem
+     * @throws CancelledOperationException If the operation was cancelled
+     * @throws AuthenticationFailedException If the operation failed because an
+     * authentication failure
+     */
+    public void execute(final Executable executable, final Context ctx)
+            throws ConsoleAllocException, InsufficientPermissionsException, NoSuchFileOrDirectory,
+            OperationTimeoutException, ExecutionException, CommandNotFoundException,
+            ReadOnlyFilesystemException, CancelledOperationException,
+            AuthenticationFailedException {
+        ShellConsole session = selectSession(executable instanceof AsyncResultExecutable);
+        try {
+            session.execute(executable, ctx);
+        } finally {
+            // Asynchronous programs are accounted by the session while they run
+            release(session);
+        }
+    }
+
+    /**
+     * Method that reserves a free session of the synchronous lane, but only if some
+     * other sessions remain free for the rest of the commands. The session must be
+     * released with {@link #release(ShellConsole)} after executing the programs.
+     *
+     * @param spare The number of sessions that must remain free
+     * @return ShellConsole The reserved session, or null if there aren't enough
+     * free sessions
+     */
+    public synchronized ShellConsole reserveFreeSession(int spare) {
+        removeDeadSessions(this.mSyncSessions);
+        ShellConsole session = null;
+        int free = 0;
+        for (ShellConsole console : this.mSyncSessions) {
+            if (getLoad(console) == 0) {
+                // Prefer the last sessions (the primary console is the first)
+                session = console;
+                free++;
+            }
+        }
+        if (session == null || free <= spare) {
+            return null;
+        }
+        reserve(session);
+        return session;
+    }
+
+    /**
+     * Method that releases a session reserved by the pool.
+     *
+     * @param session The session
+     */
+    public synchronized void release(ShellConsole session) {
+        Integer count = this.mReservations.get(session);
+        if (count == null) {
+            return;
+        }
+        if (count.intValue() <= 1) {
+            this.mReservations.remove(session);
+        } else {
+            this.mReservations.put(session, Integer.valueOf(count.intValue() - 1));
+        }
+    }
+
+    /**
+     * Method that returns the utilization metrics of every session of the pool.
+     *
+     * @return List<SessionInfo> The utilization metrics of the sessions
+     */
+    public synchronized List<SessionInfo> getSessionsInfo() {
+        List<SessionInfo> info =
+                new ArrayList<SessionInfo>(this.mSyncSessions.size() + this.mAsyncSessions.size());
+        int id = 0;
+        for (ShellConsole console : this.mSyncSessions) {
+            info.add(new SessionInfo(id++, false, console));
+        }
+        for (ShellConsole console : this.mAsyncSessions) {
+            info.add(new SessionInfo(id++, true, console));
+        }
+        return info;
+    }
+
+    /**
+     * Method that deallocates all the sessions of the pool, except the primary
+     * console, which is owned by its {@link ConsoleHolder}.
+     */
+    public synchronized void dispose() {
+        this.mDisposed = true;
+        List<ShellConsole> sessions = new ArrayList<ShellConsole>(this.mSyncSessions);
+        sessions.addAll(this.mAsyncSessions);
+        for (ShellConsole console : sessions) {
+            if (console != this.mPrimary) {
+                try {
+                    console.dealloc();
+                } catch (Throwable ex) {
+                    /**NON BLOCK**/
+                }
+            }
+        }
+        this.mSyncSessions.clear();
+        this.mAsyncSessions.clear();
+        this.mSyncSessions.add(this.mPrimary);
+    }
+
+    /**
+     * Method that selects (and reserves) the session in which execute a program. A free
+     * session is preferred; otherwise the lane is grown (in background) and the least
+     * loaded session is returned.
+     *
+     * @param async If the program is asynchronous
+     * @return ShellConsole The session in which execute the program
+     */
+    private synchronized ShellConsole selectSession(boolean async) {
+        final List<ShellConsole> lane = async ? this.mAsyncSessions : this.mSyncSessions;
+        final int max = async ? this.mMaxAsyncSessions : this.mMaxSyncSessions;
+        removeDeadSessions(lane);
+
+        ShellConsole best = leastLoaded(lane);
+        if (best == null || getLoad(best) != 0) {
+            // All the sessions of the lane are busy
+            if (lane.size() < max) {
+                grow(async);
+            }
+            if (best == null) {
+                // There isn't an asynchronous lane yet. Use the synchronous lane
+                best = leastLoaded(this.mSyncSessions);
+            }
+            if (best == null) {
+                best = this.mPrimary;
+            }
+        }
+        reserve(best);
+        return best;
+    }
+
+    /**
+     * Method that returns the least loaded session of a lane.
+     *
+     * @param lane The lane
+     * @return ShellConsole The least loaded session, or null if the lane is empty
+     */
+    private ShellConsole leastLoaded(List<ShellConsole> lane) {
+        ShellConsole best = null;
+        int bestLoad = 0;
+        for (ShellConsole console : lane) {
+            int load = getLoad(console);
+            if (best == null || load < bestLoad) {
+                best = console;
+                bestLoad = load;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Method that returns the load of a session: the programs that it's executing, or
+     * the programs for which it was reserved, if they didn't start yet.
+     *
+     * @param session The session
+     * @return int The load of the session
+     */
+    private int getLoad(ShellConsole session) {
+        Integer reservations = this.mReservations.get(session);
+        return Math.max(session.getPendingExecutions(),
+                reservations != null ? reservations.intValue() : 0);
+    }
+
+    /**
+     * Method that reserves a session for a program.
+     *
+     * @param session The session
+     */
+    private void reserve(ShellConsole session) {
+        Integer count = this.mReservations.get(session);
+        this.mReservations.put(session,
+                Integer.valueOf(count != null ? count.intValue() + 1 : 1));
+    }
+
+    /**
+     * Method that removes from a lane the sessions that are not active anymore.
+     *
+     * @param lane The lane
+     */
+    private void removeDeadSessions(List<ShellConsole> lane) {
+        for (int i = lane.size() - 1; i >= 0; i--) {
+            ShellConsole console = lane.get(i);
+            if (console != this.mPrimary && !console.isActive()) {
+                lane.remove(i);
+            }
+        }
+    }
+
+    /**
+     * Method that allocates a new session for a lane in background.
+     *
+     * @param async If the session is for the asynchronous lane
+     */
+    private void grow(final boolean async) {
+        if (this.mGrowing || this.mDisposed) {
+            return;
+        }
+        this.mGrowing = true;
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ShellConsole console = null;
+                try {
+                    console = createSession();
+                } catch (Throwable ex) {
+                    Log.w(TAG, "Failed to allocate a new console session", ex); //$NON-NLS-1$
+                }
+                synchronized (ConsolePool.this) {
+                    ConsolePool.this.mGrowing = false;
+                    if (console == null) {
+                        return;
+                    }
+                    if (ConsolePool.this.mDisposed) {
+                        console.dealloc();
+                        return;
+                    }
+                    if (async) {
+                        ConsolePool.this.mAsyncSessions.add(console);
+                    } else {
+                        ConsolePool.this.mSyncSessions.add(console);
+                    }
+                }
+            }
+        });
+        t.setName(String.format("%s", "console-pool")); //$NON-NLS-1$//$NON-NLS-2$
+        t.start();
+    }
+
+    /**
+     * Method that creates a new session of the same type of the primary console.
+     *
+     * @return ShellConsole The new session
+     * @throws Exception If the session can't be allocated
+     */
+    private ShellConsole createSession() throws Exception {
+        Console console = this.mPrivileged
+                ? ConsoleBuilder.createPrivilegedConsole(this.mContext)
+                : ConsoleBuilder.createNonPrivilegedConsole(this.mContext);
+        if (!(console instanceof ShellConsole)) {
+            console.dealloc();
+            throw new ConsoleAllocException("Not a shell console"); //$NON-NLS-1$
+        }
+        return (ShellConsole)console;
+    }
+}
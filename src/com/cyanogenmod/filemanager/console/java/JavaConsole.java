@@ -45,6 +45,7 @@ public final class JavaConsole extends VirtualConsole {
 
     private final int mBufferSize;
     private Program mActiveProgram;
+    private boolean mDeallocOnEnd;
 
     /**
      * Constructor of <code>JavaConsole</code>
@@ -58,6 +59,14 @@ public final class JavaConsole extends VirtualConsole {
     }
 
 
+    /**
+     * Method that makes the console deallocate itself when the next program ends. Used
+     * by the private consoles that only execute one program.
+     */
+    public void setDeallocOnEnd() {
+        this.mDeallocOnEnd = true;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -115,6 +124,8 @@ public final class JavaConsole extends VirtualConsole {
                         Log.v(TAG,
                                 String.format("Async execute failed program: %s", //$NON-NLS-1$
                                 program.getClass().toString()));
+                    } finally {
+                        onProgramEnd();
                     }
                 }
             };
@@ -122,7 +133,20 @@ public final class JavaConsole extends VirtualConsole {
 
         } else {
             // Synchronous execution
-            program.execute();
+            try {
+                program.execute();
+            } finally {
+                onProgramEnd();
+            }
+        }
+    }
+
+    /**
+     * Method invoked when a program ends.
+     */
+    private void onProgramEnd() {
+        if (this.mDeallocOnEnd) {
+            dealloc();
         }
     }
 
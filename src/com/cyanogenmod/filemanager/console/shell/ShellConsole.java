@@ -17,6 +17,7 @@
 package com.cyanogenmod.filemanager.console.shell;
 
 import android.content.Context;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.cyanogenmod.filemanager.FileManagerApplication;
@@ -57,6 +58,7 @@ import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * An implementation of a {@link Console} based in the execution of shell commands.<br/>
@@ -80,6 +82,12 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
 
     private static final int DEFAULT_BUFFER = 512;
 
+    // The size of the buffer used to read the standard output in stream decoder mode
+    private static final int STREAM_READ_BUFFER = 16384;
+
+    // By default, use the stream decoder to read the standard output
+    private static final boolean DEFAULT_STREAM_DECODER = true;
+
     //Shell References
     private final Shell mShell;
     private Identity mIdentity;
@@ -126,6 +134,18 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
     private final SecureRandom mRandom;
 
     private ControlPatternInfo mControlPattern = new ControlPatternInfo();
+    private final ShellStreamDecoder mDecoder = new ShellStreamDecoder();
+    private final StreamFrameHandler mFrameHandler = new StreamFrameHandler();
+    private volatile boolean mStreamDecoder = DEFAULT_STREAM_DECODER;
+    // The mode of the current allocation, shared by the reader thread and the exit code
+    private volatile boolean mAllocStreamDecoder = DEFAULT_STREAM_DECODER;
+
+    //Utilization statistics
+    private final AtomicInteger mPendingExecutions = new AtomicInteger();
+    private final long mCreationTime = SystemClock.elapsedRealtime();
+    private volatile long mBusyTime;
+    private volatile long mExecutionCount;
+
     private static class ControlPatternInfo {
         String mStartId1, mStartId2;
         String mEndId1, mEndId2;
@@ -302,6 +322,64 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
         this.mBufferSize = bufferSize;
     }
 
+    /**
+     * Method that returns if the standard output is read in stream decoder mode
+     * (bulk reads with an incremental control pattern matcher) instead of byte by byte.
+     *
+     * @return boolean If the stream decoder mode is used
+     */
+    public boolean isStreamDecoder() {
+        return this.mStreamDecoder;
+    }
+
+    /**
+     * Method that sets if the standard output is read in stream decoder mode. The
+     * new mode is used after the next allocation of the console; the allocated console
+     * keeps the mode it was allocated with.
+     *
+     * @param streamDecoder If the stream decoder mode must be used
+     */
+    public void setStreamDecoder(boolean streamDecoder) {
+        this.mStreamDecoder = streamDecoder;
+    }
+
+    /**
+     * Method that returns the number of executions sent to the console that
+     * haven't finished yet (running or waiting for the console).
+     *
+     * @return int The number of pending executions
+     */
+    public int getPendingExecutions() {
+        return this.mPendingExecutions.get();
+    }
+
+    /**
+     * Method that returns the number of programs executed by the console.
+     *
+     * @return long The number of programs executed
+     */
+    public long getExecutionCount() {
+        return this.mExecutionCount;
+    }
+
+    /**
+     * Method that returns the time (in milliseconds) that the console was executing programs.
+     *
+     * @return long The busy time of the console
+     */
+    public long getBusyTime() {
+        return this.mBusyTime;
+    }
+
+    /**
+     * Method that returns the time (in milliseconds) since the console was created.
+     *
+     * @return long The time since the console was created
+     */
+    public long getUpTime() {
+        return SystemClock.elapsedRealtime() - this.mCreationTime;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -356,6 +434,7 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
             }
 
             //Starts a thread for extract output, and check timeout
+            this.mAllocStreamDecoder = this.mStreamDecoder;
             createStdInThread(this.mIn);
             createStdErrThread(this.mErr);
 
@@ -511,15 +590,16 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
 
         //Asynchronous or synchronous execution?
         final Program program = (Program)executable;
+        this.mPendingExecutions.incrementAndGet();
         if (executable instanceof AsyncResultExecutable) {
             Thread asyncThread = new Thread(new Runnable() {
                 @Override
                 public void run() {
                     //Synchronous execution (but asynchronous running in a thread)
                     //This way syncExecute is locked until this thread ends
+                    final ShellConsole shell = ShellConsole.this;
                     try {
                         //Synchronous execution (2 tries with 1 reallocation)
-                        final ShellConsole shell = ShellConsole.this;
                         if (shell.syncExecute(program, true, false)) {
                             shell.syncExecute(program, false, false);
                         }
@@ -531,15 +611,21 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
                             //Capture exception
                             Log.e(TAG, "Fail asynchronous execution", ex); //$NON-NLS-1$
                         }
+                    } finally {
+                        shell.mPendingExecutions.decrementAndGet();
                     }
                 }
             });
             asyncThread.start();
         } else {
             //Synchronous execution (2 tries with 1 reallocation)
-            program.setExitOnStdErrOutput(waitForSu);
-            if (syncExecute(program, true, waitForSu) && !waitForSu) {
-                syncExecute(program, false, false);
+            try {
+                program.setExitOnStdErrOutput(waitForSu);
+                if (syncExecute(program, true, waitForSu) && !waitForSu) {
+                    syncExecute(program, false, false);
+                }
+            } finally {
+                this.mPendingExecutions.decrementAndGet();
             }
         }
     }
@@ -566,6 +652,7 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
             CommandNotFoundException, NoSuchFileOrDirectory,
             OperationTimeoutException, ExecutionException, ReadOnlyFilesystemException {
 
+        final long startTime = SystemClock.elapsedRealtime();
         try {
             //Check the console status before send command
             checkConsole();
@@ -626,6 +713,8 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
                                            (program instanceof AsyncResultProgram &&
                                             ((AsyncResultProgram)program).isExpectEnd()));
                 mControlPattern.setNewPattern(startId1, startId2, endId1, endId2);
+                mDecoder.reset(startId1, startId2, endId1, endId2, hasEndControl);
+                mFrameHandler.reset();
 
                 String startCmd =
                         Command.getStartCodeCommandInfo(
@@ -728,8 +817,12 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
             //Parse the result? Only if not partial results
             if (program instanceof SyncResultProgram) {
                 try {
-                    ((SyncResultProgram)program).parse(
-                            this.mSbIn.toString(), this.mSbErr.toString());
+                    SyncResultProgram syncProgram = (SyncResultProgram)program;
+                    if (syncProgram.isParseRawOutput()) {
+                        syncProgram.parse(this.mSbIn.toByteArray(), this.mSbErr.toString());
+                    } else {
+                        syncProgram.parse(this.mSbIn.toString(), this.mSbErr.toString());
+                    }
                 } catch (ParseException pEx) {
                     throw new ExecutionException(
                             "SyncResultProgram parse failed", pEx); //$NON-NLS-1$
@@ -762,6 +855,10 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
         } finally {
             //Dereference the active command
             this.mActiveCommand = null;
+
+            //Update the utilization statistics
+            this.mBusyTime += SystemClock.elapsedRealtime() - startTime;
+            this.mExecutionCount++;
         }
 
         //Operation complete
@@ -783,6 +880,11 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
                 int read = 0;
                 ByteArrayOutputStream sb = null;
                 try {
+                    if (shell.mAllocStreamDecoder) {
+                        readStdInStream(in);
+                        return;
+                    }
+
                     while (shell.mActive) {
                         //Read only one byte with active wait
                         final int r = in.read();
@@ -976,6 +1078,36 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
         return t;
     }
 
+    /**
+     * Method that reads the standard input in stream decoder mode. Data is read in
+     * blocks into a reusable buffer and passed through the {@link ShellStreamDecoder},
+     * which extracts the control patterns without rescanning the received data.
+     *
+     * @param in The standard input buffer
+     * @throws IOException If an I/O error occurs
+     * @hide
+     */
+    void readStdInStream(final InputStream in) throws IOException {
+        final byte[] buffer = new byte[Math.max(this.mBufferSize, STREAM_READ_BUFFER)];
+        while (this.mActive) {
+            final int read = in.read(buffer, 0, buffer.length);
+            if (read == -1) {
+                break;
+            }
+
+            if (!this.mCancelled && this.mActiveCommand != null) {
+                this.mDecoder.decode(buffer, 0, read, this.mFrameHandler);
+                this.mFrameHandler.dispatchPartialResult(false);
+            }
+
+            // New data received
+            onNewData();
+
+            //Check if process has exited
+            checkIfProcessExits();
+        }
+    }
+
     /**
      * Method that echoes the stdin
      *
@@ -1267,6 +1399,11 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
             return 143;
         }
 
+        // The stream decoder has already extracted the exit code
+        if (this.mAllocStreamDecoder) {
+            return this.mDecoder.isFinished() ? this.mDecoder.getExitCode() : 255;
+        }
+
         byte[] bytes = stdin.toByteArray();
         int[] match = mControlPattern.getEndControlMatch(bytes);
 
@@ -1494,4 +1631,105 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
         return this.mOut;
     }
 
+    /**
+     * A class that receives the frames of the {@link ShellStreamDecoder} and passes
+     * the payload to the active command.
+     */
+    private class StreamFrameHandler implements ShellStreamDecoder.OnFrameListener {
+        private final ByteArrayOutputStream mPending = new ByteArrayOutputStream();
+
+        /**
+         * Constructor of <code>StreamFrameHandler</code>.
+         */
+        StreamFrameHandler() {
+            super();
+        }
+
+        /**
+         * Method that resets the handler for a new command.
+         */
+        void reset() {
+            this.mPending.reset();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onFrameStart() {
+            final ShellConsole shell = ShellConsole.this;
+            shell.mStarted = true;
+            final Program program = shell.mActiveCommand;
+            if (program instanceof AsyncResultProgram) {
+                synchronized (shell.mPartialSync) {
+                    ((AsyncResultProgram)program).onRequestStartParsePartialResult();
+                }
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onFramePayload(byte[] data, int offset, int count) {
+            if (count <= 0) {
+                return;
+            }
+            final ShellConsole shell = ShellConsole.this;
+            if (shell.mActiveCommand instanceof AsyncResultProgram) {
+                this.mPending.write(data, offset, count);
+            } else {
+                shell.mSbIn.write(data, offset, count);
+                if (shell.isTrace()) {
+                    shell.toStdIn(new String(data, offset, count));
+                }
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onFrameEnd(int exitCode) {
+            dispatchPartialResult(true);
+            notifyProcessFinished();
+        }
+
+        /**
+         * Method that sends the pending payload to the active asynchronous program.
+         * Only complete lines are sent, unless the program doesn't require it or
+         * the command has ended.
+         *
+         * @param all If all the pending data must be sent
+         */
+        void dispatchPartialResult(boolean all) {
+            final ShellConsole shell = ShellConsole.this;
+            final Program active = shell.mActiveCommand;
+            if (!(active instanceof AsyncResultProgram) || this.mPending.size() == 0) {
+                return;
+            }
+            final AsyncResultProgram program = (AsyncResultProgram)active;
+
+            byte[] data = this.mPending.toByteArray();
+            int count = data.length;
+            if (!all && program.parseOnlyCompleteLines()) {
+                while (count > 0 && data[count - 1] != '\n') {
+                    count--;
+                }
+                if (count == 0) {
+                    return;
+                }
+            }
+            this.mPending.reset();
+            if (count < data.length) {
+                this.mPending.write(data, count, data.length - count);
+                data = Arrays.copyOf(data, count);
+            }
+            program.onRequestParsePartialResult(data);
+            if (shell.isTrace()) {
+                shell.toStdIn(new String(data));
+            }
+        }
+    }
+
 }
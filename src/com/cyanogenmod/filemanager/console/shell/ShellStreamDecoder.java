@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.console.shell;
+
+/**
+ * A streaming frame decoder for the standard output of a {@link ShellConsole}.<br/>
+ * <br/>
+ * Every command sent to the shell is framed with a start control pattern
+ * (<code>startId1 + "0" + startId2</code>) and, optionally, an end control pattern
+ * (<code>endId1 + exitCode + endId2</code>). This class matches those patterns
+ * incrementally (Knuth-Morris-Pratt), so every byte read from the shell is examined
+ * only once, whatever the size of the output.<br/>
+ * <br/>
+ * The bytes retained while a partial match is in progress are always a prefix of the
+ * pattern being matched, so they are never buffered; they are released from the pattern
+ * itself when the match fails.
+ */
+public final class ShellStreamDecoder {
+
+    /**
+     * An interface for receive the decoded frames.
+     */
+    public interface OnFrameListener {
+        /**
+         * Invoked when the start control pattern was found.
+         */
+        void onFrameStart();
+
+        /**
+         * Invoked when a block of payload data (command output) was decoded.
+         *
+         * @param data The buffer with the data
+         * @param offset The offset of the data in the buffer
+         * @param count The number of bytes of data
+         */
+        void onFramePayload(byte[] data, int offset, int count);
+
+        /**
+         * Invoked when the end control pattern was found.
+         *
+         * @param exitCode The exit code of the command
+         */
+        void onFrameEnd(int exitCode);
+    }
+
+    private static final int STATE_WAIT_START = 0;
+    private static final int STATE_PAYLOAD = 1;
+    private static final int STATE_EXIT_CODE = 2;
+    private static final int STATE_FINISHED = 3;
+
+    // The exit code is a number between 0 and 255
+    private static final int MAX_EXIT_CODE_LENGTH = 4;
+
+    private byte[] mStartPattern;
+    private int[] mStartFailure;
+    private byte[] mEndPattern1;
+    private int[] mEndFailure1;
+    private byte[] mEndPattern2;
+    private boolean mExpectEnd;
+
+    private int mState = STATE_FINISHED;
+    private int mMatched;
+    private final byte[] mExitCodeBytes = new byte[MAX_EXIT_CODE_LENGTH];
+    private int mExitCodeLength;
+    private int mExitCode = -1;
+
+    /**
+     * Method that prepares the decoder for a new command.
+     *
+     * @param startId1 The first start identifier
+     * @param startId2 The second start identifier
+     * @param endId1 The first end identifier
+     * @param endId2 The second end identifier
+     * @param expectEnd If the end control pattern is expected
+     */
+    public void reset(
+            String startId1, String startId2, String endId1, String endId2, boolean expectEnd) {
+        this.mStartPattern = (startId1 + "0" + startId2).getBytes(); //$NON-NLS-1$
+        this.mStartFailure = computeFailure(this.mStartPattern);
+        this.mEndPattern1 = endId1.getBytes();
+        this.mEndFailure1 = computeFailure(this.mEndPattern1);
+        this.mEndPattern2 = endId2.getBytes();
+        this.mExpectEnd = expectEnd;
+        this.mState = STATE_WAIT_START;
+        this.mMatched = 0;
+        this.mExitCodeLength = 0;
+        this.mExitCode = -1;
+    }
+
+    /**
+     * Method that returns if the start control pattern was found.
+     *
+     * @return boolean If the start control pattern was found
+     */
+    public boolean isStarted() {
+        return this.mState != STATE_WAIT_START;
+    }
+
+    /**
+     * Method that returns if the end control pattern was found.
+     *
+     * @return boolean If the end control pattern was found
+     */
+    public boolean isFinished() {
+        return this.mState == STATE_FINISHED && this.mExitCode != -1;
+    }
+
+    /**
+     * Method that returns the exit code of the command.
+     *
+     * @return int The exit code, or -1 if the command has not finished
+     */
+    public int getExitCode() {
+        return this.mExitCode;
+    }
+
+    /**
+     * Method that decodes a block of data read from the shell. Data after the
+     * end control pattern is ignored.
+     *
+     * @param data The buffer with the data
+     * @param offset The offset of the data in the buffer
+     * @param count The number of bytes of data
+     * @param listener The listener that receives the decoded frames
+     * @return int The number of bytes consumed
+     */
+    public int decode(byte[] data, int offset, int count, OnFrameListener listener) {
+        final int end = offset + count;
+        int run = -1;
+        int i = offset;
+        while (i < end) {
+            final byte b = data[i];
+            switch (this.mState) {
+                case STATE_WAIT_START:
+                    this.mMatched = advance(
+                            this.mStartPattern, this.mStartFailure, this.mMatched, b);
+                    if (this.mMatched == this.mStartPattern.length) {
+                        this.mState = STATE_PAYLOAD;
+                        this.mMatched = 0;
+                        listener.onFrameStart();
+                    }
+                    break;
+
+                case STATE_PAYLOAD:
+                    int m = this.mMatched;
+                    while (m > 0 && b != this.mEndPattern1[m]) {
+                        // Release the bytes that can't be part of the pattern anymore
+                        int fallback = this.mEndFailure1[m - 1];
+                        listener.onFramePayload(this.mEndPattern1, 0, m - fallback);
+                        m = fallback;
+                    }
+                    if (b == this.mEndPattern1[m]) {
+                        if (m == 0 && run != -1) {
+                            listener.onFramePayload(data, run, i - run);
+                            run = -1;
+                        }
+                        m++;
+                        if (m == this.mEndPattern1.length) {
+                            if (this.mExpectEnd) {
+                                this.mState = STATE_EXIT_CODE;
+                                this.mExitCodeLength = 0;
+                                m = 0;
+                            } else {
+                                // Not a control pattern for this command
+                                int fallback = this.mEndFailure1[m - 1];
+                                listener.onFramePayload(this.mEndPattern1, 0, m - fallback);
+                                m = fallback;
+                            }
+                        }
+                    } else if (run == -1) {
+                        run = i;
+                    }
+                    this.mMatched = m;
+                    break;
+
+                case STATE_EXIT_CODE:
+                    if (this.mMatched == 0 && isExitCodeChar(b)
+                            && this.mExitCodeLength < MAX_EXIT_CODE_LENGTH) {
+                        this.mExitCodeBytes[this.mExitCodeLength++] = b;
+                        break;
+                    }
+                    if (b != this.mEndPattern2[this.mMatched] || this.mExitCodeLength == 0) {
+                        // False positive. Return the first byte to the payload, decode
+                        // again the rest of the candidate, and then this byte
+                        replayFalsePositive(listener);
+                        if (this.mState == STATE_FINISHED) {
+                            return i - offset;
+                        }
+                        continue;
+                    }
+                    this.mMatched++;
+                    if (this.mMatched == this.mEndPattern2.length) {
+                        this.mState = STATE_FINISHED;
+                        this.mMatched = 0;
+                        this.mExitCode = parseExitCode();
+                        listener.onFrameEnd(this.mExitCode);
+                        return i + 1 - offset;
+                    }
+                    break;
+
+                default:
+                    return i - offset;
+            }
+            i++;
+        }
+
+        // Flush the pending payload
+        if (run != -1) {
+            listener.onFramePayload(data, run, end - run);
+        }
+        return count;
+    }
+
+    /**
+     * Method that handles a false positive match of the end control pattern. The
+     * matched bytes are returned to the payload, except the first one, which are
+     * decoded again, because they could contain the start of the real pattern.
+     *
+     * @param listener The listener that receives the decoded frames
+     */
+    private void replayFalsePositive(OnFrameListener listener) {
+        final int len1 = this.mEndPattern1.length;
+        byte[] replay = new byte[len1 - 1 + this.mExitCodeLength + this.mMatched];
+        System.arraycopy(this.mEndPattern1, 1, replay, 0, len1 - 1);
+        System.arraycopy(this.mExitCodeBytes, 0, replay, len1 - 1, this.mExitCodeLength);
+        System.arraycopy(this.mEndPattern2, 0, replay,
+                len1 - 1 + this.mExitCodeLength, this.mMatched);
+
+        listener.onFramePayload(this.mEndPattern1, 0, 1);
+        this.mState = STATE_PAYLOAD;
+        this.mMatched = 0;
+        decode(replay, 0, replay.length, listener);
+    }
+
+    /**
+     * Method that advances a KMP matcher one byte.
+     *
+     * @param pattern The pattern
+     * @param failure The failure table of the pattern
+     * @param matched The number of bytes of the pattern already matched
+     * @param b The new byte
+     * @return int The new number of bytes matched
+     */
+    private static int advance(byte[] pattern, int[] failure, int matched, byte b) {
+        int m = matched;
+        while (m > 0 && b != pattern[m]) {
+            m = failure[m - 1];
+        }
+        if (b == pattern[m]) {
+            m++;
+        }
+        return m;
+    }
+
+    /**
+     * Method that computes the KMP failure table of a pattern.
+     *
+     * @param pattern The pattern
+     * @return int[] The failure table
+     */
+    private static int[] computeFailure(byte[] pattern) {
+        int[] failure = new int[pattern.length];
+        int k = 0;
+        for (int i = 1; i < pattern.length; i++) {
+            while (k > 0 && pattern[i] != pattern[k]) {
+                k = failure[k - 1];
+            }
+            if (pattern[i] == pattern[k]) {
+                k++;
+            }
+            failure[i] = k;
+        }
+        return failure;
+    }
+
+    /**
+     * Method that returns if the byte can be part of an exit code.
+     *
+     * @param b The byte to check
+     * @return boolean If the byte can be part of an exit code
+     */
+    private static boolean isExitCodeChar(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    /**
+     * Method that parses the exit code bytes.
+     *
+     * @return int The exit code
+     */
+    private int parseExitCode() {
+        int exitCode = 0;
+        for (int i = 0; i < this.mExitCodeLength; i++) {
+            exitCode = exitCode * 10 + (this.mExitCodeBytes[i] - '0');
+        }
+        return exitCode;
+    }
+}
@@ -0,0 +1,674 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.model;
+
+import com.cyanogenmod.filemanager.util.AIDHelper;
+import com.cyanogenmod.filemanager.util.FileHelper;
+import com.cyanogenmod.filemanager.util.SortKeys;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * A compact, columnar list of the file system objects of a directory.<br/>
+ * <br/>
+ * The regular files and the directories of the listed directory are stored in parallel
+ * primitive arrays (size, times, mode and interned owner and group), and their names
+ * in a shared UTF-8 byte arena. The {@link FileSystemObject} of a row is built on demand
+ * when it's accessed, and the last accessed ones are cached. The rest of the objects
+ * (parent directory, symlinks, system files, ...) are stored as they are.<br/>
+ * <br/>
+ * The built objects are views of the rows and must be treated as immutable: their
+ * setters (permissions, owner, ...) don't change the row, and the change is lost once
+ * the view is evicted from the cache. To change a row, replace its object with
+ * {@link #set(int, FileSystemObject)}.
+ */
+public class DirectorySnapshot extends AbstractList<FileSystemObject> implements RandomAccess {
+
+    // The number of built objects that are cached
+    private static final int MAX_VIEWS = 64;
+
+    // The unix type of the rows
+    private static final int S_IFDIR = 0040000;
+    private static final int S_IFREG = 0100000;
+    private static final int S_IFMT = 0170000;
+
+    // The flag of the mode of the rows without permissions
+    private static final int NO_PERMISSIONS = 0x40000000;
+    // The interned index of an unknown owner or group
+    private static final int NO_OWNER = 0xffff;
+    // The time of the rows without a date
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    // The bytes of every row in the columns (reference, name, size, times, mode and owner)
+    private static final int ROW_SIZE = 4 + 8 + 8 + 24 + 8;
+    // The estimated bytes of an object stored as it is (with its dates and attributes)
+    private static final int OBJECT_SIZE = 256;
+
+    private String mParent;
+    private int mCount;
+
+    private FileSystemObject[] mObjects;
+    private int[] mNameOffsets;
+    private int[] mNameLengths;
+    private long[] mSizes;
+    private long[] mAccessedTimes;
+    private long[] mModifiedTimes;
+    private long[] mChangedTimes;
+    private int[] mModes;
+    private int[] mOwners;
+
+    private byte[] mArena;
+    private int mArenaLength;
+
+    private User[] mUsers;
+    private int mUsersCount;
+    private Group[] mGroups;
+    private int mGroupsCount;
+
+    private SortKeys mSortKeys;
+
+    private final int[] mRawAttributes = new int[3];
+    private final Map<Integer, FileSystemObject> mViews;
+
+    /**
+     * Constructor of <code>DirectorySnapshot</code>.
+     *
+     * @param capacity The expected number of objects
+     */
+    public DirectorySnapshot(int capacity) {
+        super();
+        capacity = Math.max(16, capacity);
+        this.mObjects = new FileSystemObject[capacity];
+        this.mNameOffsets = new int[capacity];
+        this.mNameLengths = new int[capacity];
+        this.mSizes = new long[capacity];
+        this.mAccessedTimes = new long[capacity];
+        this.mModifiedTimes = new long[capacity];
+        this.mChangedTimes = new long[capacity];
+        this.mModes = new int[capacity];
+        this.mOwners = new int[capacity];
+        this.mArena = new byte[capacity * 16];
+        this.mArenaLength = 0;
+        this.mUsers = new User[4];
+        this.mGroups = new Group[4];
+        this.mViews = new LinkedHashMap<Integer, FileSystemObject>(MAX_VIEWS, .75F, true) {
+            private static final long serialVersionUID = 4412086735187617351L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, FileSystemObject> eldest) {
+                return size() > MAX_VIEWS;
+            }
+        };
+    }
+
+    /**
+     * Constructor of <code>DirectorySnapshot</code>.
+     *
+     * @param files The file system objects to copy
+     */
+    public DirectorySnapshot(List<FileSystemObject> files) {
+        this(files.size());
+        if (files instanceof DirectorySnapshot) {
+            DirectorySnapshot snapshot = (DirectorySnapshot)files;
+            int cc = snapshot.size();
+            for (int i = 0; i < cc; i++) {
+                addRow(snapshot, i);
+            }
+            this.mSortKeys = snapshot.mSortKeys;
+        } else {
+            addAll(files);
+        }
+    }
+
+    /**
+     * Method that adds to the end of this snapshot a row of other snapshot, without
+     * building its file system object.
+     *
+     * @param snapshot The source snapshot
+     * @param index The index of the row in the source snapshot
+     */
+    public void addRow(DirectorySnapshot snapshot, int index) {
+        FileSystemObject fso = snapshot.mObjects[index];
+        if (fso != null || (this.mParent != null && !this.mParent.equals(snapshot.mParent))
+                || this.mUsersCount >= NO_OWNER || this.mGroupsCount >= NO_OWNER) {
+            add(snapshot.get(index));
+            return;
+        }
+        this.mParent = snapshot.mParent;
+        int row = insertRow(this.mCount);
+        this.mNameOffsets[row] = appendName(
+                snapshot.mArena, snapshot.mNameOffsets[index], snapshot.mNameLengths[index]);
+        this.mNameLengths[row] = snapshot.mNameLengths[index];
+        this.mSizes[row] = snapshot.mSizes[index];
+        this.mAccessedTimes[row] = snapshot.mAccessedTimes[index];
+        this.mModifiedTimes[row] = snapshot.mModifiedTimes[index];
+        this.mChangedTimes[row] = snapshot.mChangedTimes[index];
+        this.mModes[row] = snapshot.mModes[index];
+        int owner = snapshot.mOwners[index];
+        int user = owner >>> 16;
+        int group = owner & NO_OWNER;
+        this.mOwners[row] = toOwner(
+                internUser(user == NO_OWNER ? null : snapshot.mUsers[user]),
+                internGroup(group == NO_OWNER ? null : snapshot.mGroups[group]));
+    }
+
+    /**
+     * Method that returns the name of an object, without building it.
+     *
+     * @param index The index of the object
+     * @return String The name of the object
+     */
+    public String getName(int index) {
+        checkIndex(index, this.mCount);
+        if (this.mObjects[index] != null) {
+            return this.mObjects[index].getName();
+        }
+        return new String(this.mArena, this.mNameOffsets[index],
+                this.mNameLengths[index], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Method that returns the sort keys of the objects of this snapshot, in the same
+     * order.
+     *
+     * @return SortKeys The sort keys, or <code>null</code> if they aren't known (or the
+     * snapshot was modified since the keys were set)
+     */
+    public SortKeys getSortKeys() {
+        return this.mSortKeys;
+    }
+
+    /**
+     * Method that sets the sort keys of the objects of this snapshot.
+     *
+     * @param sortKeys The sort keys of the objects (in the same order)
+     */
+    public void setSortKeys(SortKeys sortKeys) {
+        this.mSortKeys = sortKeys;
+    }
+
+    /**
+     * Method that returns the estimated memory used by this snapshot, without the
+     * cached views.
+     *
+     * @return long The estimated size in bytes
+     */
+    public long getEstimatedSize() {
+        long size = this.mArena.length + ((long)this.mObjects.length * ROW_SIZE);
+        for (int i = 0; i < this.mCount; i++) {
+            FileSystemObject fso = this.mObjects[i];
+            if (fso != null) {
+                size += OBJECT_SIZE + (fso.getName().length() * 2);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return this.mCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public FileSystemObject get(int index) {
+        checkIndex(index, this.mCount);
+        if (this.mObjects[index] != null) {
+            return this.mObjects[index];
+        }
+        Integer key = Integer.valueOf(index);
+        synchronized (this.mViews) {
+            FileSystemObject fso = this.mViews.get(key);
+            if (fso == null) {
+                fso = createView(index);
+                this.mViews.put(key, fso);
+            }
+            return fso;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public FileSystemObject set(int index, FileSystemObject fso) {
+        FileSystemObject old = get(index);
+        remove(index);
+        add(index, fso);
+        return old;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void add(int index, FileSystemObject fso) {
+        checkIndex(index, this.mCount + 1);
+        int[] attrs = this.mRawAttributes;
+        boolean compact = isCompactable(fso);
+        boolean raw = compact && fso.getRawAttributes(attrs);
+        int row = insertRow(index);
+        if (!compact) {
+            this.mObjects[row] = fso;
+            return;
+        }
+        this.mParent = fso.getParent();
+
+        byte[] name = fso.getName().getBytes(StandardCharsets.UTF_8);
+        this.mNameOffsets[row] = appendName(name, 0, name.length);
+        this.mNameLengths[row] = name.length;
+        this.mSizes[row] = fso.getSize();
+        this.mAccessedTimes[row] = toTime(fso.getLastAccessedTime());
+        this.mModifiedTimes[row] = toTime(fso.getLastModifiedTime());
+        this.mChangedTimes[row] = toTime(fso.getLastChangedTime());
+        final int type = fso instanceof Directory ? S_IFDIR : S_IFREG;
+        if (raw) {
+            // The attributes aren't loaded yet. Take the raw ones from the loader
+            this.mModes[row] = type | (attrs[0] & 07777);
+            this.mOwners[row] = toOwner(internUser(attrs[1]), internGroup(attrs[2]));
+        } else {
+            Permissions permissions = fso.getPermissions();
+            this.mModes[row] = type | (permissions == null ? NO_PERMISSIONS : toMode(permissions));
+            this.mOwners[row] = toOwner(
+                    internUser(fso.getUser()), internGroup(fso.getGroup()));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public FileSystemObject remove(int index) {
+        FileSystemObject fso = get(index);
+        int moved = this.mCount - index - 1;
+        if (moved > 0) {
+            System.arraycopy(this.mObjects, index + 1, this.mObjects, index, moved);
+            System.arraycopy(this.mNameOffsets, index + 1, this.mNameOffsets, index, moved);
+            System.arraycopy(this.mNameLengths, index + 1, this.mNameLengths, index, moved);
+            System.arraycopy(this.mSizes, index + 1, this.mSizes, index, moved);
+            System.arraycopy(this.mAccessedTimes, index + 1, this.mAccessedTimes, index, moved);
+            System.arraycopy(this.mModifiedTimes, index + 1, this.mModifiedTimes, index, moved);
+            System.arraycopy(this.mChangedTimes, index + 1, this.mChangedTimes, index, moved);
+            System.arraycopy(this.mModes, index + 1, this.mModes, index, moved);
+            System.arraycopy(this.mOwners, index + 1, this.mOwners, index, moved);
+        }
+        this.mCount--;
+        this.mObjects[this.mCount] = null;
+        this.mSortKeys = null;
+        clearViews();
+        this.modCount++;
+        return fso;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean remove(Object o) {
+        int index = indexOf(o);
+        if (index < 0) {
+            return false;
+        }
+        remove(index);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(this.mObjects, 0, this.mCount, null);
+        this.mCount = 0;
+        this.mArenaLength = 0;
+        this.mParent = null;
+        this.mSortKeys = null;
+        clearViews();
+        this.modCount++;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int indexOf(Object o) {
+        if (!(o instanceof FileSystemObject)) {
+            return -1;
+        }
+        FileSystemObject fso = (FileSystemObject)o;
+        byte[] name = null;
+        if (fso.getName() != null && fso.getParent() != null
+                && fso.getParent().equals(this.mParent)) {
+            name = fso.getName().getBytes(StandardCharsets.UTF_8);
+        }
+        for (int i = 0; i < this.mCount; i++) {
+            if (this.mObjects[i] != null) {
+                if (this.mObjects[i].equals(fso)) {
+                    return i;
+                }
+            } else if (name != null && isName(i, name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Method that returns the index of the object with the passed full path.
+     *
+     * @param path The full path of the object
+     * @return int The index of the object, or -1 if the object isn't in this snapshot
+     */
+    public int indexOf(String path) {
+        byte[] name = null;
+        if (this.mParent != null) {
+            String prefix = FileHelper.addTrailingSlash(this.mParent);
+            if (path.startsWith(prefix)) {
+                name = path.substring(prefix.length()).getBytes(StandardCharsets.UTF_8);
+            }
+        }
+        for (int i = 0; i < this.mCount; i++) {
+            if (this.mObjects[i] != null) {
+                if (this.mObjects[i].getFullPath().equals(path)) {
+                    return i;
+                }
+            } else if (name != null && isName(i, name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Method that returns the index of the object with the passed full path in a list.
+     * The objects of a {@link DirectorySnapshot} aren't built.
+     *
+     * @param files The list of file system objects
+     * @param path The full path of the object
+     * @return int The index of the object, or -1 if the object isn't in the list
+     */
+    public static int indexOf(List<FileSystemObject> files, String path) {
+        if (files instanceof DirectorySnapshot) {
+            return ((DirectorySnapshot)files).indexOf(path);
+        }
+        int cc = files.size();
+        for (int i = 0; i < cc; i++) {
+            FileSystemObject fso = files.get(i);
+            if (fso != null && fso.getFullPath().equals(path)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Method that returns if an object can be stored in the columns of this snapshot.
+     *
+     * @param fso The file system object
+     * @return boolean If the object can be stored in the columns of this snapshot
+     */
+    private boolean isCompactable(FileSystemObject fso) {
+        if (fso == null || (fso.getClass() != RegularFile.class
+                && fso.getClass() != Directory.class)) {
+            return false;
+        }
+        if (fso.isSecure() || fso.isRemote() || fso.getParent() == null
+                || fso.getName() == null || FileHelper.isRootDirectory(fso)) {
+            return false;
+        }
+        return (this.mParent == null || this.mParent.equals(fso.getParent()))
+                && this.mUsersCount < NO_OWNER && this.mGroupsCount < NO_OWNER;
+    }
+
+    /**
+     * Method that builds the file system object of a row.
+     *
+     * @param index The index of the row
+     * @return FileSystemObject The file system object
+     */
+    private FileSystemObject createView(int index) {
+        String name = getName(index);
+        int mode = this.mModes[index];
+        int owner = this.mOwners[index];
+        int user = owner >>> 16;
+        int group = owner & NO_OWNER;
+        Permissions permissions = (mode & NO_PERMISSIONS) != 0 ? null : toPermissions(mode);
+        User u = user == NO_OWNER ? null : this.mUsers[user];
+        Group g = group == NO_OWNER ? null : this.mGroups[group];
+        if ((mode & S_IFMT) == S_IFDIR) {
+            return new Directory(name, this.mParent, u, g, permissions,
+                    toDate(this.mAccessedTimes[index]), toDate(this.mModifiedTimes[index]),
+                    toDate(this.mChangedTimes[index]));
+        }
+        return new RegularFile(name, this.mParent, u, g, permissions, this.mSizes[index],
+                toDate(this.mAccessedTimes[index]), toDate(this.mModifiedTimes[index]),
+                toDate(this.mChangedTimes[index]));
+    }
+
+    /**
+     * Method that inserts an empty row.
+     *
+     * @param index The index of the new row
+     * @return int The index of the new row
+     */
+    private int insertRow(int index) {
+        if (this.mCount == this.mObjects.length) {
+            int capacity = this.mCount * 2;
+            this.mObjects = Arrays.copyOf(this.mObjects, capacity);
+            this.mNameOffsets = Arrays.copyOf(this.mNameOffsets, capacity);
+            this.mNameLengths = Arrays.copyOf(this.mNameLengths, capacity);
+            this.mSizes = Arrays.copyOf(this.mSizes, capacity);
+            this.mAccessedTimes = Arrays.copyOf(this.mAccessedTimes, capacity);
+            this.mModifiedTimes = Arrays.copyOf(this.mModifiedTimes, capacity);
+            this.mChangedTimes = Arrays.copyOf(this.mChangedTimes, capacity);
+            this.mModes = Arrays.copyOf(this.mModes, capacity);
+            this.mOwners = Arrays.copyOf(this.mOwners, capacity);
+        }
+        int moved = this.mCount - index;
+        if (moved > 0) {
+            System.arraycopy(this.mObjects, index, this.mObjects, index + 1, moved);
+            System.arraycopy(this.mNameOffsets, index, this.mNameOffsets, index + 1, moved);
+            System.arraycopy(this.mNameLengths, index, this.mNameLengths, index + 1, moved);
+            System.arraycopy(this.mSizes, index, this.mSizes, index + 1, moved);
+            System.arraycopy(this.mAccessedTimes, index, this.mAccessedTimes, index + 1, moved);
+            System.arraycopy(this.mModifiedTimes, index, this.mModifiedTimes, index + 1, moved);
+            System.arraycopy(this.mChangedTimes, index, this.mChangedTimes, index + 1, moved);
+            System.arraycopy(this.mModes, index, this.mModes, index + 1, moved);
+            System.arraycopy(this.mOwners, index, this.mOwners, index + 1, moved);
+            clearViews();
+        }
+        this.mObjects[index] = null;
+        this.mSortKeys = null;
+        this.mCount++;
+        this.modCount++;
+        return index;
+    }
+
+    /**
+     * Method that appends a name to the arena.
+     *
+     * @param data The buffer of the name
+     * @param offset The offset of the name in the buffer
+     * @param length The length of the name
+     * @return int The offset of the name in the arena
+     */
+    private int appendName(byte[] data, int offset, int length) {
+        if (this.mArenaLength + length > this.mArena.length) {
+            this.mArena = Arrays.copyOf(
+                    this.mArena, Math.max(this.mArena.length * 2, this.mArenaLength + length));
+        }
+        System.arraycopy(data, offset, this.mArena, this.mArenaLength, length);
+        int start = this.mArenaLength;
+        this.mArenaLength += length;
+        return start;
+    }
+
+    /**
+     * Method that returns if the name of a row is the passed one.
+     *
+     * @param index The index of the row
+     * @param name The UTF-8 name
+     * @return boolean If the name of the row is the passed one
+     */
+    private boolean isName(int index, byte[] name) {
+        int len = this.mNameLengths[index];
+        if (len != name.length) {
+            return false;
+        }
+        int offset = this.mNameOffsets[index];
+        for (int i = 0; i < len; i++) {
+            if (this.mArena[offset + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int internUser(int uid) {
+        for (int i = 0; i < this.mUsersCount; i++) {
+            if (this.mUsers[i].getId() == uid) {
+                return i;
+            }
+        }
+        return internUser(new User(uid, AIDHelper.getNullSafeName(uid)));
+    }
+
+    private int internUser(User user) {
+        if (user == null) {
+            return NO_OWNER;
+        }
+        for (int i = 0; i < this.mUsersCount; i++) {
+            if (this.mUsers[i].getId() == user.getId()
+                    && Objects.equals(this.mUsers[i].getName(), user.getName())) {
+                return i;
+            }
+        }
+        if (this.mUsersCount == this.mUsers.length) {
+            this.mUsers = Arrays.copyOf(this.mUsers, this.mUsersCount * 2);
+        }
+        this.mUsers[this.mUsersCount] = user;
+        return this.mUsersCount++;
+    }
+
+    private int internGroup(int gid) {
+        for (int i = 0; i < this.mGroupsCount; i++) {
+            if (this.mGroups[i].getId() == gid) {
+                return i;
+            }
+        }
+        return internGroup(new Group(gid, AIDHelper.getNullSafeName(gid)));
+    }
+
+    private int internGroup(Group group) {
+        if (group == null) {
+            return NO_OWNER;
+        }
+        for (int i = 0; i < this.mGroupsCount; i++) {
+            if (this.mGroups[i].getId() == group.getId()
+                    && Objects.equals(this.mGroups[i].getName(), group.getName())) {
+                return i;
+            }
+        }
+        if (this.mGroupsCount == this.mGroups.length) {
+            this.mGroups = Arrays.copyOf(this.mGroups, this.mGroupsCount * 2);
+        }
+        this.mGroups[this.mGroupsCount] = group;
+        return this.mGroupsCount++;
+    }
+
+    private void clearViews() {
+        synchronized (this.mViews) {
+            this.mViews.clear();
+        }
+    }
+
+    private static int toOwner(int user, int group) {
+        return (user << 16) | group;
+    }
+
+    private static long toTime(Date date) {
+        return date == null ? NO_TIME : date.getTime();
+    }
+
+    private static Date toDate(long time) {
+        return time == NO_TIME ? null : new Date(time);
+    }
+
+    private static void checkIndex(int index, int count) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException(
+                    "Index: " + index + ", Size: " + count); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+    }
+
+    /**
+     * Method that converts the permissions to the unix permission bits.
+     *
+     * @param permissions The permissions
+     * @return int The unix permission bits
+     */
+    private static int toMode(Permissions permissions) {
+        UserPermission u = permissions.getUser();
+        GroupPermission g = permissions.getGroup();
+        OthersPermission o = permissions.getOthers();
+        int mode = 0;
+        mode |= u.isSetUID() ? 04000 : 0;
+        mode |= g.isSetGID() ? 02000 : 0;
+        mode |= o.isStickybit() ? 01000 : 0;
+        mode |= (u.isRead() ? 0400 : 0) | (u.isWrite() ? 0200 : 0) | (u.isExecute() ? 0100 : 0);
+        mode |= (g.isRead() ? 040 : 0) | (g.isWrite() ? 020 : 0) | (g.isExecute() ? 010 : 0);
+        mode |= (o.isRead() ? 04 : 0) | (o.isWrite() ? 02 : 0) | (o.isExecute() ? 01 : 0);
+        return mode;
+    }
+
+    /**
+     * Method that converts the unix permission bits to permissions.
+     *
+     * @param mode The unix mode
+     * @return Permissions The permissions
+     */
+    private static Permissions toPermissions(int mode) {
+        return new Permissions(
+                new UserPermission((mode & 0400) != 0, (mode & 0200) != 0,
+                        (mode & 0100) != 0, (mode & 04000) != 0),
+                new GroupPermission((mode & 040) != 0, (mode & 020) != 0,
+                        (mode & 010) != 0, (mode & 02000) != 0),
+                new OthersPermission((mode & 04) != 0, (mode & 02) != 0,
+                        (mode & 01) != 0, (mode & 01000) != 0));
+    }
+}
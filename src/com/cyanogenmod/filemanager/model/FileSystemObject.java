@@ -22,6 +22,8 @@ import com.cyanogenmod.filemanager.R;
 import com.cyanogenmod.filemanager.util.FileHelper;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.Date;
 
@@ -37,6 +39,36 @@ public abstract class FileSystemObject implements Serializable, Comparable<FileS
 
     private static final long serialVersionUID = -571144166609728391L;
 
+    /**
+     * An interface for load on demand the attributes of the file system objects
+     * (the user, the group, the permissions and the link target of the symlinks).
+     */
+    public interface AttributesLoader {
+        /**
+         * Invoked when an attribute of an object is accessed and the attributes of the
+         * object aren't loaded. The loader must call
+         * {@link FileSystemObject#setLazyAttributes(User, Group, Permissions)} on the object,
+         * after the other loaded attributes are set. The loader can load a batch of objects
+         * at once. It can be invoked from several threads for the same object, so it must
+         * be thread-safe and ignore the objects already loaded.
+         *
+         * @param fso The file system object
+         * @param index The index of the object in the loader
+         */
+        void loadAttributes(FileSystemObject fso, int index);
+
+        /**
+         * Method that returns the raw attributes of an object whose attributes aren't
+         * loaded, without loading them.
+         *
+         * @param fso The file system object
+         * @param index The index of the object in the loader
+         * @param attrs An array where to return the raw mode, the uid and the gid
+         * @return boolean If the raw attributes of the object were returned
+         */
+        boolean getRawAttributes(FileSystemObject fso, int index, int[] attrs);
+    }
+
     //Resource identifier for default icon
     private static final int RESOURCE_ICON_DEFAULT = R.drawable.ic_fso_default;
 
@@ -52,6 +84,10 @@ public abstract class FileSystemObject implements Serializable, Comparable<FileS
     private Date mLastChangedTime;
     private boolean mIsSecure;
     private boolean mIsRemote;
+    // Accessed from the UI thread, the sort and the background tasks. The attributes
+    // are set before the loader is cleared, so they are visible when it's null
+    private transient volatile AttributesLoader mAttributesLoader;
+    private transient int mAttributesIndex;
 
     /**
      * Constructor of <code>FileSystemObject</code>.
@@ -133,6 +169,7 @@ public abstract class FileSystemObject implements Serializable, Comparable<FileS
      * @return User The user proprietary of the object
      */
     public User getUser() {
+        loadAttributes();
         return this.mUser;
     }
 
@@ -151,6 +188,7 @@ public abstract class FileSystemObject implements Serializable, Comparable<FileS
      * @return Group The group proprietary of the object
      */
     public Group getGroup() {
+        loadAttributes();
         return this.mGroup;
     }
 
@@ -169,9 +207,77 @@ public abstract class FileSystemObject implements Serializable, Comparable<FileS
      * @return Permissions The permissions of the object
      */
     public Permissions getPermissions() {
+        loadAttributes();
         return this.mPermissions;
     }
 
+    /**
+     * Method that sets the loader of the attributes of the object. The user, the group,
+     * the permissions (and the link target of symlinks) are loaded on the first access.
+     *
+     * @param loader The loader of the attributes
+     * @param index The index of the object in the loader
+     */
+    public void setAttributesLoader(AttributesLoader loader, int index) {
+        this.mAttributesIndex = index;
+        this.mAttributesLoader = loader;
+    }
+
+    /**
+     * Method that returns if the attributes of the object are loaded.
+     *
+     * @return boolean If the attributes are loaded
+     */
+    public boolean isAttributesLoaded() {
+        return this.mAttributesLoader == null;
+    }
+
+    /**
+     * Method that returns the raw attributes of the object (the mode, the uid and the
+     * gid) if they aren't loaded yet, without loading them.
+     *
+     * @param attrs An array of 3 elements where to return the raw attributes
+     * @return boolean If the raw attributes were returned
+     */
+    public boolean getRawAttributes(int[] attrs) {
+        AttributesLoader loader = this.mAttributesLoader;
+        return loader != null && loader.getRawAttributes(this, this.mAttributesIndex, attrs);
+    }
+
+    /**
+     * Method that loads the attributes of the object, if they aren't loaded yet. This
+     * method can be called from any thread. If several threads call it at once, the
+     * attributes are loaded only once.
+     */
+    public final void loadAttributes() {
+        AttributesLoader loader = this.mAttributesLoader;
+        if (loader != null) {
+            loader.loadAttributes(this, this.mAttributesIndex);
+        }
+    }
+
+    /**
+     * Method that sets the attributes loaded by an {@link AttributesLoader}. The
+     * attributes that were set since the object was created aren't replaced.
+     *
+     * @param user The user proprietary of the object
+     * @param group The group proprietary of the object
+     * @param permissions The permissions of the object
+     */
+    public void setLazyAttributes(User user, Group group, Permissions permissions) {
+        if (this.mUser == null) {
+            this.mUser = user;
+        }
+        if (this.mGroup == null) {
+            this.mGroup = group;
+        }
+        if (this.mPermissions == null) {
+            this.mPermissions = permissions;
+        }
+        // Publish the attributes
+        this.mAttributesLoader = null;
+    }
+
     /**
      * Method that sets the permissions of the object.
      *
@@ -406,6 +512,12 @@ public abstract class FileSystemObject implements Serializable, Comparable<FileS
                 + getPermissions().toRawString();
     }
 
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        // The loader isn't serialized
+        loadAttributes();
+        out.defaultWriteObject();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -72,6 +72,24 @@ public class FolderUsage implements Serializable, Cloneable {
         this.mNumberOfFiles ++;
     }
 
+    /**
+     * Method that adds a number of folders to the total number of folders.
+     *
+     * @param count The number of folders to add
+     */
+    public void addFolders(int count) {
+        this.mNumberOfFolders += count;
+    }
+
+    /**
+     * Method that adds a number of files to the total number of files.
+     *
+     * @param count The number of files to add
+     */
+    public void addFiles(int count) {
+        this.mNumberOfFiles += count;
+    }
+
     /**
      * Method that adds to the total size.
      *
@@ -92,6 +110,17 @@ public class FolderUsage implements Serializable, Cloneable {
         this.mStatistics.put(category.ordinal(), Long.valueOf(count));
     }
 
+    /**
+     * Method that add a number of files to the category
+     *
+     * @param category The category
+     * @param count The number of files to add
+     */
+    public void addFilesToCategory(MimeTypeCategory category, long count) {
+        long total = this.mStatistics.get(category.ordinal()).longValue();
+        this.mStatistics.put(category.ordinal(), Long.valueOf(total + count));
+    }
+
     /**
      * Method that returns the folder of which retrieve the usage.
      *
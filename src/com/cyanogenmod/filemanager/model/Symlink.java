@@ -63,6 +63,7 @@ public class Symlink extends FileSystemObject {
      * @return String The real file that this symlink is point to.
      */
     public String getLink() {
+        loadAttributes();
         return this.mLink;
     }
 
@@ -81,6 +82,7 @@ public class Symlink extends FileSystemObject {
      * @return FileSystemObject The {@link FileSystemObject} reference of the symlink
      */
     public FileSystemObject getLinkRef() {
+        loadAttributes();
         return this.mLinkRef;
     }
 
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.service;
+
+import android.app.IntentService;
+import android.content.Context;
+import android.content.Intent;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.util.FileNameIndex;
+
+import java.io.File;
+
+/**
+ * A service that builds (or brings up to date) the file name index of a storage volume,
+ * used to answer the searches without walking the filesystem.
+ *
+ * @see FileNameIndex
+ */
+public class FileNameIndexService extends IntentService {
+
+    private static final String TAG = "FileNameIndexService"; //$NON-NLS-1$
+
+    private static final String ACTION_BUILD_INDEX =
+            "com.cyanogenmod.filemanager.ACTION_BUILD_NAME_INDEX"; //$NON-NLS-1$
+    private static final String EXTRA_FILE_ROOT = "extra_file_root"; //$NON-NLS-1$
+
+    /**
+     * Constructor of <code>FileNameIndexService</code>.
+     */
+    public FileNameIndexService() {
+        super(TAG);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        if (intent == null || !ACTION_BUILD_INDEX.equals(intent.getAction())) {
+            return;
+        }
+        String fileRoot = intent.getStringExtra(EXTRA_FILE_ROOT);
+        if (TextUtils.isEmpty(fileRoot) || !new File(fileRoot).canRead()) {
+            Log.w(TAG, "Can't index the file root " + fileRoot); //$NON-NLS-1$
+            return;
+        }
+
+        FileNameIndex index = FileNameIndex.getInstance(this);
+        if (index.build(fileRoot, null)) {
+            Log.i(TAG, String.format("Indexed %s. Build rate: %.0f entries/s", //$NON-NLS-1$
+                    fileRoot, index.getBuildRate()));
+        }
+    }
+
+    /**
+     * Method that starts building the file name index of a file root.
+     *
+     * @param context The current context
+     * @param fileRoot The absolute path of the file root
+     */
+    public static void indexFileRoot(Context context, String fileRoot) {
+        Intent intent = new Intent(context, FileNameIndexService.class);
+        intent.setAction(ACTION_BUILD_INDEX);
+        intent.putExtra(EXTRA_FILE_ROOT, fileRoot);
+        context.startService(intent);
+    }
+}
@@ -23,11 +23,11 @@ import android.content.Intent;
 import android.text.TextUtils;
 import android.util.Log;
 import com.cyanogenmod.filemanager.providers.MimeTypeIndexProvider;
-import com.cyanogenmod.filemanager.util.MimeTypeHelper;
+import com.cyanogenmod.filemanager.util.FolderSizeIndex;
+import com.cyanogenmod.filemanager.util.FolderUsageWalker;
 import com.cyanogenmod.filemanager.util.MimeTypeHelper.MimeTypeCategory;
 
 import java.io.File;
-import java.io.FileFilter;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -104,47 +104,17 @@ public class MimeTypeIndexService extends IntentService {
         getContentResolver().bulkInsert(MimeTypeIndexProvider.getContentUri(), valuesList);
     }
 
-    private class FileOnlyFileFilter implements FileFilter {
-        @Override
-        public boolean accept(File file) {
-            return file != null && !file.isDirectory() && file.isFile();
-        }
-    }
-
-    private class DirectoryOnlyFileFilter implements FileFilter {
-        @Override
-        public boolean accept(File file) {
-            return file != null && file.isDirectory();
-        }
-    }
-
     private void calculateUsageByType(File root, Map<MimeTypeCategory, Long> groupUsageMap) {
-        File[] dirs = root.listFiles(new DirectoryOnlyFileFilter());
-        File[] files = root.listFiles(new FileOnlyFileFilter());
-        if (dirs != null) {
-            // Recurse directories
-            for (File dir : dirs) {
-                long size = dir.length();
-                if (!groupUsageMap.containsKey(MimeTypeCategory.NONE)) {
-                    groupUsageMap.put(MimeTypeCategory.NONE, size);
-                } else {
-                    long newSum = groupUsageMap.get(MimeTypeCategory.NONE) + size;
-                    groupUsageMap.put(MimeTypeCategory.NONE, newSum);
-                }
-                calculateUsageByType(dir, groupUsageMap);
-            }
-        }
-        if (files != null) {
-            // Iterate every file
-            for (File file : files) {
-                MimeTypeCategory category = MimeTypeHelper.getCategory(this, file);
-                long size = file.length();
-                if (!groupUsageMap.containsKey(category)) {
-                    groupUsageMap.put(category, size);
-                } else {
-                    long newSum = groupUsageMap.get(category) + size;
-                    groupUsageMap.put(category, newSum);
-                }
+        // Walk the tree in parallel. Folder entries are accounted as NONE
+        FolderUsageWalker walker = new FolderUsageWalker(this,
+                FolderUsageWalker.getDefaultParallelism(this), true,
+                FolderSizeIndex.getInstance(this));
+        walker.walk(root, Long.MAX_VALUE, null);
+        long[] sizes = walker.getSizeByCategory();
+        for (MimeTypeCategory category : MimeTypeCategory.values()) {
+            long size = sizes[category.ordinal()];
+            if (size >= 0) {
+                groupUsageMap.put(category, size);
             }
         }
     }
@@ -28,9 +28,9 @@ import android.graphics.drawable.Drawable;
 import android.media.ThumbnailUtils;
 import android.net.Uri;
 import android.os.Handler;
-import android.os.HandlerThread;
-import android.os.Looper;
 import android.os.Message;
+import android.os.Process;
+import android.os.SystemClock;
 import android.widget.ImageView;
 
 import com.cyanogenmod.filemanager.model.FileSystemObject;
@@ -38,12 +38,21 @@ import com.cyanogenmod.filemanager.ui.ThemeManager.Theme;
 import com.cyanogenmod.filemanager.util.FileHelper;
 import com.cyanogenmod.filemanager.util.MediaHelper;
 import com.cyanogenmod.filemanager.util.MimeTypeHelper.KnownMimeTypeResolver;
+import com.cyanogenmod.filemanager.util.ThumbnailCache;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.WeakHashMap;
 import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A class that holds icons for a more efficient access.
@@ -52,43 +61,83 @@ public class IconHolder {
 
     private static final int MAX_CACHE = 500;
 
-    private static final int MSG_LOAD = 1;
     private static final int MSG_LOADED = 2;
 
+    // The number of threads of the loader
+    private static final int LOADER_THREADS = 3;
+    // The time that an idle loader thread is kept alive (in seconds)
+    private static final long LOADER_KEEP_ALIVE = 5L;
+
     private final Map<String, Drawable> mIcons;     // Themes based
     private final Map<String, Drawable> mAppIcons;  // App based
+    private final ThumbnailCache mThumbnails;       // Images, videos and albums
 
     private Map<String, Long> mAlbums;      // Media albums
 
     private final WeakHashMap<ImageView, Loadable> mRequests;
+    private final Map<String, Loadable> mPendingRequests;  // Loads in progress, by path
 
     private final Context mContext;
     private final boolean mUseThumbs;
     private boolean mNeedAlbumUpdate = true;
 
-    private HandlerThread mWorkerThread;
-    private Handler mWorkerHandler;
+    private ThreadPoolExecutor mLoader;
+
+    private long mLoadedRequests;
+    private long mLoadTime;
 
     /**
      * This is kind of a hack, we should have a loadable for each MimeType we run into.
      * TODO: Refactor this to have different loadables
      */
-    private static class Loadable {
+    private static class Loadable implements Runnable {
         private Context mContext;
+        private Handler mCallback;
         private static boolean sAlbumsDirty = true;
         private static Map<String, Long> sAlbums;
 
         FileSystemObject fso;
-        WeakReference<ImageView> view;
+        String path;
+        // The views waiting for this load (duplicated requests are coalesced)
+        List<WeakReference<ImageView>> views;
+        long requestTime;
+        volatile boolean cancelled;
         Drawable result;
+        boolean isAppIcon;
 
-        public Loadable(Context context, ImageView view, FileSystemObject fso) {
+        public Loadable(Context context, Handler callback, ImageView view,
+                FileSystemObject fso, String path) {
             this.mContext = context.getApplicationContext();
+            this.mCallback = callback;
             this.fso = fso;
-            this.view = new WeakReference<ImageView>(view);
+            this.path = path;
+            this.views = new ArrayList<WeakReference<ImageView>>(1);
+            this.views.add(new WeakReference<ImageView>(view));
+            this.requestTime = SystemClock.elapsedRealtime();
             this.result = null;
         }
 
+        @Override
+        public void run() {
+            // The request is stale (its views were bound to other objects)
+            if (cancelled) {
+                return;
+            }
+            load();
+            mCallback.obtainMessage(MSG_LOADED, this).sendToTarget();
+        }
+
+        public boolean removeView(ImageView view) {
+            Iterator<WeakReference<ImageView>> it = views.iterator();
+            while (it.hasNext()) {
+                ImageView v = it.next().get();
+                if (v == null || v == view) {
+                    it.remove();
+                }
+            }
+            return views.isEmpty();
+        }
+
         private static synchronized Map<String, Long> getAlbums(Context context) {
             if (sAlbumsDirty) {
                 sAlbums = MediaHelper.getAllAlbums(context.getContentResolver());
@@ -109,18 +158,31 @@ public class IconHolder {
             final String filePath = MediaHelper.normalizeMediaPath(fso.getFullPath());
 
             if (KnownMimeTypeResolver.isAndroidApp(mContext, fso)) {
+                isAppIcon = true;
                 return getAppDrawable(fso);
-            } else if (KnownMimeTypeResolver.isImage(mContext, fso)) {
-                return getImageDrawable(filePath);
-            } else if (KnownMimeTypeResolver.isVideo(mContext, fso)) {
-                return getVideoDrawable(filePath);
-            } else if (FileHelper.isDirectory(fso)) {
-                Map<String, Long> albums = getAlbums(mContext);
-                if (albums.containsKey(filePath)) {
-                    return getAlbumDrawable(albums.get(filePath));
+            }
+
+            // Thumbnails are decoded only once, and then read from the thumbnail cache
+            ThumbnailCache cache = ThumbnailCache.getInstance(mContext);
+            String key = ThumbnailCache.getKey(fso);
+            Bitmap thumb = cache.get(key);
+            if (thumb == null) {
+                if (KnownMimeTypeResolver.isImage(mContext, fso)) {
+                    thumb = getImageThumbnail(filePath);
+                } else if (KnownMimeTypeResolver.isVideo(mContext, fso)) {
+                    thumb = getVideoThumbnail(filePath);
+                } else if (FileHelper.isDirectory(fso)) {
+                    Map<String, Long> albums = getAlbums(mContext);
+                    if (albums.containsKey(filePath)) {
+                        thumb = getAlbumThumbnail(albums.get(filePath));
+                    }
+                }
+                if (thumb == null) {
+                    return null;
                 }
+                cache.put(key, thumb);
             }
-            return null;
+            return new BitmapDrawable(mContext.getResources(), thumb);
         }
 
         /**
@@ -150,51 +212,39 @@ public class IconHolder {
          * Method that returns a thumbnail of the picture
          *
          * @param file The path to the file
-         * @return Drawable The drawable or null if cannot be extracted
+         * @return Bitmap The thumbnail or null if cannot be extracted
          */
-        private Drawable getImageDrawable(String file) {
-            Bitmap thumb = ThumbnailUtils.createImageThumbnail(
+        private Bitmap getImageThumbnail(String file) {
+            return ThumbnailUtils.createImageThumbnail(
                     MediaHelper.normalizeMediaPath(file),
                     ThumbnailUtils.TARGET_SIZE_MICRO_THUMBNAIL);
-            if (thumb == null) {
-                return null;
-            }
-            return new BitmapDrawable(mContext.getResources(), thumb);
         }
 
         /**
          * Method that returns a thumbnail of the video
          *
          * @param file The path to the file
-         * @return Drawable The drawable or null if cannot be extracted
+         * @return Bitmap The thumbnail or null if cannot be extracted
          */
-        private Drawable getVideoDrawable(String file) {
-            Bitmap thumb = ThumbnailUtils.createVideoThumbnail(
+        private Bitmap getVideoThumbnail(String file) {
+            return ThumbnailUtils.createVideoThumbnail(
                     MediaHelper.normalizeMediaPath(file),
                     ThumbnailUtils.TARGET_SIZE_MICRO_THUMBNAIL);
-            if (thumb == null) {
-                return null;
-            }
-            return new BitmapDrawable(mContext.getResources(), thumb);
         }
 
         /**
          * Method that returns a thumbnail of the album folder
          *
          * @param albumId The album identifier
-         * @return Drawable The drawable or null if cannot be extracted
+         * @return Bitmap The thumbnail or null if cannot be extracted
          */
-        private Drawable getAlbumDrawable(long albumId) {
+        private Bitmap getAlbumThumbnail(long albumId) {
             String path = MediaHelper.getAlbumThumbnailPath(mContext.getContentResolver(), albumId);
             if (path == null) {
                 return null;
             }
-            Bitmap thumb = ThumbnailUtils.createImageThumbnail(path,
+            return ThumbnailUtils.createImageThumbnail(path,
                     ThumbnailUtils.TARGET_SIZE_MICRO_THUMBNAIL);
-            if (thumb == null) {
-                return null;
-            }
-            return new BitmapDrawable(mContext.getResources(), thumb);
         }
     }
 
@@ -209,22 +259,30 @@ public class IconHolder {
         }
 
         private void processResult(Loadable result) {
-            ImageView view = result.view.get();
-            if (view == null) {
-                return;
+            if (mPendingRequests.get(result.path) == result) {
+                mPendingRequests.remove(result.path);
             }
+            mLoadedRequests++;
+            mLoadTime += SystemClock.elapsedRealtime() - result.requestTime;
 
-            Loadable requestedForImageView = mRequests.get(view);
-            if (requestedForImageView != result) {
-                return;
+            // Cache the new drawable (thumbnails are already in the thumbnail cache)
+            if (result.result != null && result.isAppIcon) {
+                mAppIcons.put(result.path, result.result);
             }
-
-            // Cache the new drawable
-            final String filePath = MediaHelper.normalizeMediaPath(result.fso.getFullPath());
-            if (result.result != null) {
-                mAppIcons.put(filePath, result.result);
+            Drawable dw = result.result;
+            for (WeakReference<ImageView> ref : result.views) {
+                ImageView view = ref.get();
+                if (view != null && mRequests.get(view) == result) {
+                    mRequests.remove(view);
+                    if (dw != null) {
+                        view.setImageDrawable(dw);
+                        // Coalesced requests don't share the drawable state
+                        dw = dw.getConstantState() != null
+                                ? dw.getConstantState().newDrawable(mContext.getResources())
+                                : dw;
+                    }
+                }
             }
-            view.setImageDrawable(result.result);
         }
     };
 
@@ -246,6 +304,7 @@ public class IconHolder {
         this.mContext = context;
         this.mUseThumbs = useThumbs;
         this.mRequests = new WeakHashMap<ImageView, Loadable>();
+        this.mPendingRequests = new HashMap<String, Loadable>();
         this.mIcons = new HashMap<String, Drawable>();
         this.mAppIcons = new LinkedHashMap<String, Drawable>(MAX_CACHE, .75F, true) {
             private static final long serialVersionUID = 1L;
@@ -254,6 +313,7 @@ public class IconHolder {
                 return size() > MAX_CACHE;
             }
         };
+        this.mThumbnails = ThumbnailCache.getInstance(context);
         this.mAlbums = new HashMap<String, Long>();
         if (useThumbs) {
             final ContentResolver cr = mContext.getContentResolver();
@@ -290,6 +350,7 @@ public class IconHolder {
         final String filePath = MediaHelper.normalizeMediaPath(fso.getFullPath());
         if (filePath != null) {
             mAppIcons.remove(filePath);
+            mThumbnails.remove(filePath);
         }
     }
 
@@ -303,6 +364,7 @@ public class IconHolder {
      */
     public void loadDrawable(ImageView iconView, FileSystemObject fso, Drawable defaultIcon) {
         if (!mUseThumbs) {
+            cancelRequest(iconView);
             iconView.setImageDrawable(defaultIcon);
             return;
         }
@@ -310,54 +372,116 @@ public class IconHolder {
         // Is cached?
         final String filePath = MediaHelper.normalizeMediaPath(fso.getFullPath());
         if (this.mAppIcons.containsKey(filePath)) {
+            cancelRequest(iconView);
             iconView.setImageDrawable(this.mAppIcons.get(filePath));
             return;
         }
+        Bitmap thumb = this.mThumbnails.getFromMemory(ThumbnailCache.getKey(fso));
+        if (thumb != null) {
+            cancelRequest(iconView);
+            iconView.setImageDrawable(new BitmapDrawable(mContext.getResources(), thumb));
+            return;
+        }
 
-        if (mWorkerThread == null) {
-            mWorkerThread = new HandlerThread("IconHolderLoader");
-            mWorkerThread.start();
-            mWorkerHandler = new WorkerHandler(mWorkerThread.getLooper());
+        if (mLoader == null) {
+            mLoader = createLoader();
         }
+
+        // The previous request of the view is stale now
         Loadable previousForView = mRequests.get(iconView);
-        if (previousForView != null) {
-            mWorkerHandler.removeMessages(MSG_LOAD, previousForView);
+        if (previousForView != null && previousForView.path.equals(filePath)) {
+            return;
         }
-
-        Loadable loadable = new Loadable(mContext, iconView, fso);
-        mRequests.put(iconView, loadable);
+        cancelRequest(iconView);
         iconView.setImageDrawable(defaultIcon);
 
-         mWorkerHandler.obtainMessage(MSG_LOAD, loadable).sendToTarget();
+        // Coalesce with a pending request of the same object
+        Loadable pending = mPendingRequests.get(filePath);
+        if (pending != null && !pending.cancelled) {
+            pending.views.add(new WeakReference<ImageView>(iconView));
+            mRequests.put(iconView, pending);
+            return;
+        }
+
+        Loadable loadable = new Loadable(mContext, mHandler, iconView, fso, filePath);
+        mRequests.put(iconView, loadable);
+        mPendingRequests.put(filePath, loadable);
+        mLoader.execute(loadable);
     }
 
-    private class WorkerHandler extends Handler {
-        public WorkerHandler(Looper looper) {
-            super(looper);
+    /**
+     * Method that cancels the pending request of a view. The load is cancelled if no
+     * other view waits for it.
+     *
+     * @param iconView The view
+     */
+    private void cancelRequest(ImageView iconView) {
+        Loadable previousForView = mRequests.remove(iconView);
+        if (previousForView != null && previousForView.removeView(iconView)) {
+            previousForView.cancelled = true;
+            if (mPendingRequests.get(previousForView.path) == previousForView) {
+                mPendingRequests.remove(previousForView.path);
+            }
+            if (mLoader != null) {
+                mLoader.remove(previousForView);
+            }
         }
+    }
 
-        @Override
-        public void handleMessage(Message msg) {
-            switch (msg.what) {
-                case MSG_LOAD:
-                    Loadable l = (Loadable) msg.obj;
-                    if (l.load()) {
-                        mHandler.obtainMessage(MSG_LOADED, l).sendToTarget();
+    /**
+     * Method that creates the loader of the drawables. The loader runs the most recent
+     * requests first (the ones of the rows that are on screen now), so the requests of
+     * the rows that scrolled away wait (and are cancelled) instead of delaying them.
+     *
+     * @return ThreadPoolExecutor The loader
+     */
+    private static ThreadPoolExecutor createLoader() {
+        final AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor loader = new ThreadPoolExecutor(
+                LOADER_THREADS, LOADER_THREADS, LOADER_KEEP_ALIVE, TimeUnit.SECONDS,
+                new LinkedBlockingDeque<Runnable>() {
+                    private static final long serialVersionUID = 1L;
+                    @Override
+                    public boolean offer(Runnable r) {
+                        // LIFO
+                        return offerFirst(r);
                     }
-                    break;
-            }
-        }
+                },
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        return new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                r.run();
+                            }
+                        }, "IconHolderLoader-" + count.incrementAndGet()); //$NON-NLS-1$
+                    }
+                });
+        loader.allowCoreThreadTimeOut(true);
+        return loader;
+    }
+
+    /**
+     * Method that returns the average time since a drawable is requested until it's
+     * loaded.
+     *
+     * @return float The average load latency (in milliseconds)
+     */
+    public float getAverageLoadLatency() {
+        return mLoadedRequests == 0 ? 0f : (float)mLoadTime / mLoadedRequests;
     }
 
     /**
-     * Shut down worker thread
+     * Shut down the loader threads
      */
     private void shutdownWorker() {
-        if (mWorkerThread != null) {
-            mWorkerThread.getLooper().quit();
-            mWorkerHandler = null;
-            mWorkerThread = null;
+        if (mLoader != null) {
+            mLoader.shutdownNow();
+            mLoader = null;
         }
+        mPendingRequests.clear();
     }
 
     /**
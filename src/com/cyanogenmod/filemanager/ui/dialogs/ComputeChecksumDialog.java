@@ -33,6 +33,8 @@ import android.widget.Toast;
 import com.cyanogenmod.filemanager.R;
 import com.cyanogenmod.filemanager.commands.AsyncResultExecutable;
 import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.commands.ChecksumExecutable.CHECKSUMS;
+import com.cyanogenmod.filemanager.commands.ChecksumExecutable.OnChecksumProgressListener;
 import com.cyanogenmod.filemanager.model.FileSystemObject;
 import com.cyanogenmod.filemanager.ui.ThemeManager;
 import com.cyanogenmod.filemanager.ui.ThemeManager.Theme;
@@ -43,7 +45,8 @@ import com.cyanogenmod.filemanager.util.ExceptionUtil;
  * A class that wraps a dialog for computing the checksums of a {@link FileSystemObject}
  */
 public class ComputeChecksumDialog implements
-    DialogInterface.OnClickListener, View.OnClickListener, AsyncResultListener {
+    DialogInterface.OnClickListener, View.OnClickListener, AsyncResultListener,
+    OnChecksumProgressListener {
 
     /**
      * @hide
@@ -72,13 +75,23 @@ public class ComputeChecksumDialog implements
     /**
      * @hide
      */
-    EditText[] mChecksums = new EditText[2];
+    EditText[] mChecksums = new EditText[CHECKSUMS.values().length];
+
+    /**
+     * @hide
+     */
+    View[] mLabels = new View[CHECKSUMS.values().length];
 
     /**
      * @hide
      */
     int mComputeStatus;
 
+    /**
+     * @hide
+     */
+    int mProgress;
+
     private final ClipboardManager mClipboardMgr;
 
     /**
@@ -107,10 +120,20 @@ public class ComputeChecksumDialog implements
         tvFileName.setText(fso.getFullPath());
         this.mChecksums[0] = (EditText)layout.findViewById(R.id.checksum_md5);
         this.mChecksums[1] = (EditText)layout.findViewById(R.id.checksum_sha1);
+        this.mChecksums[2] = (EditText)layout.findViewById(R.id.checksum_sha256);
+        this.mChecksums[3] = (EditText)layout.findViewById(R.id.checksum_crc32);
+        this.mLabels[0] = layout.findViewById(R.id.checksum_md5_label);
+        this.mLabels[1] = layout.findViewById(R.id.checksum_sha1_label);
+        this.mLabels[2] = layout.findViewById(R.id.checksum_sha256_label);
+        this.mLabels[3] = layout.findViewById(R.id.checksum_crc32_label);
         View btMD5 = layout.findViewById(R.id.bt_md5_clipboard);
         btMD5.setOnClickListener(this);
         View btSHA1 = layout.findViewById(R.id.bt_sha1_clipboard);
         btSHA1.setOnClickListener(this);
+        View btSHA256 = layout.findViewById(R.id.bt_sha256_clipboard);
+        btSHA256.setOnClickListener(this);
+        View btCRC32 = layout.findViewById(R.id.bt_crc32_clipboard);
+        btCRC32.setOnClickListener(this);
 
         // Apply the theme
         applyTheme(context, layout);
@@ -186,6 +209,15 @@ public class ComputeChecksumDialog implements
                 digest = this.mChecksums[1].getText().toString();
                 label = String.format("SHA-1 Checksum - %s", this.mFso.getFullPath()); //$NON-NLS-1$
                 break;
+            case R.id.bt_sha256_clipboard:
+                digest = this.mChecksums[2].getText().toString();
+                label = String.format("SHA-256 Checksum - %s", //$NON-NLS-1$
+                        this.mFso.getFullPath());
+                break;
+            case R.id.bt_crc32_clipboard:
+                digest = this.mChecksums[3].getText().toString();
+                label = String.format("CRC32 Checksum - %s", this.mFso.getFullPath()); //$NON-NLS-1$
+                break;
 
             default:
                 break;
@@ -219,18 +251,24 @@ public class ComputeChecksumDialog implements
      * {@inheritDoc}
      */
     @Override
-    public void onAsyncExitCode(int exitCode) {
-        if (exitCode != 0) {
-            this.mHandler.post(new Runnable() {
-                @Override
-                public void run() {
-                    int cc = ComputeChecksumDialog.this.mChecksums.length;
-                    for (int i = ComputeChecksumDialog.this.mComputeStatus; i < cc; i++) {
-                        ComputeChecksumDialog.this.mChecksums[i].setText(R.string.error_message);
+    public void onAsyncExitCode(final int exitCode) {
+        this.mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                int cc = ComputeChecksumDialog.this.mChecksums.length;
+                for (int i = ComputeChecksumDialog.this.mComputeStatus; i < cc; i++) {
+                    if (exitCode != 0) {
+                        ComputeChecksumDialog.this.mChecksums[i].setText(
+                                R.string.error_message);
+                    } else {
+                        // The checksums not calculated by the console aren't shown
+                        ComputeChecksumDialog.this.mLabels[i].setVisibility(View.GONE);
+                        ((View)ComputeChecksumDialog.this.mChecksums[i].getParent())
+                                .setVisibility(View.GONE);
                     }
                 }
-            });
-        }
+            }
+        });
     }
 
     /**
@@ -246,6 +284,30 @@ public class ComputeChecksumDialog implements
         });
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onChecksumProgress(String file, long read, long total) {
+        final int progress = total <= 0 ? 0 : (int)(read * 100 / total);
+        if (progress == this.mProgress) {
+            return;
+        }
+        this.mProgress = progress;
+        this.mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                String msg = ComputeChecksumDialog.this.mContext.getString(
+                        R.string.compute_checksum_computing_checksum_progress_msg,
+                        Integer.valueOf(progress));
+                int cc = ComputeChecksumDialog.this.mChecksums.length;
+                for (int i = ComputeChecksumDialog.this.mComputeStatus; i < cc; i++) {
+                    ComputeChecksumDialog.this.mChecksums[i].setText(msg);
+                }
+            }
+        });
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -287,9 +349,21 @@ public class ComputeChecksumDialog implements
         theme.setTextColor(ctx, (TextView)v, "text_color"); //$NON-NLS-1$
         theme.setBackgroundColor(ctx, this.mChecksums[1], "console_bg_color"); //$NON-NLS-1$
         theme.setTextColor(ctx, this.mChecksums[1], "console_fg_color"); //$NON-NLS-1$
+        v = root.findViewById(R.id.checksum_sha256_label);
+        theme.setTextColor(ctx, (TextView)v, "text_color"); //$NON-NLS-1$
+        theme.setBackgroundColor(ctx, this.mChecksums[2], "console_bg_color"); //$NON-NLS-1$
+        theme.setTextColor(ctx, this.mChecksums[2], "console_fg_color"); //$NON-NLS-1$
+        v = root.findViewById(R.id.checksum_crc32_label);
+        theme.setTextColor(ctx, (TextView)v, "text_color"); //$NON-NLS-1$
+        theme.setBackgroundColor(ctx, this.mChecksums[3], "console_bg_color"); //$NON-NLS-1$
+        theme.setTextColor(ctx, this.mChecksums[3], "console_fg_color"); //$NON-NLS-1$
         v = root.findViewById(R.id.bt_md5_clipboard);
         theme.setImageDrawable(ctx, (ImageView)v, "ic_copy_drawable"); //$NON-NLS-1$
         v = root.findViewById(R.id.bt_sha1_clipboard);
         theme.setImageDrawable(ctx, (ImageView)v, "ic_copy_drawable"); //$NON-NLS-1$
+        v = root.findViewById(R.id.bt_sha256_clipboard);
+        theme.setImageDrawable(ctx, (ImageView)v, "ic_copy_drawable"); //$NON-NLS-1$
+        v = root.findViewById(R.id.bt_crc32_clipboard);
+        theme.setImageDrawable(ctx, (ImageView)v, "ic_copy_drawable"); //$NON-NLS-1$
     }
 }
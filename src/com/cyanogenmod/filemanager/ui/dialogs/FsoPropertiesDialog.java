@@ -92,7 +92,7 @@ public class FsoPropertiesDialog
     /**
      * @hide
      */
-    final FileSystemObject mFso;
+    FileSystemObject mFso;
     /**
      * @hide
      */
@@ -166,8 +166,9 @@ public class FsoPropertiesDialog
         //Save the context
         this.mContext = context;
 
-        //Save data
+        //Save data. The dialog displays all the attributes, load them now
         this.mFso = fso;
+        this.mFso.loadAttributes();
         this.mHasChanged = false;
         this.mIgnoreCheckEvents = true;
         this.mHasPrivileged = false;
@@ -223,6 +224,41 @@ public class FsoPropertiesDialog
         DialogHelper.delegateDialogShow(this.mContext, this.mDialog);
     }
 
+    /**
+     * Method that reads again the associated {@link FileSystemObject} after a change
+     * of its attributes.
+     *
+     * @return boolean If the reference was read again
+     */
+    private boolean reloadFso() {
+        try {
+            FileSystemObject fso = CommandHelper.getFileInfo(
+                    this.mContext, this.mFso.getFullPath(), false, null);
+            if (fso != null) {
+                replaceFso(fso);
+                return true;
+            }
+        } catch (Exception e) {/**NON BLOCK**/}
+        return false;
+    }
+
+    /**
+     * Method that replaces the associated {@link FileSystemObject} with the one read
+     * from the system after a change. The reference isn't changed in place, because it
+     * can be a view of a {@link com.cyanogenmod.filemanager.model.DirectorySnapshot},
+     * whose changes are not stored in the snapshot.
+     *
+     * @param fso The file system object read from the system
+     */
+    private void replaceFso(FileSystemObject fso) {
+        fso.loadAttributes();
+        if (fso instanceof Symlink && this.mFso instanceof Symlink
+                && ((Symlink)fso).getLinkRef() == null) {
+            ((Symlink)fso).setLinkRef(((Symlink)this.mFso).getLinkRef());
+        }
+        this.mFso = fso;
+    }
+
     /**
      * Method that return the associated {@link FileSystemObject} reference
      *
@@ -642,8 +678,9 @@ public class FsoPropertiesDialog
                 return;
             }
 
-            // The permission was changed. Refresh the information
-            this.mFso.setPermissions(permissions);
+            // The permission was changed. Refresh the information with the fso read
+            // from the system
+            replaceFso(systemFso);
             this.mHasChanged = true;
             setMsg(null);
 
@@ -747,9 +784,11 @@ public class FsoPropertiesDialog
                 return;
             }
 
-            //Change the fso reference
-            this.mFso.setUser(user);
-            this.mFso.setGroup(group);
+            //Read the fso again (or change the reference if it can't be read)
+            if (!reloadFso()) {
+                this.mFso.setUser(user);
+                this.mFso.setGroup(group);
+            }
             this.mHasChanged = true;
             setMsg(null);
 
@@ -21,22 +21,29 @@ import android.content.Context;
 import android.content.DialogInterface;
 import android.text.Html;
 import android.text.Spanned;
+import android.text.format.DateUtils;
+import android.text.format.Formatter;
 import android.util.Log;
 
 import com.cyanogenmod.filemanager.R;
 import com.cyanogenmod.filemanager.console.Console;
+import com.cyanogenmod.filemanager.console.ConsoleBuilder;
 import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
 import com.cyanogenmod.filemanager.console.RelaunchableException;
+import com.cyanogenmod.filemanager.console.VirtualMountPointConsole;
 import com.cyanogenmod.filemanager.console.secure.SecureConsole;
 import com.cyanogenmod.filemanager.listeners.OnRequestRefreshListener;
 import com.cyanogenmod.filemanager.listeners.OnSelectionListener;
 import com.cyanogenmod.filemanager.model.FileSystemObject;
+import com.cyanogenmod.filemanager.model.MountPoint;
 import com.cyanogenmod.filemanager.preferences.Bookmarks;
 import com.cyanogenmod.filemanager.util.CommandHelper;
+import com.cyanogenmod.filemanager.util.CopyEngine;
 import com.cyanogenmod.filemanager.util.DialogHelper;
 import com.cyanogenmod.filemanager.util.ExceptionUtil;
 import com.cyanogenmod.filemanager.util.ExceptionUtil.OnRelaunchCommandResult;
 import com.cyanogenmod.filemanager.util.FileHelper;
+import com.cyanogenmod.filemanager.util.MountPointHelper;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -273,6 +280,9 @@ public final class CopyMoveActionPolicy extends ActionsPolicy {
             final Object mSync = new Object();
             Throwable mCause;
 
+            // The engine of the copies and moves of files accessible by the application
+            private volatile CopyEngine mEngine;
+
             @Override
             public int getDialogTitle() {
                 return this.mOperation.equals(COPY_MOVE_OPERATION.MOVE)
@@ -292,6 +302,11 @@ public final class CopyMoveActionPolicy extends ActionsPolicy {
 
             @Override
             public Spanned requestProgress() {
+                CopyEngine engine = this.mEngine;
+                if (engine != null && engine.getCurrentSource() != null) {
+                    return requestEngineProgress(engine);
+                }
+
                 File src = this.mFiles.get(this.mCurrent).mSrc;
                 File dst = this.mFiles.get(this.mCurrent).mDst;
 
@@ -308,6 +323,27 @@ public final class CopyMoveActionPolicy extends ActionsPolicy {
                 return Html.fromHtml(progress);
             }
 
+            private Spanned requestEngineProgress(CopyEngine engine) {
+                long remaining = engine.getRemainingTime();
+                String progress =
+                      this.mCtx.getResources().
+                          getString(
+                              this.mOperation.equals(COPY_MOVE_OPERATION.MOVE) ?
+                                  R.string.waiting_dialog_moving_msg :
+                                  R.string.waiting_dialog_copying_msg,
+                              engine.getCurrentSource().getAbsolutePath(),
+                              engine.getCurrentDestination().getAbsolutePath());
+                progress += this.mCtx.getResources().
+                          getString(
+                              R.string.waiting_dialog_copy_progress_msg,
+                              Formatter.formatFileSize(this.mCtx, engine.getCopiedBytes()),
+                              Formatter.formatFileSize(this.mCtx, engine.getTotalBytes()),
+                              remaining < 0 ?
+                                  "-" : //$NON-NLS-1$
+                                  DateUtils.formatElapsedTime(remaining / 1000L));
+                return Html.fromHtml(progress);
+            }
+
             private void refreshUIAfterCompletion() {
                 // Remove orphan bookmark paths
                 if (files != null) {
@@ -345,7 +381,38 @@ public final class CopyMoveActionPolicy extends ActionsPolicy {
 
                 // This method expect to receive
                 // 1.- BackgroundAsyncTask
-                BackgroundAsyncTask task = (BackgroundAsyncTask)params[0];
+                final BackgroundAsyncTask task = (BackgroundAsyncTask)params[0];
+
+                if (canUseCopyEngine(this.mOperation, this.mFiles)) {
+                    // Copy all the files at once, instead of one by one
+                    CopyEngine engine = new CopyEngine(
+                            CopyEngine.getDefaultParallelism(this.mCtx),
+                            this.mOperation.equals(COPY_MOVE_OPERATION.MOVE),
+                            new CopyEngine.OnCopyEngineListener() {
+                                @Override
+                                public void onCopyProgress(CopyEngine e) {
+                                    task.onRequestProgress();
+                                }
+                            });
+                    for (LinkedResource linkedRes : this.mFiles) {
+                        engine.add(linkedRes.mSrc, linkedRes.mDst);
+                    }
+                    this.mEngine = engine;
+                    engine.execute();
+
+                    // Do media scan, like the consoles do
+                    boolean move = this.mOperation.equals(COPY_MOVE_OPERATION.MOVE);
+                    for (LinkedResource linkedRes : this.mFiles) {
+                        String src = linkedRes.mSrc.getAbsolutePath();
+                        String dst = linkedRes.mDst.getAbsolutePath();
+                        if (move) {
+                            CommandHelper.scanMovedFile(this.mCtx, src, dst);
+                        } else {
+                            CommandHelper.scanCopiedFile(this.mCtx, dst);
+                        }
+                    }
+                    return;
+                }
 
                 int cc2 = this.mFiles.size();
                 for (int i = 0; i < cc2; i++) {
@@ -364,6 +431,9 @@ public final class CopyMoveActionPolicy extends ActionsPolicy {
 
             @Override
             public void onCancel() {
+                if (mEngine != null) {
+                    mEngine.cancel();
+                }
                 if (mSrcConsole != null) {
                     mSrcConsole.onCancel();
                 }
@@ -519,6 +589,61 @@ public final class CopyMoveActionPolicy extends ActionsPolicy {
         task.execute(task);
     }
 
+    /**
+     * Method that checks if the operation can be done by a {@link CopyEngine}. Only
+     * copies and moves of files outside of virtual mount points, accessible by the
+     * application and in filesystems that don't need to be remounted as read-write can
+     * be done from java; the rest are done one by one by the consoles. The privileged
+     * console always does the operation, because it can read files of the tree that
+     * the application can't, and the engine would stop in the middle of the copy.
+     *
+     * @param operation The operation to do
+     * @param files The list of source/destination files
+     * @return boolean If the operation can be done by a {@link CopyEngine}
+     */
+    private static boolean canUseCopyEngine(
+            COPY_MOVE_OPERATION operation, List<LinkedResource> files) {
+        if (!operation.equals(COPY_MOVE_OPERATION.COPY)
+                && !operation.equals(COPY_MOVE_OPERATION.MOVE)) {
+            return false;
+        }
+        if (ConsoleBuilder.isPrivileged()) {
+            return false;
+        }
+        for (LinkedResource linkedRes : files) {
+            String src = linkedRes.mSrc.getAbsolutePath();
+            String dst = linkedRes.mDst.getAbsolutePath();
+            if (VirtualMountPointConsole.getVirtualConsoleForPath(src) != null
+                    || VirtualMountPointConsole.getVirtualConsoleForPath(dst) != null) {
+                return false;
+            }
+            File dstParent = linkedRes.mDst.getParentFile();
+            if (!linkedRes.mSrc.canRead() || dstParent == null || !dstParent.canWrite()
+                    || !isReadWrite(dstParent)) {
+                return false;
+            }
+            if (operation.equals(COPY_MOVE_OPERATION.MOVE)) {
+                File srcParent = linkedRes.mSrc.getParentFile();
+                if (srcParent == null || !srcParent.canWrite() || !isReadWrite(srcParent)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Method that checks if the filesystem of a folder is mounted as read-write, so it
+     * doesn't need to be remounted before writing to it.
+     *
+     * @param dir The folder
+     * @return boolean If the filesystem is mounted as read-write (or it's unknown)
+     */
+    private static boolean isReadWrite(File dir) {
+        MountPoint mp = MountPointHelper.getMountPointFromDirectory(dir.getAbsolutePath());
+        return mp == null || MountPointHelper.isReadWrite(mp);
+    }
+
     /**
      * Method that check if is needed to prompt the user for overwrite prior to do
      * the operation.
@@ -19,10 +19,14 @@ package com.cyanogenmod.filemanager.ui.policy;
 import android.app.AlertDialog;
 import android.content.Context;
 import android.content.DialogInterface;
+import android.os.SystemClock;
 import android.text.Html;
 import android.text.Spanned;
+import android.util.Log;
 
 import com.cyanogenmod.filemanager.R;
+import com.cyanogenmod.filemanager.commands.BulkDeleteExecutable.OnBulkDeleteListener;
+import com.cyanogenmod.filemanager.console.CommandNotFoundException;
 import com.cyanogenmod.filemanager.console.ExecutionException;
 import com.cyanogenmod.filemanager.console.RelaunchableException;
 import com.cyanogenmod.filemanager.listeners.OnRequestRefreshListener;
@@ -39,7 +43,9 @@ import com.cyanogenmod.filemanager.util.FileHelper;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 
 /**
@@ -47,6 +53,11 @@ import java.util.List;
  */
 public final class DeleteActionPolicy extends ActionsPolicy {
 
+    private static final String TAG = "DeleteActionPolicy"; //$NON-NLS-1$
+
+    // The minimum time between progress reports of a bulk delete (in milliseconds)
+    private static final long PROGRESS_INTERVAL = 250L;
+
     /**
      * Method that remove an existing file system object.
      *
@@ -161,8 +172,9 @@ public final class DeleteActionPolicy extends ActionsPolicy {
 
         // The callable interface
         final BackgroundCallable callable = new BackgroundCallable() {
-            // The current items
-            private int mCurrent = 0;
+            // The current item
+            private volatile String mCurrent = sortedFsos.get(0).getFullPath();
+            private volatile long mLastProgress;
             final Context mCtx = ctx;
             final List<FileSystemObject> mFiles = sortedFsos;
             final OnRequestRefreshListener mOnRequestRefreshListener = onRequestRefreshListener;
@@ -185,14 +197,12 @@ public final class DeleteActionPolicy extends ActionsPolicy {
 
             @Override
             public Spanned requestProgress() {
-                FileSystemObject fso = this.mFiles.get(this.mCurrent);
-
                 // Return the current operation
                 String progress =
                       this.mCtx.getResources().
                           getString(
                               R.string.waiting_dialog_deleting_msg,
-                              fso.getFullPath());
+                              this.mCurrent);
                 return Html.fromHtml(progress);
             }
 
@@ -237,18 +247,65 @@ public final class DeleteActionPolicy extends ActionsPolicy {
                 // 1.- BackgroundAsyncTask
                 BackgroundAsyncTask task = (BackgroundAsyncTask)params[0];
 
-                int cc = this.mFiles.size();
+                // Delete all the items at once. The items that weren't deleted (all of them,
+                // if the console doesn't support bulk deletes) are deleted one by one, to
+                // relaunch the operation or report the cause of the failure
+                List<FileSystemObject> pending = doBulkOperation(this.mCtx, task);
+                int cc = pending.size();
                 for (int i = 0; i < cc; i++) {
-                    FileSystemObject fso = this.mFiles.get(i);
+                    FileSystemObject fso = pending.get(i);
+                    if (i > 0) {
+                        this.mCurrent = fso.getFullPath();
+                        task.onRequestProgress();
+                    }
 
                     doOperation(this.mCtx, fso);
+                }
+            }
 
-                    // Next file
-                    this.mCurrent++;
-                    if (this.mCurrent < this.mFiles.size()) {
-                        task.onRequestProgress();
+            /**
+             * Method that deletes all the files and directories at once
+             *
+             * @param ctx The current context
+             * @param task The task where to report the progress
+             * @return List<FileSystemObject> The files and directories that weren't deleted
+             */
+            private List<FileSystemObject> doBulkOperation(
+                    final Context ctx, final BackgroundAsyncTask task) {
+                final Set<String> deleted = Collections.synchronizedSet(new HashSet<String>());
+                try {
+                    CommandHelper.deleteFiles(ctx, this.mFiles, new OnBulkDeleteListener() {
+                        @Override
+                        @SuppressWarnings("unqualified-field-access")
+                        public void onDeleteProgress(String path, boolean ok) {
+                            if (ok) {
+                                deleted.add(path);
+                            }
+                            long now = SystemClock.elapsedRealtime();
+                            if (now - mLastProgress >= PROGRESS_INTERVAL) {
+                                mLastProgress = now;
+                                mCurrent = path;
+                                task.onRequestProgress();
+                            }
+                        }
+                    }, null);
+                } catch (CommandNotFoundException e) {
+                    // Not supported by the console
+                } catch (Exception e) {
+                    Log.w(TAG, "Failed to delete the files at once", e); //$NON-NLS-1$
+                }
+
+                List<FileSystemObject> pending = new ArrayList<FileSystemObject>();
+                for (FileSystemObject fso : this.mFiles) {
+                    if (!deleted.contains(fso.getFullPath())) {
+                        pending.add(fso);
                     }
                 }
+                if (!pending.isEmpty()) {
+                    this.mCurrent = pending.get(0).getFullPath();
+                    task.onRequestProgress();
+                }
+                return pending;
             }
 
             /**
@@ -17,18 +17,23 @@
 package com.cyanogenmod.filemanager.ui.widgets;
 
 import android.content.Context;
+import android.os.AsyncTask;
 import android.util.AttributeSet;
 import android.util.Log;
 
-import com.cyanogenmod.filemanager.util.CommandHelper;
 import com.cyanogenmod.filemanager.util.FileHelper;
+import com.cyanogenmod.filemanager.util.FolderCompletion;
 
 import java.io.File;
 import java.util.List;
 
 /**
  * A widget based on  {@link InlineAutocompleteTextView} for autocomplete
- * directories like a bash console do (with tab key).
+ * directories like a bash console do (with tab key).<br/>
+ * <br/>
+ * The folders are completed in-process (see {@link FolderCompletion}). The folders of
+ * a new parent directory are loaded in background, after a short delay without changes
+ * of the parent, and a pending load is cancelled when the parent changes again.
  */
 public class DirectoryInlineAutocompleteTextView
                     extends InlineAutocompleteTextView
@@ -54,8 +59,14 @@ public class DirectoryInlineAutocompleteTextView
 
     private static final String TAG = "DirectoryInlineAutocompleteTextView"; //$NON-NLS-1$
 
+    // The time without changes of the parent directory before loading its folders
+    private static final long LOAD_DELAY = 100L;
+
     private OnValidationListener mOnValidationListener;
     private String mLastParent;
+    private String mLoadParent;
+    private Runnable mLoadRunnable;
+    private AsyncTask<Void, Void, List<String>> mLoadTask;
 
     /**
      * Constructor of <code>DirectoryInlineAutocompleteTextView</code>.
@@ -165,22 +176,103 @@ public class DirectoryInlineAutocompleteTextView
                 newParent += File.separator;
             }
             currentFilterData.clear();
-        } else {
-            value = newParent;
         }
 
         //If a new path is detected, then load the new data
         if (newParent.compareTo(this.mLastParent) != 0 || currentFilterData.isEmpty()) {
             this.mLastParent = newParent;
             currentFilterData.clear();
-            try {
-                List<String> newData =
-                        CommandHelper.quickFolderSearch(getContext(), value, null);
-                currentFilterData.addAll(newData);
-            } catch (Throwable ex) {
-                Log.e(TAG, "Quick folder search failed", ex); //$NON-NLS-1$
-                currentFilterData.clear();
+            loadFolders(newParent, currentFilterData);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected List<String> filter(List<String> data, String current) {
+        return FolderCompletion.complete(data, current);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onDetachedFromWindow() {
+        cancelLoad();
+        super.onDetachedFromWindow();
+    }
+
+    /**
+     * Method that loads the folders of a parent directory in the filter data. The
+     * cached folders are loaded at once; otherwise they are loaded in background.
+     *
+     * @param parent The parent directory
+     * @param filterData The filter data
+     */
+    private void loadFolders(final String parent, final List<String> filterData) {
+        List<String> folders = FolderCompletion.getCachedFolders(parent);
+        if (folders != null) {
+            cancelLoad();
+            filterData.addAll(folders);
+            return;
+        }
+        if (parent.equals(this.mLoadParent)
+                && (this.mLoadRunnable != null || this.mLoadTask != null)) {
+            // Already loading
+            return;
+        }
+        cancelLoad();
+        this.mLoadParent = parent;
+
+        this.mLoadRunnable = new Runnable() {
+            @Override
+            public void run() {
+                DirectoryInlineAutocompleteTextView.this.mLoadRunnable = null;
+                DirectoryInlineAutocompleteTextView.this.mLoadTask =
+                        new AsyncTask<Void, Void, List<String>>() {
+                    @Override
+                    protected List<String> doInBackground(Void... params) {
+                        try {
+                            return FolderCompletion.loadFolders(getContext(), parent);
+                        } catch (Throwable ex) {
+                            Log.e(TAG, "Quick folder search failed", ex); //$NON-NLS-1$
+                        }
+                        return null;
+                    }
+
+                    @Override
+                    protected void onPostExecute(List<String> result) {
+                        if (DirectoryInlineAutocompleteTextView.this.mLoadTask != this) {
+                            return;
+                        }
+                        DirectoryInlineAutocompleteTextView.this.mLoadTask = null;
+                        if (result != null && filterData.isEmpty()
+                                && parent.equals(
+                                        DirectoryInlineAutocompleteTextView.this.mLastParent)) {
+                            filterData.addAll(result);
+                            onFilterDataChanged();
+                        }
+                    }
+                };
+                DirectoryInlineAutocompleteTextView.this.mLoadTask.executeOnExecutor(
+                        AsyncTask.THREAD_POOL_EXECUTOR);
             }
+        };
+        postDelayed(this.mLoadRunnable, LOAD_DELAY);
+    }
+
+    /**
+     * Method that cancels the pending load of folders.
+     */
+    private void cancelLoad() {
+        if (this.mLoadRunnable != null) {
+            removeCallbacks(this.mLoadRunnable);
+            this.mLoadRunnable = null;
+        }
+        if (this.mLoadTask != null) {
+            this.mLoadTask.cancel(true);
+            this.mLoadTask = null;
         }
     }
 }
@@ -362,8 +362,11 @@ public class InlineAutocompleteTextView extends RelativeLayout
         if (filteredData.size() <= this.mFilter) {
             this.mFilter = 0;
         }
-        if (filteredData.size() == 1 && this.mFilter == 0) {
-            //Autocomplete with the only autocomplete option
+        if ((filteredData.size() == 1 && this.mFilter == 0) ||
+                (filteredData.size() > 0 &&
+                        !filteredData.get(this.mFilter).startsWith(current))) {
+            //Autocomplete with the only autocomplete option (or with the best option, if
+            //it doesn't start with the current text and can't be shown inline)
             setText(filteredData.get(this.mFilter));
         } else {
             //Show the autocomplete options
@@ -375,6 +378,19 @@ public class InlineAutocompleteTextView extends RelativeLayout
         }
     }
 
+    /**
+     * Method that must be invoked when the filter data was changed after the
+     * text changed event (for example, if the data is loaded in background).
+     */
+    protected void onFilterDataChanged() {
+        this.mFilter = 0;
+        String value = getText();
+        if (this.mCompletionString != null && value.length() > 0 &&
+                !value.endsWith(this.mCompletionString)) {
+            autocomplete();
+        }
+    }
+
     /**
      * Method that creates a temporary filter based in the current text
      *
@@ -382,7 +398,7 @@ public class InlineAutocompleteTextView extends RelativeLayout
      * @param current The current text
      * @return The filtered data array
      */
-    private static List<String> filter(List<String> data, String current) {
+    protected List<String> filter(List<String> data, String current) {
         List<String> filter = new ArrayList<String>(data);
         int size = filter.size();
         for (int i = size-1; i >= 0; i--) {
@@ -38,13 +38,16 @@ import com.cyanogenmod.filemanager.FileManagerApplication;
 import com.cyanogenmod.filemanager.R;
 import com.cyanogenmod.filemanager.adapters.FileSystemObjectAdapter;
 import com.cyanogenmod.filemanager.adapters.FileSystemObjectAdapter.OnSelectionChangedListener;
+import com.cyanogenmod.filemanager.commands.ListExecutable;
 import com.cyanogenmod.filemanager.console.CancelledOperationException;
 import com.cyanogenmod.filemanager.console.ConsoleAllocException;
+import com.cyanogenmod.filemanager.console.ConsoleBuilder;
 import com.cyanogenmod.filemanager.console.VirtualMountPointConsole;
 import com.cyanogenmod.filemanager.listeners.OnHistoryListener;
 import com.cyanogenmod.filemanager.listeners.OnRequestRefreshListener;
 import com.cyanogenmod.filemanager.listeners.OnSelectionListener;
 import com.cyanogenmod.filemanager.model.Directory;
+import com.cyanogenmod.filemanager.model.DirectorySnapshot;
 import com.cyanogenmod.filemanager.model.FileSystemObject;
 import com.cyanogenmod.filemanager.model.ParentDirectory;
 import com.cyanogenmod.filemanager.model.Symlink;
@@ -64,13 +67,20 @@ import com.cyanogenmod.filemanager.ui.widgets.FlingerListView.OnItemFlingerListe
 import com.cyanogenmod.filemanager.ui.widgets.FlingerListView.OnItemFlingerResponder;
 import com.cyanogenmod.filemanager.util.CommandHelper;
 import com.cyanogenmod.filemanager.util.DialogHelper;
+import com.cyanogenmod.filemanager.util.DirectoryObserver;
+import com.cyanogenmod.filemanager.util.DirectoryObserver.OnDirectoryEventsListener;
 import com.cyanogenmod.filemanager.util.ExceptionUtil;
 import com.cyanogenmod.filemanager.util.ExceptionUtil.OnRelaunchCommandResult;
 import com.cyanogenmod.filemanager.util.FileHelper;
+import com.cyanogenmod.filemanager.util.ListingCache;
+import com.cyanogenmod.filemanager.util.ListingPrefetcher;
+import com.cyanogenmod.filemanager.util.MimeTypeSniffer;
 import com.cyanogenmod.filemanager.util.StorageHelper;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -82,7 +92,8 @@ import java.util.Map;
  */
 public class NavigationView extends RelativeLayout implements
 AdapterView.OnItemClickListener, AdapterView.OnItemLongClickListener,
-BreadcrumbListener, OnSelectionChangedListener, OnSelectionListener, OnRequestRefreshListener {
+BreadcrumbListener, OnSelectionChangedListener, OnSelectionListener, OnRequestRefreshListener,
+OnDirectoryEventsListener {
 
     private static final String TAG = "NavigationView"; //$NON-NLS-1$
 
@@ -222,6 +233,7 @@ BreadcrumbListener, OnSelectionChangedListener, OnSelectionListener, OnRequestRe
         private final FileSystemObject mScrollTo;
         private final Map<DisplayRestrictions, Object> mRestrictions;
         private final boolean mChRooted;
+        private List<FileSystemObject> mCachedFiles;
 
         public NavigationTask(boolean useCurrent, boolean addToHistory, boolean reload,
                 SearchInfoParcelable searchInfo, FileSystemObject scrollTo,
@@ -278,7 +290,22 @@ BreadcrumbListener, OnSelectionChangedListener, OnSelectionListener, OnRequestRe
                 //(sort, hidden, ...)
                 List<FileSystemObject> files = NavigationView.this.mFiles;
                 if (!mUseCurrent) {
-                    files = CommandHelper.listFiles(getContext(), mNewDirChecked, null);
+                    // Render the last listing of the directory (if the directory wasn't
+                    // changed) while the directory is listed again to revalidate it
+                    List<FileSystemObject> cachedFiles =
+                            CommandHelper.getCachedListing(getContext(), mNewDirChecked, null);
+                    if (cachedFiles != null) {
+                        renderCachedFiles(cachedFiles);
+                    }
+
+                    // Big directories are listed in chunks (if the console supports it).
+                    // Render the first chunk while the rest of the directory is listed
+                    ListExecutable.OnPartialListListener firstChunkListener = null;
+                    if (mHasChanged && cachedFiles == null) {
+                        firstChunkListener = new FirstChunkListener();
+                    }
+                    files = CommandHelper.listFiles(
+                            getContext(), mNewDirChecked, firstChunkListener, null);
                 }
 
                 //Apply user preferences
@@ -336,8 +363,8 @@ BreadcrumbListener, OnSelectionChangedListener, OnSelectionListener, OnRequestRe
                                     return;
                                 }
                                 onPostExecuteTask(
-                                        mTaskFiles, mAddToHistory, mIsNewHistory, mHasChanged,
-                                        mSearchInfo, mNewDirChecked, mScrollTo);
+                                        mTaskFiles, null, mAddToHistory, mIsNewHistory,
+                                        mHasChanged, mSearchInfo, mNewDirChecked, mScrollTo);
                             }
                         });
                 final OnRelaunchCommandResult exListener =
@@ -373,13 +400,72 @@ BreadcrumbListener, OnSelectionChangedListener, OnSelectionListener, OnRequestRe
             onCancelled();
         }
 
+        /**
+         * Method that renders the cached listing of the directory, before the directory
+         * is listed again.
+         *
+         * @param cachedFiles The cached listing of the directory
+         */
+        private void renderCachedFiles(List<FileSystemObject> cachedFiles) {
+            final List<FileSystemObject> sortedFiles =
+                    FileHelper.applyUserPreferences(cachedFiles, this.mRestrictions,
+                            this.mChRooted);
+            //Remove parent directory if we are in the root of a chrooted environment
+            if (this.mChRooted && StorageHelper.isStorageVolume(this.mNewDirChecked)) {
+                if (sortedFiles.size() > 0 && sortedFiles.get(0) instanceof ParentDirectory) {
+                    sortedFiles.remove(0);
+                }
+            }
+            this.mCachedFiles = sortedFiles;
+            NavigationView.this.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!isCancelled()) {
+                        loadData(sortedFiles);
+                        scrollTo(NavigationTask.this.mScrollTo);
+                    }
+                }
+            });
+        }
+
+        /**
+         * A listener that renders the first chunk of a listing, before the full
+         * listing of the directory ends.
+         */
+        private class FirstChunkListener implements ListExecutable.OnPartialListListener {
+            private boolean mRendered;
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void onPartialList(List<FileSystemObject> files) {
+                if (this.mRendered || isCancelled()) {
+                    return;
+                }
+                this.mRendered = true;
+                final List<FileSystemObject> sortedFiles =
+                        FileHelper.applyUserPreferences(
+                                files, NavigationTask.this.mRestrictions,
+                                NavigationTask.this.mChRooted);
+                NavigationView.this.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!isCancelled()) {
+                            loadData(sortedFiles);
+                        }
+                    }
+                });
+            }
+        }
+
         /**
          * {@inheritDoc}
          */
         @Override
         protected void onPostExecute(List<FileSystemObject> files) {
             // This means an exception. This method will be recalled then
-            onPostExecuteTask(files, mAddToHistory, mIsNewHistory, mHasChanged,
+            onPostExecuteTask(files, mCachedFiles, mAddToHistory, mIsNewHistory, mHasChanged,
                         mSearchInfo, mNewDirChecked, mScrollTo);
 
             // Do animation
@@ -432,6 +518,16 @@ BreadcrumbListener, OnSelectionChangedListener, OnSelectionListener, OnRequestRe
     private Map<DisplayRestrictions, Object> mRestrictions;
 
     private NavigationTask mNavigationTask;
+    private AsyncTask<Void, Void, List<FileSystemObject>> mSortTask;
+
+    // Watches the current directory to apply its changes incrementally
+    private DirectoryObserver mDirectoryObserver;
+    private boolean mDeferredInvalidation;
+    private final List<String> mDeferredRemoved = new ArrayList<String>();
+    private final List<FileSystemObject> mDeferredChanged = new ArrayList<FileSystemObject>();
+
+    // Lists the visible subfolders before the user opens them
+    private ListingPrefetcher mPrefetcher;
 
     /**
      * @hide
@@ -562,6 +658,7 @@ BreadcrumbListener, OnSelectionChangedListener, OnSelectionListener, OnRequestRe
 
         //Initialize variables
         this.mFiles = new ArrayList<FileSystemObject>();
+        this.mPrefetcher = new ListingPrefetcher(getContext());
 
         // Is ChRooted environment?
         if (this.mNavigationMode.compareTo(NAVIGATION_MODE.PICKABLE) == 0) {
@@ -613,7 +710,7 @@ BreadcrumbListener, OnSelectionChangedListener, OnSelectionListener, OnRequestRe
         if (this.mFiles == null) {
             return null;
         }
-        return new ArrayList<FileSystemObject>(this.mFiles);
+        return new DirectorySnapshot(this.mFiles);
     }
 
     /**
@@ -833,15 +930,290 @@ BreadcrumbListener, OnSelectionChangedListener, OnSelectionListener, OnRequestRe
         changeCurrentDir(newDir, addToHistory, reload, useCurrent, searchInfo, scrollTo);
     }
 
+    /**
+     * Method that sorts again the current files, after a change of the sort preferences
+     * (sort mode, directories first or case sensitive sort). The sort keys of the listing
+     * are reused, so the directory isn't listed again.
+     */
+    public void resort() {
+        if (this.mCurrentDir == null || this.mFiles == null || this.mNavigationTask != null) {
+            refresh();
+            return;
+        }
+        if (this.mSortTask != null) {
+            this.mSortTask.cancel(false);
+        }
+
+        final String dir = this.mCurrentDir;
+        final List<FileSystemObject> files = new DirectorySnapshot(this.mFiles);
+        this.mSortTask = new AsyncTask<Void, Void, List<FileSystemObject>>() {
+            @Override
+            protected List<FileSystemObject> doInBackground(Void... params) {
+                return FileHelper.sortUserPreferences(files);
+            }
+
+            @Override
+            protected void onPostExecute(List<FileSystemObject> sorted) {
+                if (NavigationView.this.mSortTask != this) {
+                    return;
+                }
+                NavigationView.this.mSortTask = null;
+                if (NavigationView.this.mNavigationTask != null
+                        || !dir.equals(NavigationView.this.mCurrentDir)) {
+                    return;
+                }
+                loadData(sorted);
+                NavigationView.this.mFiles = sorted;
+                scrollTo(null);
+                applyDeferredChanges();
+            }
+
+            @Override
+            protected void onCancelled(List<FileSystemObject> sorted) {
+                if (NavigationView.this.mSortTask == this) {
+                    NavigationView.this.mSortTask = null;
+                }
+            }
+        };
+        this.mSortTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
     /**
      * Method that recycles this object
      */
     public void recycle() {
+        stopWatchingDirectory();
+        this.mPrefetcher.cancel();
         if (this.mAdapter != null) {
             this.mAdapter.dispose();
         }
     }
 
+    /**
+     * Method that refresh the view data after an operation over the current directory.
+     * If the current directory is being watched, its changes are applied incrementally
+     * (when they are reported by the directory observer) instead of listing the
+     * directory again. The operations over the selection done by a privileged or a
+     * virtual console always list the directory again, because the observer can't
+     * resolve all the changes they do.
+     *
+     * @param fso The changed object (it's also scrolled to). <code>null</code> if the
+     * changes are unknown
+     */
+    public void refreshChanges(FileSystemObject fso) {
+        if (!isWatchingCurrentDir() || (fso == null && !isSelectionObservable())) {
+            if (fso != null) {
+                refresh(fso);
+            } else {
+                refresh();
+            }
+            return;
+        }
+
+        if (fso != null && this.mCurrentDir.equals(fso.getParent())) {
+            List<FileSystemObject> changed = new ArrayList<FileSystemObject>(1);
+            changed.add(fso);
+            applyDirectoryChanges(new ArrayList<String>(0), changed);
+            scrollTo(fso);
+        }
+    }
+
+    /**
+     * Method that returns if the changes of an operation over the selection are
+     * reported by the directory observer, this is, if the operation isn't done by
+     * the privileged console or by the console of a virtual mount point.
+     *
+     * @return boolean If the changes of the operation are observed
+     */
+    private boolean isSelectionObservable() {
+        if (ConsoleBuilder.isPrivileged()) {
+            return false;
+        }
+        List<FileSystemObject> selection = getSelectedFiles();
+        if (selection == null) {
+            return true;
+        }
+        for (FileSystemObject selected : selection) {
+            if (VirtualMountPointConsole.getVirtualConsoleForPath(
+                    selected.getFullPath()) != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Method that returns if the current directory is being watched and the view is
+     * up to date with it.
+     *
+     * @return boolean If the current directory is being watched
+     */
+    private boolean isWatchingCurrentDir() {
+        return this.mDirectoryObserver != null
+                && this.mDirectoryObserver.isWatching()
+                && this.mNavigationTask == null
+                && this.mCurrentDir != null
+                && this.mCurrentDir.equals(this.mDirectoryObserver.getDirectory());
+    }
+
+    /**
+     * Method that starts watching the changes of a directory.
+     *
+     * @param dir The directory to watch
+     */
+    private void watchDirectory(String dir) {
+        if (this.mDirectoryObserver != null && this.mDirectoryObserver.isWatching()
+                && this.mDirectoryObserver.getDirectory().equals(dir)) {
+            // Apply the changes received while the directory was being listed (once
+            // the navigation task has ended)
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    applyDeferredChanges();
+                }
+            });
+            return;
+        }
+
+        stopWatchingDirectory();
+        // Virtual mount points and directories not readable by the application
+        // can't be watched
+        if (VirtualMountPointConsole.getVirtualConsoleForPath(dir) != null
+                || !new File(dir).canRead()) {
+            return;
+        }
+        this.mDirectoryObserver = new DirectoryObserver(getContext(), dir, this);
+        this.mDirectoryObserver.startWatching();
+    }
+
+    /**
+     * Method that stops watching the current directory.
+     */
+    private void stopWatchingDirectory() {
+        if (this.mDirectoryObserver != null) {
+            this.mDirectoryObserver.stopWatching();
+            this.mDirectoryObserver = null;
+        }
+        this.mDeferredInvalidation = false;
+        this.mDeferredRemoved.clear();
+        this.mDeferredChanged.clear();
+    }
+
+    /**
+     * Method that applies the changes received while the directory was being listed.
+     */
+    private void applyDeferredChanges() {
+        if (this.mDeferredInvalidation) {
+            this.mDeferredInvalidation = false;
+            this.mDeferredRemoved.clear();
+            this.mDeferredChanged.clear();
+            refresh(true);
+            return;
+        }
+        if (!this.mDeferredRemoved.isEmpty() || !this.mDeferredChanged.isEmpty()) {
+            List<String> removed = new ArrayList<String>(this.mDeferredRemoved);
+            List<FileSystemObject> changed =
+                    new ArrayList<FileSystemObject>(this.mDeferredChanged);
+            this.mDeferredRemoved.clear();
+            this.mDeferredChanged.clear();
+            applyDirectoryChanges(removed, changed);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onDirectoryEvents(
+            String dir, List<String> removed, List<FileSystemObject> changed) {
+        if (this.mDirectoryObserver == null
+                || !dir.equals(this.mDirectoryObserver.getDirectory())) {
+            return;
+        }
+        if (this.mNavigationTask != null || this.mSortTask != null) {
+            // The directory is being listed or sorted. Apply the changes when it ends
+            this.mDeferredRemoved.addAll(removed);
+            this.mDeferredChanged.addAll(changed);
+            return;
+        }
+        applyDirectoryChanges(removed, changed);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onDirectoryInvalidated(String dir) {
+        if (this.mDirectoryObserver == null
+                || !dir.equals(this.mDirectoryObserver.getDirectory())) {
+            return;
+        }
+        if (this.mNavigationTask != null || this.mSortTask != null) {
+            this.mDeferredInvalidation = true;
+            return;
+        }
+        refresh(true);
+    }
+
+    /**
+     * Method that applies a diff of the current directory to the view. The removed
+     * and changed rows are removed, and the changed rows are inserted again in their
+     * sorted position, without sorting the rest of the rows.
+     *
+     * @param removed The full paths of the removed objects
+     * @param changed The created or modified objects
+     */
+    private void applyDirectoryChanges(List<String> removed, List<FileSystemObject> changed) {
+        if (this.mFiles == null || this.mAdapter == null) {
+            return;
+        }
+        final Comparator<FileSystemObject> comparator =
+                FileHelper.createUserPreferencesComparator();
+        this.mAdapter.setNotifyOnChange(false);
+        for (String path : removed) {
+            removeRow(path);
+        }
+        for (FileSystemObject fso : changed) {
+            removeRow(fso.getFullPath());
+            if (!FileHelper.compliesWithDisplayPreferences(
+                    fso, this.mRestrictions, this.mChRooted)) {
+                continue;
+            }
+
+            // Insert in the sorted position
+            int pos = Collections.binarySearch(this.mFiles, fso, comparator);
+            this.mFiles.add(pos < 0 ? -(pos + 1) : pos, fso);
+            int lo = 0;
+            int hi = this.mAdapter.getCount();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (comparator.compare(this.mAdapter.getItem(mid), fso) <= 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            this.mAdapter.insert(fso, lo);
+        }
+        this.mAdapter.notifyDataSetChanged();
+    }
+
+    /**
+     * Method that removes a row of the view, by its path.
+     *
+     * @param path The full path of the object
+     */
+    private void removeRow(String path) {
+        int index = DirectorySnapshot.indexOf(this.mFiles, path);
+        if (index >= 0) {
+            this.mFiles.remove(index);
+        }
+        FileSystemObject fso = this.mAdapter.getItem(path);
+        if (fso != null) {
+            this.mAdapter.remove(fso);
+        }
+    }
+
     /**
      * Method that refreshes the Icons layout mode.
      * This is currently called for refreshing Icons layout mode when switching between portrait
@@ -910,7 +1282,7 @@ BreadcrumbListener, OnSelectionChangedListener, OnSelectionListener, OnRequestRe
         }
 
         //Get the current adapter and its adapter list
-        List<FileSystemObject> files = new ArrayList<FileSystemObject>(this.mFiles);
+        List<FileSystemObject> files = new DirectorySnapshot(this.mFiles);
         final AdapterView<ListAdapter> current =
                 (AdapterView<ListAdapter>)findViewById(RESOURCE_CURRENT_LAYOUT);
         FileSystemObjectAdapter adapter =
@@ -933,7 +1305,7 @@ BreadcrumbListener, OnSelectionChangedListener, OnSelectionListener, OnRequestRe
             removeView(current);
         }
         this.mFiles = files;
-        adapter.addAll(files);
+        adapter.setFiles(new DirectorySnapshot(files));
 
         //Set the adapter
         this.mAdapter = adapter;
@@ -971,13 +1343,9 @@ BreadcrumbListener, OnSelectionChangedListener, OnSelectionListener, OnRequestRe
     public void removeItem(FileSystemObject fso) {
         // Delete also from internal list
         if (fso != null) {
-            int cc = this.mFiles.size()-1;
-            for (int i = cc; i >= 0; i--) {
-                FileSystemObject f = this.mFiles.get(i);
-                if (f != null && f.compareTo(fso) == 0) {
-                    this.mFiles.remove(i);
-                    break;
-                }
+            int index = DirectorySnapshot.indexOf(this.mFiles, fso.getFullPath());
+            if (index >= 0) {
+                this.mFiles.remove(index);
             }
         }
         this.mAdapter.remove(fso);
@@ -1053,6 +1421,11 @@ BreadcrumbListener, OnSelectionChangedListener, OnSelectionListener, OnRequestRe
             mNavigationTask.cancel(true);
             mNavigationTask = null;
         }
+        if (mSortTask != null) {
+            mSortTask.cancel(false);
+            mSortTask = null;
+        }
+        this.mPrefetcher.cancel();
 
         this.mPreviousDir = this.mCurrentDir;
         this.mCurrentDir = newDir;
@@ -1087,6 +1460,8 @@ BreadcrumbListener, OnSelectionChangedListener, OnSelectionListener, OnRequestRe
      * Method invoked when a execution ends.
      *
      * @param files The files obtains from the list
+     * @param cachedFiles The cached files of the directory that were rendered while the
+     * directory was listed. <code>null</code> if no cached files were rendered
      * @param addToHistory If add path to history
      * @param isNewHistory If is new history
      * @param hasChanged If current directory was changed
@@ -1096,13 +1471,17 @@ BreadcrumbListener, OnSelectionChangedListener, OnSelectionListener, OnRequestRe
      * @hide
      */
     void onPostExecuteTask(
-            List<FileSystemObject> files, boolean addToHistory, boolean isNewHistory,
-            boolean hasChanged, SearchInfoParcelable searchInfo,
-            String newDir, final FileSystemObject scrollTo) {
+            List<FileSystemObject> files, List<FileSystemObject> cachedFiles,
+            boolean addToHistory, boolean isNewHistory, boolean hasChanged,
+            SearchInfoParcelable searchInfo, String newDir, final FileSystemObject scrollTo) {
         try {
             //Check that there is not errors and have some data
             if (files == null) {
                 this.mCurrentDir = this.mPreviousDir;
+                if (cachedFiles != null) {
+                    //Restore the files of the current directory
+                    loadData(this.mFiles);
+                }
                 return;
             }
 
@@ -1121,9 +1500,19 @@ BreadcrumbListener, OnSelectionChangedListener, OnSelectionListener, OnRequestRe
                 }
             }
 
-            //Load the data
-            loadData(files);
+            //Load the data (only if the rendered cached files were outdated)
+            if (cachedFiles != null && ListingCache.isSameListing(cachedFiles, files)) {
+                files = cachedFiles;
+            } else {
+                loadData(files);
+            }
             this.mFiles = files;
+
+            //Detect the mime/type of the files without a known extension
+            sniffContent(newDir, files);
+
+            //Apply the next changes of the directory incrementally
+            watchDirectory(newDir);
             if (searchInfo != null) {
                 searchInfo.setSuccessNavigation(true);
             }
@@ -1133,8 +1522,14 @@ BreadcrumbListener, OnSelectionChangedListener, OnSelectionListener, OnRequestRe
                 this.mBreadcrumb.changeBreadcrumbPath(newDir, this.mChRooted);
             }
 
-            //If scrollTo is null, the position will be set to 0
-            scrollTo(scrollTo);
+            //If scrollTo is null, the position will be set to 0 (the cached files were
+            //already scrolled, and the user could have scrolled them since)
+            if (cachedFiles == null) {
+                scrollTo(scrollTo);
+            }
+
+            //List the visible subfolders, the user will probably open one of them
+            prefetchVisibleDirectories();
 
             //The current directory is now the "newDir"
             if (this.mOnDirectoryChangedListener != null) {
@@ -1160,6 +1555,39 @@ BreadcrumbListener, OnSelectionChangedListener, OnSelectionListener, OnRequestRe
         }
     }
 
+    /**
+     * Method that lists in background the first directories shown in the screen (once
+     * the adapter view is laid out), so navigating to them is immediate.
+     */
+    private void prefetchVisibleDirectories() {
+        this.mAdapterView.post(new Runnable() {
+            @Override
+            public void run() {
+                if (NavigationView.this.mNavigationTask != null
+                        || NavigationView.this.mAdapter == null) {
+                    return;
+                }
+                FileSystemObjectAdapter adapter = NavigationView.this.mAdapter;
+                int first = Math.max(0, NavigationView.this.mAdapterView.getFirstVisiblePosition());
+                int last = NavigationView.this.mAdapterView.getLastVisiblePosition();
+                if (last < first) {
+                    last = first + ListingPrefetcher.MAX_DIRECTORIES * 4;
+                }
+                last = Math.min(last, adapter.getCount() - 1);
+
+                List<String> dirs = new ArrayList<String>(ListingPrefetcher.MAX_DIRECTORIES);
+                for (int i = first; i <= last
+                        && dirs.size() < ListingPrefetcher.MAX_DIRECTORIES; i++) {
+                    FileSystemObject fso = adapter.getItem(i);
+                    if (!(fso instanceof ParentDirectory) && FileHelper.isDirectory(fso)) {
+                        dirs.add(fso.getFullPath());
+                    }
+                }
+                NavigationView.this.mPrefetcher.prefetch(dirs);
+            }
+        });
+    }
+
     /**
      * Method that loads the files in the adapter.
      *
@@ -1173,11 +1601,46 @@ BreadcrumbListener, OnSelectionChangedListener, OnSelectionListener, OnRequestRe
                 (AdapterView<ListAdapter>)findViewById(RESOURCE_CURRENT_LAYOUT);
         FileSystemObjectAdapter adapter = (FileSystemObjectAdapter)view.getAdapter();
         adapter.setNotifyOnChange(false);
-        adapter.clear();
-        adapter.addAll(files);
+        adapter.setFiles(new DirectorySnapshot(files));
         adapter.notifyDataSetChanged();
     }
 
+    /**
+     * Method that sniffs in background the content of the files whose extension doesn't
+     * tell their mime/type, and refreshes the adapter when some of them were detected.
+     *
+     * @param dir The directory of the files
+     * @param files The files of the directory
+     */
+    private void sniffContent(final String dir, List<FileSystemObject> files) {
+        final List<FileSystemObject> snapshot = new DirectorySnapshot(files);
+        new AsyncTask<Void, Void, Integer>() {
+            @Override
+            protected Integer doInBackground(Void... params) {
+                return Integer.valueOf(
+                        MimeTypeSniffer.getInstance().sniff(getContext(), snapshot));
+            }
+
+            @Override
+            protected void onPostExecute(Integer detected) {
+                if (detected.intValue() > 0 && dir != null
+                        && dir.equals(NavigationView.this.mCurrentDir)) {
+                    // The mime/type categories of the sort keys could be changed
+                    if (NavigationView.this.mFiles instanceof DirectorySnapshot) {
+                        ((DirectorySnapshot)NavigationView.this.mFiles).setSortKeys(null);
+                    }
+                    @SuppressWarnings("unchecked")
+                    AdapterView<ListAdapter> view =
+                            (AdapterView<ListAdapter>)findViewById(RESOURCE_CURRENT_LAYOUT);
+                    FileSystemObjectAdapter adapter = (FileSystemObjectAdapter)view.getAdapter();
+                    if (adapter != null) {
+                        adapter.notifyDataSetChanged();
+                    }
+                }
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -1277,7 +1740,11 @@ BreadcrumbListener, OnSelectionChangedListener, OnSelectionListener, OnRequestRe
     @Override
     public void onRequestRefresh(Object o, boolean clearSelection) {
         if (o instanceof FileSystemObject) {
-            refresh((FileSystemObject)o);
+            refreshChanges((FileSystemObject)o);
+        } else if (o == null && clearSelection) {
+            // Operations over the selection (copy, move, compress, ...). The
+            // changes are reported by the directory observer, if possible
+            refreshChanges(null);
         } else if (o == null) {
             refresh();
         }
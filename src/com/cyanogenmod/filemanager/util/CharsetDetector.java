@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.util.Log;
+
+import org.mozilla.universalchardet.UniversalDetector;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A class that detects the charset of a text file from a sample of its content.<br/>
+ * <br/>
+ * Instead of feeding all the file to the detector, only a prefix of the file
+ * ({@link #PREFIX_SIZE} bytes) and a few blocks scattered over the rest of the file are
+ * read, and the detection stops as soon as the detector is done. The results are cached
+ * by path, size and modification time, so reopening a file doesn't read it again.
+ */
+public final class CharsetDetector {
+
+    private static final String TAG = "CharsetDetector"; //$NON-NLS-1$
+
+    private static final boolean DEBUG = false;
+
+    /**
+     * The max number of bytes read from the start of the file.
+     */
+    public static final int PREFIX_SIZE = 64 * 1024;
+
+    // The size and the number of the blocks read after the prefix
+    private static final int BLOCK_SIZE = 4 * 1024;
+    private static final int BLOCKS = 4;
+
+    // The max number of files cached
+    private static final int MAX_CACHE = 64;
+
+    /**
+     * The result of a detection.
+     */
+    public static class Result {
+        final long mSize;
+        final long mModified;
+        final String mCharset;
+        final boolean mBinary;
+
+        Result(long size, long modified, String charset, boolean binary) {
+            super();
+            this.mSize = size;
+            this.mModified = modified;
+            this.mCharset = charset;
+            this.mBinary = binary;
+        }
+
+        /**
+         * Method that returns the name of the detected charset.
+         *
+         * @return String The charset, or <code>null</code> if the detector wasn't sure
+         * (pure ASCII files, for example)
+         */
+        public String getCharset() {
+            return this.mCharset;
+        }
+
+        /**
+         * Method that returns if the file seems to be binary.
+         *
+         * @return boolean If the file is binary
+         */
+        public boolean isBinary() {
+            return this.mBinary;
+        }
+
+        /**
+         * Method that returns a decoder of the detected charset (or of the default
+         * charset). Malformed input is replaced, as <code>new String(byte[], charset)</code>
+         * does.
+         *
+         * @return CharsetDecoder A new decoder
+         */
+        public CharsetDecoder newDecoder() {
+            Charset charset = null;
+            try {
+                if (this.mCharset != null) {
+                    charset = Charset.forName(this.mCharset);
+                }
+            } catch (Exception e) {/**NON BLOCK**/}
+            if (charset == null) {
+                charset = Charset.defaultCharset();
+            }
+            return charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+    }
+
+    private static final Map<String, Result> sCache =
+            new LinkedHashMap<String, Result>(MAX_CACHE, .75F, true) {
+                private static final long serialVersionUID = 1L;
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Result> eldest) {
+                    return size() > MAX_CACHE;
+                }
+            };
+
+    /**
+     * Constructor of <code>CharsetDetector</code>.
+     */
+    private CharsetDetector() {
+        super();
+    }
+
+    /**
+     * Method that detects the charset of a file, reading a sample of the file. This
+     * method reads the file, so it must be called from a background thread.
+     *
+     * @param file The file
+     * @return Result The result of the detection
+     * @throws IOException If the file can't be read
+     */
+    public static Result detect(File file) throws IOException {
+        final String path = file.getAbsolutePath();
+        final long size = file.length();
+        final long modified = file.lastModified();
+        synchronized (sCache) {
+            Result result = sCache.get(path);
+            if (result != null && result.mSize == size && result.mModified == modified) {
+                return result;
+            }
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r"); //$NON-NLS-1$
+        Result result;
+        try {
+            UniversalDetector detector = new UniversalDetector(null);
+
+            // The prefix. Used to check binary data too
+            byte[] prefix = new byte[(int)Math.min(PREFIX_SIZE, size)];
+            raf.readFully(prefix);
+            boolean binary = StringHelper.isBinaryData(prefix);
+            if (!binary) {
+                for (int i = 0; i < prefix.length && !detector.isDone(); i += BLOCK_SIZE) {
+                    detector.handleData(prefix, i, Math.min(BLOCK_SIZE, prefix.length - i));
+                }
+
+                // The blocks, evenly distributed over the rest of the file
+                long rest = size - prefix.length;
+                if (rest > 0 && !detector.isDone()) {
+                    byte[] block = new byte[BLOCK_SIZE];
+                    long step = rest / BLOCKS;
+                    for (int i = 0; i < BLOCKS && !detector.isDone(); i++) {
+                        long offset = prefix.length + i * step;
+                        int len = (int)Math.min(BLOCK_SIZE, size - offset);
+                        if (len <= 0) {
+                            break;
+                        }
+                        raf.seek(offset);
+                        raf.readFully(block, 0, len);
+
+                        // Start at a line start, so the block doesn't start in the
+                        // middle of a multibyte char
+                        int start = 0;
+                        while (start < len && block[start++] != '\n') {
+                            // Skip the partial line
+                        }
+                        if (start < len) {
+                            detector.handleData(block, start, len - start);
+                        }
+                    }
+                }
+                detector.dataEnd();
+            }
+            result = new Result(size, modified,
+                    binary ? null : detector.getDetectedCharset(), binary);
+        } finally {
+            try {
+                raf.close();
+            } catch (Exception e) {/**NON BLOCK**/}
+        }
+
+        if (DEBUG) {
+            Log.v(TAG, "Charset of " + path + ": " + result.mCharset); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        synchronized (sCache) {
+            sCache.put(path, result);
+        }
+        return result;
+    }
+}
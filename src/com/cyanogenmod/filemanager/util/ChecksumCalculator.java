@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import com.android.internal.util.HexDump;
+import com.cyanogenmod.filemanager.commands.ChecksumExecutable.CHECKSUMS;
+import com.cyanogenmod.filemanager.commands.ChecksumExecutable.OnChecksumProgressListener;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ * A class that calculates all the {@link CHECKSUMS} of a file reading it only once.<br/>
+ * <br/>
+ * The checksums of a file are calculated in parallel from the same chunk, while
+ * the next chunk is read.
+ */
+public class ChecksumCalculator {
+
+    // The size of the chunks. CRC32 can't digest a ByteBuffer before API 26, so
+    // the chunks are read in heap arrays
+    private static final int CHUNK_SIZE = 512 * 1024;
+
+    private final int mParallelism;
+    private volatile boolean mCancelled;
+
+    /**
+     * Constructor of <code>ChecksumCalculator</code>.
+     *
+     * @param parallelism The number of threads
+     */
+    public ChecksumCalculator(int parallelism) {
+        super();
+        this.mParallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Method that cancels the calculation. The calculating methods throws an
+     * {@link InterruptedException}.
+     */
+    public void cancel() {
+        this.mCancelled = true;
+    }
+
+    /**
+     * Method that calculates the checksums of a file.
+     *
+     * @param file The file
+     * @param listener The progress listener. <code>null</code> for no progress
+     * @return String[] The checksums, indexed by the ordinal of {@link CHECKSUMS}
+     * @throws IOException If the file can't be read
+     * @throws InterruptedException If the calculation was cancelled
+     */
+    public String[] calculate(File file, OnChecksumProgressListener listener)
+            throws IOException, InterruptedException {
+        InputStream is = new FileInputStream(file);
+        try {
+            return calculate(is, file, file.length(), listener);
+        } finally {
+            try {
+                is.close();
+            } catch (Exception e) {/**NON BLOCK**/}
+        }
+    }
+
+    /**
+     * Method that calculates the checksums of the data of a stream.
+     *
+     * @param is The stream
+     * @param file The file read by the stream (only for report the progress)
+     * @param total The size of the data (only for report the progress)
+     * @param listener The progress listener. <code>null</code> for no progress
+     * @return String[] The checksums, indexed by the ordinal of {@link CHECKSUMS}
+     * @throws IOException If the stream can't be read
+     * @throws InterruptedException If the calculation was cancelled
+     */
+    public String[] calculate(InputStream is, File file, long total,
+            OnChecksumProgressListener listener) throws IOException, InterruptedException {
+        final Digester[] digesters = createDigesters();
+        if (this.mParallelism == 1) {
+            digest(is, file, total, digesters, listener);
+        } else {
+            ExecutorService executor = Executors.newFixedThreadPool(
+                    Math.min(this.mParallelism, digesters.length));
+            try {
+                digestParallel(is, file, total, digesters, executor, listener);
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+        return toResult(digesters);
+    }
+
+    /**
+     * Method that reads the data and digests every chunk in the current thread.
+     *
+     * @param is The stream
+     * @param file The file read by the stream
+     * @param total The size of the data
+     * @param digesters The digesters
+     * @param listener The progress listener. <code>null</code> for no progress
+     * @throws IOException If the stream can't be read
+     * @throws InterruptedException If the calculation was cancelled
+     */
+    private void digest(InputStream is, File file, long total, Digester[] digesters,
+            OnChecksumProgressListener listener) throws IOException, InterruptedException {
+        byte[] data = new byte[CHUNK_SIZE];
+        long read = 0;
+        int n;
+        while ((n = readFully(is, data)) > 0) {
+            checkCancelled();
+            for (Digester digester : digesters) {
+                digester.update(data, n);
+            }
+            read += n;
+            if (listener != null) {
+                listener.onChecksumProgress(file.getAbsolutePath(), read, total);
+            }
+        }
+        checkCancelled();
+    }
+
+    /**
+     * Method that reads the data in the current thread and digests every chunk with all
+     * the digesters in parallel, while the next chunk is read.
+     *
+     * @param is The stream
+     * @param file The file read by the stream
+     * @param total The size of the data
+     * @param digesters The digesters
+     * @param executor The executor of the digesters
+     * @param listener The progress listener. <code>null</code> for no progress
+     * @throws IOException If the stream can't be read
+     * @throws InterruptedException If the calculation was cancelled
+     */
+    private void digestParallel(InputStream is, File file, long total,
+            final Digester[] digesters, ExecutorService executor,
+            OnChecksumProgressListener listener) throws IOException, InterruptedException {
+        byte[][] buffers = new byte[][]{new byte[CHUNK_SIZE], new byte[CHUNK_SIZE]};
+        List<Future<?>> futures = new ArrayList<Future<?>>(digesters.length);
+        int current = 0;
+        long read = 0;
+        int n = readFully(is, buffers[current]);
+        while (n > 0) {
+            checkCancelled();
+
+            // Digest the current chunk...
+            final byte[] data = buffers[current];
+            final int len = n;
+            futures.clear();
+            for (final Digester digester : digesters) {
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        digester.update(data, len);
+                    }
+                }));
+            }
+
+            // ...while the next one is read
+            current = 1 - current;
+            n = readFully(is, buffers[current]);
+
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException ex) {
+                    throw new IOException(ex.getCause());
+                }
+            }
+            read += len;
+            if (listener != null) {
+                listener.onChecksumProgress(file.getAbsolutePath(), read, total);
+            }
+        }
+        checkCancelled();
+    }
+
+    /**
+     * Method that fills a buffer, unless the end of the stream is reached.
+     *
+     * @param is The stream
+     * @param data The buffer
+     * @return int The number of bytes read. 0 at the end of the stream
+     * @throws IOException If the stream can't be read
+     */
+    private static int readFully(InputStream is, byte[] data) throws IOException {
+        int count = 0;
+        while (count < data.length) {
+            int read = is.read(data, count, data.length - count);
+            if (read == -1) {
+                break;
+            }
+            count += read;
+        }
+        return count;
+    }
+
+    /**
+     * Checks if the operation was cancelled
+     *
+     * @throws InterruptedException If the operation was cancelled
+     */
+    private void checkCancelled() throws InterruptedException {
+        if (this.mCancelled) {
+            throw new InterruptedException();
+        }
+    }
+
+    /**
+     * Method that creates a digester for every checksum.
+     *
+     * @return Digester[] The digesters, indexed by the ordinal of {@link CHECKSUMS}
+     * @throws IOException If a digest algorithm isn't available
+     */
+    static Digester[] createDigesters() throws IOException {
+        CHECKSUMS[] checksums = CHECKSUMS.values();
+        Digester[] digesters = new Digester[checksums.length];
+        for (int i = 0; i < checksums.length; i++) {
+            try {
+                digesters[i] = new Digester(checksums[i]);
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IOException(ex);
+            }
+        }
+        return digesters;
+    }
+
+    /**
+     * Method that returns the checksums of the digesters.
+     *
+     * @param digesters The digesters
+     * @return String[] The checksums (in lower case hex)
+     */
+    static String[] toResult(Digester[] digesters) {
+        String[] result = new String[digesters.length];
+        for (int i = 0; i < digesters.length; i++) {
+            result[i] = digesters[i].getChecksum();
+        }
+        return result;
+    }
+
+    /**
+     * A class that calculates a checksum, either a message digest or a CRC-32.
+     */
+    static class Digester {
+        private final MessageDigest mDigest;
+        private final CRC32 mCrc;
+
+        Digester(CHECKSUMS checksum) throws NoSuchAlgorithmException {
+            super();
+            if (checksum.getAlgorithm() != null) {
+                this.mDigest = MessageDigest.getInstance(checksum.getAlgorithm());
+                this.mCrc = null;
+            } else {
+                this.mDigest = null;
+                this.mCrc = new CRC32();
+            }
+        }
+
+        void update(byte[] data, int len) {
+            if (this.mDigest != null) {
+                this.mDigest.update(data, 0, len);
+            } else {
+                this.mCrc.update(data, 0, len);
+            }
+        }
+
+        String getChecksum() {
+            if (this.mDigest != null) {
+                return HexDump.toHexString(this.mDigest.digest()).toLowerCase(Locale.ROOT);
+            }
+            return String.format(Locale.ROOT, "%08x", this.mCrc.getValue()); //$NON-NLS-1$
+        }
+    }
+}
@@ -24,7 +24,10 @@ import android.media.MediaScannerConnection;
 import android.net.Uri;
 
 import android.util.Log;
+import com.cyanogenmod.filemanager.R;
 import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.commands.BulkDeleteExecutable;
+import com.cyanogenmod.filemanager.commands.BulkDeleteExecutable.OnBulkDeleteListener;
 import com.cyanogenmod.filemanager.commands.ChangeOwnerExecutable;
 import com.cyanogenmod.filemanager.commands.ChangePermissionsExecutable;
 import com.cyanogenmod.filemanager.commands.ChecksumExecutable;
@@ -66,13 +69,16 @@ import com.cyanogenmod.filemanager.console.CommandNotFoundException;
 import com.cyanogenmod.filemanager.console.Console;
 import com.cyanogenmod.filemanager.console.ConsoleAllocException;
 import com.cyanogenmod.filemanager.console.ConsoleBuilder;
+import com.cyanogenmod.filemanager.console.ConsolePool;
 import com.cyanogenmod.filemanager.console.ExecutionException;
 import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
 import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
 import com.cyanogenmod.filemanager.console.OperationTimeoutException;
 import com.cyanogenmod.filemanager.console.ReadOnlyFilesystemException;
 import com.cyanogenmod.filemanager.console.VirtualMountPointConsole;
+import com.cyanogenmod.filemanager.console.java.JavaConsole;
 import com.cyanogenmod.filemanager.console.secure.SecureConsole;
+import com.cyanogenmod.filemanager.console.shell.ShellConsole;
 import com.cyanogenmod.filemanager.model.Directory;
 import com.cyanogenmod.filemanager.model.DiskUsage;
 import com.cyanogenmod.filemanager.model.FileSystemObject;
@@ -103,6 +109,11 @@ public final class CommandHelper {
 
     private static final String TAG = "CommandHelper";
 
+    // The maximum number of paths (and of characters of the paths) deleted by every
+    // bulk delete executable
+    private static final int MAX_BULK_DELETE_PATHS = 128;
+    private static final int MAX_BULK_DELETE_LENGTH = 16384;
+
     /**
      * A wrapper class for asynchronous operations that need restore the filesystem
      * after the operation.
@@ -484,6 +495,87 @@ public final class CommandHelper {
         return executable.getResult().booleanValue();
     }
 
+    /**
+     * Method that deletes several files and directories (recursively). The files are
+     * deleted in batches of the same parent directory, with a single executable for every
+     * batch. The files that can't be deleted don't stop the operation; they are returned.
+     *
+     * @param context The current context (needed if console == null)
+     * @param files The files and directories to delete
+     * @param listener The listener where to return the progress of every file (optional)
+     * @param console The console in which execute the program. <code>null</code>
+     * to attach to the default console
+     * @return List<String> The paths of the files that couldn't be deleted
+     * @throws FileNotFoundException If the initial directory not exists
+     * @throws IOException If initial directory couldn't be checked
+     * @throws InvalidCommandDefinitionException If the command has an invalid definition
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws ConsoleAllocException If the console can't be allocated
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     * @throws CommandNotFoundException If the command was not found (the console
+     * doesn't support bulk deletes)
+     * @throws OperationTimeoutException If the operation exceeded the maximum time of wait
+     * @throws ExecutionException If the operation returns a invalid exit code
+     * @throws ReadOnlyFilesystemException If the operation writes in a read-only filesystem
+     * @throws CancelledOperationException If the operation was cancelled
+     * @see BulkDeleteExecutable
+     */
+    public static List<String> deleteFiles(Context context, List<FileSystemObject> files,
+            OnBulkDeleteListener listener, Console console)
+            throws FileNotFoundException, IOException, ConsoleAllocException,
+            NoSuchFileOrDirectory, InsufficientPermissionsException,
+            CommandNotFoundException, OperationTimeoutException,
+            ExecutionException, InvalidCommandDefinitionException, ReadOnlyFilesystemException,
+            CancelledOperationException {
+
+        List<String> failed = new ArrayList<String>();
+        int cc = files.size();
+        int start = 0;
+        while (start < cc) {
+            // The batch: the next files of the same parent directory
+            String parent = files.get(start).getParent();
+            int end = start;
+            int length = 0;
+            while (end < cc && end - start < MAX_BULK_DELETE_PATHS
+                    && length < MAX_BULK_DELETE_LENGTH) {
+                FileSystemObject fso = files.get(end);
+                if (end > start && (parent == null || !parent.equals(fso.getParent()))) {
+                    break;
+                }
+                length += fso.getFullPath().length();
+                end++;
+            }
+
+            String[] paths = new String[end - start];
+            List<String> pathsToScan = new ArrayList<String>();
+            for (int i = start; i < end; i++) {
+                FileSystemObject fso = files.get(i);
+                paths[i - start] = fso.getFullPath();
+                if (FileHelper.isDirectory(fso)) {
+                    for (String path : collectScanPaths(context, fso.getFullPath())) {
+                        pathsToScan.add(path);
+                    }
+                } else {
+                    pathsToScan.add(MediaHelper.normalizeMediaPath(fso.getFullPath()));
+                }
+            }
+
+            Console c = ensureConsoleForFile(context, console, paths[0]);
+            BulkDeleteExecutable executable =
+                    c.getExecutableFactory().newCreator().createBulkDeleteExecutable(
+                            paths, listener);
+            writableExecute(context, executable, c);
+            failed.addAll(executable.getResult());
+
+            // Remove from mediascanner
+            MediaScannerConnection.scanFile(context,
+                    pathsToScan.toArray(new String[pathsToScan.size()]), null, null);
+
+            start = end;
+        }
+        return failed;
+    }
+
     /**
      * Method that resolves a symlink to its real file system object.
      *
@@ -776,10 +868,155 @@ public final class CommandHelper {
             CommandNotFoundException, OperationTimeoutException,
             ExecutionException, InvalidCommandDefinitionException, CancelledOperationException,
             CancelledOperationException {
+        return listFiles(context, directory, null, console);
+    }
+
+    /**
+     * Method that lists a directory, delivering chunks of the listing to a listener
+     * while the directory is being listed (only if the console supports it).
+     *
+     * @param context The current context (needed if console == null)
+     * @param directory The path of the directory to list
+     * @param listener The listener that receives the chunks of the listing. Can be null
+     * @param console The console in which execute the program. <code>null</code>
+     * to attach to the default console
+     * @return List<FileSystemObject> The list of files of the directory
+     * @throws FileNotFoundException If the initial directory not exists
+     * @throws IOException If initial directory couldn't be checked
+     * @throws InvalidCommandDefinitionException If the command has an invalid definition
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws ConsoleAllocException If the console can't be allocated
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     * @throws CommandNotFoundException If the command was not found
+     * @throws OperationTimeoutException If the operation exceeded the maximum time of wait
+     * @throws ExecutionException If the operation returns a invalid exit code
+     * @throws CancelledOperationException If the operation was cancelled
+     * @see ListExecutable
+     */
+    public static List<FileSystemObject> listFiles(
+            Context context, String directory,
+            ListExecutable.OnPartialListListener listener, Console console)
+            throws FileNotFoundException, IOException, ConsoleAllocException,
+            NoSuchFileOrDirectory, InsufficientPermissionsException,
+            CommandNotFoundException, OperationTimeoutException,
+            ExecutionException, InvalidCommandDefinitionException, CancelledOperationException {
         Console c = ensureConsoleForFile(context, console, directory);
+        return listFiles(context, directory, listener, c, 0);
+    }
+
+    /**
+     * Method that lists a directory speculatively (the user will probably navigate to
+     * it), parking the listing in the {@link ListingCache} for a short time. The
+     * directory is only listed if it isn't cached and the console can list it without
+     * delaying the other commands.
+     *
+     * @param context The current context
+     * @param directory The path of the directory to list
+     * @param maxAge The time (in milliseconds) that the listing is cached
+     * @return boolean If the directory was listed
+     * @throws FileNotFoundException If the initial directory not exists
+     * @throws IOException If initial directory couldn't be checked
+     * @throws InvalidCommandDefinitionException If the command has an invalid definition
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws ConsoleAllocException If the console can't be allocated
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     * @throws CommandNotFoundException If the command was not found
+     * @throws OperationTimeoutException If the operation exceeded the maximum time of wait
+     * @throws ExecutionException If the operation returns a invalid exit code
+     * @throws CancelledOperationException If the operation was cancelled
+     * @see ListingCache
+     */
+    public static boolean prefetchListing(Context context, String directory, long maxAge)
+            throws FileNotFoundException, IOException, ConsoleAllocException,
+            NoSuchFileOrDirectory, InsufficientPermissionsException,
+            CommandNotFoundException, OperationTimeoutException,
+            ExecutionException, InvalidCommandDefinitionException, CancelledOperationException {
+        // Listings that can't be validated aren't cached
+        if (ListingCache.getModifiedTime(directory) == 0) {
+            return false;
+        }
+        Console c = ensureConsoleForFile(context, null, directory);
+        if (ListingCache.getInstance().get(c, directory) != null) {
+            return false;
+        }
+
+        // Don't delay the commands of the user. A shell session must remain free for them,
+        // and the executions of a java console are serialized, so list in other instance
+        if (c instanceof ShellConsole) {
+            ConsolePool pool = ConsoleBuilder.getConsolePool(c);
+            ShellConsole session = pool != null ? pool.reserveFreeSession(1) : null;
+            if (session == null) {
+                return false;
+            }
+            try {
+                listFiles(context, directory, null, session, maxAge);
+            } finally {
+                pool.release(session);
+            }
+            return true;
+        }
+        Console jc = allocReadOnlyJavaConsole(context, c, directory, false);
+        if (jc == null) {
+            return false;
+        }
+        listFiles(context, directory, null, jc, maxAge);
+        return true;
+    }
+
+    /**
+     * Method that allocates a private java console where to execute a program that only
+     * reads a file or a tree, in the application process instead of in the current
+     * console.<br/>
+     * <br/>
+     * Replacing a shell console is only safe if the application can read everything that
+     * the program reads, because the shell may run with root privileges and a java
+     * program silently skips what it can't read. The caller must check the readability
+     * of the whole tree (the indexes record the folders that the application couldn't
+     * list), and the file itself is checked here. A java console is always replaced,
+     * because it serializes its executions. Other consoles are never replaced.<br/>
+     * <br/>
+     * The returned console deallocates itself when the program ends.
+     *
+     * @param context The current context
+     * @param console The current console
+     * @param path The absolute path of the file, or of the root of the tree
+     * @param readable If the application can read the whole tree. Only checked
+     * when replacing a shell console
+     * @return Console The private console, or <code>null</code> if the current console
+     * must be used
+     * @throws ConsoleAllocException If the console can't be allocated
+     */
+    private static Console allocReadOnlyJavaConsole(
+            Context context, Console console, String path, boolean readable)
+            throws ConsoleAllocException {
+        if (console instanceof ShellConsole) {
+            if (!readable || !new File(path).canRead()) {
+                return null;
+            }
+        } else if (!(console instanceof JavaConsole)) {
+            return null;
+        }
+        JavaConsole c =
+                new JavaConsole(context, context.getResources().getInteger(R.integer.buffer_size));
+        c.alloc();
+        c.setDeallocOnEnd();
+        return c;
+    }
+
+    private static List<FileSystemObject> listFiles(
+            Context context, String directory, ListExecutable.OnPartialListListener listener,
+            Console c, long maxAge)
+            throws FileNotFoundException, IOException, ConsoleAllocException,
+            NoSuchFileOrDirectory, InsufficientPermissionsException,
+            CommandNotFoundException, OperationTimeoutException,
+            ExecutionException, InvalidCommandDefinitionException, CancelledOperationException {
+        // The modification time must be read before listing, so the changes done while
+        // listing invalidate the cached listing
+        long modified = ListingCache.getModifiedTime(directory);
         ListExecutable executable =
                 c.getExecutableFactory().newCreator().
                     createListExecutable(directory);
+        executable.setOnPartialListListener(listener);
         execute(context, executable, c);
         List<FileSystemObject> result = executable.getResult();
         FileHelper.resolveSymlinks(context, result);
@@ -789,9 +1026,36 @@ public final class CommandHelper {
             result.addAll(VirtualMountPointConsole.getVirtualMountableDirectories());
         }
 
+        ListingCache.getInstance().put(c, directory, modified, result, maxAge);
         return result;
     }
 
+    /**
+     * Method that returns the last listing of a directory, if the directory wasn't
+     * changed since it was listed. The attributes of the entries could be outdated, so
+     * the listing must be revalidated with {@link #listFiles(Context, String, Console)}.
+     *
+     * @param context The current context (needed if console == null)
+     * @param directory The path of the directory
+     * @param console The console in which the directory is listed. <code>null</code>
+     * to attach to the default console
+     * @return List<FileSystemObject> The cached listing of the directory (must not be
+     * modified), or <code>null</code> if there isn't a valid listing
+     * @throws FileNotFoundException If the initial directory not exists
+     * @throws IOException If initial directory couldn't be checked
+     * @throws InvalidCommandDefinitionException If the command has an invalid definition
+     * @throws ConsoleAllocException If the console can't be allocated
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     * @see ListingCache
+     */
+    public static List<FileSystemObject> getCachedListing(
+            Context context, String directory, Console console)
+            throws FileNotFoundException, IOException, ConsoleAllocException,
+            InsufficientPermissionsException, InvalidCommandDefinitionException {
+        Console c = ensureConsoleForFile(context, console, directory);
+        return ListingCache.getInstance().get(c, directory);
+    }
+
     private static void recursiveScan(@NonNull final Context context,
                                       @Nullable String srcPath,
                                       @NonNull String destPath) {
@@ -952,26 +1216,38 @@ public final class CommandHelper {
             }
         }
 
-        // Do media scan (don't scan the file if is virtual file)
+        // Do media scan
         if (ret) {
-            File parent = new File(dst).getParentFile();
-            if ((parent != null && !VirtualMountPointConsole.isVirtualStorageResource(parent
-                    .getAbsolutePath()))) {
-                // Scan source
-                MediaScannerConnection.scanFile(context, new String[] {
-                        MediaHelper.normalizeMediaPath(src) }, null, null);
-
-                // Recursive scan of the parent dir of the dest. This mitigates a VFAT
-                // issue where a file named "foo." will silently be renamed as "foo".
-                // This ensures that we report the correct filename to the media scanner
-                // by re-reading the filename from the file system.
-                recursiveScan(context, null, parent.getAbsolutePath(), 1);
-            }
+            scanMovedFile(context, src, dst);
         }
 
         return ret;
     }
 
+    /**
+     * Method that requests the media scan of a moved file system object (virtual files
+     * aren't scanned).
+     *
+     * @param context The current context
+     * @param src The source of the moved file system object
+     * @param dst The destination of the moved file system object
+     */
+    public static void scanMovedFile(Context context, String src, String dst) {
+        File parent = new File(dst).getParentFile();
+        if ((parent != null && !VirtualMountPointConsole.isVirtualStorageResource(parent
+                .getAbsolutePath()))) {
+            // Scan source
+            MediaScannerConnection.scanFile(context, new String[] {
+                    MediaHelper.normalizeMediaPath(src) }, null, null);
+
+            // Recursive scan of the parent dir of the dest. This mitigates a VFAT
+            // issue where a file named "foo." will silently be renamed as "foo".
+            // This ensures that we report the correct filename to the media scanner
+            // by re-reading the filename from the file system.
+            recursiveScan(context, null, parent.getAbsolutePath(), 1);
+        }
+    }
+
     /**
      * Method that copies a file system object.
      *
@@ -1042,16 +1318,27 @@ public final class CommandHelper {
             }
         }
 
-        // Do media scan (don't scan the file if is virtual file)
+        // Do media scan
         if (ret) {
-            if (!VirtualMountPointConsole.isVirtualStorageResource(dst)) {
-                recursiveScan(context, null, dst);
-            }
+            scanCopiedFile(context, dst);
         }
 
         return ret;
     }
 
+    /**
+     * Method that requests the media scan of a copied file system object, and of all
+     * its contents (virtual files aren't scanned).
+     *
+     * @param context The current context
+     * @param dst The destination of the copied file system object
+     */
+    public static void scanCopiedFile(Context context, String dst) {
+        if (!VirtualMountPointConsole.isVirtualStorageResource(dst)) {
+            recursiveScan(context, null, dst);
+        }
+    }
+
     /**
      * Method that executes a command.
      *
@@ -1120,6 +1407,15 @@ public final class CommandHelper {
         List<Console> consoles = new ArrayList<Console>();
         List<FindExecutable> executables = new ArrayList<FindExecutable>();
         Console c = ensureConsoleForFile(context, console, directory);
+        if (c instanceof ShellConsole && context != null) {
+            // If the directory is indexed and readable by the application, search the
+            // index from java, instead of walking the tree with find
+            Console jc = allocReadOnlyJavaConsole(context, c, directory,
+                    FileNameIndex.getInstance(context).isIndexed(directory));
+            if (jc != null) {
+                c = jc;
+            }
+        }
         consoles.add(c);
 
         // Obtain all the rest of console that will participate in the search, that aren't the
@@ -1180,6 +1476,15 @@ public final class CommandHelper {
             CommandNotFoundException, OperationTimeoutException,
             ExecutionException, InvalidCommandDefinitionException, CancelledOperationException {
         Console c = ensureConsoleForFile(context, console, directory);
+        if (c instanceof ShellConsole && context != null) {
+            // If the folder is indexed and readable by the application, compute the usage
+            // from java, which only lists the folders that changed since indexed
+            Console jc = allocReadOnlyJavaConsole(context, c, directory,
+                    FolderSizeIndex.getInstance(context).isIndexed(directory));
+            if (jc != null) {
+                c = jc;
+            }
+        }
         FolderUsageExecutable executable =
                 c.getExecutableFactory().newCreator().
                     createFolderUsageExecutable(directory, asyncResultListener);
@@ -1869,6 +2174,14 @@ public final class CommandHelper {
             CommandNotFoundException, OperationTimeoutException,
             ExecutionException, InvalidCommandDefinitionException, CancelledOperationException {
         Console c = ensureConsoleForFile(context, console, src);
+        if (c instanceof ShellConsole && context != null) {
+            // If the file is readable by the application, calculate all the checksums
+            // from java, reading the file only once
+            Console jc = allocReadOnlyJavaConsole(context, c, src, true);
+            if (jc != null) {
+                c = jc;
+            }
+        }
         ChecksumExecutable executable =
                 c.getExecutableFactory().newCreator().
                     createChecksumExecutable(src, asyncResultListener);
@@ -1931,7 +2244,13 @@ public final class CommandHelper {
             OperationTimeoutException, ExecutionException, CommandNotFoundException,
             CancelledOperationException, AuthenticationFailedException {
         try {
-            console.execute(executable, context);
+            // Use a free session of the pool of the current console, if any
+            ConsolePool pool = ConsoleBuilder.getConsolePool(console);
+            if (pool != null) {
+                pool.execute(executable, context);
+            } else {
+                console.execute(executable, context);
+            }
         } catch (ReadOnlyFilesystemException rofEx) {
             // ReadOnlyFilesystemException don't have sense if command is not writable
             // WritableExecutable must be used with "writableExecute" method
@@ -0,0 +1,496 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.R;
+import com.cyanogenmod.filemanager.console.CancelledOperationException;
+import com.cyanogenmod.filemanager.console.ExecutionException;
+import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
+import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A class that copies or moves several files and folders at once.<br/>
+ * <br/>
+ * The whole operation is planned before start, so the progress is reported in bytes
+ * (with the estimated remaining time). Folders are created in order, the small files
+ * are copied by a bounded pool of workers (the per-file latency dominates their copy),
+ * and the big files are streamed in chunks by the calling thread at the same time.
+ * Moves inside the same filesystem are done with a single rename.
+ */
+public class CopyEngine {
+
+    private static final String TAG = "CopyEngine"; //$NON-NLS-1$
+
+    /**
+     * An interface for receive the progress of the operation.
+     */
+    public interface OnCopyEngineListener {
+        /**
+         * Invoked when the progress of the operation changed. Could be invoked from any
+         * thread.
+         *
+         * @param engine The engine
+         */
+        void onCopyProgress(CopyEngine engine);
+    }
+
+    // Files smaller than this are copied by the pool of workers
+    private static final long SMALL_FILE_SIZE = FileHelper.NIO_COPY_CHUNK_SIZE;
+
+    // The minimum time between progress reports (in milliseconds)
+    private static final long PROGRESS_INTERVAL = 250L;
+
+    // Until this time (in milliseconds), the remaining time is estimated from the
+    // throughput observed by the previous copies to the same device
+    private static final long ESTIMATION_WARMUP = 2000L;
+
+    /**
+     * A file or folder to copy.
+     */
+    private static class Item {
+        final File mSrc;
+        final File mDst;
+        final boolean mFolder;
+        final long mSize;
+
+        Item(File src, File dst, boolean folder, long size) {
+            super();
+            this.mSrc = src;
+            this.mDst = dst;
+            this.mFolder = folder;
+            this.mSize = size;
+        }
+    }
+
+    private final int mParallelism;
+    private final boolean mMove;
+    private final OnCopyEngineListener mListener;
+    private final List<File> mSources;
+    private final List<File> mDestinations;
+
+    private final AtomicLong mCopiedBytes;
+    private final AtomicLong mCopiedFiles;
+    private long mTotalBytes;
+    private long mTotalFiles;
+    private long mStartTime;
+    private double mExpectedThroughput;
+    private volatile long mLastProgress;
+    private volatile File mCurrentSrc;
+    private volatile File mCurrentDst;
+    private volatile boolean mCancelled;
+
+    /**
+     * Constructor of <code>CopyEngine</code>.
+     *
+     * @param parallelism The number of workers for the small files
+     * @param move If the sources must be moved instead of copied
+     * @param listener The progress listener. <code>null</code> for no progress
+     */
+    public CopyEngine(int parallelism, boolean move, OnCopyEngineListener listener) {
+        super();
+        this.mParallelism = Math.max(1, parallelism);
+        this.mMove = move;
+        this.mListener = listener;
+        this.mSources = new ArrayList<File>();
+        this.mDestinations = new ArrayList<File>();
+        this.mCopiedBytes = new AtomicLong();
+        this.mCopiedFiles = new AtomicLong();
+    }
+
+    /**
+     * Method that returns the default number of workers of the application.
+     *
+     * @param context The current context
+     * @return int The number of workers
+     */
+    public static int getDefaultParallelism(Context context) {
+        int parallelism = context.getResources().getInteger(R.integer.copy_parallelism);
+        if (parallelism <= 0) {
+            parallelism = Runtime.getRuntime().availableProcessors();
+        }
+        return parallelism;
+    }
+
+    /**
+     * Method that adds a file or folder to the operation.
+     *
+     * @param src The source file or folder
+     * @param dst The destination file or folder
+     */
+    public void add(File src, File dst) {
+        this.mSources.add(src);
+        this.mDestinations.add(dst);
+    }
+
+    /**
+     * Method that cancels the operation.
+     */
+    public void cancel() {
+        this.mCancelled = true;
+    }
+
+    /**
+     * Method that returns the number of bytes to copy (once planned).
+     *
+     * @return long The number of bytes to copy
+     */
+    public long getTotalBytes() {
+        return this.mTotalBytes;
+    }
+
+    /**
+     * Method that returns the number of bytes already copied.
+     *
+     * @return long The number of bytes copied
+     */
+    public long getCopiedBytes() {
+        return this.mCopiedBytes.get();
+    }
+
+    /**
+     * Method that returns the number of files to copy (once planned).
+     *
+     * @return long The number of files to copy
+     */
+    public long getTotalFiles() {
+        return this.mTotalFiles;
+    }
+
+    /**
+     * Method that returns the number of files already copied.
+     *
+     * @return long The number of files copied
+     */
+    public long getCopiedFiles() {
+        return this.mCopiedFiles.get();
+    }
+
+    /**
+     * Method that returns the last source file started.
+     *
+     * @return File The last source file started. <code>null</code> if none
+     */
+    public File getCurrentSource() {
+        return this.mCurrentSrc;
+    }
+
+    /**
+     * Method that returns the last destination file started.
+     *
+     * @return File The last destination file started. <code>null</code> if none
+     */
+    public File getCurrentDestination() {
+        return this.mCurrentDst;
+    }
+
+    /**
+     * Method that returns the estimated remaining time of the operation, from the
+     * throughput of the bytes already copied (or from the throughput observed by the
+     * previous copies to the same device, at the start of the operation).
+     *
+     * @return long The remaining time (in milliseconds), or -1 if unknown
+     */
+    public long getRemainingTime() {
+        long copied = getCopiedBytes();
+        long elapsed = SystemClock.elapsedRealtime() - this.mStartTime;
+        if (this.mStartTime == 0) {
+            return -1;
+        }
+        if ((elapsed < ESTIMATION_WARMUP || copied == 0) && this.mExpectedThroughput > 0) {
+            return (long)((this.mTotalBytes - copied) * 1000L / this.mExpectedThroughput);
+        }
+        if (copied == 0 || elapsed <= 0) {
+            return -1;
+        }
+        return (long)((this.mTotalBytes - copied) * ((double)elapsed / copied));
+    }
+
+    /**
+     * Method that executes the operation. This method blocks until the operation ends.
+     *
+     * @throws CancelledOperationException If the operation was cancelled
+     * @throws ExecutionException If the operation failed, or a moved source couldn't
+     * be deleted
+     * @throws InsufficientPermissionsException If a file couldn't be copied
+     * @throws NoSuchFileOrDirectory If a source doesn't exist
+     */
+    public void execute() throws CancelledOperationException, ExecutionException,
+            InsufficientPermissionsException, NoSuchFileOrDirectory {
+        // Moves inside the same filesystem are just renames
+        List<File> sources = new ArrayList<File>();
+        List<File> destinations = new ArrayList<File>();
+        int cc = this.mSources.size();
+        for (int i = 0; i < cc; i++) {
+            File src = this.mSources.get(i);
+            File dst = this.mDestinations.get(i);
+            if (src.compareTo(dst) == 0) {
+                continue;
+            }
+            if (!src.exists()) {
+                throw new NoSuchFileOrDirectory(src.getAbsolutePath());
+            }
+            if (this.mMove && !dst.exists() && rename(src, dst)) {
+                continue;
+            }
+            sources.add(src);
+            destinations.add(dst);
+        }
+
+        // Plan the copy
+        List<Item> items = new ArrayList<Item>();
+        cc = sources.size();
+        for (int i = 0; i < cc; i++) {
+            checkCancelled();
+            plan(sources.get(i), destinations.get(i), items);
+        }
+        if (!destinations.isEmpty()) {
+            CopyThroughputStats stats = CopyThroughputStats.getInstance();
+            this.mExpectedThroughput = stats.getThroughput(
+                    CopyThroughputStats.getDevice(destinations.get(0)));
+        }
+        this.mStartTime = SystemClock.elapsedRealtime();
+        notifyProgress(true);
+
+        // Copy the items
+        copy(items);
+
+        // And remove the moved sources
+        File undeleted = null;
+        if (this.mMove) {
+            for (File src : sources) {
+                if (!FileHelper.deleteFolder(src)) {
+                    Log.w(TAG, "Source not deleted: " + src); //$NON-NLS-1$
+                    undeleted = src;
+                }
+            }
+        }
+        notifyProgress(true);
+        if (undeleted != null) {
+            throw new ExecutionException(
+                    "failed to delete the moved source: " + undeleted); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that renames a file or folder.
+     *
+     * @param src The source file or folder
+     * @param dst The destination file or folder
+     * @return boolean If the file or folder was renamed
+     */
+    private static boolean rename(File src, File dst) {
+        try {
+            Os.rename(src.getAbsolutePath(), dst.getAbsolutePath());
+            return true;
+        } catch (ErrnoException ex) {
+            // EXDEV: Not in the same filesystem
+            return false;
+        }
+    }
+
+    /**
+     * Method that adds the items to copy of a file or folder (folders precede their
+     * contents).
+     *
+     * @param src The source file or folder
+     * @param dst The destination file or folder
+     * @param items The items to copy
+     * @throws ExecutionException If the destination of a folder is a file
+     */
+    private void plan(File src, File dst, List<Item> items) throws ExecutionException {
+        if (src.isDirectory()) {
+            if (dst.exists() && !dst.isDirectory()) {
+                throw new ExecutionException("the path exists but is not a folder"); //$NON-NLS-1$
+            }
+            items.add(new Item(src, dst, true, 0));
+            File[] files = src.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    plan(file, new File(dst, file.getName()), items);
+                }
+            }
+        } else {
+            long size = src.length();
+            items.add(new Item(src, dst, false, size));
+            this.mTotalBytes += size;
+            this.mTotalFiles++;
+        }
+    }
+
+    /**
+     * Method that copies the planned items.
+     *
+     * @param items The items to copy
+     * @throws CancelledOperationException If the operation was cancelled
+     * @throws ExecutionException If the operation failed
+     * @throws InsufficientPermissionsException If a file couldn't be copied
+     */
+    private void copy(List<Item> items) throws CancelledOperationException,
+            ExecutionException, InsufficientPermissionsException {
+        ExecutorService executor = Executors.newFixedThreadPool(this.mParallelism);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        try {
+            for (final Item item : items) {
+                checkCancelled();
+                if (item.mFolder) {
+                    // The folders are created before their contents
+                    if (!item.mDst.exists() && !item.mDst.mkdir()) {
+                        Log.e(TAG, "Failed to create directory: " + item.mDst); //$NON-NLS-1$
+                        throw new InsufficientPermissionsException();
+                    }
+                } else if (item.mSize < SMALL_FILE_SIZE) {
+                    futures.add(executor.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            copyFile(item);
+                            return null;
+                        }
+                    }));
+                } else {
+                    // Stream the big files while the workers copy the small ones
+                    copyFile(item);
+                }
+                checkFailures(futures, false);
+            }
+            checkFailures(futures, true);
+        } catch (CancelledOperationException ex) {
+            this.mCancelled = true;
+            throw ex;
+        } catch (ExecutionException ex) {
+            this.mCancelled = true;
+            throw ex;
+        } catch (InsufficientPermissionsException ex) {
+            this.mCancelled = true;
+            throw ex;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Method that copies a file.
+     *
+     * @param item The file to copy
+     * @throws CancelledOperationException If the operation was cancelled
+     * @throws ExecutionException If the operation failed
+     * @throws InsufficientPermissionsException If a file couldn't be copied
+     */
+    private void copyFile(Item item) throws CancelledOperationException, ExecutionException,
+            InsufficientPermissionsException {
+        this.mCurrentSrc = item.mSrc;
+        this.mCurrentDst = item.mDst;
+        boolean copied = FileHelper.copyFileWithNio(item.mSrc, item.mDst,
+                new FileHelper.OnCopyProgressListener() {
+            @Override
+            public boolean isCancelled() {
+                return CopyEngine.this.mCancelled;
+            }
+
+            @Override
+            public void onBytesCopied(long bytes) {
+                CopyEngine.this.mCopiedBytes.addAndGet(bytes);
+                notifyProgress(false);
+            }
+        });
+        if (!copied) {
+            throw new InsufficientPermissionsException();
+        }
+        this.mCopiedFiles.incrementAndGet();
+        notifyProgress(false);
+    }
+
+    /**
+     * Method that checks if a worker failed, and throws its exception.
+     *
+     * @param futures The tasks of the workers
+     * @param wait If must wait for all the workers
+     * @throws CancelledOperationException If the operation was cancelled
+     * @throws ExecutionException If the operation failed
+     * @throws InsufficientPermissionsException If a file couldn't be copied
+     */
+    private void checkFailures(List<Future<?>> futures, boolean wait)
+            throws CancelledOperationException, ExecutionException,
+            InsufficientPermissionsException {
+        for (int i = futures.size() - 1; i >= 0; i--) {
+            Future<?> future = futures.get(i);
+            if (!wait && !future.isDone()) {
+                continue;
+            }
+            try {
+                future.get();
+                futures.remove(i);
+            } catch (InterruptedException ex) {
+                throw new CancelledOperationException();
+            } catch (java.util.concurrent.ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof CancelledOperationException) {
+                    throw (CancelledOperationException)cause;
+                }
+                if (cause instanceof ExecutionException) {
+                    throw (ExecutionException)cause;
+                }
+                if (cause instanceof InsufficientPermissionsException) {
+                    throw (InsufficientPermissionsException)cause;
+                }
+                throw new ExecutionException(String.valueOf(cause), cause);
+            }
+        }
+    }
+
+    /**
+     * Method that notifies the progress to the listener (throttled).
+     *
+     * @param force If the progress must be notified anyway
+     */
+    private void notifyProgress(boolean force) {
+        if (this.mListener == null) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        if (!force && now - this.mLastProgress < PROGRESS_INTERVAL) {
+            return;
+        }
+        this.mLastProgress = now;
+        this.mListener.onCopyProgress(this);
+    }
+
+    /**
+     * Checks if the operation was cancelled
+     *
+     * @throws CancelledOperationException If the operation was cancelled
+     */
+    private void checkCancelled() throws CancelledOperationException {
+        if (this.mCancelled) {
+            throw new CancelledOperationException();
+        }
+    }
+}
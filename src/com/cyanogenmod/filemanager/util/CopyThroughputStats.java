@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.system.ErrnoException;
+import android.system.Os;
+import android.util.LongSparseArray;
+
+import java.io.File;
+import java.io.FileDescriptor;
+
+/**
+ * A class that records the observed throughput of the file copies, per mounted device.<br/>
+ * <br/>
+ * Internal flash, FUSE sdcards and USB OTG sticks have very different throughputs. Every
+ * device keeps a histogram of the throughput of the copied chunks (in power of two
+ * buckets), used to estimate the remaining time of the operations, and the tuned chunk
+ * size of the copies, so the copies are as fast as possible while they still can be
+ * cancelled quickly.
+ */
+public final class CopyThroughputStats {
+
+    /**
+     * The time that the copy of a chunk should take (in milliseconds). Keeps the
+     * cancellation of a copy under 100ms.
+     */
+    public static final long TARGET_CHUNK_TIME = 50L;
+
+    /**
+     * The minimum chunk size of the copies.
+     */
+    public static final long MIN_CHUNK_SIZE = 64L * 1024L;
+
+    /**
+     * The maximum chunk size of the copies.
+     */
+    public static final long MAX_CHUNK_SIZE = 16L * 1024L * 1024L;
+
+    // Chunks smaller than this are dominated by the syscall overhead; not sampled
+    private static final long MIN_SAMPLE_SIZE = MIN_CHUNK_SIZE;
+
+    // Bucket i holds the samples between 2^i and 2^(i+1) KiB/s (up to 2 TiB/s)
+    private static final int BUCKETS = 32;
+
+    // The weight of the new samples in the average throughput
+    private static final double EWMA_WEIGHT = 0.25;
+
+    /**
+     * The throughput statistics of a mounted device.
+     */
+    private static class DeviceStats {
+        final long[] mHistogram = new long[BUCKETS];
+        long mSamples;
+        double mAverage;
+        long mChunkSize;
+
+        DeviceStats() {
+            super();
+            this.mChunkSize = FileHelper.NIO_COPY_CHUNK_SIZE;
+        }
+    }
+
+    private static final CopyThroughputStats sInstance = new CopyThroughputStats();
+
+    private final LongSparseArray<DeviceStats> mDevices;
+
+    /**
+     * Constructor of <code>CopyThroughputStats</code>.
+     */
+    private CopyThroughputStats() {
+        super();
+        this.mDevices = new LongSparseArray<DeviceStats>();
+    }
+
+    /**
+     * Method that returns the throughput statistics of the application.
+     *
+     * @return CopyThroughputStats The throughput statistics
+     */
+    public static CopyThroughputStats getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Method that returns the device of an open file.
+     *
+     * @param fd The file descriptor
+     * @return long The device, or -1 if unknown
+     */
+    public static long getDevice(FileDescriptor fd) {
+        try {
+            return Os.fstat(fd).st_dev;
+        } catch (ErrnoException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * Method that returns the device of a file, or of its nearest existing parent.
+     *
+     * @param file The file
+     * @return long The device, or -1 if unknown
+     */
+    public static long getDevice(File file) {
+        File f = file;
+        while (f != null) {
+            try {
+                return Os.stat(f.getAbsolutePath()).st_dev;
+            } catch (ErrnoException ex) {
+                f = f.getParentFile();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Method that records the copy of a chunk, and tunes the chunk size of the device.
+     *
+     * @param device The device of the destination file
+     * @param bytes The number of bytes copied
+     * @param nanos The time spent copying the chunk (in nanoseconds)
+     * @return long The tuned chunk size for the next chunks
+     */
+    public long record(long device, long bytes, long nanos) {
+        synchronized (this.mDevices) {
+            DeviceStats stats = getDeviceStats(device);
+            if (bytes < MIN_SAMPLE_SIZE || nanos <= 0) {
+                return stats.mChunkSize;
+            }
+
+            double throughput = bytes * 1000000000.0 / nanos;
+            stats.mHistogram[getBucket(throughput)]++;
+            stats.mSamples++;
+            stats.mAverage = stats.mSamples == 1
+                    ? throughput
+                    : stats.mAverage + EWMA_WEIGHT * (throughput - stats.mAverage);
+
+            // The chunk that is copied in the target time at the average throughput
+            long chunkSize = (long)(stats.mAverage * TARGET_CHUNK_TIME / 1000L);
+            stats.mChunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, chunkSize));
+            return stats.mChunkSize;
+        }
+    }
+
+    /**
+     * Method that returns the tuned chunk size of a device.
+     *
+     * @param device The device of the destination file
+     * @return long The chunk size
+     */
+    public long getChunkSize(long device) {
+        synchronized (this.mDevices) {
+            return getDeviceStats(device).mChunkSize;
+        }
+    }
+
+    /**
+     * Method that returns the median of the observed throughputs of a device.
+     *
+     * @param device The device of the destination file
+     * @return double The throughput (in bytes per second), or -1 if no chunk was
+     * copied to the device
+     */
+    public double getThroughput(long device) {
+        synchronized (this.mDevices) {
+            DeviceStats stats = this.mDevices.get(device);
+            if (stats == null || stats.mSamples == 0) {
+                return -1;
+            }
+            long half = (stats.mSamples + 1) / 2;
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                count += stats.mHistogram[i];
+                if (count >= half) {
+                    // The geometric center of the bucket
+                    return 1024.0 * Math.pow(2, i) * Math.sqrt(2);
+                }
+            }
+            return stats.mAverage;
+        }
+    }
+
+    /**
+     * Method that returns the throughput histogram of a device.
+     *
+     * @param device The device of the destination file
+     * @return long[] The number of chunks of every bucket. The bucket i holds the chunks
+     * copied between 2^i and 2^(i+1) KiB/s
+     */
+    public long[] getHistogram(long device) {
+        synchronized (this.mDevices) {
+            DeviceStats stats = this.mDevices.get(device);
+            return stats == null ? new long[BUCKETS] : stats.mHistogram.clone();
+        }
+    }
+
+    /**
+     * Method that clears all the statistics.
+     */
+    public void clear() {
+        synchronized (this.mDevices) {
+            this.mDevices.clear();
+        }
+    }
+
+    private DeviceStats getDeviceStats(long device) {
+        DeviceStats stats = this.mDevices.get(device);
+        if (stats == null) {
+            stats = new DeviceStats();
+            this.mDevices.put(device, stats);
+        }
+        return stats;
+    }
+
+    private static int getBucket(double throughput) {
+        double kib = throughput / 1024.0;
+        if (kib < 1) {
+            return 0;
+        }
+        int bucket = 63 - Long.numberOfLeadingZeros((long)kib);
+        return Math.min(BUCKETS - 1, bucket);
+    }
+}
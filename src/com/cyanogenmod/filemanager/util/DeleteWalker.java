@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.content.Context;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.R;
+import com.cyanogenmod.filemanager.commands.BulkDeleteExecutable.OnBulkDeleteListener;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A class that deletes several files and folder trees in parallel.<br/>
+ * <br/>
+ * The paths are deleted by a {@link ForkJoinPool} that splits the work in ranges of paths
+ * and per directory. Every entry is unlinked without a previous stat; only the entries that
+ * can't be unlinked because they are directories are walked (symlinks are never followed).
+ * A directory is removed once all its entries were deleted.
+ */
+public class DeleteWalker {
+
+    private static final String TAG = "DeleteWalker"; //$NON-NLS-1$
+
+    // The results of the unlink of an entry
+    private static final int DELETED = 0;
+    private static final int FAILED = 1;
+    private static final int DIRECTORY = 2;
+
+    // The number of paths deleted by a task, without splitting it
+    private static final int CHUNK_SIZE = 32;
+
+    /**
+     * The task that deletes a range of paths. Big ranges are split in two tasks, and
+     * the entries of every directory are deleted by a new task.
+     */
+    private static class DeleteTask extends RecursiveTask<Boolean> {
+        private static final long serialVersionUID = -2316585409377283614L;
+
+        private final String[] mPaths;
+        private final int mFrom;
+        private final int mTo;
+        private final boolean[] mResults;
+        private final OnBulkDeleteListener mListener;
+
+        DeleteTask(String[] paths, int from, int to,
+                boolean[] results, OnBulkDeleteListener listener) {
+            super();
+            this.mPaths = paths;
+            this.mFrom = from;
+            this.mTo = to;
+            this.mResults = results;
+            this.mListener = listener;
+        }
+
+        @Override
+        protected Boolean compute() {
+            if (this.mTo - this.mFrom > CHUNK_SIZE) {
+                int middle = (this.mFrom + this.mTo) >>> 1;
+                DeleteTask left = new DeleteTask(
+                        this.mPaths, this.mFrom, middle, this.mResults, this.mListener);
+                DeleteTask right = new DeleteTask(
+                        this.mPaths, middle, this.mTo, this.mResults, this.mListener);
+                invokeAll(left, right);
+                return Boolean.valueOf(
+                        left.join().booleanValue() & right.join().booleanValue());
+            }
+
+            boolean deleted = true;
+            for (int i = this.mFrom; i < this.mTo; i++) {
+                String path = this.mPaths[i];
+                boolean ret = delete(path);
+                if (this.mResults != null) {
+                    // One of the requested paths
+                    this.mResults[i] = ret;
+                    if (this.mListener != null) {
+                        this.mListener.onDeleteProgress(path, ret);
+                    }
+                }
+                deleted &= ret;
+            }
+            return Boolean.valueOf(deleted);
+        }
+
+        private static boolean delete(String path) {
+            int result = unlink(path);
+            if (result != DIRECTORY) {
+                return result == DELETED;
+            }
+
+            String[] names = new File(path).list();
+            if (names != null && names.length > 0) {
+                String[] children = new String[names.length];
+                for (int i = 0; i < names.length; i++) {
+                    children[i] = path + File.separator + names[i];
+                }
+                DeleteTask task = new DeleteTask(children, 0, children.length, null, null);
+                if (!task.invoke().booleanValue()) {
+                    return false;
+                }
+            }
+            try {
+                Os.rmdir(path);
+            } catch (ErrnoException ex) {
+                return ex.errno == OsConstants.ENOENT;
+            }
+            return true;
+        }
+    }
+
+    private final int mParallelism;
+
+    /**
+     * Constructor of <code>DeleteWalker</code>.
+     *
+     * @param parallelism The number of threads
+     */
+    public DeleteWalker(int parallelism) {
+        super();
+        this.mParallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Method that returns the configured number of threads used to delete files.
+     *
+     * @param context The current context. Can be <code>null</code>
+     * @return int The number of threads
+     */
+    public static int getDefaultParallelism(Context context) {
+        int parallelism = 0;
+        if (context != null) {
+            parallelism = context.getResources().getInteger(R.integer.delete_parallelism);
+        }
+        if (parallelism <= 0) {
+            parallelism = Runtime.getRuntime().availableProcessors();
+        }
+        return parallelism;
+    }
+
+    /**
+     * Method that deletes the files and folders (recursively). The paths that don't exist
+     * are considered deleted. This method blocks until all the paths were processed.
+     *
+     * @param paths The absolute paths of the files and folders
+     * @param listener The listener that receives the progress of every path, from the
+     * worker threads. Can be <code>null</code>
+     * @return List<String> The paths that couldn't be deleted
+     */
+    public List<String> delete(String[] paths, OnBulkDeleteListener listener) {
+        boolean[] results = new boolean[paths.length];
+        ForkJoinPool pool = new ForkJoinPool(this.mParallelism);
+        try {
+            pool.invoke(new DeleteTask(paths, 0, paths.length, results, listener));
+        } catch (RuntimeException ex) {
+            Log.w(TAG, "Failed to delete the paths", ex); //$NON-NLS-1$
+        } finally {
+            pool.shutdownNow();
+        }
+
+        List<String> failed = new ArrayList<String>();
+        for (int i = 0; i < paths.length; i++) {
+            if (!results[i]) {
+                failed.add(paths[i]);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Method that unlinks an entry.
+     *
+     * @param path The path of the entry
+     * @return int {@link #DELETED} if the entry was unlinked (or doesn't exist),
+     * {@link #DIRECTORY} if the entry is a directory, or {@link #FAILED}
+     */
+    private static int unlink(String path) {
+        try {
+            Os.unlink(path);
+            return DELETED;
+        } catch (ErrnoException ex) {
+            if (ex.errno == OsConstants.ENOENT) {
+                return DELETED;
+            }
+            if (ex.errno == OsConstants.EISDIR || ex.errno == OsConstants.EPERM) {
+                // EPERM is returned instead of EISDIR by some filesystems (and for the
+                // files that can't be deleted). Only a real directory is walked
+                try {
+                    if (OsConstants.S_ISDIR(Os.lstat(path).st_mode)) {
+                        return DIRECTORY;
+                    }
+                } catch (ErrnoException ex2) {/**NON BLOCK**/}
+            }
+            return FAILED;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructStat;
+
+import com.cyanogenmod.filemanager.commands.ListExecutable.OnPartialListListener;
+import com.cyanogenmod.filemanager.model.AID;
+import com.cyanogenmod.filemanager.model.Directory;
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+import com.cyanogenmod.filemanager.model.Group;
+import com.cyanogenmod.filemanager.model.Permissions;
+import com.cyanogenmod.filemanager.model.RegularFile;
+import com.cyanogenmod.filemanager.model.User;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A helper class for list directories of the filesystem from java.<br/>
+ * <br/>
+ * Every entry is built with a single <code>stat</code> system call, instead of the
+ * several calls done by {@link File} (isDirectory, length, lastModified, ...), and the
+ * entries can be delivered in chunks while the directory is being listed. The
+ * permissions of the entries are created on demand (see {@link LazyAttributesLoader}).
+ */
+public final class DirectoryListHelper {
+
+    /**
+     * The default number of entries of every chunk delivered while listing.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 256;
+
+    // The user and group name of the files. Use the defaults one for sdcards
+    private static final String USER = "root"; //$NON-NLS-1$
+    private static final String GROUP = "sdcard_r"; //$NON-NLS-1$
+
+    /**
+     * Constructor of <code>DirectoryListHelper</code>.
+     */
+    private DirectoryListHelper() {
+        super();
+    }
+
+    /**
+     * Method that lists a directory.
+     *
+     * @param dir The directory to list
+     * @param chunkSize The number of entries of every chunk delivered to the listener
+     * @param listener The listener that receives the chunks. <code>null</code> if no
+     * chunks are needed
+     * @return List<FileSystemObject> All the entries of the directory, or null if the
+     * directory can't be listed
+     */
+    public static List<FileSystemObject> listDirectory(
+            File dir, int chunkSize, OnPartialListListener listener) {
+        String[] names = dir.list();
+        if (names == null) {
+            return null;
+        }
+
+        // The user and group are the same for all the entries. Resolve them only once
+        AID userAID = AIDHelper.getAIDFromName(USER);
+        AID groupAID = AIDHelper.getAIDFromName(GROUP);
+        User user = new User(userAID.getId(), userAID.getName());
+        Group group = new Group(groupAID.getId(), groupAID.getName());
+
+        // The permissions are created on demand
+        LazyAttributesLoader loader = new LazyAttributesLoader(names.length);
+
+        final String parent = dir.getPath();
+        final String prefix = FileHelper.addTrailingSlash(parent);
+        List<FileSystemObject> files = new ArrayList<FileSystemObject>(names.length);
+        int chunkStart = 0;
+        for (int i = 0; i < names.length; i++) {
+            files.add(createFileSystemObject(
+                    parent, prefix + names[i], names[i], user, group, loader));
+
+            // Deliver a chunk?
+            if (listener != null && files.size() - chunkStart >= chunkSize) {
+                listener.onPartialList(new ArrayList<FileSystemObject>(
+                        files.subList(chunkStart, files.size())));
+                chunkStart = files.size();
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Method that creates a {@link FileSystemObject} from a single <code>stat</code>
+     * call. The entry is built with the same information that
+     * {@link FileHelper#createFileSystemObject(File)} returns.
+     *
+     * @param parent The parent directory of the entry
+     * @param path The absolute path of the entry
+     * @param name The name of the entry
+     * @param user The user of the entry
+     * @param group The group of the entry
+     * @return FileSystemObject The file system object reference
+     */
+    public static FileSystemObject createFileSystemObject(
+            String parent, String path, String name, User user, Group group) {
+        return createFileSystemObject(parent, path, name, user, group, null);
+    }
+
+    private static FileSystemObject createFileSystemObject(String parent, String path,
+            String name, User user, Group group, LazyAttributesLoader loader) {
+        boolean isDirectory = false;
+        long size = 0;
+        long lastModified = 0;
+        try {
+            StructStat st = Os.stat(path);
+            isDirectory = OsConstants.S_ISDIR(st.st_mode);
+            size = st.st_size;
+            lastModified = st.st_mtime * 1000L;
+        } catch (ErrnoException ex) {
+            // Broken link or not accessible entry. Treat as an empty file (like File does)
+        }
+
+        Date date = new Date(lastModified);
+        FileSystemObject fso;
+        if (isDirectory) {
+            fso = new Directory(
+                    name, parent, user, group,
+                    loader != null ? null : Permissions.createDefaultFolderPermissions(),
+                    date, date, date); // The only date we have
+        } else {
+            fso = new RegularFile(
+                    name, parent, user, group,
+                    loader != null ? null : Permissions.createDefaultFilePermissions(),
+                    size, date, date, date); // The only date we have
+        }
+        if (loader != null) {
+            loader.addDefault(fso);
+        }
+        return fso;
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.FileObserver;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+import com.cyanogenmod.filemanager.model.ParentDirectory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A class that watches the entries of a directory (with inotify) and reports the
+ * changes as a diff of the listing: the entries that were removed and the entries that
+ * were created or modified.<br/>
+ * <br/>
+ * The events are debounced and delivered in batches. When the number of changed
+ * entries is too big (an event storm, like uncompressing a big file) the listing is
+ * reported as invalidated, once the storm calms down, because listing the directory
+ * again is cheaper than resolving every entry.
+ */
+public class DirectoryObserver extends FileObserver {
+
+    private static final String TAG = "DirectoryObserver"; //$NON-NLS-1$
+
+    /**
+     * An interface for receive the changes of the directory. All the methods are
+     * invoked in the main thread.
+     */
+    public interface OnDirectoryEventsListener {
+        /**
+         * Invoked when entries of the directory were changed.
+         *
+         * @param dir The directory
+         * @param removed The full paths of the entries that were removed
+         * @param changed The entries that were created or modified
+         */
+        void onDirectoryEvents(
+                String dir, List<String> removed, List<FileSystemObject> changed);
+
+        /**
+         * Invoked when the directory must be listed again (too many changes, or the
+         * directory itself was removed or moved).
+         *
+         * @param dir The directory
+         */
+        void onDirectoryInvalidated(String dir);
+    }
+
+    private static final int EVENTS = CREATE | DELETE | MOVED_FROM | MOVED_TO
+            | CLOSE_WRITE | ATTRIB | DELETE_SELF | MOVE_SELF;
+
+    // The time to wait for more events before deliver a batch (in milliseconds)
+    private static final long BATCH_DELAY = 250L;
+    // The maximum number of entries of a batch. Beyond this, the listing is invalidated
+    private static final int MAX_BATCH_SIZE = 256;
+    // While a storm is active, wait until the events calm down this time...
+    private static final long STORM_QUIET_TIME = 500L;
+    // ...but never more than this time
+    private static final long STORM_MAX_DELAY = 2000L;
+
+    private final Context mContext;
+    private final String mDirectory;
+    private final OnDirectoryEventsListener mListener;
+    private final Handler mHandler;
+
+    // Guarded by mPending
+    private final Set<String> mPending = new LinkedHashSet<String>();
+    private boolean mInvalidated;
+    private boolean mScheduled;
+    private boolean mResolving;
+    private long mFirstEventTime;
+    private long mLastEventTime;
+
+    private volatile boolean mStopped;
+
+    private final Runnable mDeliverRunnable = new Runnable() {
+        @Override
+        public void run() {
+            deliver();
+        }
+    };
+
+    /**
+     * Constructor of <code>DirectoryObserver</code>.
+     *
+     * @param context The current context
+     * @param dir The directory to watch
+     * @param listener The listener that receives the changes
+     */
+    public DirectoryObserver(Context context, String dir, OnDirectoryEventsListener listener) {
+        super(dir, EVENTS);
+        this.mContext = context.getApplicationContext();
+        this.mDirectory = dir;
+        this.mListener = listener;
+        this.mHandler = new Handler(Looper.getMainLooper());
+        this.mStopped = true;
+    }
+
+    /**
+     * Method that returns the watched directory.
+     *
+     * @return String The watched directory
+     */
+    public String getDirectory() {
+        return this.mDirectory;
+    }
+
+    /**
+     * Method that returns if the directory is being watched.
+     *
+     * @return boolean If the directory is being watched
+     */
+    public boolean isWatching() {
+        return !this.mStopped;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void startWatching() {
+        this.mStopped = false;
+        super.startWatching();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void stopWatching() {
+        this.mStopped = true;
+        super.stopWatching();
+        this.mHandler.removeCallbacks(this.mDeliverRunnable);
+        synchronized (this.mPending) {
+            this.mPending.clear();
+            this.mInvalidated = false;
+            this.mScheduled = false;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onEvent(int event, String path) {
+        if (this.mStopped) {
+            return;
+        }
+        final int type = event & ALL_EVENTS;
+        synchronized (this.mPending) {
+            long now = SystemClock.uptimeMillis();
+            if (!this.mScheduled && !this.mResolving) {
+                this.mFirstEventTime = now;
+            }
+            this.mLastEventTime = now;
+
+            if ((type & (DELETE_SELF | MOVE_SELF)) != 0) {
+                this.mInvalidated = true;
+            } else if (path != null && !this.mInvalidated) {
+                this.mPending.add(path);
+                if (this.mPending.size() > MAX_BATCH_SIZE) {
+                    // Event storm. List the directory again when it ends
+                    this.mInvalidated = true;
+                    this.mPending.clear();
+                }
+            }
+            schedule(BATCH_DELAY);
+        }
+    }
+
+    /**
+     * Method that schedules the delivery of the pending events. Must be called
+     * with the lock of the pending events.
+     *
+     * @param delay The delay (in milliseconds)
+     */
+    private void schedule(long delay) {
+        if (!this.mScheduled && !this.mResolving) {
+            this.mScheduled = true;
+            this.mHandler.postDelayed(this.mDeliverRunnable, delay);
+        }
+    }
+
+    /**
+     * Method that delivers the pending events (main thread).
+     */
+    void deliver() {
+        final List<String> names;
+        synchronized (this.mPending) {
+            this.mScheduled = false;
+            if (this.mStopped) {
+                return;
+            }
+            if (this.mInvalidated) {
+                long now = SystemClock.uptimeMillis();
+                if (now - this.mLastEventTime < STORM_QUIET_TIME
+                        && now - this.mFirstEventTime < STORM_MAX_DELAY) {
+                    // The storm continues
+                    schedule(STORM_QUIET_TIME);
+                    return;
+                }
+                this.mInvalidated = false;
+                this.mPending.clear();
+                names = null;
+            } else {
+                if (this.mPending.isEmpty()) {
+                    return;
+                }
+                names = new ArrayList<String>(this.mPending);
+                this.mPending.clear();
+                this.mResolving = true;
+            }
+        }
+
+        if (names == null) {
+            this.mListener.onDirectoryInvalidated(this.mDirectory);
+            return;
+        }
+        new ResolveTask(names).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    /**
+     * A task that resolves the current state of the changed entries. A single entry is
+     * resolved by itself; several entries are resolved with a single listing of the
+     * directory, instead of one request to the console per entry.
+     */
+    private class ResolveTask extends AsyncTask<Void, Void, Void> {
+        private final List<String> mNames;
+        private final List<String> mRemoved = new ArrayList<String>();
+        private final List<FileSystemObject> mChanged = new ArrayList<FileSystemObject>();
+        private boolean mInvalidated;
+
+        ResolveTask(List<String> names) {
+            super();
+            this.mNames = names;
+        }
+
+        @Override
+        protected Void doInBackground(Void... params) {
+            final String dir = DirectoryObserver.this.mDirectory;
+            final String prefix = FileHelper.addTrailingSlash(dir);
+            if (this.mNames.size() == 1) {
+                final String path = prefix + this.mNames.get(0);
+                try {
+                    Os.lstat(path);
+                } catch (ErrnoException ex) {
+                    this.mRemoved.add(path);
+                    return null;
+                }
+                try {
+                    FileSystemObject fso = CommandHelper.getFileInfo(
+                            DirectoryObserver.this.mContext, path, false, null);
+                    if (fso != null) {
+                        this.mChanged.add(fso);
+                    }
+                } catch (Exception ex) {
+                    Log.w(TAG, "Failed to resolve " + path, ex); //$NON-NLS-1$
+                }
+                return null;
+            }
+
+            final Map<String, FileSystemObject> entries =
+                    new HashMap<String, FileSystemObject>();
+            try {
+                List<FileSystemObject> files =
+                        CommandHelper.listFiles(DirectoryObserver.this.mContext, dir, null);
+                for (FileSystemObject fso : files) {
+                    if (!(fso instanceof ParentDirectory)) {
+                        entries.put(fso.getName(), fso);
+                    }
+                }
+            } catch (Exception ex) {
+                // List the directory again from the view
+                Log.w(TAG, "Failed to list " + dir, ex); //$NON-NLS-1$
+                this.mInvalidated = true;
+                return null;
+            }
+            for (String name : this.mNames) {
+                FileSystemObject fso = entries.get(name);
+                if (fso == null) {
+                    this.mRemoved.add(prefix + name);
+                } else {
+                    this.mChanged.add(fso);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        protected void onPostExecute(Void result) {
+            synchronized (DirectoryObserver.this.mPending) {
+                DirectoryObserver.this.mResolving = false;
+                if (!DirectoryObserver.this.mPending.isEmpty()
+                        || DirectoryObserver.this.mInvalidated) {
+                    schedule(BATCH_DELAY);
+                }
+            }
+            if (DirectoryObserver.this.mStopped) {
+                return;
+            }
+            if (this.mInvalidated) {
+                DirectoryObserver.this.mListener.onDirectoryInvalidated(
+                        DirectoryObserver.this.mDirectory);
+            } else if (!this.mRemoved.isEmpty() || !this.mChanged.isEmpty()) {
+                DirectoryObserver.this.mListener.onDirectoryEvents(
+                        DirectoryObserver.this.mDirectory, this.mRemoved, this.mChanged);
+            }
+        }
+    }
+}
@@ -41,6 +41,7 @@ import com.cyanogenmod.filemanager.model.AID;
 import com.cyanogenmod.filemanager.model.BlockDevice;
 import com.cyanogenmod.filemanager.model.CharacterDevice;
 import com.cyanogenmod.filemanager.model.Directory;
+import com.cyanogenmod.filemanager.model.DirectorySnapshot;
 import com.cyanogenmod.filemanager.model.DomainSocket;
 import com.cyanogenmod.filemanager.model.FileSystemObject;
 import com.cyanogenmod.filemanager.model.Group;
@@ -70,7 +71,7 @@ import java.nio.channels.ClosedByInterruptException;
 import java.nio.channels.FileChannel;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.Iterator;
@@ -129,9 +130,12 @@ public final class FileHelper {
     public static final String NEWLINE = System.getProperty("line.separator"); //$NON-NLS-1$
 
     /**
-     * The size of chunks that we will copy with nio during a copy operation.
+     * The initial size of chunks that we will copy with nio during a copy operation.
+     * The size is tuned afterwards to the observed throughput of the destination device.
      *
      * Set to 1MiB.
+     *
+     * @see CopyThroughputStats
      */
     public final static long NIO_COPY_CHUNK_SIZE = 1024000L;
 
@@ -315,22 +319,40 @@ public final class FileHelper {
      * if <code>fso</code> has no extension.
      */
     public static String getExtension(String name) {
+        int start = getExtensionIndex(name);
+        if (start == -1) {
+            return null;
+        }
+        return name.substring(start);
+    }
+
+    /**
+     * Method that returns the position of the extension of a file system object, so the
+     * extension can be looked up without extracting it.
+     *
+     * @param name The name of file system object
+     * @return int The position of the first character of the extension, or -1 if
+     * <code>name</code> has no extension.
+     */
+    public static int getExtensionIndex(String name) {
         final char dot = '.';
         int pos = name.lastIndexOf(dot);
         if (pos == -1 || pos == 0) { // Hidden files doesn't have extensions
-            return null;
+            return -1;
         }
 
         // Exceptions to the general extraction method
         int cc = COMPRESSED_TAR.length;
         for (int i = 0; i < cc; i++) {
-            if (name.endsWith("." + COMPRESSED_TAR[i])) { //$NON-NLS-1$
-                return COMPRESSED_TAR[i];
+            int start = name.length() - COMPRESSED_TAR[i].length();
+            if (start > 0 && name.charAt(start - 1) == dot
+                    && name.startsWith(COMPRESSED_TAR[i], start)) {
+                return start;
             }
         }
 
         // General extraction method
-        return name.substring(pos + 1);
+        return pos + 1;
     }
 
     /**
@@ -544,7 +566,11 @@ public final class FileHelper {
 
     /**
      * Method that applies the configuration modes to the listed files
-     * (sort mode, hidden files, ...).
+     * (sort mode, hidden files, ...).<br/>
+     * <br/>
+     * The listed files aren't modified. The files are filtered and sorted over an array of
+     * indexes with precomputed {@link SortKeys}, and returned in a compact
+     * {@link DirectorySnapshot} (with their sort keys).
      *
      * @param files The listed files
      * @param restrictions The restrictions to apply when displaying files
@@ -557,103 +583,198 @@ public final class FileHelper {
             boolean noSort, boolean chRooted) {
         //Retrieve user preferences
         SharedPreferences prefs = Preferences.getSharedPreferences();
-        FileManagerSettings sortModePref = FileManagerSettings.SETTINGS_SORT_MODE;
-        FileManagerSettings showDirsFirstPref = FileManagerSettings.SETTINGS_SHOW_DIRS_FIRST;
         FileManagerSettings showHiddenPref = FileManagerSettings.SETTINGS_SHOW_HIDDEN;
         FileManagerSettings showSystemPref = FileManagerSettings.SETTINGS_SHOW_SYSTEM;
         FileManagerSettings showSymlinksPref = FileManagerSettings.SETTINGS_SHOW_SYMLINKS;
+        final boolean hideHidden = !prefs.getBoolean(
+                showHiddenPref.getId(),
+                ((Boolean)showHiddenPref.getDefaultValue()).booleanValue()) || chRooted;
+        final boolean hideSystem = !prefs.getBoolean(
+                showSystemPref.getId(),
+                ((Boolean)showSystemPref.getDefaultValue()).booleanValue()) || chRooted;
+        final boolean hideSymlinks = !prefs.getBoolean(
+                showSymlinksPref.getId(),
+                ((Boolean)showSymlinksPref.getDefaultValue()).booleanValue()) || chRooted;
 
         //Remove all unnecessary files (no required by the user)
-        int cc = files.size();
-        for (int i = cc - 1; i >= 0; i--) {
-            FileSystemObject file = files.get(i);
+        FileSystemObject[] array = files.toArray(new FileSystemObject[files.size()]);
+        int[] indexes = new int[array.length];
+        int count = 0;
+        for (int i = 0; i < array.length; i++) {
+            FileSystemObject file = array[i];
 
             //Hidden files
-            if (!prefs.getBoolean(
-                    showHiddenPref.getId(),
-                    ((Boolean)showHiddenPref.getDefaultValue()).booleanValue()) || chRooted) {
-                if (file.isHidden()) {
-                    files.remove(i);
-                    continue;
-                }
+            if (hideHidden && file.isHidden()) {
+                continue;
             }
 
             //System files
-            if (!prefs.getBoolean(
-                    showSystemPref.getId(),
-                    ((Boolean)showSystemPref.getDefaultValue()).booleanValue()) || chRooted) {
-                if (file instanceof SystemFile) {
-                    files.remove(i);
-                    continue;
-                }
+            if (hideSystem && file instanceof SystemFile) {
+                continue;
             }
 
             //Symlinks files
-            if (!prefs.getBoolean(
-                    showSymlinksPref.getId(),
-                    ((Boolean)showSymlinksPref.getDefaultValue()).booleanValue()) || chRooted) {
-                if (file instanceof Symlink) {
-                    files.remove(i);
-                    continue;
-                }
+            if (hideSymlinks && file instanceof Symlink) {
+                continue;
             }
 
             // Restrictions (only apply to files)
             if (restrictions != null) {
                 if (!isDirectory(file)) {
                     if (!isDisplayAllowed(file, restrictions)) {
-                        files.remove(i);
                         continue;
                     }
                 }
             }
+            indexes[count++] = i;
         }
 
         //Apply sort mode
+        FileSystemObject[] filtered = new FileSystemObject[count];
+        for (int i = 0; i < count; i++) {
+            filtered[i] = array[indexes[i]];
+        }
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        SortKeys keys = null;
         if (!noSort) {
-            final boolean showDirsFirst =
-                    prefs.getBoolean(
-                            showDirsFirstPref.getId(),
-                        ((Boolean)showDirsFirstPref.getDefaultValue()).booleanValue());
-            final NavigationSortMode sortMode =
-                    NavigationSortMode.fromId(
-                            prefs.getInt(sortModePref.getId(),
-                            ((ObjectIdentifier)sortModePref.getDefaultValue()).getId()));
-            Collections.sort(files, new Comparator<FileSystemObject>() {
-                @Override
-                public int compare(FileSystemObject lhs, FileSystemObject rhs) {
-                    //Parent directory always goes first
-                    boolean isLhsParentDirectory = lhs instanceof ParentDirectory;
-                    boolean isRhsParentDirectory = rhs instanceof ParentDirectory;
-                    if (isLhsParentDirectory || isRhsParentDirectory) {
-                        if (isLhsParentDirectory && isRhsParentDirectory) {
-                            return 0;
-                        }
-                        return (isLhsParentDirectory) ? -1 : 1;
+            List<FileSystemObject> list = Arrays.asList(filtered);
+            keys = new SortKeys(list);
+            sort(keys, order, list);
+        }
+
+        //Return the files
+        DirectorySnapshot snapshot = new DirectorySnapshot(count);
+        if (files instanceof DirectorySnapshot) {
+            for (int i = 0; i < count; i++) {
+                snapshot.addRow((DirectorySnapshot)files, indexes[order[i]]);
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                snapshot.add(filtered[order[i]]);
+            }
+        }
+        if (keys != null) {
+            snapshot.setSortKeys(keys.permute(order));
+        }
+        return snapshot;
+    }
+
+    /**
+     * Method that sorts again the files returned by
+     * {@link #applyUserPreferences(List, Map, boolean, boolean)} with the current
+     * sort preferences (sort mode, directories first and case sensitive sort). The sort
+     * keys of the files are reused, so the files aren't listed again.
+     *
+     * @param files The files to sort
+     * @return List<FileSystemObject> The sorted files
+     */
+    public static List<FileSystemObject> sortUserPreferences(List<FileSystemObject> files) {
+        final int count = files.size();
+        SortKeys keys = null;
+        if (files instanceof DirectorySnapshot) {
+            keys = ((DirectorySnapshot)files).getSortKeys();
+        }
+        if (keys == null || keys.size() != count) {
+            keys = new SortKeys(files);
+        }
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        sort(keys, order, files);
+
+        DirectorySnapshot snapshot = new DirectorySnapshot(count);
+        for (int i = 0; i < count; i++) {
+            if (files instanceof DirectorySnapshot) {
+                snapshot.addRow((DirectorySnapshot)files, order[i]);
+            } else {
+                snapshot.add(files.get(order[i]));
+            }
+        }
+        snapshot.setSortKeys(keys.permute(order));
+        return snapshot;
+    }
+
+    /**
+     * Method that sorts the positions of the files with the user preferences.
+     *
+     * @param keys The sort keys of the files
+     * @param order The positions to sort
+     * @param files The files
+     */
+    private static void sort(SortKeys keys, int[] order, List<FileSystemObject> files) {
+        //Retrieve user preferences
+        SharedPreferences prefs = Preferences.getSharedPreferences();
+        FileManagerSettings sortModePref = FileManagerSettings.SETTINGS_SORT_MODE;
+        FileManagerSettings showDirsFirstPref = FileManagerSettings.SETTINGS_SHOW_DIRS_FIRST;
+        FileManagerSettings caseSensitivePref = FileManagerSettings.SETTINGS_CASE_SENSITIVE_SORT;
+        final boolean showDirsFirst =
+                prefs.getBoolean(
+                        showDirsFirstPref.getId(),
+                    ((Boolean)showDirsFirstPref.getDefaultValue()).booleanValue());
+        final boolean caseSensitive =
+                prefs.getBoolean(
+                        caseSensitivePref.getId(),
+                    ((Boolean)caseSensitivePref.getDefaultValue()).booleanValue());
+        final NavigationSortMode sortMode =
+                NavigationSortMode.fromId(
+                        prefs.getInt(sortModePref.getId(),
+                        ((ObjectIdentifier)sortModePref.getDefaultValue()).getId()));
+        keys.sort(order, files, sortMode, showDirsFirst, caseSensitive);
+    }
+
+    /**
+     * Method that creates the comparator that sorts the listed files as configured by
+     * the user (sort mode and directories first).
+     *
+     * @return Comparator<FileSystemObject> The comparator
+     */
+    public static Comparator<FileSystemObject> createUserPreferencesComparator() {
+        //Retrieve user preferences
+        SharedPreferences prefs = Preferences.getSharedPreferences();
+        FileManagerSettings sortModePref = FileManagerSettings.SETTINGS_SORT_MODE;
+        FileManagerSettings showDirsFirstPref = FileManagerSettings.SETTINGS_SHOW_DIRS_FIRST;
+        final boolean showDirsFirst =
+                prefs.getBoolean(
+                        showDirsFirstPref.getId(),
+                    ((Boolean)showDirsFirstPref.getDefaultValue()).booleanValue());
+        final NavigationSortMode sortMode =
+                NavigationSortMode.fromId(
+                        prefs.getInt(sortModePref.getId(),
+                        ((ObjectIdentifier)sortModePref.getDefaultValue()).getId()));
+        return new Comparator<FileSystemObject>() {
+            @Override
+            public int compare(FileSystemObject lhs, FileSystemObject rhs) {
+                //Parent directory always goes first
+                boolean isLhsParentDirectory = lhs instanceof ParentDirectory;
+                boolean isRhsParentDirectory = rhs instanceof ParentDirectory;
+                if (isLhsParentDirectory || isRhsParentDirectory) {
+                    if (isLhsParentDirectory && isRhsParentDirectory) {
+                        return 0;
                     }
+                    return (isLhsParentDirectory) ? -1 : 1;
+                }
 
-                    //Need to sort directory first?
-                    if (showDirsFirst) {
-                        boolean isLhsDirectory = FileHelper.isDirectory(lhs);
-                        boolean isRhsDirectory = FileHelper.isDirectory(rhs);
-                        if (isLhsDirectory || isRhsDirectory) {
-                            if (isLhsDirectory && isRhsDirectory) {
-                                //Apply sort mode
-                                return FileHelper.doCompare(lhs, rhs, sortMode);
-                            }
-                            return (isLhsDirectory) ? -1 : 1;
+                //Need to sort directory first?
+                if (showDirsFirst) {
+                    boolean isLhsDirectory = FileHelper.isDirectory(lhs);
+                    boolean isRhsDirectory = FileHelper.isDirectory(rhs);
+                    if (isLhsDirectory || isRhsDirectory) {
+                        if (isLhsDirectory && isRhsDirectory) {
+                            //Apply sort mode
+                            return FileHelper.doCompare(lhs, rhs, sortMode);
                         }
+                        return (isLhsDirectory) ? -1 : 1;
                     }
-
-                    //Apply sort mode
-                    return FileHelper.doCompare(lhs, rhs, sortMode);
                 }
 
-            });
-        }
-
-        //Return the files
-        return files;
+                //Apply sort mode
+                return FileHelper.doCompare(lhs, rhs, sortMode);
+            }
+        };
     }
 
     /**
@@ -1163,38 +1284,91 @@ public final class FileHelper {
         return true;
     }
 
+    /**
+     * An interface for follow the progress of a file copy, and cancel it.
+     */
+    public interface OnCopyProgressListener {
+        /**
+         * Method that returns if the copy was cancelled.
+         *
+         * @return boolean If the copy was cancelled
+         */
+        boolean isCancelled();
+
+        /**
+         * Invoked when a chunk of the file was copied.
+         *
+         * @param bytes The number of bytes of the chunk
+         */
+        void onBytesCopied(long bytes);
+    }
+
     /**
      * Method that copies a file, using FileChannel.transferFrom from
      * the nio package.
      *
      * The file is chunked into chunks of size {@link #NIO_COPY_CHUNK_SIZE}
-     * and each chunk is transferred until the file is completely copied. This
-     * allows us to cancel the file transfer at any time.
+     * (tuned to the throughput of the destination device) and each chunk is
+     * transferred until the file is completely copied. This allows us to cancel
+     * the file transfer at any time.
+     *
+     * @param src The source file
+     * @param dst The destination file
+     * @return boolean Whether the operation completed successfully
+     */
+    public static boolean copyFileWithNio(final File src, final File dst,
+            final Program program) throws CancelledOperationException, ExecutionException {
+        return copyFileWithNio(src, dst, new OnCopyProgressListener() {
+            @Override
+            public boolean isCancelled() {
+                return program.isCancelled();
+            }
+
+            @Override
+            public void onBytesCopied(long bytes) {
+                /**NON BLOCK**/
+            }
+        });
+    }
+
+    /**
+     * Method that copies a file, using FileChannel.transferFrom from
+     * the nio package, and reports the progress of every chunk.
      *
      * @param src The source file
      * @param dst The destination file
+     * @param listener The listener to report the progress and check the cancellation
      * @return boolean Whether the operation completed successfully
+     * @see #copyFileWithNio(File, File, Program)
      */
     public static boolean copyFileWithNio(final File src, final File dst,
-            Program program) throws CancelledOperationException, ExecutionException {
+            OnCopyProgressListener listener)
+            throws CancelledOperationException, ExecutionException {
         FileChannel inputChannel = null;
         FileChannel outputChannel = null;
         long currentPosition = 0;
-        long count = NIO_COPY_CHUNK_SIZE;
         try {
             inputChannel = new FileInputStream(src).getChannel();
-            outputChannel = new FileOutputStream(dst).getChannel();
-            while (currentPosition < inputChannel.size()) {
+            FileOutputStream fos = new FileOutputStream(dst);
+            outputChannel = fos.getChannel();
+
+            // Start with the chunk size tuned by the previous copies to this device
+            CopyThroughputStats stats = CopyThroughputStats.getInstance();
+            long device = CopyThroughputStats.getDevice(fos.getFD());
+            long chunkSize = stats.getChunkSize(device);
+            long size = inputChannel.size();
+            while (currentPosition < size) {
                 // Short circuit if we've been cancelled. Show's over :(
-                if (program.isCancelled()) {
+                if (listener.isCancelled()) {
                     throw new CancelledOperationException();
                 }
 
-                if ((currentPosition + count) > inputChannel.size()) {
-                    count = (inputChannel.size() - currentPosition);
-                }
+                long count = Math.min(chunkSize, size - currentPosition);
+                long start = System.nanoTime();
                 outputChannel.transferFrom(inputChannel, currentPosition, count);
+                chunkSize = stats.record(device, count, System.nanoTime() - start);
                 currentPosition = currentPosition + count;
+                listener.onBytesCopied(count);
             }
         } catch (Throwable e) {
             Log.e(TAG,
@@ -0,0 +1,710 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.CancellationSignal;
+import android.os.SystemClock;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructStat;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.model.Query;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * A persistent index of the names of the files of the storage volumes, used to answer
+ * the searches without walking the filesystem.<br/>
+ * <br/>
+ * Every name is indexed by its trigrams (the lower case sequences of three characters),
+ * so a query only reads the entries that contain all the trigrams of its terms, and
+ * then the candidates are matched against the terms, like the find command does. The
+ * index is maintained incrementally: a folder is only listed again when its
+ * modification time changed (an entry was added, removed or renamed).
+ */
+public final class FileNameIndex {
+
+    private static final String TAG = "FileNameIndex"; //$NON-NLS-1$
+
+    // Folders modified less than this time (in seconds) before the walk started
+    // are listed again in the next walk, because the modification time has a
+    // precision of one second
+    private static final long RACY_WINDOW = 2L;
+
+    // The modification time stored for the folders that the application can't list.
+    // They are listed again in the next walk
+    private static final long UNREADABLE = -2L;
+
+    // The number of folders written in the same transaction
+    private static final int FOLDERS_PER_TRANSACTION = 256;
+
+    private static final int GRAM_LENGTH = 3;
+
+    private static FileNameIndex sInstance;
+
+    private final DatabaseHelper mHelper;
+    private final Object mWalkSync = new Object();
+    private Set<String> mRoots;
+
+    private final AtomicLong mIndexedEntries;
+    private final AtomicLong mIndexTime;
+    private final AtomicLong mQueries;
+    private final AtomicLong mQueryTime;
+
+    /**
+     * Constructor of <code>FileNameIndex</code>.
+     *
+     * @param context The current context
+     */
+    private FileNameIndex(Context context) {
+        super();
+        this.mHelper = new DatabaseHelper(context.getApplicationContext());
+        this.mIndexedEntries = new AtomicLong();
+        this.mIndexTime = new AtomicLong();
+        this.mQueries = new AtomicLong();
+        this.mQueryTime = new AtomicLong();
+    }
+
+    /**
+     * Method that returns the index of the application.
+     *
+     * @param context The current context
+     * @return FileNameIndex The index
+     */
+    public static synchronized FileNameIndex getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new FileNameIndex(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Method that returns if a directory belongs to a tree that was completely indexed
+     * and is readable by the application, so it can be searched with the index.
+     *
+     * @param dir The absolute path of the directory
+     * @return boolean If the directory is indexed
+     */
+    public boolean isIndexed(String dir) {
+        if (dir == null) {
+            return false;
+        }
+        for (String root : getRoots()) {
+            if (dir.equals(root) || dir.startsWith(FileHelper.addTrailingSlash(root))) {
+                return new File(dir).canRead() && !hasUnreadableFolders(dir);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Method that returns if the application couldn't list some folder of a tree the
+     * last time that it was walked.
+     *
+     * @param dir The absolute path of the root of the tree
+     * @return boolean If the tree has unreadable folders
+     */
+    private boolean hasUnreadableFolders(String dir) {
+        final String prefix = FileHelper.addTrailingSlash(dir);
+        // All the paths that start with the prefix ('0' follows '/')
+        final String upper = prefix.substring(0, prefix.length() - 1) + '0';
+        try {
+            SQLiteDatabase db = this.mHelper.getReadableDatabase();
+            return DatabaseUtils.queryNumEntries(db, DatabaseHelper.TABLE_FOLDERS,
+                    DatabaseHelper.COLUMN_MODIFIED + " = ? AND (" + //$NON-NLS-1$
+                    DatabaseHelper.COLUMN_PATH + " = ? OR (" + //$NON-NLS-1$
+                    DatabaseHelper.COLUMN_PATH + " >= ? AND " + //$NON-NLS-1$
+                    DatabaseHelper.COLUMN_PATH + " < ?))", //$NON-NLS-1$
+                    new String[]{String.valueOf(UNREADABLE), dir, prefix, upper}) > 0;
+        } catch (SQLiteException ex) {
+            Log.w(TAG, "Failed to read the file name index", ex); //$NON-NLS-1$
+            return true;
+        }
+    }
+
+    /**
+     * Method that returns the roots of the trees that were completely indexed.
+     *
+     * @return Set<String> The indexed roots
+     */
+    private synchronized Set<String> getRoots() {
+        if (this.mRoots == null) {
+            Set<String> roots = new HashSet<String>();
+            Cursor cursor = null;
+            try {
+                SQLiteDatabase db = this.mHelper.getReadableDatabase();
+                cursor = db.query(DatabaseHelper.TABLE_ROOTS,
+                        new String[]{DatabaseHelper.COLUMN_PATH},
+                        null, null, null, null, null);
+                while (cursor.moveToNext()) {
+                    roots.add(cursor.getString(0));
+                }
+            } catch (SQLiteException ex) {
+                Log.w(TAG, "Failed to read the file name index", ex); //$NON-NLS-1$
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+            this.mRoots = roots;
+        }
+        return Collections.unmodifiableSet(this.mRoots);
+    }
+
+    /**
+     * Method that builds (or updates) the index of a tree, and registers it as indexed
+     * when the walk completes.
+     *
+     * @param root The absolute path of the root of the tree
+     * @param signal The signal to cancel the walk. <code>null</code> if not cancellable
+     * @return boolean If the walk completed
+     */
+    public boolean build(String root, CancellationSignal signal) {
+        if (!walk(root, signal)) {
+            return false;
+        }
+        try {
+            ContentValues values = new ContentValues(1);
+            values.put(DatabaseHelper.COLUMN_PATH, root);
+            this.mHelper.getWritableDatabase().insertWithOnConflict(
+                    DatabaseHelper.TABLE_ROOTS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+        } catch (SQLiteException ex) {
+            Log.w(TAG, "Failed to update the file name index", ex); //$NON-NLS-1$
+            return false;
+        }
+        synchronized (this) {
+            this.mRoots = null;
+        }
+        return true;
+    }
+
+    /**
+     * Method that brings up to date the index of a directory of an indexed tree. Only
+     * the folders that changed since the last walk are listed.
+     *
+     * @param dir The absolute path of the directory
+     * @param signal The signal to cancel the walk. <code>null</code> if not cancellable
+     * @return boolean If the walk completed
+     */
+    public boolean refresh(String dir, CancellationSignal signal) {
+        return walk(dir, signal);
+    }
+
+    /**
+     * Method that walks a tree and updates the entries of the folders that changed.
+     *
+     * @param root The absolute path of the root of the tree
+     * @param signal The signal to cancel the walk. <code>null</code> if not cancellable
+     * @return boolean If the walk completed
+     */
+    private boolean walk(String root, CancellationSignal signal) {
+        synchronized (this.mWalkSync) {
+            final long start = SystemClock.elapsedRealtime();
+            final long walkStart = System.currentTimeMillis() / 1000L;
+            long entries = 0;
+
+            // Load the known folders of the tree
+            Map<String, Long> modified = new HashMap<String, Long>();
+            Map<String, List<String>> children = new HashMap<String, List<String>>();
+            loadFolders(root, modified, children);
+
+            SQLiteDatabase db;
+            try {
+                db = this.mHelper.getWritableDatabase();
+            } catch (SQLiteException ex) {
+                Log.w(TAG, "Failed to open the file name index", ex); //$NON-NLS-1$
+                return false;
+            }
+
+            boolean completed = false;
+            Set<String> visited = new HashSet<String>();
+            ArrayDeque<String> pending = new ArrayDeque<String>();
+            pending.push(root);
+            int folders = 0;
+            db.beginTransaction();
+            try {
+                while (!pending.isEmpty()) {
+                    if (signal != null && signal.isCanceled()) {
+                        break;
+                    }
+                    String folder = pending.pop();
+                    StructStat st;
+                    try {
+                        st = Os.stat(folder);
+                    } catch (ErrnoException ex) {
+                        continue;
+                    }
+                    visited.add(folder);
+
+                    Long known = modified.get(folder);
+                    if (known != null && known.longValue() == st.st_mtime) {
+                        // Unchanged. Only its subfolders must be checked
+                        List<String> subfolders = children.get(folder);
+                        if (subfolders != null) {
+                            for (String subfolder : subfolders) {
+                                pending.push(subfolder);
+                            }
+                        }
+                        continue;
+                    }
+
+                    entries += indexFolder(db, folder,
+                            st.st_mtime >= walkStart - RACY_WINDOW ? -1 : st.st_mtime,
+                            pending);
+                    folders++;
+                    if (folders % FOLDERS_PER_TRANSACTION == 0) {
+                        db.setTransactionSuccessful();
+                        db.endTransaction();
+                        db.beginTransaction();
+                    }
+                }
+                completed = pending.isEmpty();
+
+                if (completed) {
+                    // Remove the folders that don't exist anymore
+                    for (String folder : modified.keySet()) {
+                        if (!visited.contains(folder)) {
+                            removeFolder(db, folder);
+                        }
+                    }
+                } else {
+                    // The new subfolders that weren't walked are only reachable by
+                    // listing their parents again
+                    ContentValues values = new ContentValues(1);
+                    values.put(DatabaseHelper.COLUMN_MODIFIED, -1);
+                    for (String folder : pending) {
+                        if (!modified.containsKey(folder)) {
+                            db.update(DatabaseHelper.TABLE_FOLDERS, values,
+                                    DatabaseHelper.COLUMN_PATH + " = ?", //$NON-NLS-1$
+                                    new String[]{new File(folder).getParent()});
+                        }
+                    }
+                }
+                db.setTransactionSuccessful();
+            } catch (SQLiteException ex) {
+                Log.w(TAG, "Failed to update the file name index", ex); //$NON-NLS-1$
+                completed = false;
+            } finally {
+                db.endTransaction();
+            }
+
+            long time = SystemClock.elapsedRealtime() - start;
+            this.mIndexedEntries.addAndGet(entries);
+            this.mIndexTime.addAndGet(time);
+            return completed;
+        }
+    }
+
+    /**
+     * Method that loads the known folders of a tree.
+     *
+     * @param root The absolute path of the root of the tree
+     * @param modified The modification time of every folder
+     * @param children The subfolders of every folder
+     */
+    private void loadFolders(
+            String root, Map<String, Long> modified, Map<String, List<String>> children) {
+        final String prefix = FileHelper.addTrailingSlash(root);
+        // All the paths that start with the prefix ('0' follows '/')
+        final String upper = prefix.substring(0, prefix.length() - 1) + '0';
+        Cursor cursor = null;
+        try {
+            SQLiteDatabase db = this.mHelper.getReadableDatabase();
+            cursor = db.query(DatabaseHelper.TABLE_FOLDERS,
+                    new String[]{DatabaseHelper.COLUMN_PATH, DatabaseHelper.COLUMN_PARENT,
+                            DatabaseHelper.COLUMN_MODIFIED},
+                    DatabaseHelper.COLUMN_PATH + " = ? OR (" + //$NON-NLS-1$
+                    DatabaseHelper.COLUMN_PATH + " >= ? AND " + //$NON-NLS-1$
+                    DatabaseHelper.COLUMN_PATH + " < ?)", //$NON-NLS-1$
+                    new String[]{root, prefix, upper}, null, null, null);
+            while (cursor.moveToNext()) {
+                String path = cursor.getString(0);
+                String parent = cursor.getString(1);
+                modified.put(path, cursor.getLong(2));
+                List<String> subfolders = children.get(parent);
+                if (subfolders == null) {
+                    subfolders = new ArrayList<String>();
+                    children.put(parent, subfolders);
+                }
+                subfolders.add(path);
+            }
+        } catch (SQLiteException ex) {
+            Log.w(TAG, "Failed to read the file name index", ex); //$NON-NLS-1$
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Method that lists a folder and replaces its entries in the index.
+     *
+     * @param db The database
+     * @param folder The absolute path of the folder
+     * @param modified The modification time of the folder to store
+     * @param pending The queue where to add the subfolders to walk
+     * @return int The number of indexed entries
+     */
+    private static int indexFolder(
+            SQLiteDatabase db, String folder, long modified, ArrayDeque<String> pending) {
+        deleteEntries(db, folder);
+
+        ContentValues values = new ContentValues(3);
+        values.put(DatabaseHelper.COLUMN_PATH, folder);
+        values.put(DatabaseHelper.COLUMN_PARENT, new File(folder).getParent());
+        values.put(DatabaseHelper.COLUMN_MODIFIED, modified);
+        db.insertWithOnConflict(DatabaseHelper.TABLE_FOLDERS, null, values,
+                SQLiteDatabase.CONFLICT_REPLACE);
+
+        String[] names = new File(folder).list();
+        if (names == null) {
+            ContentValues unreadable = new ContentValues(1);
+            unreadable.put(DatabaseHelper.COLUMN_MODIFIED, UNREADABLE);
+            db.update(DatabaseHelper.TABLE_FOLDERS, unreadable,
+                    DatabaseHelper.COLUMN_PATH + " = ?", new String[]{folder}); //$NON-NLS-1$
+            return 0;
+        }
+        final String prefix = FileHelper.addTrailingSlash(folder);
+        SQLiteStatement insertEntry = db.compileStatement(
+                "INSERT INTO " + DatabaseHelper.TABLE_ENTRIES + " (" + //$NON-NLS-1$ //$NON-NLS-2$
+                DatabaseHelper.COLUMN_PARENT + ", " + //$NON-NLS-1$
+                DatabaseHelper.COLUMN_NAME + ") VALUES (?, ?)"); //$NON-NLS-1$
+        SQLiteStatement insertGram = db.compileStatement(
+                "INSERT INTO " + DatabaseHelper.TABLE_GRAMS + " (" + //$NON-NLS-1$ //$NON-NLS-2$
+                DatabaseHelper.COLUMN_GRAM + ", " + //$NON-NLS-1$
+                DatabaseHelper.COLUMN_ENTRY + ") VALUES (?, ?)"); //$NON-NLS-1$
+        try {
+            for (String name : names) {
+                insertEntry.bindString(1, folder);
+                insertEntry.bindString(2, name);
+                long id = insertEntry.executeInsert();
+                for (String gram : getGrams(name)) {
+                    insertGram.bindString(1, gram);
+                    insertGram.bindLong(2, id);
+                    insertGram.executeInsert();
+                }
+
+                // Don't follow the symlinks, like find
+                String path = prefix + name;
+                try {
+                    if (OsConstants.S_ISDIR(Os.lstat(path).st_mode)) {
+                        pending.push(path);
+                    }
+                } catch (ErrnoException ex) {
+                    /**NON BLOCK**/
+                }
+            }
+        } finally {
+            insertEntry.close();
+            insertGram.close();
+        }
+        return names.length;
+    }
+
+    /**
+     * Method that removes a folder and its entries from the index.
+     *
+     * @param db The database
+     * @param folder The absolute path of the folder
+     */
+    private static void removeFolder(SQLiteDatabase db, String folder) {
+        deleteEntries(db, folder);
+        db.delete(DatabaseHelper.TABLE_FOLDERS,
+                DatabaseHelper.COLUMN_PATH + " = ?", new String[]{folder}); //$NON-NLS-1$
+    }
+
+    /**
+     * Method that removes the entries of a folder (and their trigrams) from the index.
+     *
+     * @param db The database
+     * @param folder The absolute path of the folder
+     */
+    private static void deleteEntries(SQLiteDatabase db, String folder) {
+        String[] args = new String[]{folder};
+        db.delete(DatabaseHelper.TABLE_GRAMS,
+                DatabaseHelper.COLUMN_ENTRY + " IN (SELECT " + //$NON-NLS-1$
+                DatabaseHelper.COLUMN_ID + " FROM " + //$NON-NLS-1$
+                DatabaseHelper.TABLE_ENTRIES + " WHERE " + //$NON-NLS-1$
+                DatabaseHelper.COLUMN_PARENT + " = ?)", args); //$NON-NLS-1$
+        db.delete(DatabaseHelper.TABLE_ENTRIES,
+                DatabaseHelper.COLUMN_PARENT + " = ?", args); //$NON-NLS-1$
+    }
+
+    /**
+     * Method that returns the distinct trigrams of a text (in lower case).
+     *
+     * @param text The text
+     * @return Set<String> The trigrams of the text
+     */
+    static Set<String> getGrams(String text) {
+        Set<String> grams = new LinkedHashSet<String>();
+        String lower = text.toLowerCase(Locale.ROOT);
+        for (int i = 0; i + GRAM_LENGTH <= lower.length(); i++) {
+            grams.add(lower.substring(i, i + GRAM_LENGTH));
+        }
+        return grams;
+    }
+
+    /**
+     * Method that searches the index for the files of a directory whose names match a
+     * query. The names are matched like the find command does (<code>-iname *term*</code>):
+     * ignoring the case, and with <code>*</code> and <code>?</code> as the only wildcards.
+     *
+     * @param dir The absolute path of the directory where to search
+     * @param query The query
+     * @return List<String> The absolute paths of the matched files
+     */
+    public List<String> query(String dir, Query query) {
+        final long start = SystemClock.elapsedRealtime();
+        Set<String> results = new LinkedHashSet<String>();
+        try {
+            SQLiteDatabase db = this.mHelper.getReadableDatabase();
+            for (String term : query.getQueries()) {
+                if (term.trim().length() == 0) {
+                    continue;
+                }
+                queryTerm(db, dir, term, toPattern(term), results);
+            }
+        } catch (SQLiteException ex) {
+            Log.w(TAG, "Failed to read the file name index", ex); //$NON-NLS-1$
+        }
+        this.mQueries.incrementAndGet();
+        this.mQueryTime.addAndGet(SystemClock.elapsedRealtime() - start);
+        return new ArrayList<String>(results);
+    }
+
+    /**
+     * Method that searches the index for the files whose names match a term.
+     *
+     * @param db The database
+     * @param dir The absolute path of the directory where to search
+     * @param term The term, as typed by the user
+     * @param pattern The compiled regular expression of the term
+     * @param results Where to add the absolute paths of the matched files
+     */
+    private static void queryTerm(SQLiteDatabase db, String dir, String term,
+            Pattern pattern, Set<String> results) {
+        // The literal parts of the term. The name must contain all their trigrams (in
+        // lower case, like the indexed trigrams)
+        Set<String> grams = new LinkedHashSet<String>();
+        for (String literal : term.split("[*?]")) { //$NON-NLS-1$
+            grams.addAll(getGrams(literal));
+        }
+
+        final String prefix = FileHelper.addTrailingSlash(dir);
+        final String upper = prefix.substring(0, prefix.length() - 1) + '0';
+        List<String> args = new ArrayList<String>();
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT ").append(DatabaseHelper.COLUMN_PARENT) //$NON-NLS-1$
+                .append(", ").append(DatabaseHelper.COLUMN_NAME) //$NON-NLS-1$
+                .append(" FROM ").append(DatabaseHelper.TABLE_ENTRIES) //$NON-NLS-1$
+                .append(" WHERE (").append(DatabaseHelper.COLUMN_PARENT) //$NON-NLS-1$
+                .append(" = ? OR (").append(DatabaseHelper.COLUMN_PARENT) //$NON-NLS-1$
+                .append(" >= ? AND ").append(DatabaseHelper.COLUMN_PARENT) //$NON-NLS-1$
+                .append(" < ?))"); //$NON-NLS-1$
+        args.add(dir);
+        args.add(prefix);
+        args.add(upper);
+        if (!grams.isEmpty()) {
+            sql.append(" AND ").append(DatabaseHelper.COLUMN_ID) //$NON-NLS-1$
+                    .append(" IN (SELECT ").append(DatabaseHelper.COLUMN_ENTRY) //$NON-NLS-1$
+                    .append(" FROM ").append(DatabaseHelper.TABLE_GRAMS) //$NON-NLS-1$
+                    .append(" WHERE ").append(DatabaseHelper.COLUMN_GRAM) //$NON-NLS-1$
+                    .append(" IN ("); //$NON-NLS-1$
+            boolean first = true;
+            for (String gram : grams) {
+                sql.append(first ? "?" : ", ?"); //$NON-NLS-1$ //$NON-NLS-2$
+                args.add(gram);
+                first = false;
+            }
+            sql.append(") GROUP BY ").append(DatabaseHelper.COLUMN_ENTRY) //$NON-NLS-1$
+                    .append(" HAVING COUNT(*) = ").append(grams.size()) //$NON-NLS-1$
+                    .append(")"); //$NON-NLS-1$
+        }
+
+        Cursor cursor = db.rawQuery(sql.toString(), args.toArray(new String[args.size()]));
+        try {
+            while (cursor.moveToNext()) {
+                String name = cursor.getString(1);
+                if (pattern.matcher(name).matches()) {
+                    results.add(FileHelper.addTrailingSlash(cursor.getString(0)) + name);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Method that returns the pattern of a search term, the same that the find command
+     * uses (<code>-iname *term*</code>). The term is quoted, except the <code>*</code>
+     * and <code>?</code> wildcards.
+     *
+     * @param term The term, as typed by the user
+     * @return Pattern The case insensitive pattern of the term
+     */
+    static Pattern toPattern(String term) {
+        StringBuilder sb = new StringBuilder(".*"); //$NON-NLS-1$
+        int start = 0;
+        for (int i = 0; i < term.length(); i++) {
+            char c = term.charAt(i);
+            if (c == '*' || c == '?') {
+                if (i > start) {
+                    sb.append(Pattern.quote(term.substring(start, i)));
+                }
+                sb.append(c == '*' ? ".*" : "."); //$NON-NLS-1$ //$NON-NLS-2$
+                start = i + 1;
+            }
+        }
+        if (term.length() > start) {
+            sb.append(Pattern.quote(term.substring(start)));
+        }
+        sb.append(".*"); //$NON-NLS-1$
+        return Pattern.compile(sb.toString(), Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    }
+
+    /**
+     * Method that returns the number of entries indexed per second.
+     *
+     * @return float The build rate of the index
+     */
+    public float getBuildRate() {
+        long time = this.mIndexTime.get();
+        return time == 0 ? 0f : this.mIndexedEntries.get() * 1000f / time;
+    }
+
+    /**
+     * Method that returns the average time of the queries.
+     *
+     * @return float The average query latency (in milliseconds)
+     */
+    public float getAverageQueryLatency() {
+        long queries = this.mQueries.get();
+        return queries == 0 ? 0f : (float)this.mQueryTime.get() / queries;
+    }
+
+    /**
+     * Method that removes all the entries of the index.
+     */
+    public void clear() {
+        synchronized (this.mWalkSync) {
+            try {
+                SQLiteDatabase db = this.mHelper.getWritableDatabase();
+                db.beginTransaction();
+                try {
+                    db.delete(DatabaseHelper.TABLE_ROOTS, null, null);
+                    db.delete(DatabaseHelper.TABLE_FOLDERS, null, null);
+                    db.delete(DatabaseHelper.TABLE_ENTRIES, null, null);
+                    db.delete(DatabaseHelper.TABLE_GRAMS, null, null);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            } catch (SQLiteException ex) {
+                Log.w(TAG, "Failed to clear the file name index", ex); //$NON-NLS-1$
+            }
+            synchronized (this) {
+                this.mRoots = null;
+            }
+        }
+        this.mIndexedEntries.set(0);
+        this.mIndexTime.set(0);
+        this.mQueries.set(0);
+        this.mQueryTime.set(0);
+    }
+
+    /**
+     * The database of the index.
+     */
+    private static class DatabaseHelper extends SQLiteOpenHelper {
+
+        static final int DATABASE_VERSION = 1;
+        static final String DATABASE_NAME = "file_name_index"; //$NON-NLS-1$
+        static final String TABLE_ROOTS = "roots"; //$NON-NLS-1$
+        static final String TABLE_FOLDERS = "folders"; //$NON-NLS-1$
+        static final String TABLE_ENTRIES = "entries"; //$NON-NLS-1$
+        static final String TABLE_GRAMS = "grams"; //$NON-NLS-1$
+
+        static final String COLUMN_ID = "_id"; //$NON-NLS-1$
+        static final String COLUMN_PATH = "path"; //$NON-NLS-1$
+        static final String COLUMN_PARENT = "parent"; //$NON-NLS-1$
+        static final String COLUMN_MODIFIED = "modified"; //$NON-NLS-1$
+        static final String COLUMN_NAME = "name"; //$NON-NLS-1$
+        static final String COLUMN_GRAM = "gram"; //$NON-NLS-1$
+        static final String COLUMN_ENTRY = "entry"; //$NON-NLS-1$
+
+        DatabaseHelper(Context context) {
+            super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + TABLE_ROOTS + " (" + //$NON-NLS-1$ //$NON-NLS-2$
+                    COLUMN_PATH + " TEXT PRIMARY KEY)"); //$NON-NLS-1$
+            db.execSQL("CREATE TABLE " + TABLE_FOLDERS + " (" + //$NON-NLS-1$ //$NON-NLS-2$
+                    COLUMN_PATH + " TEXT PRIMARY KEY, " + //$NON-NLS-1$
+                    COLUMN_PARENT + " TEXT, " + //$NON-NLS-1$
+                    COLUMN_MODIFIED + " INTEGER)"); //$NON-NLS-1$
+            db.execSQL("CREATE TABLE " + TABLE_ENTRIES + " (" + //$NON-NLS-1$ //$NON-NLS-2$
+                    COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " + //$NON-NLS-1$
+                    COLUMN_PARENT + " TEXT, " + //$NON-NLS-1$
+                    COLUMN_NAME + " TEXT)"); //$NON-NLS-1$
+            db.execSQL("CREATE INDEX entries_parent ON " + //$NON-NLS-1$
+                    TABLE_ENTRIES + " (" + COLUMN_PARENT + ")"); //$NON-NLS-1$ //$NON-NLS-2$
+            db.execSQL("CREATE TABLE " + TABLE_GRAMS + " (" + //$NON-NLS-1$ //$NON-NLS-2$
+                    COLUMN_GRAM + " TEXT, " + //$NON-NLS-1$
+                    COLUMN_ENTRY + " INTEGER)"); //$NON-NLS-1$
+            db.execSQL("CREATE INDEX grams_gram ON " + //$NON-NLS-1$
+                    TABLE_GRAMS + " (" + COLUMN_GRAM + ", " + //$NON-NLS-1$ //$NON-NLS-2$
+                    COLUMN_ENTRY + ")"); //$NON-NLS-1$
+            db.execSQL("CREATE INDEX grams_entry ON " + //$NON-NLS-1$
+                    TABLE_GRAMS + " (" + COLUMN_ENTRY + ")"); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_ROOTS); //$NON-NLS-1$
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_FOLDERS); //$NON-NLS-1$
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_ENTRIES); //$NON-NLS-1$
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_GRAMS); //$NON-NLS-1$
+            onCreate(db);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An in-process engine for the completion of folder paths.<br/>
+ * <br/>
+ * The folders of every parent directory are listed from java (or with the quick folder
+ * search command, for the directories that the application can't read) and cached per
+ * parent, while the modification time of the parent doesn't change. The completions of
+ * a path are answered from memory: the folders that start with the typed name, or if
+ * there isn't any, the folders that match it ignoring the case, containing it or
+ * containing its characters in order (fuzzy completions).
+ */
+public final class FolderCompletion {
+
+    // The number of parent directories cached
+    private static final int MAX_CACHE = 32;
+
+    // The time that the folders listed with a command are cached (they can't be validated)
+    private static final long COMMAND_MAX_AGE = 30000L;
+
+    // The ranks of the completions that don't start with the typed name
+    private static final int RANK_IGNORE_CASE = 0;
+    private static final int RANK_CONTAINS = 1;
+    private static final int RANK_FUZZY = 2;
+
+    /**
+     * The folders of a parent directory.
+     */
+    private static class Entry {
+        final List<String> mFolders;
+        final long mModified;
+        final long mExpires;
+
+        Entry(List<String> folders, long modified, long expires) {
+            super();
+            this.mFolders = folders;
+            this.mModified = modified;
+            this.mExpires = expires;
+        }
+    }
+
+    private static final Map<String, Entry> sCache =
+            new LinkedHashMap<String, Entry>(MAX_CACHE, .75F, true) {
+                private static final long serialVersionUID = 1L;
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return size() > MAX_CACHE;
+                }
+            };
+
+    /**
+     * Constructor of <code>FolderCompletion</code>.
+     */
+    private FolderCompletion() {
+        super();
+    }
+
+    /**
+     * Method that returns the cached folders of a parent directory, without accessing
+     * the filesystem more than to check the modification time of the parent.
+     *
+     * @param parent The parent directory (with a trailing separator)
+     * @return List<String> The full paths of the folders (with a trailing separator),
+     * sorted, or <code>null</code> if the folders aren't cached (or they are outdated)
+     */
+    public static List<String> getCachedFolders(String parent) {
+        Entry entry;
+        synchronized (sCache) {
+            entry = sCache.get(parent);
+        }
+        if (entry == null) {
+            return null;
+        }
+        long modified = new File(parent).lastModified();
+        if (modified != entry.mModified
+                || (entry.mExpires != 0 && SystemClock.elapsedRealtime() > entry.mExpires)) {
+            synchronized (sCache) {
+                sCache.remove(parent);
+            }
+            return null;
+        }
+        return entry.mFolders;
+    }
+
+    /**
+     * Method that lists the folders of a parent directory. This method accesses the
+     * filesystem, so it must be called from a background thread.
+     *
+     * @param context The current context
+     * @param parent The parent directory (with a trailing separator)
+     * @return List<String> The full paths of the folders (with a trailing separator),
+     * sorted
+     * @throws Exception If the folders can't be listed
+     */
+    public static List<String> loadFolders(Context context, String parent) throws Exception {
+        List<String> folders = getCachedFolders(parent);
+        if (folders != null) {
+            return folders;
+        }
+
+        final long modified = new File(parent).lastModified();
+        final String[] names = new File(parent).list();
+        long expires = 0;
+        if (names != null) {
+            Arrays.sort(names);
+            folders = new ArrayList<String>(names.length);
+            for (String name : names) {
+                String path = parent + name;
+                if (new File(path).isDirectory()) {
+                    folders.add(path + File.separator);
+                }
+            }
+        } else {
+            // Not readable by the application
+            folders = CommandHelper.quickFolderSearch(context, parent, null);
+            expires = SystemClock.elapsedRealtime() + COMMAND_MAX_AGE;
+        }
+        folders = Collections.unmodifiableList(folders);
+        synchronized (sCache) {
+            sCache.put(parent, new Entry(folders, modified, expires));
+        }
+        return folders;
+    }
+
+    /**
+     * Method that returns the completions of a path, from the folders of its parent.
+     * If some folders start with the path, only them are returned (in order). Otherwise
+     * the folders whose name starts with the typed name ignoring the case, contains it,
+     * or contains its characters in order are returned, in this rank.
+     *
+     * @param folders The full paths of the folders of the parent of the path
+     * @param path The typed path
+     * @return List<String> The completions
+     */
+    public static List<String> complete(List<String> folders, String path) {
+        List<String> completions = new ArrayList<String>();
+        for (String folder : folders) {
+            if (folder.startsWith(path)) {
+                completions.add(folder);
+            }
+        }
+        int pos = path.lastIndexOf(File.separatorChar);
+        if (!completions.isEmpty() || pos == -1 || pos == path.length() - 1) {
+            return completions;
+        }
+
+        // Fuzzy completions, with the typed name
+        final String parent = path.substring(0, pos + 1);
+        final String name = path.substring(pos + 1).toLowerCase(Locale.ROOT);
+        List<List<String>> ranks = new ArrayList<List<String>>(RANK_FUZZY + 1);
+        for (int i = 0; i <= RANK_FUZZY; i++) {
+            ranks.add(new ArrayList<String>());
+        }
+        for (String folder : folders) {
+            if (!folder.startsWith(parent)) {
+                continue;
+            }
+            String candidate = folder.substring(parent.length(),
+                    folder.length() - File.separator.length()).toLowerCase(Locale.ROOT);
+            int rank = getRank(candidate, name);
+            if (rank != -1) {
+                ranks.get(rank).add(folder);
+            }
+        }
+        for (List<String> rank : ranks) {
+            completions.addAll(rank);
+        }
+        return completions;
+    }
+
+    /**
+     * Method that returns the rank of a folder name for a typed name.
+     *
+     * @param candidate The name of the folder (in lower case)
+     * @param name The typed name (in lower case)
+     * @return int The rank, or -1 if the folder doesn't match
+     */
+    private static int getRank(String candidate, String name) {
+        if (candidate.startsWith(name)) {
+            return RANK_IGNORE_CASE;
+        }
+        if (candidate.contains(name)) {
+            return RANK_CONTAINS;
+        }
+        int j = 0;
+        for (int i = 0; i < candidate.length() && j < name.length(); i++) {
+            if (candidate.charAt(i) == name.charAt(j)) {
+                j++;
+            }
+        }
+        return j == name.length() ? RANK_FUZZY : -1;
+    }
+}
@@ -0,0 +1,377 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.util.MimeTypeHelper.MimeTypeCategory;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A persistent index of the disk usage of every folder, used by {@link FolderUsageWalker}
+ * to walk only the subtrees that changed since the last walk.<br/>
+ * <br/>
+ * Every entry holds the usage of the files directly contained in a folder (number of
+ * files, size, and files and size per {@link MimeTypeCategory}) and the names of its
+ * subfolders, and it is valid while the modification time of the folder doesn't change.
+ * Notice that the modification time of a folder only changes when an entry is added,
+ * removed or renamed, so a file rewritten in place is not detected until its folder
+ * changes.
+ */
+public final class FolderSizeIndex {
+
+    private static final String TAG = "FolderSizeIndex"; //$NON-NLS-1$
+
+    /**
+     * An entry of the index.
+     */
+    public static class Entry {
+        final String mPath;
+        final long mModified;
+        final long mFiles;
+        final long mSize;
+        final long[] mCategoryFiles;
+        final long[] mCategorySizes;
+        final String[] mFolders;
+
+        /**
+         * Constructor of <code>Entry</code>.
+         *
+         * @param path The absolute path of the folder
+         * @param modified The modification time of the folder (in seconds)
+         * @param files The number of files directly contained in the folder
+         * @param size The size of the files directly contained in the folder
+         * @param categoryFiles The number of files per category
+         * @param categorySizes The size of the files per category
+         * @param folders The names of the subfolders
+         */
+        Entry(String path, long modified, long files, long size,
+                long[] categoryFiles, long[] categorySizes, String[] folders) {
+            super();
+            this.mPath = path;
+            this.mModified = modified;
+            this.mFiles = files;
+            this.mSize = size;
+            this.mCategoryFiles = categoryFiles;
+            this.mCategorySizes = categorySizes;
+            this.mFolders = folders;
+        }
+    }
+
+    // The modification time stored for the folders that the application can't list.
+    // It never matches the modification time of the folder, so they are listed again
+    static final long UNREADABLE = -1L;
+
+    // Folders modified less than this time (in seconds) before the walk started
+    // are not indexed, because the modification time has a precision of one second
+    private static final long RACY_WINDOW = 2L;
+
+    private static final String FOLDER_SEPARATOR = File.separator;
+    private static final String[] NO_FOLDERS = new String[0];
+
+    private static FolderSizeIndex sInstance;
+
+    private final DatabaseHelper mHelper;
+    private final AtomicLong mHits;
+    private final AtomicLong mMisses;
+
+    /**
+     * Constructor of <code>FolderSizeIndex</code>.
+     *
+     * @param context The current context
+     */
+    private FolderSizeIndex(Context context) {
+        super();
+        this.mHelper = new DatabaseHelper(context.getApplicationContext());
+        this.mHits = new AtomicLong();
+        this.mMisses = new AtomicLong();
+    }
+
+    /**
+     * Method that returns the index of the application.
+     *
+     * @param context The current context
+     * @return FolderSizeIndex The index
+     */
+    public static synchronized FolderSizeIndex getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new FolderSizeIndex(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Method that returns if the index holds an up to date entry for a folder (the
+     * subfolders still must be checked while walking the folder), and the application
+     * could list every folder of its tree the last time that it was walked.
+     *
+     * @param folder The absolute path of the folder
+     * @return boolean If the folder is indexed
+     */
+    public boolean isIndexed(String folder) {
+        Cursor cursor = null;
+        try {
+            long modified = Os.stat(folder).st_mtime;
+            SQLiteDatabase db = this.mHelper.getReadableDatabase();
+            cursor = db.query(DatabaseHelper.TABLE, new String[]{DatabaseHelper.COLUMN_MODIFIED},
+                    DatabaseHelper.COLUMN_PATH + " = ?", new String[]{folder}, //$NON-NLS-1$
+                    null, null, null);
+            if (!cursor.moveToFirst() || cursor.getLong(0) != modified
+                    || !new File(folder).canRead()) {
+                return false;
+            }
+
+            // Check that there aren't unreadable folders in the tree
+            final String prefix = FileHelper.addTrailingSlash(folder);
+            final String upper = prefix.substring(0, prefix.length() - 1) + '0';
+            return DatabaseUtils.queryNumEntries(db, DatabaseHelper.TABLE,
+                    DatabaseHelper.COLUMN_MODIFIED + " = ? AND " + //$NON-NLS-1$
+                    DatabaseHelper.COLUMN_PATH + " >= ? AND " + //$NON-NLS-1$
+                    DatabaseHelper.COLUMN_PATH + " < ?", //$NON-NLS-1$
+                    new String[]{String.valueOf(UNREADABLE), prefix, upper}) == 0;
+        } catch (ErrnoException ex) {
+            return false;
+        } catch (SQLiteException ex) {
+            Log.w(TAG, "Failed to read the folder size index", ex); //$NON-NLS-1$
+            return false;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Method that loads all the entries of a folder tree.
+     *
+     * @param root The absolute path of the root folder
+     * @return Map<String, Entry> The entries of the tree, by path
+     */
+    Map<String, Entry> load(String root) {
+        Map<String, Entry> entries = new HashMap<String, Entry>();
+        final int categories = MimeTypeCategory.values().length;
+        final String prefix = FileHelper.addTrailingSlash(root);
+        // All the paths that start with the prefix ('0' follows '/')
+        final String upper = prefix.substring(0, prefix.length() - 1) + '0';
+        Cursor cursor = null;
+        try {
+            SQLiteDatabase db = this.mHelper.getReadableDatabase();
+            cursor = db.query(DatabaseHelper.TABLE, DatabaseHelper.PROJECTION,
+                    DatabaseHelper.COLUMN_PATH + " = ? OR (" + //$NON-NLS-1$
+                    DatabaseHelper.COLUMN_PATH + " >= ? AND " + //$NON-NLS-1$
+                    DatabaseHelper.COLUMN_PATH + " < ?)", //$NON-NLS-1$
+                    new String[]{root, prefix, upper}, null, null, null);
+            while (cursor.moveToNext()) {
+                byte[] blob = cursor.getBlob(4);
+                if (blob == null || blob.length != categories * 2 * 8) {
+                    // The categories changed. Ignore the entry
+                    continue;
+                }
+                ByteBuffer bb = ByteBuffer.wrap(blob);
+                long[] categoryFiles = new long[categories];
+                long[] categorySizes = new long[categories];
+                for (int i = 0; i < categories; i++) {
+                    categoryFiles[i] = bb.getLong();
+                    categorySizes[i] = bb.getLong();
+                }
+                String folders = cursor.getString(5);
+                Entry entry = new Entry(cursor.getString(0), cursor.getLong(1),
+                        cursor.getLong(2), cursor.getLong(3), categoryFiles, categorySizes,
+                        TextUtils.isEmpty(folders)
+                                ? NO_FOLDERS : folders.split(FOLDER_SEPARATOR));
+                entries.put(entry.mPath, entry);
+            }
+        } catch (SQLiteException ex) {
+            Log.w(TAG, "Failed to read the folder size index", ex); //$NON-NLS-1$
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Method that updates the index after a walk.
+     *
+     * @param changed The entries of the folders that were walked
+     * @param removed The paths of the folders that don't exist anymore
+     * @param walkStart The time (in seconds) at which the walk started
+     */
+    void update(Collection<Entry> changed, Collection<String> removed, long walkStart) {
+        if (changed.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+        try {
+            SQLiteDatabase db = this.mHelper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                for (String path : removed) {
+                    db.delete(DatabaseHelper.TABLE,
+                            DatabaseHelper.COLUMN_PATH + " = ?", //$NON-NLS-1$
+                            new String[]{path});
+                }
+                ContentValues values = new ContentValues(DatabaseHelper.PROJECTION.length);
+                for (Entry entry : changed) {
+                    if (entry.mModified >= walkStart - RACY_WINDOW) {
+                        // The folder could change again in the same second
+                        db.delete(DatabaseHelper.TABLE,
+                                DatabaseHelper.COLUMN_PATH + " = ?", //$NON-NLS-1$
+                                new String[]{entry.mPath});
+                        continue;
+                    }
+                    ByteBuffer bb = ByteBuffer.allocate(entry.mCategoryFiles.length * 2 * 8);
+                    for (int i = 0; i < entry.mCategoryFiles.length; i++) {
+                        bb.putLong(entry.mCategoryFiles[i]);
+                        bb.putLong(entry.mCategorySizes[i]);
+                    }
+                    values.clear();
+                    values.put(DatabaseHelper.COLUMN_PATH, entry.mPath);
+                    values.put(DatabaseHelper.COLUMN_MODIFIED, entry.mModified);
+                    values.put(DatabaseHelper.COLUMN_FILES, entry.mFiles);
+                    values.put(DatabaseHelper.COLUMN_SIZE, entry.mSize);
+                    values.put(DatabaseHelper.COLUMN_CATEGORIES, bb.array());
+                    values.put(DatabaseHelper.COLUMN_FOLDERS,
+                            TextUtils.join(FOLDER_SEPARATOR, entry.mFolders));
+                    db.insertWithOnConflict(DatabaseHelper.TABLE, null, values,
+                            SQLiteDatabase.CONFLICT_REPLACE);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (SQLiteException ex) {
+            Log.w(TAG, "Failed to update the folder size index", ex); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that adds the hits and misses of a walk to the statistics of the index.
+     *
+     * @param hits The number of folders read from the index
+     * @param misses The number of folders that were walked
+     */
+    void addStatistics(long hits, long misses) {
+        this.mHits.addAndGet(hits);
+        this.mMisses.addAndGet(misses);
+    }
+
+    /**
+     * Method that returns the number of folders read from the index.
+     *
+     * @return long The number of hits
+     */
+    public long getHits() {
+        return this.mHits.get();
+    }
+
+    /**
+     * Method that returns the number of folders that were not indexed or were modified,
+     * and had to be walked.
+     *
+     * @return long The number of misses
+     */
+    public long getMisses() {
+        return this.mMisses.get();
+    }
+
+    /**
+     * Method that returns the ratio of folders read from the index.
+     *
+     * @return float The hit ratio, between 0 and 1
+     */
+    public float getHitRatio() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0f : (float)hits / total;
+    }
+
+    /**
+     * Method that removes all the entries of the index.
+     */
+    public void clear() {
+        try {
+            this.mHelper.getWritableDatabase().delete(DatabaseHelper.TABLE, null, null);
+        } catch (SQLiteException ex) {
+            Log.w(TAG, "Failed to clear the folder size index", ex); //$NON-NLS-1$
+        }
+        this.mHits.set(0);
+        this.mMisses.set(0);
+    }
+
+    /**
+     * The database of the index.
+     */
+    private static class DatabaseHelper extends SQLiteOpenHelper {
+
+        static final int DATABASE_VERSION = 1;
+        static final String DATABASE_NAME = "folder_size_index"; //$NON-NLS-1$
+        static final String TABLE = "folders"; //$NON-NLS-1$
+
+        static final String COLUMN_PATH = "path"; //$NON-NLS-1$
+        static final String COLUMN_MODIFIED = "modified"; //$NON-NLS-1$
+        static final String COLUMN_FILES = "files"; //$NON-NLS-1$
+        static final String COLUMN_SIZE = "size"; //$NON-NLS-1$
+        static final String COLUMN_CATEGORIES = "categories"; //$NON-NLS-1$
+        static final String COLUMN_FOLDERS = "folders"; //$NON-NLS-1$
+
+        static final String[] PROJECTION = {
+            COLUMN_PATH, COLUMN_MODIFIED, COLUMN_FILES, COLUMN_SIZE,
+            COLUMN_CATEGORIES, COLUMN_FOLDERS
+        };
+
+        private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS " + //$NON-NLS-1$
+                TABLE + " (" + //$NON-NLS-1$
+                COLUMN_PATH + " TEXT PRIMARY KEY, " + //$NON-NLS-1$
+                COLUMN_MODIFIED + " INTEGER, " + //$NON-NLS-1$
+                COLUMN_FILES + " INTEGER, " + //$NON-NLS-1$
+                COLUMN_SIZE + " INTEGER, " + //$NON-NLS-1$
+                COLUMN_CATEGORIES + " BLOB, " + //$NON-NLS-1$
+                COLUMN_FOLDERS + " TEXT)"; //$NON-NLS-1$
+
+        DatabaseHelper(Context context) {
+            super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL(CREATE_TABLE);
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE); //$NON-NLS-1$
+            onCreate(db);
+        }
+    }
+}
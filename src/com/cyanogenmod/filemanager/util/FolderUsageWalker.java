@@ -0,0 +1,497 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.content.Context;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructStat;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.R;
+import com.cyanogenmod.filemanager.model.FolderUsage;
+import com.cyanogenmod.filemanager.util.MimeTypeHelper.MimeTypeCategory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A class that computes the disk usage of a folder tree in parallel.<br/>
+ * <br/>
+ * The tree is walked by a {@link ForkJoinPool} that splits the work per subdirectory.
+ * Every worker thread accumulates its counters (folders, files, size and files and size
+ * per {@link MimeTypeCategory}) in its own accumulator, which is only written by that
+ * thread, so no locks are shared between the workers. The caller thread merges the
+ * accumulators periodically to publish partial results.<br/>
+ * <br/>
+ * If a {@link FolderSizeIndex} is used, the folders that didn't change since the last
+ * walk are not listed; their usage is read from the index.
+ */
+public class FolderUsageWalker {
+
+    private static final String TAG = "FolderUsageWalker"; //$NON-NLS-1$
+
+    private static final boolean DEBUG = false;
+
+    /**
+     * An interface for receive the progress of the walk.
+     */
+    public interface OnWalkProgressListener {
+        /**
+         * Invoked periodically, in the thread that started the walk, while the
+         * tree is being walked.
+         *
+         * @param walker The walker
+         */
+        void onWalkProgress(FolderUsageWalker walker);
+    }
+
+    private static final MimeTypeCategory[] CATEGORIES = MimeTypeCategory.values();
+
+    // The layout of the counters of an accumulator
+    private static final int IDX_FOLDERS = 0;
+    private static final int IDX_FILES = 1;
+    private static final int IDX_SIZE = 2;
+    private static final int IDX_INDEX_HITS = 3;
+    private static final int IDX_INDEX_MISSES = 4;
+    private static final int IDX_CATEGORY_FILES = 5;
+    private static final int IDX_CATEGORY_SIZE = IDX_CATEGORY_FILES + CATEGORIES.length;
+    private static final int COUNTERS = IDX_CATEGORY_SIZE + CATEGORIES.length;
+
+    /**
+     * The counters of a worker thread. Only the owner thread writes the counters,
+     * so they are updated with ordered writes instead of atomic operations.
+     */
+    private static class Accumulator {
+        final AtomicLongArray mCounters = new AtomicLongArray(COUNTERS);
+
+        void add(int index, long value) {
+            this.mCounters.lazySet(index, this.mCounters.get(index) + value);
+        }
+    }
+
+    /**
+     * The task that walks a folder. Every subfolder is walked by a new task.
+     */
+    private class WalkTask extends RecursiveAction {
+        private static final long serialVersionUID = 5307315874526378145L;
+
+        private final String mPath;
+        private final StructStat mStat;
+        private final boolean mRoot;
+
+        WalkTask(String path, StructStat stat, boolean root) {
+            super();
+            this.mPath = path;
+            this.mStat = stat;
+            this.mRoot = root;
+        }
+
+        @Override
+        protected void compute() {
+            if (FolderUsageWalker.this.mCancelled) {
+                return;
+            }
+
+            StructStat st = this.mStat;
+            if (st == null) {
+                try {
+                    st = Os.stat(this.mPath);
+                } catch (ErrnoException ex) {
+                    if (!this.mRoot) {
+                        // The folder doesn't exist anymore
+                        return;
+                    }
+                }
+            }
+
+            final Accumulator acc = FolderUsageWalker.this.mAccumulator.get();
+            if (!this.mRoot) {
+                acc.add(IDX_FOLDERS, 1);
+                if (FolderUsageWalker.this.mCountFolderSizes) {
+                    acc.add(IDX_SIZE, st.st_size);
+                    acc.add(IDX_CATEGORY_SIZE + MimeTypeCategory.NONE.ordinal(), st.st_size);
+                }
+            }
+
+            final FolderSizeIndex.Entry entry;
+            final Map<String, FolderSizeIndex.Entry> indexed =
+                    FolderUsageWalker.this.mIndexedEntries;
+            if (indexed == null || st == null) {
+                entry = walkFolder(acc, null);
+            } else {
+                FolderSizeIndex.Entry cached = indexed.get(this.mPath);
+                if (cached != null && cached.mModified == st.st_mtime) {
+                    acc.add(IDX_INDEX_HITS, 1);
+                    entry = cached;
+                    addEntry(acc, entry);
+                } else {
+                    acc.add(IDX_INDEX_MISSES, 1);
+                    entry = walkFolder(acc, st);
+                    if (entry != null) {
+                        FolderUsageWalker.this.mChangedEntries.add(entry);
+                    }
+                }
+                FolderUsageWalker.this.mVisited.add(this.mPath);
+            }
+
+            // Walk the subfolders
+            if (entry != null && entry.mFolders.length > 0) {
+                final String prefix = FileHelper.addTrailingSlash(this.mPath);
+                List<WalkTask> subtasks = new ArrayList<WalkTask>(entry.mFolders.length);
+                for (String folder : entry.mFolders) {
+                    subtasks.add(new WalkTask(prefix + folder, null, false));
+                }
+                invokeAll(subtasks);
+            }
+        }
+
+        /**
+         * Method that lists the folder and accounts the files directly contained in it.
+         *
+         * @param acc The accumulator of the current thread
+         * @param st The stat of the folder. <code>null</code> if the folder is not indexed
+         * @return FolderSizeIndex.Entry The usage of the folder, or null if the folder
+         * can't be listed or the walk was cancelled
+         */
+        private FolderSizeIndex.Entry walkFolder(Accumulator acc, StructStat st) {
+            String[] names = new File(this.mPath).list();
+            if (names == null) {
+                if (st != null) {
+                    // Record that the tree can't be completely walked by the application
+                    FolderUsageWalker.this.mChangedEntries.add(new FolderSizeIndex.Entry(
+                            this.mPath, FolderSizeIndex.UNREADABLE, 0, 0,
+                            new long[CATEGORIES.length], new long[CATEGORIES.length],
+                            new String[0]));
+                }
+                return null;
+            }
+
+            final String prefix = FileHelper.addTrailingSlash(this.mPath);
+            final long[] categoryFiles = new long[CATEGORIES.length];
+            final long[] categorySizes = new long[CATEGORIES.length];
+            final List<String> folders = new ArrayList<String>();
+            long files = 0;
+            long totalSize = 0;
+            int cc = names.length;
+            for (int i = 0; i < cc; i++) {
+                if (FolderUsageWalker.this.mCancelled) {
+                    return null;
+                }
+
+                final String path = prefix + names[i];
+                boolean isDirectory = false;
+                long size = 0;
+                try {
+                    // The links are not followed (like du), so a symlinked folder is
+                    // neither walked twice nor can make the walk loop
+                    StructStat entryStat = Os.lstat(path);
+                    isDirectory = OsConstants.S_ISDIR(entryStat.st_mode);
+                    size = entryStat.st_size;
+                } catch (ErrnoException ex) {
+                    // Not accessible entry. Treat as an empty file
+                }
+
+                if (isDirectory) {
+                    folders.add(names[i]);
+                } else {
+                    MimeTypeCategory category = MimeTypeHelper.getCategoryFromExt(
+                            FolderUsageWalker.this.mContext,
+                            FileHelper.getExtension(names[i]),
+                            path);
+                    files++;
+                    totalSize += size;
+                    categoryFiles[category.ordinal()]++;
+                    categorySizes[category.ordinal()] += size;
+                }
+            }
+
+            FolderSizeIndex.Entry entry = new FolderSizeIndex.Entry(
+                    this.mPath, st != null ? st.st_mtime : 0, files, totalSize,
+                    categoryFiles, categorySizes, folders.toArray(new String[folders.size()]));
+            addEntry(acc, entry);
+            return entry;
+        }
+
+        /**
+         * Method that accounts the files directly contained in a folder.
+         *
+         * @param acc The accumulator of the current thread
+         * @param entry The usage of the folder
+         */
+        private void addEntry(Accumulator acc, FolderSizeIndex.Entry entry) {
+            acc.add(IDX_FILES, entry.mFiles);
+            acc.add(IDX_SIZE, entry.mSize);
+            for (int i = 0; i < CATEGORIES.length; i++) {
+                acc.add(IDX_CATEGORY_FILES + i, entry.mCategoryFiles[i]);
+                acc.add(IDX_CATEGORY_SIZE + i, entry.mCategorySizes[i]);
+            }
+        }
+    }
+
+    private final Context mContext;
+    private final int mParallelism;
+    private final boolean mCountFolderSizes;
+    private final FolderSizeIndex mIndex;
+
+    // The index of the tree being walked, and the changes found while walking it
+    Map<String, FolderSizeIndex.Entry> mIndexedEntries;
+    final ConcurrentLinkedQueue<FolderSizeIndex.Entry> mChangedEntries =
+            new ConcurrentLinkedQueue<FolderSizeIndex.Entry>();
+    final ConcurrentLinkedQueue<String> mVisited = new ConcurrentLinkedQueue<String>();
+
+    private final ConcurrentLinkedQueue<Accumulator> mAccumulators =
+            new ConcurrentLinkedQueue<Accumulator>();
+    private final ThreadLocal<Accumulator> mAccumulator = new ThreadLocal<Accumulator>() {
+        @Override
+        protected Accumulator initialValue() {
+            Accumulator acc = new Accumulator();
+            FolderUsageWalker.this.mAccumulators.add(acc);
+            return acc;
+        }
+    };
+
+    volatile boolean mCancelled;
+
+    /**
+     * Constructor of <code>FolderUsageWalker</code>.
+     *
+     * @param context The current context, used to resolve the mime/type categories.
+     * <code>null</code> if the mime/types are already loaded
+     * @param parallelism The number of threads used to walk the tree
+     * @param countFolderSizes If the size of the folders entries must be accounted
+     * (under the {@link MimeTypeCategory#NONE} category)
+     * @param index The index used to skip the unchanged folders. <code>null</code> to
+     * walk the whole tree
+     */
+    public FolderUsageWalker(Context context, int parallelism, boolean countFolderSizes,
+            FolderSizeIndex index) {
+        super();
+        this.mContext = context;
+        this.mParallelism = Math.max(1, parallelism);
+        this.mCountFolderSizes = countFolderSizes;
+        this.mIndex = index;
+        this.mCancelled = false;
+    }
+
+    /**
+     * Method that returns the configured number of threads used to compute the
+     * disk usage of a folder.
+     *
+     * @param context The current context. Can be <code>null</code>
+     * @return int The number of threads
+     */
+    public static int getDefaultParallelism(Context context) {
+        int parallelism = 0;
+        if (context != null) {
+            parallelism = context.getResources().getInteger(R.integer.folder_usage_parallelism);
+        }
+        if (parallelism <= 0) {
+            parallelism = Runtime.getRuntime().availableProcessors();
+        }
+        return parallelism;
+    }
+
+    /**
+     * Method that walks the tree of a folder. This method blocks until the walk
+     * ends or is cancelled.
+     *
+     * @param root The folder to walk
+     * @param interval The interval (in milliseconds) between progress notifications
+     * @param listener The listener that receives the progress. Can be <code>null</code>
+     * @return boolean If the walk was completed (not cancelled nor failed)
+     */
+    public boolean walk(File root, long interval, OnWalkProgressListener listener) {
+        if (this.mContext != null) {
+            // Load the mime/types before the workers start to read them
+            MimeTypeHelper.loadMimeTypes(this.mContext);
+        }
+
+        final String rootPath = root.getAbsolutePath();
+        final long walkStart = System.currentTimeMillis() / 1000L;
+        if (this.mIndex != null) {
+            this.mIndexedEntries = this.mIndex.load(rootPath);
+        }
+
+        boolean interrupted = false;
+        boolean completed = false;
+        ForkJoinPool pool = new ForkJoinPool(this.mParallelism);
+        try {
+            ForkJoinTask<Void> task = pool.submit(new WalkTask(rootPath, null, true));
+            while (true) {
+                try {
+                    task.get(interval, TimeUnit.MILLISECONDS);
+                    completed = !this.mCancelled;
+                    break;
+                } catch (TimeoutException ex) {
+                    if (listener != null && !this.mCancelled) {
+                        listener.onWalkProgress(this);
+                    }
+                } catch (InterruptedException ex) {
+                    // Stop the walk. The workers check the cancellation at every folder,
+                    // so wait for them to return before touching their results
+                    cancel();
+                    interrupted = true;
+                } catch (java.util.concurrent.ExecutionException ex) {
+                    // The walk is incomplete, as if it was cancelled
+                    Log.w(TAG, "Failed to walk " + root, ex.getCause()); //$NON-NLS-1$
+                    break;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+            if (interrupted) {
+                // Propagate the interruption to the caller
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (this.mIndex != null) {
+            updateIndex(walkStart, completed);
+        }
+        return completed;
+    }
+
+    /**
+     * Method that stores in the index the folders that changed. The folders that
+     * don't exist anymore are removed only if the walk was completed.
+     *
+     * @param walkStart The time (in seconds) at which the walk started
+     * @param completed If the walk visited the whole tree
+     */
+    private void updateIndex(long walkStart, boolean completed) {
+        List<String> removed = new ArrayList<String>();
+        if (completed) {
+            Set<String> visited = new HashSet<String>(this.mVisited);
+            for (String path : this.mIndexedEntries.keySet()) {
+                if (!visited.contains(path)) {
+                    removed.add(path);
+                }
+            }
+        }
+        this.mIndex.update(this.mChangedEntries, removed, walkStart);
+
+        long[] counters = merge();
+        this.mIndex.addStatistics(counters[IDX_INDEX_HITS], counters[IDX_INDEX_MISSES]);
+        if (DEBUG) {
+            Log.v(TAG, String.format("Index hits: %d, misses: %d", //$NON-NLS-1$
+                    Long.valueOf(counters[IDX_INDEX_HITS]),
+                    Long.valueOf(counters[IDX_INDEX_MISSES])));
+        }
+    }
+
+    /**
+     * Method that returns the number of folders of the walk that were read from the index.
+     *
+     * @return long The number of hits
+     */
+    public long getIndexHits() {
+        return merge()[IDX_INDEX_HITS];
+    }
+
+    /**
+     * Method that returns the number of folders of the walk that had to be listed,
+     * because they were not indexed or were modified.
+     *
+     * @return long The number of misses
+     */
+    public long getIndexMisses() {
+        return merge()[IDX_INDEX_MISSES];
+    }
+
+    /**
+     * Method that cancels the walk.
+     */
+    public void cancel() {
+        this.mCancelled = true;
+    }
+
+    /**
+     * Method that returns if the walk was cancelled.
+     *
+     * @return boolean If the walk was cancelled
+     */
+    public boolean isCancelled() {
+        return this.mCancelled;
+    }
+
+    /**
+     * Method that creates a {@link FolderUsage} with the counters accumulated until now.
+     *
+     * @param folder The folder of the usage
+     * @return FolderUsage The folder usage
+     */
+    public FolderUsage createFolderUsage(String folder) {
+        long[] counters = merge();
+        FolderUsage usage = new FolderUsage(folder);
+        usage.addFolders((int)counters[IDX_FOLDERS]);
+        usage.addFiles((int)counters[IDX_FILES]);
+        usage.addSize(counters[IDX_SIZE]);
+        for (MimeTypeCategory category : CATEGORIES) {
+            usage.addFilesToCategory(
+                    category, counters[IDX_CATEGORY_FILES + category.ordinal()]);
+        }
+        return usage;
+    }
+
+    /**
+     * Method that returns the size accumulated until now for every category,
+     * indexed by the ordinal of the {@link MimeTypeCategory}. A category with no entries
+     * has a negative size.
+     *
+     * @return long[] The size of every category
+     */
+    public long[] getSizeByCategory() {
+        long[] counters = merge();
+        long[] sizes = new long[CATEGORIES.length];
+        for (int i = 0; i < CATEGORIES.length; i++) {
+            boolean hasEntries = counters[IDX_CATEGORY_FILES + i] > 0
+                    || counters[IDX_CATEGORY_SIZE + i] > 0
+                    || (i == MimeTypeCategory.NONE.ordinal()
+                            && this.mCountFolderSizes && counters[IDX_FOLDERS] > 0);
+            sizes[i] = hasEntries ? counters[IDX_CATEGORY_SIZE + i] : -1;
+        }
+        return sizes;
+    }
+
+    /**
+     * Method that merges the counters of all the worker threads.
+     *
+     * @return long[] The merged counters
+     */
+    private long[] merge() {
+        long[] counters = new long[COUNTERS];
+        for (Accumulator acc : this.mAccumulators) {
+            for (int i = 0; i < COUNTERS; i++) {
+                counters[i] += acc.mCounters.get(i);
+            }
+        }
+        return counters;
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import com.cyanogenmod.filemanager.model.Directory;
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+import com.cyanogenmod.filemanager.model.Group;
+import com.cyanogenmod.filemanager.model.Permissions;
+import com.cyanogenmod.filemanager.model.Symlink;
+import com.cyanogenmod.filemanager.model.User;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A loader of the attributes of the entries of a directory listing.<br/>
+ * <br/>
+ * The listing only keeps the mode, the uid and the gid of every entry in primitive
+ * arrays. The {@link Permissions}, {@link User} and {@link Group} objects are created
+ * the first time that an attribute of an entry is accessed, for a batch of
+ * {@link #BATCH_SIZE} entries around it. The link targets of the symlinks need file
+ * system access, so they should be resolved in the listing thread (see
+ * {@link #resolveLinks()}) instead of the thread that accesses the entries (usually
+ * the UI thread).<br/>
+ * <br/>
+ * The attributes of the entries can be accessed from several threads.
+ */
+public class LazyAttributesLoader implements FileSystemObject.AttributesLoader {
+
+    /**
+     * The number of entries loaded at once.
+     */
+    public static final int BATCH_SIZE = 256;
+
+    // The mode of the entries with the default permissions and the owner already set
+    private static final int DEFAULT_MODE = -1;
+
+    private FileSystemObject[] mFiles;
+    private int[] mModes;
+    private int[] mUids;
+    private int[] mGids;
+    private int mCount;
+    // If the link targets of all the entries are resolved
+    private boolean mLinksResolved;
+
+    private final Map<Integer, User> mUsers;
+    private final Map<Integer, Group> mGroups;
+
+    /**
+     * Constructor of <code>LazyAttributesLoader</code>.
+     *
+     * @param capacity The expected number of entries
+     */
+    public LazyAttributesLoader(int capacity) {
+        super();
+        capacity = Math.max(16, capacity);
+        this.mFiles = new FileSystemObject[capacity];
+        this.mModes = new int[capacity];
+        this.mUids = new int[capacity];
+        this.mGids = new int[capacity];
+        this.mCount = 0;
+        this.mLinksResolved = true;
+        this.mUsers = new HashMap<Integer, User>();
+        this.mGroups = new HashMap<Integer, Group>();
+    }
+
+    /**
+     * Method that adds an entry whose attributes must be loaded from its stat.
+     *
+     * @param fso The file system object (without user, group and permissions)
+     * @param mode The raw mode of the entry (type and permissions)
+     * @param uid The user identifier of the entry
+     * @param gid The group identifier of the entry
+     */
+    public synchronized void add(FileSystemObject fso, int mode, int uid, int gid) {
+        if (this.mCount == this.mFiles.length) {
+            int capacity = this.mCount * 2;
+            this.mFiles = Arrays.copyOf(this.mFiles, capacity);
+            this.mModes = Arrays.copyOf(this.mModes, capacity);
+            this.mUids = Arrays.copyOf(this.mUids, capacity);
+            this.mGids = Arrays.copyOf(this.mGids, capacity);
+        }
+        this.mFiles[this.mCount] = fso;
+        this.mModes[this.mCount] = mode;
+        this.mUids[this.mCount] = uid;
+        this.mGids[this.mCount] = gid;
+        fso.setAttributesLoader(this, this.mCount);
+        this.mCount++;
+        if (fso instanceof Symlink) {
+            this.mLinksResolved = false;
+        }
+    }
+
+    /**
+     * Method that adds an entry with the default permissions (the user and the group
+     * of the entry must be set).
+     *
+     * @param fso The file system object (without permissions)
+     */
+    public void addDefault(FileSystemObject fso) {
+        add(fso, DEFAULT_MODE, 0, 0);
+    }
+
+    /**
+     * Method that resolves the link targets of all the symlinks at once. It must be
+     * called from the thread that lists the directory, after all the entries are added.
+     * The link targets of the entries added later are resolved when they are loaded.
+     */
+    public synchronized void resolveLinks() {
+        for (int i = 0; i < this.mCount; i++) {
+            FileSystemObject f = this.mFiles[i];
+            if (f instanceof Symlink) {
+                resolveLink((Symlink)f);
+            }
+        }
+        this.mLinksResolved = true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void loadAttributes(FileSystemObject fso, int index) {
+        if (index < 0 || index >= this.mCount || this.mFiles[index] != fso) {
+            // Not an entry of this loader, or already loaded by other thread
+            fso.setLazyAttributes(null, null, null);
+            return;
+        }
+        final int from = index - (index % BATCH_SIZE);
+        final int to = Math.min(this.mCount, from + BATCH_SIZE);
+        for (int i = from; i < to; i++) {
+            FileSystemObject f = this.mFiles[i];
+            if (f != null) {
+                this.mFiles[i] = null;
+                load(f, i);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean getRawAttributes(FileSystemObject fso, int index, int[] attrs) {
+        if (index < 0 || index >= this.mCount || this.mFiles[index] != fso
+                || this.mModes[index] == DEFAULT_MODE) {
+            return false;
+        }
+        attrs[0] = this.mModes[index];
+        attrs[1] = this.mUids[index];
+        attrs[2] = this.mGids[index];
+        return true;
+    }
+
+    private void load(FileSystemObject fso, int index) {
+        final int mode = this.mModes[index];
+        if (mode == DEFAULT_MODE) {
+            fso.setLazyAttributes(null, null, fso instanceof Directory ?
+                    Permissions.createDefaultFolderPermissions() :
+                    Permissions.createDefaultFilePermissions());
+            return;
+        }
+
+        // The link target must be set before the attributes are published
+        if (!this.mLinksResolved && fso instanceof Symlink) {
+            resolveLink((Symlink)fso);
+        }
+
+        Permissions permissions = null;
+        try {
+            permissions = ParseHelper.parsePermission(ParseHelper.toRawPermissions(mode));
+        } catch (Exception ex) {/**NON BLOCK**/}
+        fso.setLazyAttributes(
+                getUser(this.mUids[index]), getGroup(this.mGids[index]), permissions);
+    }
+
+    private static void resolveLink(Symlink symlink) {
+        try {
+            ParseHelper.resolveSymlink(
+                    symlink, new File(symlink.getParent(), symlink.getName()));
+        } catch (Exception ex) {/**NON BLOCK**/}
+    }
+
+    private User getUser(int uid) {
+        Integer key = Integer.valueOf(uid);
+        User user = this.mUsers.get(key);
+        if (user == null) {
+            user = new User(uid, AIDHelper.getNullSafeName(uid));
+            this.mUsers.put(key, user);
+        }
+        return user;
+    }
+
+    private Group getGroup(int gid) {
+        Integer key = Integer.valueOf(gid);
+        Group group = this.mGroups.get(key);
+        if (group == null) {
+            group = new Group(gid, AIDHelper.getNullSafeName(gid));
+            this.mGroups.put(key, group);
+        }
+        return group;
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.content.ComponentCallbacks2;
+import android.os.SystemClock;
+import android.util.LruCache;
+
+import com.cyanogenmod.filemanager.console.Console;
+import com.cyanogenmod.filemanager.model.DirectorySnapshot;
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+
+import java.io.File;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A memory cache of the last directory listings, keyed by the type of the console
+ * that listed the directory and the path of the directory.<br/>
+ * <br/>
+ * The listings are stored as compact {@link DirectorySnapshot} and the cache is bounded
+ * by their estimated bytes. A listing is only returned while the modification time of
+ * its directory is the same than when it was listed (the entries of the directory weren't
+ * added, removed or renamed). Changes in the attributes of the entries don't change the
+ * modification time of the directory, so the cached listings must be revalidated by
+ * listing the directory again (see {@link #isSameListing(List, List)}). The speculative
+ * listings (not requested by the user) are only kept for a short time.
+ */
+public final class ListingCache {
+
+    // The fraction of the maximum memory of the application used by the cache
+    private static final int MEMORY_FRACTION = 32;
+
+    private static ListingCache sInstance;
+
+    private final LruCache<String, Entry> mCache;
+
+    /**
+     * A cached listing.
+     */
+    private static final class Entry {
+        final DirectorySnapshot mFiles;
+        final long mModifiedTime;
+        final long mExpires;
+        final int mSize;
+
+        Entry(DirectorySnapshot files, long modifiedTime, long expires) {
+            this.mFiles = files;
+            this.mModifiedTime = modifiedTime;
+            this.mExpires = expires;
+            this.mSize = (int)Math.min(Integer.MAX_VALUE, files.getEstimatedSize());
+        }
+    }
+
+    /**
+     * Constructor of <code>ListingCache</code>.
+     */
+    private ListingCache() {
+        super();
+        int maxMemory = (int)(Runtime.getRuntime().maxMemory() / MEMORY_FRACTION);
+        this.mCache = new LruCache<String, Entry>(maxMemory) {
+            @Override
+            protected int sizeOf(String key, Entry value) {
+                return value.mSize;
+            }
+        };
+    }
+
+    /**
+     * Method that returns the listing cache of the application.
+     *
+     * @return ListingCache The listing cache
+     */
+    public static synchronized ListingCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new ListingCache();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Method that returns the modification time of a directory, to be passed to
+     * {@link #put(Console, String, long, List)} before the directory is listed.
+     *
+     * @param directory The path of the directory
+     * @return long The modification time, or 0 if the directory can't be accessed
+     */
+    public static long getModifiedTime(String directory) {
+        return new File(directory).lastModified();
+    }
+
+    /**
+     * Method that returns the cached listing of a directory.
+     *
+     * @param console The console that lists the directory
+     * @param directory The path of the directory
+     * @return List<FileSystemObject> The cached listing (must not be modified), or
+     * <code>null</code> if there isn't a valid listing of the directory
+     */
+    public List<FileSystemObject> get(Console console, String directory) {
+        String key = getKey(console, directory);
+        Entry entry = this.mCache.get(key);
+        if (entry == null) {
+            return null;
+        }
+        long modified = getModifiedTime(directory);
+        if (modified == 0 || modified != entry.mModifiedTime
+                || (entry.mExpires != 0 && SystemClock.elapsedRealtime() > entry.mExpires)) {
+            this.mCache.remove(key);
+            return null;
+        }
+        return entry.mFiles;
+    }
+
+    /**
+     * Method that caches the listing of a directory.
+     *
+     * @param console The console that listed the directory
+     * @param directory The path of the directory
+     * @param modifiedTime The modification time of the directory before it was listed
+     * @param files The listing of the directory
+     */
+    public void put(Console console, String directory, long modifiedTime,
+            List<FileSystemObject> files) {
+        put(console, directory, modifiedTime, files, 0);
+    }
+
+    /**
+     * Method that caches the listing of a directory for a time.
+     *
+     * @param console The console that listed the directory
+     * @param directory The path of the directory
+     * @param modifiedTime The modification time of the directory before it was listed
+     * @param files The listing of the directory
+     * @param maxAge The time (in milliseconds) that the listing is valid. 0 to keep the
+     * listing while the directory doesn't change
+     */
+    public void put(Console console, String directory, long modifiedTime,
+            List<FileSystemObject> files, long maxAge) {
+        String key = getKey(console, directory);
+        if (modifiedTime == 0 || files == null) {
+            // The listing can't be validated
+            this.mCache.remove(key);
+            return;
+        }
+        long expires = maxAge > 0 ? SystemClock.elapsedRealtime() + maxAge : 0;
+        this.mCache.put(key, new Entry(new DirectorySnapshot(files), modifiedTime, expires));
+    }
+
+    /**
+     * Method that releases memory when requested by the system.
+     *
+     * @param level The trim level
+     * @see ComponentCallbacks2#onTrimMemory(int)
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            this.mCache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            this.mCache.trimToSize(this.mCache.maxSize() / 2);
+        }
+    }
+
+    /**
+     * Method that checks if two listings have the same entries, with the same type, size,
+     * and modification and change times (in the same order).
+     *
+     * @param files1 A listing
+     * @param files2 Other listing
+     * @return boolean If the listings are the same
+     */
+    public static boolean isSameListing(
+            List<FileSystemObject> files1, List<FileSystemObject> files2) {
+        int cc = files1.size();
+        if (cc != files2.size()) {
+            return false;
+        }
+        for (int i = 0; i < cc; i++) {
+            FileSystemObject fso1 = files1.get(i);
+            FileSystemObject fso2 = files2.get(i);
+            if (fso1.getClass() != fso2.getClass()
+                    || fso1.getSize() != fso2.getSize()
+                    || getTime(fso1.getLastModifiedTime()) != getTime(fso2.getLastModifiedTime())
+                    || getTime(fso1.getLastChangedTime()) != getTime(fso2.getLastChangedTime())
+                    || fso1.compareTo(fso2) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long getTime(Date date) {
+        return date != null ? date.getTime() : 0;
+    }
+
+    private static String getKey(Console console, String directory) {
+        return console.getClass().getName() + '\0' + directory;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A class that lists speculatively the directories that the user will probably open
+ * next (the subfolders shown in the screen), so navigating to them renders their
+ * cached listing at once (see {@link ListingCache}).<br/>
+ * <br/>
+ * The directories are listed one by one in a background thread, and only while the
+ * console has capacity left for the commands of the user. Every request has a budget
+ * of directories and replaces the previous one, whose pending directories are dropped.
+ */
+public class ListingPrefetcher {
+
+    private static final String TAG = "ListingPrefetcher"; //$NON-NLS-1$
+
+    /**
+     * The maximum number of directories listed for every request.
+     */
+    public static final int MAX_DIRECTORIES = 4;
+
+    // The time that a prefetched listing is cached, if it isn't used (in milliseconds)
+    private static final long MAX_AGE = 30000L;
+
+    // The time that the thread of the prefetcher is kept alive without requests
+    private static final long KEEP_ALIVE = 5L;
+
+    private final Context mContext;
+    private final ThreadPoolExecutor mExecutor;
+    private final AtomicInteger mGeneration;
+
+    /**
+     * Constructor of <code>ListingPrefetcher</code>.
+     *
+     * @param context The current context
+     */
+    public ListingPrefetcher(Context context) {
+        super();
+        this.mContext = context.getApplicationContext();
+        this.mGeneration = new AtomicInteger();
+        this.mExecutor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        return new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+                                r.run();
+                            }
+                        }, TAG);
+                    }
+                });
+        this.mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Method that lists speculatively some directories, in order. Only the first
+     * {@link #MAX_DIRECTORIES} directories are listed, and the directories of the previous
+     * requests that weren't listed yet are dropped.
+     *
+     * @param directories The paths of the directories
+     */
+    public void prefetch(List<String> directories) {
+        final int generation = this.mGeneration.incrementAndGet();
+        if (directories.isEmpty()) {
+            return;
+        }
+        final List<String> dirs = new ArrayList<String>(
+                directories.subList(0, Math.min(MAX_DIRECTORIES, directories.size())));
+        this.mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (String dir : dirs) {
+                    if (ListingPrefetcher.this.mGeneration.get() != generation) {
+                        return;
+                    }
+                    try {
+                        CommandHelper.prefetchListing(
+                                ListingPrefetcher.this.mContext, dir, MAX_AGE);
+                    } catch (Exception ex) {
+                        // Not listed. The directory will be listed if the user navigates to it
+                        Log.v(TAG, "Failed to prefetch " + dir, ex); //$NON-NLS-1$
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Method that drops the directories pending to be listed.
+     */
+    public void cancel() {
+        this.mGeneration.incrementAndGet();
+    }
+}
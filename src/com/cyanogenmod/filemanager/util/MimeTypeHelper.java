@@ -29,6 +29,7 @@ import com.cyanogenmod.filemanager.model.Directory;
 import com.cyanogenmod.filemanager.model.DomainSocket;
 import com.cyanogenmod.filemanager.model.FileSystemObject;
 import com.cyanogenmod.filemanager.model.NamedPipe;
+import com.cyanogenmod.filemanager.model.RegularFile;
 import com.cyanogenmod.filemanager.model.Symlink;
 import com.cyanogenmod.filemanager.model.SystemFile;
 
@@ -36,9 +37,12 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 /**
  * A helper class with useful methods for deal with mime types.
@@ -206,6 +210,71 @@ public final class MimeTypeHelper {
         }
     }
 
+    /**
+     * An immutable open addressing hash table from the extensions to their mime/types,
+     * built once when the mime/type database is loaded. The extensions are looked up
+     * case-insensitively from a region of the file name, so resolving the mime/type of
+     * a file doesn't allocate anything.
+     */
+    private static final class ExtensionTable {
+        private final String[] mKeys;
+        private final MimeTypeInfo[][] mValues;
+        private final int mMask;
+
+        ExtensionTable(Map<String, List<MimeTypeInfo>> extensions) {
+            super();
+            int capacity = Integer.highestOneBit(Math.max(extensions.size(), 1) * 2) * 2;
+            this.mKeys = new String[capacity];
+            this.mValues = new MimeTypeInfo[capacity][];
+            this.mMask = capacity - 1;
+            for (Map.Entry<String, List<MimeTypeInfo>> entry : extensions.entrySet()) {
+                String key = entry.getKey();
+                int slot = hash(key, 0) & this.mMask;
+                while (this.mKeys[slot] != null) {
+                    slot = (slot + 1) & this.mMask;
+                }
+                List<MimeTypeInfo> infos = entry.getValue();
+                this.mKeys[slot] = key;
+                this.mValues[slot] = infos.toArray(new MimeTypeInfo[infos.size()]);
+            }
+        }
+
+        /**
+         * Method that returns the mime/types of an extension.
+         *
+         * @param s The string that contains the extension
+         * @param start The position of the extension (the extension ends with the string)
+         * @return MimeTypeInfo[] The mime/types of the extension, or null if unknown
+         */
+        MimeTypeInfo[] get(String s, int start) {
+            int len = s.length() - start;
+            int slot = hash(s, start) & this.mMask;
+            String key;
+            while ((key = this.mKeys[slot]) != null) {
+                if (key.length() == len && s.regionMatches(true, start, key, 0, len)) {
+                    return this.mValues[slot];
+                }
+                slot = (slot + 1) & this.mMask;
+            }
+            return null;
+        }
+
+        private static int hash(String s, int start) {
+            int h = 0;
+            int len = s.length();
+            for (int i = start; i < len; i++) {
+                char c = s.charAt(i);
+                if (c >= 'A' && c <= 'Z') {
+                    c += 'a' - 'A';
+                } else if (c > 0x7f) {
+                    c = Character.toLowerCase(c);
+                }
+                h = 31 * h + c;
+            }
+            return h ^ (h >>> 16);
+        }
+    }
+
     private static final String TAG = "MimeTypeHelper"; //$NON-NLS-1$
 
     /**
@@ -213,11 +282,14 @@ public final class MimeTypeHelper {
      */
     public static final String ALL_MIME_TYPES = "*/*"; //$NON-NLS-1$
 
-    private static Map<String, ArrayList<MimeTypeInfo>> sMimeTypes;
-    /**
-     * Maps from a combination key of <extension> + <mimetype> to MimeTypeInfo objects.
-     */
-    private static HashMap<String, MimeTypeInfo> sExtensionMimeTypes;
+    private static final String DEFAULT_MIME_TYPE = "application/octet-stream"; //$NON-NLS-1$
+
+    // The mime/types of the extensions. Built once by loadMimeTypes
+    private static volatile ExtensionTable sExtensions;
+    // All the distinct mime/types of the database
+    private static String[] sKnownMimeTypes;
+    // The first mime/type information of every mime/type (for the sniffed files)
+    private static Map<String, MimeTypeInfo> sMimeTypeInfos;
 
     /**
      * Constructor of <code>MimeTypeHelper</code>.
@@ -247,7 +319,7 @@ public final class MimeTypeHelper {
      */
     public static final boolean isMimeTypeKnown(Context context, String mimeType) {
         //Ensure that mime types are loaded
-        if (sMimeTypes == null) {
+        if (sExtensions == null) {
             loadMimeTypes(context);
         }
 
@@ -255,12 +327,9 @@ public final class MimeTypeHelper {
             return false;
         }
 
-        for (ArrayList<MimeTypeInfo> mimeTypeInfoList : sMimeTypes.values()) {
-            for (MimeTypeInfo info : mimeTypeInfoList) {
-                String mimeTypeRegExp = convertToRegExp(mimeType);
-                if (info.mMimeType.matches(mimeTypeRegExp)) {
-                    return true;
-                }
+        for (String knownMimeType : sKnownMimeTypes) {
+            if (matchesWildcard(mimeType, knownMimeType)) {
+                return true;
             }
         }
 
@@ -281,7 +350,7 @@ public final class MimeTypeHelper {
 
     public static final String getIcon(Context context, FileSystemObject fso, boolean firstFound) {
         //Ensure that mime types are loaded
-        if (sMimeTypes == null) {
+        if (sExtensions == null) {
             loadMimeTypes(context);
         }
 
@@ -301,9 +370,17 @@ public final class MimeTypeHelper {
         }
 
         //Get the extension and delivery
-        String ext = FileHelper.getExtension(fso);
-        if (ext != null) {
-            MimeTypeInfo mimeTypeInfo = getMimeTypeInternal(fso, ext, firstFound);
+        String name = fso.getName();
+        int ext = FileHelper.getExtensionIndex(name);
+        if (ext != -1) {
+            MimeTypeInfo mimeTypeInfo =
+                    getMimeTypeInternal(fso.getFullPath(), name, ext, firstFound);
+            if (mimeTypeInfo != null && DEFAULT_MIME_TYPE.equals(mimeTypeInfo.mMimeType)) {
+                MimeTypeInfo sniffed = getSniffedMimeTypeInfo(fso);
+                if (sniffed != null) {
+                    mimeTypeInfo = sniffed;
+                }
+            }
 
             if (mimeTypeInfo != null) {
                 // Create a new drawable
@@ -322,6 +399,12 @@ public final class MimeTypeHelper {
             }
         }
 
+        // The extension doesn't tell the mime/type. Check if the content was sniffed
+        MimeTypeInfo sniffed = getSniffedMimeTypeInfo(fso);
+        if (sniffed != null && !TextUtils.isEmpty(sniffed.mDrawable)) {
+            return sniffed.mDrawable;
+        }
+
         // Check  system file
         if (FileHelper.isSystemFile(fso)) {
             return "fso_type_system_drawable"; //$NON-NLS-1$
@@ -346,7 +429,7 @@ public final class MimeTypeHelper {
      */
     public static final String getMimeType(Context context, FileSystemObject fso) {
         //Ensure that mime types are loaded
-        if (sMimeTypes == null) {
+        if (sExtensions == null) {
             loadMimeTypes(context);
         }
 
@@ -386,7 +469,7 @@ public final class MimeTypeHelper {
         Resources res = context.getResources();
 
         //Ensure that mime types are loaded
-        if (sMimeTypes == null) {
+        if (sExtensions == null) {
             loadMimeTypes(context);
         }
 
@@ -442,71 +525,103 @@ public final class MimeTypeHelper {
 
     /**
      * Get the MimeTypeInfo that describes this file.
-     * @param fso The file.
-     * @param ext The extension of the file.
-     * @return The MimeTypeInfo object that describes this file, or null if it cannot be retrieved.
-     */
-    private static final MimeTypeInfo getMimeTypeInternal(FileSystemObject fso, String ext) {
-        return getMimeTypeInternal(fso.getFullPath(), ext);
-    }
-
-    private static final MimeTypeInfo getMimeTypeInternal(FileSystemObject fso,
-                                                          String ext,
-                                                          boolean firstFound) {
-        return getMimeTypeInternal(fso.getFullPath(), ext, firstFound);
-    }
-
-    /**
-     * Get the MimeTypeInfo that describes this file.
-     * @param absolutePath The absolute path of the file.
-     * @param ext The extension of the file.
+     * @param absolutePath The absolute path of the file. Can be null if not available.
+     * @param s The string that contains the extension (the file name or the extension).
+     * @param start The position of the extension in <code>s</code>.
+     * @param firstFound Return the first mime type of ambiguous extensions, instead of
+     * reading the file to resolve them.
      * @return The MimeTypeInfo object that describes this file, or null if it cannot be retrieved.
      */
-    private static final MimeTypeInfo getMimeTypeInternal(String absolutePath, String ext) {
-        return getMimeTypeInternal(absolutePath, ext, false);
-    }
-
     private static final MimeTypeInfo getMimeTypeInternal(String absolutePath,
-                                                          String ext,
+                                                          String s,
+                                                          int start,
                                                           boolean firstFound) {
-        MimeTypeInfo mimeTypeInfo = null;
-        ArrayList<MimeTypeInfo> mimeTypeInfoList = sMimeTypes.get(ext.toLowerCase(Locale.ROOT));
+        MimeTypeInfo[] mimeTypeInfos = sExtensions.get(s, start);
+        if (mimeTypeInfos == null) {
+            return null;
+        }
         // Multiple mimetypes map to the same extension, try to resolve it.
-        if (mimeTypeInfoList != null && mimeTypeInfoList.size() > 1) {
-            if ((absolutePath != null) && (!firstFound)) {
-                String mimeType = getAmbiguousExtensionMimeType(absolutePath, ext);
-                mimeTypeInfo = sExtensionMimeTypes.get(ext + mimeType);
-            } else {
-                // We don't have the ability to read the file to resolve the ambiguity,
-                // so default to the first available mimetype.
-                mimeTypeInfo = mimeTypeInfoList.get(0);
+        if (mimeTypeInfos.length > 1 && absolutePath != null && !firstFound) {
+            String mimeType = getAmbiguousExtensionMimeType(
+                    absolutePath, s.substring(start).toLowerCase(Locale.ROOT));
+            for (MimeTypeInfo mimeTypeInfo : mimeTypeInfos) {
+                if (mimeTypeInfo.mMimeType.equals(mimeType)) {
+                    return mimeTypeInfo;
+                }
             }
-        } else if (mimeTypeInfoList != null && mimeTypeInfoList.size() == 1) {
-            // Only one possible mimetype, so pick that one.
-            mimeTypeInfo = mimeTypeInfoList.get(0);
+            return null;
         }
-        return mimeTypeInfo;
+        // Only one possible mimetype (or we don't have the ability to read the file to
+        // resolve the ambiguity), so default to the first available mimetype.
+        return mimeTypeInfos[0];
     }
 
     private static final String getMimeTypeFromExtension(final FileSystemObject fso) {
-        String ext = FileHelper.getExtension(fso);
-        if (ext == null) {
-            return "application/octet-stream";
+        String name = fso.getName();
+        int ext = FileHelper.getExtensionIndex(name);
+        if (ext == -1) {
+            return getSniffedMimeType(fso);
+        }
+
+        MimeTypeInfo[] mimeTypeInfos = sExtensions.get(name, ext);
+        if (mimeTypeInfos == null) {
+            return getSniffedMimeType(fso);
         }
 
         // If this extension is ambiguous, attempt to resolve it.
-        String mimeType = getAmbiguousExtensionMimeType(fso.getFullPath(), ext);
-        if (mimeType != null) {
-            return mimeType;
+        if (mimeTypeInfos.length > 1) {
+            String mimeType = getAmbiguousExtensionMimeType(
+                    fso.getFullPath(), name.substring(ext).toLowerCase(Locale.ROOT));
+            return mimeType != null ? mimeType : DEFAULT_MIME_TYPE;
         }
 
-        //Load from the database of mime types
-        MimeTypeInfo mimeTypeInfo = getMimeTypeInternal(fso, ext);
-        if (mimeTypeInfo == null) {
-            return "application/octet-stream";
+        if (DEFAULT_MIME_TYPE.equals(mimeTypeInfos[0].mMimeType)) {
+            return getSniffedMimeType(fso);
         }
+        return mimeTypeInfos[0].mMimeType;
+    }
 
-        return mimeTypeInfo.mMimeType;
+    private static final String getSniffedMimeType(final FileSystemObject fso) {
+        String mimeType = MimeTypeSniffer.getInstance().getCachedMimeType(fso);
+        return mimeType != null ? mimeType : DEFAULT_MIME_TYPE;
+    }
+
+    private static final MimeTypeInfo getSniffedMimeTypeInfo(final FileSystemObject fso) {
+        String mimeType = MimeTypeSniffer.getInstance().getCachedMimeType(fso);
+        if (mimeType == null || sMimeTypeInfos == null) {
+            return null;
+        }
+        return sMimeTypeInfos.get(mimeType);
+    }
+
+    /**
+     * Method that returns if the mime/type of a file system object can't be resolved
+     * from its extension, so its content must be sniffed to detect it.
+     *
+     * @param context The current context
+     * @param fso The file system object
+     * @return boolean If the content of the file must be sniffed
+     * @see MimeTypeSniffer
+     */
+    static boolean needsContentSniffing(Context context, FileSystemObject fso) {
+        //Ensure that mime types are loaded
+        if (sExtensions == null) {
+            loadMimeTypes(context);
+        }
+
+        // Only the local regular files can be read
+        if (!(fso instanceof RegularFile) || fso.isSecure() || fso.isRemote()
+                || fso.getSize() == 0) {
+            return false;
+        }
+        String name = fso.getName();
+        int ext = FileHelper.getExtensionIndex(name);
+        if (ext == -1) {
+            return true;
+        }
+        MimeTypeInfo[] mimeTypeInfos = sExtensions.get(name, ext);
+        return mimeTypeInfos == null
+                || (mimeTypeInfos.length == 1 && DEFAULT_MIME_TYPE.equals(mimeTypeInfos[0].mMimeType));
     }
 
     /**
@@ -520,17 +635,17 @@ public final class MimeTypeHelper {
     public static final MimeTypeCategory getCategoryFromExt(Context context, String ext,
                                                             String absolutePath) {
         // Ensure that have a context
-        if (context == null && sMimeTypes == null) {
+        if (context == null && sExtensions == null) {
             // No category
             return MimeTypeCategory.NONE;
         }
         //Ensure that mime types are loaded
-        if (sMimeTypes == null) {
+        if (sExtensions == null) {
             loadMimeTypes(context);
         }
         if (ext != null) {
             //Load from the database of mime types
-            MimeTypeInfo mimeTypeInfo = getMimeTypeInternal(absolutePath, ext);
+            MimeTypeInfo mimeTypeInfo = getMimeTypeInternal(absolutePath, ext, 0, false);
             if (mimeTypeInfo != null) {
                 return mimeTypeInfo.mCategory;
             }
@@ -549,12 +664,12 @@ public final class MimeTypeHelper {
      */
     public static final MimeTypeCategory getCategory(Context context, File file) {
         // Ensure that have a context
-        if (context == null && sMimeTypes == null) {
+        if (context == null && sExtensions == null) {
             // No category
             return MimeTypeCategory.NONE;
         }
         //Ensure that mime types are loaded
-        if (sMimeTypes == null) {
+        if (sExtensions == null) {
             loadMimeTypes(context);
         }
 
@@ -578,12 +693,12 @@ public final class MimeTypeHelper {
      */
     public static final MimeTypeCategory getCategory(Context context, FileSystemObject fso) {
         // Ensure that have a context
-        if (context == null && sMimeTypes == null) {
+        if (context == null && sExtensions == null) {
             // No category
             return MimeTypeCategory.NONE;
         }
         //Ensure that mime types are loaded
-        if (sMimeTypes == null) {
+        if (sExtensions == null) {
             loadMimeTypes(context);
         }
 
@@ -596,8 +711,22 @@ public final class MimeTypeHelper {
         }
 
         //Get the extension and delivery
-        final MimeTypeCategory category = getCategoryFromExt(context,
-                FileHelper.getExtension(fso), fso.getFullPath());
+        MimeTypeCategory category = MimeTypeCategory.NONE;
+        String name = fso.getName();
+        int ext = FileHelper.getExtensionIndex(name);
+        if (ext != -1) {
+            MimeTypeInfo mimeTypeInfo = getMimeTypeInternal(fso.getFullPath(), name, ext, false);
+            if (mimeTypeInfo != null) {
+                category = mimeTypeInfo.mCategory;
+            }
+        }
+        if (category == MimeTypeCategory.NONE
+                || (category == MimeTypeCategory.BINARY && fso instanceof RegularFile)) {
+            MimeTypeInfo sniffed = getSniffedMimeTypeInfo(fso);
+            if (sniffed != null) {
+                category = sniffed.mCategory;
+            }
+        }
 
         // Check  system file
         if (category == MimeTypeCategory.NONE && fso instanceof SystemFile) {
@@ -640,7 +769,7 @@ public final class MimeTypeHelper {
             Context ctx, FileSystemObject fso, String mimeTypeExpression) {
         String mimeType = getMimeType(ctx, fso);
         if (mimeType == null) return false;
-        return mimeType.matches(convertToRegExp(mimeTypeExpression));
+        return matchesWildcard(mimeTypeExpression, mimeType);
     }
 
     /**
@@ -650,7 +779,7 @@ public final class MimeTypeHelper {
      */
     //IMP! This must be invoked from the main activity creation
     public static synchronized void loadMimeTypes(Context context) {
-        if (sMimeTypes == null) {
+        if (sExtensions == null) {
             try {
                 // Load the mime/type database
                 Properties mimeTypes = new Properties();
@@ -658,39 +787,48 @@ public final class MimeTypeHelper {
 
                 // Parse the properties to an in-memory structure
                 // Format:  <extension> = <category> | <mime type> | <drawable>
-                sMimeTypes = new HashMap<String, ArrayList<MimeTypeInfo>>();
-                sExtensionMimeTypes = new HashMap<String, MimeTypeInfo>();
+                Map<String, List<MimeTypeInfo>> extensions =
+                        new HashMap<String, List<MimeTypeInfo>>();
+                Set<String> knownMimeTypes = new LinkedHashSet<String>();
+                Map<String, MimeTypeInfo> mimeTypeInfos = new HashMap<String, MimeTypeInfo>();
                 Enumeration<Object> e = mimeTypes.keys();
                 while (e.hasMoreElements()) {
                     try {
-                        String extension = (String)e.nextElement();
-                        String data = mimeTypes.getProperty(extension);
+                        String key = (String)e.nextElement();
+                        String extension = key.toLowerCase(Locale.ROOT);
+                        String data = mimeTypes.getProperty(key);
                         String[] datas = data.split(",");
                         for (String theData : datas) {
                             String[] mimeData = theData.split("\\|");  //$NON-NLS-1$
 
-                            // Create a reference of MimeType
+                            // Create a reference of MimeType (the strings are shared by
+                            // all the extensions)
                             MimeTypeInfo mimeTypeInfo = new MimeTypeInfo();
                             mimeTypeInfo.mCategory = MimeTypeCategory.valueOf(mimeData[0].trim());
-                            mimeTypeInfo.mMimeType = mimeData[1].trim();
-                            mimeTypeInfo.mDrawable = mimeData[2].trim();
+                            mimeTypeInfo.mMimeType = mimeData[1].trim().intern();
+                            mimeTypeInfo.mDrawable = mimeData[2].trim().intern();
 
                             // If no list exists yet for this mimetype, create one.
                             // Else, add it to the existing list.
-                            if (sMimeTypes.get(extension) == null) {
-                                ArrayList<MimeTypeInfo> infoList = new ArrayList<MimeTypeInfo>();
-                                infoList.add(mimeTypeInfo);
-                                sMimeTypes.put(extension, infoList);
-                            } else {
-                                sMimeTypes.get(extension).add(mimeTypeInfo);
+                            List<MimeTypeInfo> infoList = extensions.get(extension);
+                            if (infoList == null) {
+                                infoList = new ArrayList<MimeTypeInfo>(1);
+                                extensions.put(extension, infoList);
+                            }
+                            infoList.add(mimeTypeInfo);
+                            knownMimeTypes.add(mimeTypeInfo.mMimeType);
+                            if (!mimeTypeInfos.containsKey(mimeTypeInfo.mMimeType)) {
+                                mimeTypeInfos.put(mimeTypeInfo.mMimeType, mimeTypeInfo);
                             }
-                            sExtensionMimeTypes.put(extension + mimeTypeInfo.mMimeType,
-                                                    mimeTypeInfo);
                         }
 
                     } catch (Exception e2) { /**NON BLOCK**/}
                 }
 
+                sKnownMimeTypes = knownMimeTypes.toArray(new String[knownMimeTypes.size()]);
+                sMimeTypeInfos = mimeTypeInfos;
+                sExtensions = new ExtensionTable(extensions);
+
             } catch (Exception e) {
                 Log.e(TAG, "Fail to load mime types raw file.", e); //$NON-NLS-1$
             }
@@ -698,13 +836,37 @@ public final class MimeTypeHelper {
     }
 
     /**
-     * Method that converts the mime-type expression to a regular expression
+     * Method that returns if a mime-type matches a mime-type expression. The only
+     * wildcard of the expressions is <code>*</code> (any sequence of characters).
      *
-     * @param mimeTypeExpression The mime-type expression
-     * @return String The regular expression
+     * @param mimeTypeExpression The mime-type expression (xe: *&#47;*, audio&#47;*)
+     * @param mimeType The mime-type
+     * @return boolean If the mime-type matches the expression
      */
-    private static String convertToRegExp(String mimeTypeExpression) {
-        return mimeTypeExpression.replaceAll("\\*", ".\\*"); //$NON-NLS-1$ //$NON-NLS-2$
+    static boolean matchesWildcard(String mimeTypeExpression, String mimeType) {
+        int e = 0, m = 0;
+        int star = -1, mark = 0;
+        final int elen = mimeTypeExpression.length();
+        final int mlen = mimeType.length();
+        while (m < mlen) {
+            if (e < elen && mimeTypeExpression.charAt(e) == '*') {
+                // Match the empty sequence first, and backtrack from here
+                star = e++;
+                mark = m;
+            } else if (e < elen && mimeTypeExpression.charAt(e) == mimeType.charAt(m)) {
+                e++;
+                m++;
+            } else if (star != -1) {
+                e = star + 1;
+                m = ++mark;
+            } else {
+                return false;
+            }
+        }
+        while (e < elen && mimeTypeExpression.charAt(e) == '*') {
+            e++;
+        }
+        return e == elen;
     }
 
 
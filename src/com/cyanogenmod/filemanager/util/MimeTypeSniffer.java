@@ -0,0 +1,361 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A class that detects the mime/type of a file from its content (its magic number).<br/>
+ * <br/>
+ * Only the files whose extension doesn't tell their mime/type (no extension, an unknown
+ * extension or a generic binary one) are sniffed. The header of the files (at most
+ * {@link #HEADER_SIZE} bytes) is read through a shared direct buffer and matched against
+ * a compiled table of signatures. The results are cached by path, size and modification
+ * time, and {@link MimeTypeHelper} reads them from the cache, so the directories are
+ * sniffed in bulk from a background thread and the list only reads the results.
+ */
+public final class MimeTypeSniffer {
+
+    private static final String TAG = "MimeTypeSniffer"; //$NON-NLS-1$
+
+    /**
+     * The max number of bytes read from every file.
+     */
+    public static final int HEADER_SIZE = 4096;
+
+    // The max number of files cached
+    private static final int MAX_CACHE = 4096;
+
+    /**
+     * A part of a signature: some bytes at an offset of the header.
+     */
+    private static class Magic {
+        final int mOffset;
+        final byte[] mBytes;
+
+        Magic(int offset, byte[] bytes) {
+            super();
+            this.mOffset = offset;
+            this.mBytes = bytes;
+        }
+
+        boolean matches(ByteBuffer header) {
+            int limit = header.limit();
+            if (this.mOffset + this.mBytes.length > limit) {
+                return false;
+            }
+            for (int i = 0; i < this.mBytes.length; i++) {
+                if (header.get(this.mOffset + i) != this.mBytes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A signature: all its magic bytes must match.
+     */
+    private static class Signature {
+        final Magic[] mMagics;
+        final String mMimeType;
+
+        Signature(String mimeType, Magic... magics) {
+            super();
+            this.mMagics = magics;
+            this.mMimeType = mimeType;
+        }
+
+        boolean matches(ByteBuffer header) {
+            for (Magic magic : this.mMagics) {
+                if (!magic.matches(header)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A cached result.
+     */
+    private static class Result {
+        final long mSize;
+        final long mModified;
+        final String mMimeType;
+
+        Result(long size, long modified, String mimeType) {
+            super();
+            this.mSize = size;
+            this.mModified = modified;
+            this.mMimeType = mimeType;
+        }
+    }
+
+    // The signatures, in order of precedence (the more specific first)
+    private static final Signature[] SIGNATURES = {
+        // Images
+        new Signature("image/jpeg", magic(0, 0xff, 0xd8, 0xff)), //$NON-NLS-1$
+        new Signature("image/png", //$NON-NLS-1$
+                magic(0, 0x89, 'P', 'N', 'G', 0x0d, 0x0a, 0x1a, 0x0a)),
+        new Signature("image/gif", magic(0, "GIF87a")), //$NON-NLS-1$ //$NON-NLS-2$
+        new Signature("image/gif", magic(0, "GIF89a")), //$NON-NLS-1$ //$NON-NLS-2$
+        new Signature("image/webp", magic(0, "RIFF"), magic(8, "WEBP")), //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        new Signature("image/tiff", magic(0, 'I', 'I', 0x2a, 0x00)), //$NON-NLS-1$
+        new Signature("image/tiff", magic(0, 'M', 'M', 0x00, 0x2a)), //$NON-NLS-1$
+        new Signature("image/vnd.adobe.photoshop", magic(0, "8BPS")), //$NON-NLS-1$ //$NON-NLS-2$
+        new Signature("image/bmp", magic(0, "BM"), magic(6, 0, 0, 0, 0)), //$NON-NLS-1$ //$NON-NLS-2$
+
+        // Audio and video
+        new Signature("audio/x-wav", magic(0, "RIFF"), magic(8, "WAVE")), //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        new Signature("video/x-msvideo", magic(0, "RIFF"), magic(8, "AVI ")), //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        new Signature("audio/mp4", magic(4, "ftypM4A")), //$NON-NLS-1$ //$NON-NLS-2$
+        new Signature("video/3gpp", magic(4, "ftyp3gp")), //$NON-NLS-1$ //$NON-NLS-2$
+        new Signature("video/3gpp2", magic(4, "ftyp3g2")), //$NON-NLS-1$ //$NON-NLS-2$
+        new Signature("video/quicktime", magic(4, "ftypqt")), //$NON-NLS-1$ //$NON-NLS-2$
+        new Signature("video/mp4", magic(4, "ftyp")), //$NON-NLS-1$ //$NON-NLS-2$
+        new Signature("video/x-matroska", magic(0, 0x1a, 0x45, 0xdf, 0xa3)), //$NON-NLS-1$
+        new Signature("video/x-flv", magic(0, "FLV"), magic(3, 0x01)), //$NON-NLS-1$ //$NON-NLS-2$
+        new Signature("audio/ogg", magic(0, "OggS")), //$NON-NLS-1$ //$NON-NLS-2$
+        new Signature("audio/flac", magic(0, "fLaC")), //$NON-NLS-1$ //$NON-NLS-2$
+        new Signature("audio/midi", magic(0, "MThd")), //$NON-NLS-1$ //$NON-NLS-2$
+        new Signature("audio/amr", magic(0, "#!AMR")), //$NON-NLS-1$ //$NON-NLS-2$
+        new Signature("audio/mpeg", magic(0, "ID3")), //$NON-NLS-1$ //$NON-NLS-2$
+        new Signature("audio/mpeg", magic(0, 0xff, 0xfb)), //$NON-NLS-1$
+        new Signature("audio/mpeg", magic(0, 0xff, 0xf3)), //$NON-NLS-1$
+
+        // Documents
+        new Signature("application/pdf", magic(0, "%PDF-")), //$NON-NLS-1$ //$NON-NLS-2$
+        new Signature("application/rtf", magic(0, "{\\rtf")), //$NON-NLS-1$ //$NON-NLS-2$
+
+        // Archives
+        new Signature("application/vnd.android.package-archive", //$NON-NLS-1$
+                magic(0, 'P', 'K', 0x03, 0x04), magic(30, "AndroidManifest.xml")), //$NON-NLS-1$
+        new Signature("application/zip", magic(0, 'P', 'K', 0x03, 0x04)), //$NON-NLS-1$
+        new Signature("application/x-gzip", magic(0, 0x1f, 0x8b)), //$NON-NLS-1$
+        new Signature("application/x-bzip2", magic(0, "BZh")), //$NON-NLS-1$ //$NON-NLS-2$
+        new Signature("application/x-xz", magic(0, 0xfd, '7', 'z', 'X', 'Z', 0x00)), //$NON-NLS-1$
+        new Signature("application/x-7z-compressed", //$NON-NLS-1$
+                magic(0, '7', 'z', 0xbc, 0xaf, 0x27, 0x1c)),
+        new Signature("application/x-rar-compressed", //$NON-NLS-1$
+                magic(0, 'R', 'a', 'r', '!', 0x1a, 0x07)),
+        new Signature("application/x-tar", magic(257, "ustar")), //$NON-NLS-1$ //$NON-NLS-2$
+    };
+
+    private static MimeTypeSniffer sInstance;
+
+    // The signatures that starts at the offset 0, indexed by their first byte
+    private final Signature[][] mSignaturesByFirstByte;
+    // The rest of the signatures
+    private final Signature[] mOtherSignatures;
+
+    private final ByteBuffer mHeader;
+    private final Map<String, Result> mCache;
+
+    /**
+     * Constructor of <code>MimeTypeSniffer</code>.
+     */
+    private MimeTypeSniffer() {
+        super();
+
+        // Compile the signatures
+        List<List<Signature>> byFirstByte = new ArrayList<List<Signature>>(256);
+        for (int i = 0; i < 256; i++) {
+            byFirstByte.add(new ArrayList<Signature>());
+        }
+        List<Signature> others = new ArrayList<Signature>();
+        for (Signature signature : SIGNATURES) {
+            Magic first = signature.mMagics[0];
+            if (first.mOffset == 0) {
+                byFirstByte.get(first.mBytes[0] & 0xff).add(signature);
+            } else {
+                others.add(signature);
+            }
+        }
+        this.mSignaturesByFirstByte = new Signature[256][];
+        for (int i = 0; i < 256; i++) {
+            List<Signature> signatures = byFirstByte.get(i);
+            this.mSignaturesByFirstByte[i] = signatures.toArray(new Signature[signatures.size()]);
+        }
+        this.mOtherSignatures = others.toArray(new Signature[others.size()]);
+
+        this.mHeader = ByteBuffer.allocateDirect(HEADER_SIZE);
+        this.mCache = new LinkedHashMap<String, Result>(MAX_CACHE, .75F, true) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Result> eldest) {
+                return size() > MAX_CACHE;
+            }
+        };
+    }
+
+    /**
+     * Method that returns the sniffer of the application.
+     *
+     * @return MimeTypeSniffer The sniffer
+     */
+    public static synchronized MimeTypeSniffer getInstance() {
+        if (sInstance == null) {
+            sInstance = new MimeTypeSniffer();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Method that returns the cached mime/type of a file. This method doesn't read the
+     * file, so it can be called from the main thread.
+     *
+     * @param fso The file system object
+     * @return String The mime/type, or <code>null</code> if the file wasn't sniffed, or
+     * its content is unknown
+     */
+    public String getCachedMimeType(FileSystemObject fso) {
+        Result result;
+        synchronized (this.mCache) {
+            result = this.mCache.get(fso.getFullPath());
+        }
+        if (result == null || result.mSize != fso.getSize()
+                || result.mModified != getModified(fso)) {
+            return null;
+        }
+        return result.mMimeType;
+    }
+
+    /**
+     * Method that sniffs the files of a directory whose extension doesn't tell their
+     * mime/type. This method reads the files, so it must be called from a background
+     * thread.
+     *
+     * @param context The current context
+     * @param files The files of the directory
+     * @return int The number of files whose mime/type was detected
+     */
+    public int sniff(Context context, List<FileSystemObject> files) {
+        int detected = 0;
+        for (FileSystemObject fso : files) {
+            if (!MimeTypeHelper.needsContentSniffing(context, fso)) {
+                continue;
+            }
+            String path = fso.getFullPath();
+            long size = fso.getSize();
+            long modified = getModified(fso);
+            synchronized (this.mCache) {
+                Result result = this.mCache.get(path);
+                if (result != null && result.mSize == size && result.mModified == modified) {
+                    continue;
+                }
+            }
+
+            String mimeType = sniff(new File(path));
+            synchronized (this.mCache) {
+                this.mCache.put(path, new Result(size, modified, mimeType));
+            }
+            if (mimeType != null) {
+                detected++;
+            }
+        }
+        return detected;
+    }
+
+    /**
+     * Method that detects the mime/type of a file from its header.
+     *
+     * @param file The file
+     * @return String The mime/type, or <code>null</code> if the content is unknown or
+     * the file can't be read
+     */
+    public String sniff(File file) {
+        synchronized (this.mHeader) {
+            FileInputStream fis = null;
+            try {
+                fis = new FileInputStream(file);
+                FileChannel channel = fis.getChannel();
+                this.mHeader.clear();
+                while (this.mHeader.hasRemaining() && channel.read(this.mHeader) > 0) {
+                    // Fill the header
+                }
+                this.mHeader.flip();
+                return match(this.mHeader);
+            } catch (IOException ex) {
+                Log.v(TAG, "Can't read the header of " + file); //$NON-NLS-1$
+                return null;
+            } finally {
+                try {
+                    if (fis != null) {
+                        fis.close();
+                    }
+                } catch (Exception e) {/**NON BLOCK**/}
+            }
+        }
+    }
+
+    /**
+     * Method that clears the cache.
+     */
+    public void clear() {
+        synchronized (this.mCache) {
+            this.mCache.clear();
+        }
+    }
+
+    private String match(ByteBuffer header) {
+        if (header.limit() == 0) {
+            return null;
+        }
+        for (Signature signature : this.mSignaturesByFirstByte[header.get(0) & 0xff]) {
+            if (signature.matches(header)) {
+                return signature.mMimeType;
+            }
+        }
+        for (Signature signature : this.mOtherSignatures) {
+            if (signature.matches(header)) {
+                return signature.mMimeType;
+            }
+        }
+        return null;
+    }
+
+    private static long getModified(FileSystemObject fso) {
+        return fso.getLastModifiedTime() != null ? fso.getLastModifiedTime().getTime() : 0;
+    }
+
+    private static Magic magic(int offset, String bytes) {
+        return new Magic(offset, bytes.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static Magic magic(int offset, int... bytes) {
+        byte[] data = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            data[i] = (byte)bytes[i];
+        }
+        return new Magic(offset, data);
+    }
+}
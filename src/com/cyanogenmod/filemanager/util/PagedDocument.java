@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.util.LruCache;
+
+import org.mozilla.universalchardet.UniversalDetector;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+/**
+ * A read-only text document that is read in pages, so files of any size can be displayed
+ * with a bounded heap.<br/>
+ * <br/>
+ * The document is split in pages of {@link #PAGE_SIZE} bytes, moved forward to the next
+ * line start, so the number of pages is known without reading the file. The pages are
+ * read on demand through a seekable channel, and only the last used pages are kept
+ * decoded in memory.
+ */
+public class PagedDocument implements Closeable {
+
+    /**
+     * The size of a page (in bytes).
+     */
+    public static final int PAGE_SIZE = 32 * 1024;
+
+    // The max number of decoded pages in memory
+    private static final int MAX_CACHED_PAGES = 16;
+
+    // The bytes read to detect the charset and the binary files
+    private static final int SAMPLE_SIZE = 64 * 1024;
+
+    private final File mFile;
+    private final RandomAccessFile mRaf;
+    private final FileChannel mChannel;
+    private final long mSize;
+    private final int mPageCount;
+    private final Charset mCharset;
+    private final boolean mBinary;
+
+    private final ByteBuffer mBuffer;
+    private final LruCache<Integer, String> mPages;
+
+    /**
+     * Constructor of <code>PagedDocument</code>. Opens the file and detects its charset.
+     *
+     * @param file The file to read
+     * @throws IOException If the file can't be read
+     */
+    public PagedDocument(File file) throws IOException {
+        super();
+        this.mFile = file;
+        this.mRaf = new RandomAccessFile(file, "r"); //$NON-NLS-1$
+        this.mChannel = this.mRaf.getChannel();
+        this.mSize = this.mChannel.size();
+        this.mPageCount = (int)Math.max(1, (this.mSize + PAGE_SIZE - 1) / PAGE_SIZE);
+
+        // A page and the lookahead to the next line start
+        this.mBuffer = ByteBuffer.allocate(PAGE_SIZE * 2 + 1);
+        this.mPages = new LruCache<Integer, String>(MAX_CACHED_PAGES);
+
+        // Detect the charset from a sample of the file
+        byte[] sample = read(0, (int)Math.min(SAMPLE_SIZE, this.mSize));
+        this.mBinary = StringHelper.isBinaryData(sample);
+        UniversalDetector detector = new UniversalDetector(null);
+        detector.handleData(sample, 0, sample.length);
+        detector.dataEnd();
+        this.mCharset = getCharset(detector.getDetectedCharset());
+    }
+
+    /**
+     * Method that returns the file of the document.
+     *
+     * @return File The file
+     */
+    public File getFile() {
+        return this.mFile;
+    }
+
+    /**
+     * Method that returns if the document can be paged. The binary files and the charsets
+     * that don't encode the new lines as a single byte (UTF-16, UTF-32) can't be split
+     * in lines without decoding all the file.
+     *
+     * @return boolean If the document can be paged
+     */
+    public boolean isPageable() {
+        if (this.mBinary) {
+            return false;
+        }
+        String name = this.mCharset.name().toUpperCase(Locale.ROOT);
+        return !name.startsWith("UTF-16") && !name.startsWith("UTF-32"); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * Method that returns the charset of the document.
+     *
+     * @return Charset The charset
+     */
+    public Charset getCharset() {
+        return this.mCharset;
+    }
+
+    /**
+     * Method that returns the number of pages of the document.
+     *
+     * @return int The number of pages
+     */
+    public int getPageCount() {
+        return this.mPageCount;
+    }
+
+    /**
+     * Method that returns a page if it's decoded in memory. Doesn't read the file.
+     *
+     * @param page The page
+     * @return String The text of the page, or null if the page must be read
+     */
+    public String getCachedPage(int page) {
+        return this.mPages.get(Integer.valueOf(page));
+    }
+
+    /**
+     * Method that returns the text of a page, reading it if isn't in memory.
+     *
+     * @param page The page
+     * @return String The text of the page. Empty if a line started in a previous page
+     * spans this whole page
+     * @throws IOException If the file can't be read
+     */
+    public String getPage(int page) throws IOException {
+        String text = getCachedPage(page);
+        if (text != null) {
+            return text;
+        }
+        synchronized (this.mBuffer) {
+            // Read the byte before the page (to know if the page starts a line), the
+            // page, and the lookahead of the next page
+            long offset = (long)page * PAGE_SIZE;
+            long from = Math.max(0, offset - 1);
+            int len = (int)Math.min(this.mBuffer.capacity(), this.mSize - from);
+            this.mBuffer.clear();
+            this.mBuffer.limit(Math.max(0, len));
+            while (this.mBuffer.hasRemaining()) {
+                if (this.mChannel.read(this.mBuffer, from + this.mBuffer.position()) < 0) {
+                    break;
+                }
+            }
+            len = this.mBuffer.position();
+
+            byte[] data = this.mBuffer.array();
+            int pageStart = (int)(offset - from);
+            int start = offset == 0 ? 0 : nextLineStart(data, pageStart, len);
+            int end = nextLineStart(data, pageStart + PAGE_SIZE, len);
+            text = start >= end ? "" : new String(data, start, end - start, this.mCharset); //$NON-NLS-1$
+        }
+        this.mPages.put(Integer.valueOf(page), text);
+        return text;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        this.mPages.evictAll();
+        this.mRaf.close();
+    }
+
+    // Returns the first line start at or after pos (pos starts a line if the previous byte
+    // is a new line). The lookahead is one page, so the end of a page and the start of the
+    // next one are the same. If there is no line start in the lookahead, moves to the
+    // next char
+    private static int nextLineStart(byte[] data, int pos, int len) {
+        if (pos >= len) {
+            return len;
+        }
+        final int max = Math.min(len, pos + PAGE_SIZE);
+        for (int i = pos; i < max; i++) {
+            if (data[i - 1] == '\n') {
+                return i;
+            }
+        }
+        // A very long line. Don't split an UTF-8 sequence
+        int i = pos;
+        while (i < max && (data[i] & 0xc0) == 0x80) {
+            i++;
+        }
+        return i;
+    }
+
+    private byte[] read(long offset, int len) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(len);
+        while (buffer.hasRemaining()) {
+            if (this.mChannel.read(buffer, offset + buffer.position()) < 0) {
+                break;
+            }
+        }
+        byte[] data = new byte[buffer.position()];
+        System.arraycopy(buffer.array(), 0, data, 0, data.length);
+        return data;
+    }
+
+    private static Charset getCharset(String name) {
+        try {
+            if (name != null) {
+                return Charset.forName(name);
+            }
+        } catch (Exception e) {/**NON BLOCK**/}
+        return Charset.defaultCharset();
+    }
+}
@@ -35,8 +35,12 @@ import com.cyanogenmod.filemanager.model.User;
 import com.cyanogenmod.filemanager.model.UserPermission;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 
 /**
  * A helper class with useful methods for deal with parse of results.
@@ -64,6 +68,9 @@ public final class ParseHelper {
     }
     private static int TERSE_STAT_STRUCT_LENGTH = TERSE_STAT_STRUCT.values().length;
 
+    // The number of numeric fields of a bulk stat line (before the filename)
+    private static final int BULK_STAT_FIELDS = 7;
+
     // The structure of raw mode in hex format (defined with octal values)
     // http://unix.stackexchange.com/questions/39716/what-is-raw-mode-in-hex-from-stat-output
     private static enum RMIHF {
@@ -180,24 +187,7 @@ public final class ParseHelper {
 
             // Check if its a symlink
             if (type == Symlink.UNIX_ID) {
-                // Extract the ref info
-                Symlink symlink = (Symlink)fso;
-                File refFile = file.getCanonicalFile();
-                char refType = refFile.isDirectory() ? Directory.UNIX_ID : RegularFile.UNIX_ID;
-                String refName = refFile.getName();
-                String refParentDir = FileHelper.getParentDir(refFile);
-                Date refLastModifiedTime = new Date(refFile.lastModified());
-                long refSize = refFile.length();
-
-                // Create the ref file system object
-                FileSystemObject refFso =
-                        createObject(
-                            refParentDir, refType, refName, null, null, null, null,
-                            refSize, null, refLastModifiedTime, null);
-
-                // Update the symlink ref
-                symlink.setLink(refParentDir);
-                symlink.setLinkRef(refFso);
+                resolveSymlink((Symlink)fso, file);
             }
 
             // Parsed
@@ -209,6 +199,215 @@ public final class ParseHelper {
         }
     }
 
+    /**
+     * Method that parses the output of a bulk stat listing.<br/>
+     * <br/>
+     * The output has two parts. The first part is the list of the paths of the files,
+     * every one ended with a NUL byte, and ended with an empty path. The second part is
+     * a stat line for every file, described as:<br/>
+     * <br/>
+     * <code/>
+     *  bulk format = "%f %s %u %g %X %Y %Z %n":
+     *      Raw_mode(HEX)
+     *      size(bytes)
+     *      Uid
+     *      Gid
+     *      Access(Epoch seconds)
+     *      Modify(Epoch seconds)
+     *      Change(Epoch seconds)
+     *      filename
+     * </code>
+     * <br/>
+     * The output is parsed at byte level, without split it in strings. The names are
+     * matched against the NUL delimited list, so names with spaces or new lines are
+     * parsed right. The files whose stat failed are ignored. The owner and the
+     * permissions are loaded on demand (see {@link LazyAttributesLoader}). The link
+     * targets are resolved in the calling thread.
+     *
+     * @param output The raw output of the bulk stat listing
+     * @return List<FileSystemObject> The file system objects
+     * @throws ParseException If the output can't be parsed
+     */
+    public static List<FileSystemObject> parseBulkStatOutput(final byte[] output)
+            throws ParseException {
+        final int length = output.length;
+        if (length == 0) {
+            // Nothing was listed
+            return new ArrayList<FileSystemObject>();
+        }
+
+        // The NUL delimited paths
+        int[] starts = new int[64];
+        int[] ends = new int[64];
+        int count = 0;
+        int pos = 0;
+        while (true) {
+            int end = indexOf(output, (byte)0, pos, length);
+            if (end == -1) {
+                throw new ParseException("Unterminated path list", pos); //$NON-NLS-1$
+            }
+            if (end == pos) {
+                pos++;
+                break;
+            }
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            starts[count] = pos;
+            ends[count] = end;
+            count++;
+            pos = end + 1;
+        }
+
+        // The stat lines
+        List<FileSystemObject> files = new ArrayList<FileSystemObject>(count);
+        LazyAttributesLoader loader = new LazyAttributesLoader(count);
+        long[] fields = new long[BULK_STAT_FIELDS];
+        String parentDir = null;
+        int parentStart = -1;
+        int parentLength = -1;
+        int next = 0;
+        while (pos < length && next < count) {
+            int p = parseBulkStatFields(output, pos, length, fields);
+
+            // The name must be one of the listed paths, followed by a new line
+            int match = -1;
+            if (p != -1) {
+                for (int i = next; i < count; i++) {
+                    int len = ends[i] - starts[i];
+                    if (p + len < length && output[p + len] == '\n'
+                            && regionMatches(output, p, starts[i], len)) {
+                        match = i;
+                        break;
+                    }
+                }
+            }
+            if (match == -1) {
+                // Not a stat line. Ignore it
+                int nl = indexOf(output, (byte)'\n', pos, length);
+                if (nl == -1) {
+                    break;
+                }
+                pos = nl + 1;
+                continue;
+            }
+            final int start = starts[match];
+            final int end = ends[match];
+            pos = p + (end - start) + 1;
+            next = match + 1;
+
+            try {
+                // Name and parent directory. All the files are in the same directory
+                int slash = end - 1;
+                while (slash >= start && output[slash] != '/') {
+                    slash--;
+                }
+                String name = new String(
+                        output, slash + 1, end - slash - 1, StandardCharsets.UTF_8);
+                if (parentDir == null || slash - start != parentLength
+                        || !regionMatches(output, start, parentStart, parentLength)) {
+                    parentStart = start;
+                    parentLength = slash - start;
+                    parentDir = slash <= start ?
+                            FileHelper.ROOT_DIRECTORY :
+                            new String(output, start, slash - start, StandardCharsets.UTF_8);
+                }
+
+                // The owner and the permissions are loaded on demand
+                FileSystemObject fso =
+                        createObject(
+                            parentDir, toUnixType((int)fields[0]), name, null, null, null,
+                            null, fields[1], new Date(fields[4] * 1000L),
+                            new Date(fields[5] * 1000L), new Date(fields[6] * 1000L));
+                loader.add(fso, (int)fields[0], (int)fields[2], (int)fields[3]);
+                files.add(fso);
+            } catch (Exception ex) {
+                // Ignore the file
+            }
+        }
+
+        // Resolve the link targets here, not in the UI thread
+        loader.resolveLinks();
+        return files;
+    }
+
+    // Parses the numeric fields of a bulk stat line. Returns the position of the name,
+    // or -1 if the line isn't well-formed
+    private static int parseBulkStatFields(byte[] data, int pos, int length, long[] fields) {
+        int p = pos;
+        for (int i = 0; i < fields.length; i++) {
+            final int radix = i == 0 ? 16 : 10;
+            boolean negative = p < length && data[p] == '-';
+            if (negative) {
+                p++;
+            }
+            long value = 0;
+            int digits = 0;
+            while (p < length) {
+                int digit = Character.digit(data[p], radix);
+                if (digit < 0) {
+                    break;
+                }
+                value = value * radix + digit;
+                digits++;
+                p++;
+            }
+            if (digits == 0 || p >= length || data[p] != ' ') {
+                return -1;
+            }
+            fields[i] = negative ? -value : value;
+            p++;
+        }
+        return p;
+    }
+
+    private static int indexOf(byte[] data, byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (data[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean regionMatches(byte[] data, int offset1, int offset2, int len) {
+        for (int i = 0; i < len; i++) {
+            if (data[offset1 + i] != data[offset2 + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Method that fills the reference of a symlink, with the information of the
+     * real file.
+     *
+     * @param symlink The symlink
+     * @param file The file of the symlink
+     * @throws Exception If the reference can't be created
+     */
+    /**package**/ static void resolveSymlink(Symlink symlink, File file) throws Exception {
+        // Extract the ref info
+        File refFile = file.getCanonicalFile();
+        char refType = refFile.isDirectory() ? Directory.UNIX_ID : RegularFile.UNIX_ID;
+        String refName = refFile.getName();
+        String refParentDir = FileHelper.getParentDir(refFile);
+        Date refLastModifiedTime = new Date(refFile.lastModified());
+        long refSize = refFile.length();
+
+        // Create the ref file system object
+        FileSystemObject refFso =
+                createObject(
+                    refParentDir, refType, refName, null, null, null, null,
+                    refSize, null, refLastModifiedTime, null);
+
+        // Update the symlink ref
+        symlink.setLink(refParentDir);
+        symlink.setLinkRef(refFso);
+    }
+
     /**
      * Method that parses and extracts the permissions from a unix string format.
      *
@@ -494,8 +693,16 @@ public final class ParseHelper {
         int cc = stat.length;
         int rawInt = Integer.parseInt(
                 stat[cc - (TERSE_STAT_STRUCT_LENGTH - TERSE_STAT_STRUCT.RAW_MODE.ordinal())],16);
+        return toRawPermissions(rawInt);
+    }
 
-        // Extract the type
+    /**
+     * Method that returns the unix type identifier of a raw mode.
+     *
+     * @param rawInt The raw mode
+     * @return char The unix type identifier
+     */
+    /**package**/ static char toUnixType(int rawInt) {
         char t = RegularFile.UNIX_ID;
         if (RMIHF.S_IFSOCK.mValue == (rawInt & RMIHF.S_IFSOCK.mValue)) {
             t = DomainSocket.UNIX_ID;
@@ -512,6 +719,18 @@ public final class ParseHelper {
         } else if (RMIHF.S_IFIFO.mValue == (rawInt & RMIHF.S_IFIFO.mValue)) {
             t = NamedPipe.UNIX_ID;
         }
+        return t;
+    }
+
+    /**
+     * Method that converts a raw mode to the unix string format of the permissions.
+     *
+     * @param rawInt The raw mode
+     * @return String The raw permissions
+     */
+    /**package**/ static String toRawPermissions(int rawInt) {
+        // Extract the type
+        char t = toUnixType(rawInt);
 
         // Extract User/Group/Others
         boolean us = RMIHF.S_ISUID.mValue == (rawInt & RMIHF.S_ISUID.mValue);
@@ -0,0 +1,385 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import com.cyanogenmod.filemanager.model.DirectorySnapshot;
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+import com.cyanogenmod.filemanager.model.ParentDirectory;
+import com.cyanogenmod.filemanager.preferences.NavigationSortMode;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The precomputed sort keys of a list of file system objects.<br/>
+ * <br/>
+ * The keys are computed once per object (and not per comparison): the kind of the object,
+ * its size and modification time when the keys are created, and the name (case folded
+ * for case insensitive sorts) and the mime/type category the first time that a sort
+ * needs them. The keys are kept with the sorted {@link DirectorySnapshot}, so it can be
+ * sorted again in other mode without recomputing them.
+ */
+public class SortKeys {
+
+    /**
+     * The minimum number of objects that are sorted in parallel.
+     */
+    public static final int PARALLEL_THRESHOLD = 20000;
+
+    // The kinds of objects (in the order of the directories first sort)
+    private static final byte KIND_PARENT = 0;
+    private static final byte KIND_DIRECTORY = 1;
+    private static final byte KIND_FILE = 2;
+
+    private final int mCount;
+    private final byte[] mKinds;
+    private final long[] mSizes;
+    private final long[] mTimes;
+    private String[] mNames;
+    private boolean mFoldedNames;
+    private int[] mCategories;
+
+    /**
+     * Constructor of <code>SortKeys</code>.
+     *
+     * @param files The file system objects
+     */
+    public SortKeys(List<FileSystemObject> files) {
+        this(files.size());
+        for (int i = 0; i < this.mCount; i++) {
+            FileSystemObject fso = files.get(i);
+            if (fso instanceof ParentDirectory) {
+                this.mKinds[i] = KIND_PARENT;
+            } else {
+                this.mKinds[i] = FileHelper.isDirectory(fso) ? KIND_DIRECTORY : KIND_FILE;
+            }
+            this.mSizes[i] = fso.getSize();
+            Date modified = fso.getLastModifiedTime();
+            this.mTimes[i] = modified == null ? Long.MIN_VALUE : modified.getTime();
+        }
+    }
+
+    private SortKeys(int count) {
+        super();
+        this.mCount = count;
+        this.mKinds = new byte[count];
+        this.mSizes = new long[count];
+        this.mTimes = new long[count];
+    }
+
+    /**
+     * Method that returns the number of objects of the keys.
+     *
+     * @return int The number of objects
+     */
+    public int size() {
+        return this.mCount;
+    }
+
+    /**
+     * Method that returns the keys in other order.
+     *
+     * @param order The old position of every new position
+     * @return SortKeys The reordered keys
+     */
+    public synchronized SortKeys permute(int[] order) {
+        SortKeys keys = new SortKeys(this.mCount);
+        keys.mFoldedNames = this.mFoldedNames;
+        keys.mNames = this.mNames == null ? null : new String[this.mCount];
+        keys.mCategories = this.mCategories == null ? null : new int[this.mCount];
+        for (int i = 0; i < this.mCount; i++) {
+            int o = order[i];
+            keys.mKinds[i] = this.mKinds[o];
+            keys.mSizes[i] = this.mSizes[o];
+            keys.mTimes[i] = this.mTimes[o];
+            if (keys.mNames != null) {
+                keys.mNames[i] = this.mNames[o];
+            }
+            if (keys.mCategories != null) {
+                keys.mCategories[i] = this.mCategories[o];
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Method that sorts (stable) the positions of the file system objects.
+     *
+     * @param order The positions to sort
+     * @param files The file system objects of the keys (to compute the missing keys)
+     * @param mode The sort mode
+     * @param dirsFirst If the directories must be sorted first
+     * @param caseSensitive If the names must be sorted case sensitive
+     */
+    public void sort(int[] order, List<FileSystemObject> files,
+            NavigationSortMode mode, boolean dirsFirst, boolean caseSensitive) {
+        final int id = mode.getId();
+        if (id == NavigationSortMode.NAME_ASC.getId()
+                || id == NavigationSortMode.NAME_DESC.getId()) {
+            loadNames(files, caseSensitive);
+        } else if (id == NavigationSortMode.TYPE_ASC.getId()
+                || id == NavigationSortMode.TYPE_DESC.getId()) {
+            loadCategories(files);
+        }
+
+        final KeyComparator comparator = new KeyComparator(mode, dirsFirst);
+        final int count = Math.min(order.length, this.mCount);
+        final int processors = Runtime.getRuntime().availableProcessors();
+        if (count < PARALLEL_THRESHOLD || processors <= 1) {
+            int[] aux = order.clone();
+            mergeSort(aux, order, 0, count, comparator);
+            return;
+        }
+
+        // Sort every chunk in its own thread, and then merge them
+        final int chunks = Math.min(processors, 4);
+        final int[] aux = order.clone();
+        final int[] bounds = new int[chunks + 1];
+        for (int i = 0; i <= chunks; i++) {
+            bounds[i] = (int)((long)count * i / chunks);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(chunks);
+        boolean interrupted = false;
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>(chunks);
+            for (int i = 0; i < chunks; i++) {
+                final int lo = bounds[i];
+                final int hi = bounds[i + 1];
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        mergeSort(aux, order, lo, hi, comparator);
+                        return null;
+                    }
+                }));
+            }
+            // The chunks are short cpu bound tasks. Wait for all of them, even if
+            // this thread is interrupted, so the positions are always consistent
+            for (Future<Void> future : futures) {
+                while (true) {
+                    try {
+                        future.get();
+                        break;
+                    } catch (InterruptedException ex) {
+                        interrupted = true;
+                    }
+                }
+            }
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)ex.getCause();
+            }
+            throw new RuntimeException(ex.getCause());
+        } finally {
+            executor.shutdown();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        int[] src = order;
+        int[] dst = aux;
+        for (int width = 1; width < chunks; width *= 2) {
+            for (int i = 0; i < chunks; i += width * 2) {
+                int lo = bounds[i];
+                int mid = bounds[Math.min(i + width, chunks)];
+                int hi = bounds[Math.min(i + width * 2, chunks)];
+                merge(src, dst, lo, mid, hi, comparator);
+            }
+            int[] tmp = src;
+            src = dst;
+            dst = tmp;
+        }
+        if (src != order) {
+            System.arraycopy(src, 0, order, 0, count);
+        }
+    }
+
+    /**
+     * Method that computes the names keys, if they aren't computed yet.
+     *
+     * @param files The file system objects of the keys
+     * @param caseSensitive If the names must be sorted case sensitive
+     */
+    private synchronized void loadNames(List<FileSystemObject> files, boolean caseSensitive) {
+        if (this.mNames != null && this.mFoldedNames == !caseSensitive) {
+            return;
+        }
+        DirectorySnapshot snapshot =
+                files instanceof DirectorySnapshot ? (DirectorySnapshot)files : null;
+        String[] names = new String[this.mCount];
+        for (int i = 0; i < this.mCount; i++) {
+            String name = snapshot != null ? snapshot.getName(i) : files.get(i).getName();
+            names[i] = caseSensitive ? name : foldCase(name);
+        }
+        this.mNames = names;
+        this.mFoldedNames = !caseSensitive;
+    }
+
+    /**
+     * Method that resolves the mime/type categories, if they aren't resolved yet.
+     *
+     * @param files The file system objects of the keys
+     */
+    private synchronized void loadCategories(List<FileSystemObject> files) {
+        if (this.mCategories != null) {
+            return;
+        }
+        int[] categories = new int[this.mCount];
+        for (int i = 0; i < this.mCount; i++) {
+            // Shouldn't need context here, mimetypes should be loaded
+            categories[i] = MimeTypeHelper.getCategory(null, files.get(i)).ordinal();
+        }
+        this.mCategories = categories;
+    }
+
+    /**
+     * Method that folds the case of a name, so the comparison of the folded names is
+     * the same that a {@link String#compareToIgnoreCase(String)} of the names.
+     *
+     * @param name The name
+     * @return String The folded name
+     */
+    /**package**/ static String foldCase(String name) {
+        if (name == null) {
+            return null;
+        }
+        final int len = name.length();
+        int i = 0;
+        while (i < len && fold(name.charAt(i)) == name.charAt(i)) {
+            i++;
+        }
+        if (i == len) {
+            return name;
+        }
+        char[] chars = name.toCharArray();
+        for (; i < len; i++) {
+            chars[i] = fold(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    private static char fold(char c) {
+        if (c < 0x80) {
+            return c >= 'A' && c <= 'Z' ? (char)(c + ('a' - 'A')) : c;
+        }
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    private static void mergeSort(int[] src, int[] dst, int lo, int hi, KeyComparator c) {
+        // Insertion sort for the small ranges
+        if (hi - lo < 16) {
+            for (int i = lo + 1; i < hi; i++) {
+                int index = dst[i];
+                int j = i;
+                while (j > lo && c.compare(dst[j - 1], index) > 0) {
+                    dst[j] = dst[j - 1];
+                    j--;
+                }
+                dst[j] = index;
+            }
+            return;
+        }
+
+        // Sort both halves in src and merge them in dst
+        int mid = (lo + hi) >>> 1;
+        mergeSort(dst, src, lo, mid, c);
+        mergeSort(dst, src, mid, hi, c);
+        if (c.compare(src[mid - 1], src[mid]) <= 0) {
+            System.arraycopy(src, lo, dst, lo, hi - lo);
+            return;
+        }
+        merge(src, dst, lo, mid, hi, c);
+    }
+
+    private static void merge(int[] src, int[] dst, int lo, int mid, int hi, KeyComparator c) {
+        for (int i = lo, p = lo, q = mid; i < hi; i++) {
+            if (q >= hi || (p < mid && c.compare(src[p], src[q]) <= 0)) {
+                dst[i] = src[p++];
+            } else {
+                dst[i] = src[q++];
+            }
+        }
+    }
+
+    /**
+     * The comparator of the positions of the keys. It sorts as
+     * {@link FileHelper#createUserPreferencesComparator()}.
+     */
+    private class KeyComparator {
+        private final int mMode;
+        private final boolean mDirsFirst;
+
+        KeyComparator(NavigationSortMode mode, boolean dirsFirst) {
+            super();
+            this.mMode = mode.getId();
+            this.mDirsFirst = dirsFirst;
+        }
+
+        int compare(int lhs, int rhs) {
+            //Parent directory always goes first
+            final byte k1 = SortKeys.this.mKinds[lhs];
+            final byte k2 = SortKeys.this.mKinds[rhs];
+            if (k1 == KIND_PARENT || k2 == KIND_PARENT) {
+                return k1 == k2 ? 0 : (k1 == KIND_PARENT ? -1 : 1);
+            }
+
+            //Need to sort directory first?
+            if (this.mDirsFirst && k1 != k2) {
+                return k1 < k2 ? -1 : 1;
+            }
+
+            //Apply sort mode
+            if (this.mMode == NavigationSortMode.NAME_ASC.getId()) {
+                return compareNames(lhs, rhs);
+            }
+            if (this.mMode == NavigationSortMode.NAME_DESC.getId()) {
+                return -compareNames(lhs, rhs);
+            }
+            if (this.mMode == NavigationSortMode.DATE_ASC.getId()) {
+                return Long.compare(SortKeys.this.mTimes[lhs], SortKeys.this.mTimes[rhs]);
+            }
+            if (this.mMode == NavigationSortMode.DATE_DESC.getId()) {
+                return -Long.compare(SortKeys.this.mTimes[lhs], SortKeys.this.mTimes[rhs]);
+            }
+            if (this.mMode == NavigationSortMode.SIZE_ASC.getId()) {
+                return Long.compare(SortKeys.this.mSizes[lhs], SortKeys.this.mSizes[rhs]);
+            }
+            if (this.mMode == NavigationSortMode.SIZE_DESC.getId()) {
+                return -Long.compare(SortKeys.this.mSizes[lhs], SortKeys.this.mSizes[rhs]);
+            }
+            if (this.mMode == NavigationSortMode.TYPE_ASC.getId()) {
+                return Integer.compare(
+                        SortKeys.this.mCategories[lhs], SortKeys.this.mCategories[rhs]);
+            }
+            if (this.mMode == NavigationSortMode.TYPE_DESC.getId()) {
+                return -Integer.compare(
+                        SortKeys.this.mCategories[lhs], SortKeys.this.mCategories[rhs]);
+            }
+            return 0;
+        }
+
+        private int compareNames(int lhs, int rhs) {
+            return SortKeys.this.mNames[lhs].compareTo(SortKeys.this.mNames[rhs]);
+        }
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.android.internal.util.HexDump;
+import com.cyanogenmod.filemanager.R;
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A two-tier cache of the thumbnails of the files (images, videos and albums).<br/>
+ * <br/>
+ * The memory tier is bounded by the bytes of its bitmaps. The evicted bitmaps are not
+ * reused to decode the next thumbnails, because they could still be drawn by the views
+ * that obtained them. The disk tier holds the downscaled thumbnails
+ * (jpeg, or webp for the ones with transparency) and is bounded by its size on disk. The
+ * thumbnails are keyed by the path, the size and the modification time of the file, so
+ * the thumbnails of the changed files are never returned.
+ */
+public final class ThumbnailCache {
+
+    private static final String TAG = "ThumbnailCache"; //$NON-NLS-1$
+
+    private static final String CACHE_DIR = "thumbnails"; //$NON-NLS-1$
+
+    // The fraction of the memory class of the application used by the memory tier
+    private static final int MEMORY_FRACTION = 8;
+
+    // The quality of the thumbnails in the disk tier
+    private static final int COMPRESS_QUALITY = 80;
+
+    private static ThumbnailCache sInstance;
+
+    private final File mCacheDir;
+    private final long mMaxDiskSize;
+    private final LruCache<String, Bitmap> mMemoryCache;
+    private final Object mDiskSync = new Object();
+    private long mDiskSize = -1;
+
+    private final AtomicLong mMemoryHits;
+    private final AtomicLong mDiskHits;
+    private final AtomicLong mMisses;
+
+    /**
+     * Constructor of <code>ThumbnailCache</code>.
+     *
+     * @param context The current context
+     */
+    private ThumbnailCache(Context context) {
+        super();
+        this.mCacheDir = new File(context.getCacheDir(), CACHE_DIR);
+        this.mMaxDiskSize = context.getResources().getInteger(
+                R.integer.thumbnail_disk_cache_size) * 1024L;
+        this.mMemoryHits = new AtomicLong();
+        this.mDiskHits = new AtomicLong();
+        this.mMisses = new AtomicLong();
+
+        ActivityManager am = (ActivityManager)context.getSystemService(Context.ACTIVITY_SERVICE);
+        int maxMemory = am.getMemoryClass() * 1024 * 1024 / MEMORY_FRACTION;
+        this.mMemoryCache = new LruCache<String, Bitmap>(maxMemory) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+        };
+    }
+
+    /**
+     * Method that returns the thumbnail cache of the application.
+     *
+     * @param context The current context
+     * @return ThumbnailCache The thumbnail cache
+     */
+    public static synchronized ThumbnailCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ThumbnailCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Method that returns the key of the thumbnail of a file.
+     *
+     * @param fso The file system object
+     * @return String The key of the thumbnail
+     */
+    public static String getKey(FileSystemObject fso) {
+        long modified = fso.getLastModifiedTime() != null
+                ? fso.getLastModifiedTime().getTime() : 0;
+        return getKey(MediaHelper.normalizeMediaPath(fso.getFullPath()), fso.getSize(),
+                modified);
+    }
+
+    /**
+     * Method that returns the key of the thumbnail of a file.
+     *
+     * @param path The absolute path of the file
+     * @param size The size of the file
+     * @param modified The modification time of the file
+     * @return String The key of the thumbnail
+     */
+    public static String getKey(String path, long size, long modified) {
+        return path + '\0' + size + '\0' + modified;
+    }
+
+    /**
+     * Method that returns a thumbnail from the memory tier. This method is fast enough
+     * to be called from the main thread.
+     *
+     * @param key The key of the thumbnail
+     * @return Bitmap The thumbnail, or <code>null</code> if it isn't in memory
+     */
+    public Bitmap getFromMemory(String key) {
+        Bitmap bitmap = this.mMemoryCache.get(key);
+        if (bitmap != null) {
+            this.mMemoryHits.incrementAndGet();
+        }
+        return bitmap;
+    }
+
+    /**
+     * Method that returns a thumbnail from the memory or the disk tiers. A thumbnail
+     * read from the disk is moved to memory.
+     *
+     * @param key The key of the thumbnail
+     * @return Bitmap The thumbnail, or <code>null</code> if it isn't cached
+     */
+    public Bitmap get(String key) {
+        Bitmap bitmap = getFromMemory(key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+
+        File file = getCacheFile(key);
+        if (file.exists()) {
+            bitmap = decode(file);
+            if (bitmap != null) {
+                this.mDiskHits.incrementAndGet();
+                file.setLastModified(System.currentTimeMillis());
+                this.mMemoryCache.put(key, bitmap);
+                return bitmap;
+            }
+        }
+        this.mMisses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Method that adds a thumbnail to both tiers.
+     *
+     * @param key The key of the thumbnail
+     * @param bitmap The thumbnail
+     */
+    public void put(String key, Bitmap bitmap) {
+        this.mMemoryCache.put(key, bitmap);
+
+        File file = getCacheFile(key);
+        synchronized (this.mDiskSync) {
+            if (!this.mCacheDir.exists() && !this.mCacheDir.mkdirs()) {
+                Log.w(TAG, "Can't create the thumbnail cache directory"); //$NON-NLS-1$
+                return;
+            }
+            FileOutputStream fos = null;
+            try {
+                fos = new FileOutputStream(file);
+                bitmap.compress(bitmap.hasAlpha()
+                        ? Bitmap.CompressFormat.WEBP : Bitmap.CompressFormat.JPEG,
+                        COMPRESS_QUALITY, fos);
+            } catch (IOException ex) {
+                Log.w(TAG, "Can't write the thumbnail " + file, ex); //$NON-NLS-1$
+                file.delete();
+                return;
+            } finally {
+                try {
+                    if (fos != null) {
+                        fos.close();
+                    }
+                } catch (Exception e) {/**NON BLOCK**/}
+            }
+            if (this.mDiskSize >= 0) {
+                this.mDiskSize += file.length();
+            }
+            trimDisk();
+        }
+    }
+
+    /**
+     * Method that removes the thumbnails of a file from the memory tier (the disk tier
+     * is keyed by the size and the modification time, so it never returns the thumbnail
+     * of the changed file).
+     *
+     * @param path The absolute path of the file
+     */
+    public void remove(String path) {
+        String prefix = path + '\0';
+        for (String key : this.mMemoryCache.snapshot().keySet()) {
+            if (key.startsWith(prefix)) {
+                this.mMemoryCache.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Method that releases memory when requested by the system.
+     *
+     * @param level The trim level
+     * @see ComponentCallbacks2#onTrimMemory(int)
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            this.mMemoryCache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            this.mMemoryCache.trimToSize(this.mMemoryCache.maxSize() / 2);
+        }
+    }
+
+    /**
+     * Method that returns the rate of the requests answered by the memory tier.
+     *
+     * @return float The hit rate (0..1)
+     */
+    public float getMemoryHitRate() {
+        return getRate(this.mMemoryHits.get());
+    }
+
+    /**
+     * Method that returns the rate of the requests answered by the disk tier.
+     *
+     * @return float The hit rate (0..1)
+     */
+    public float getDiskHitRate() {
+        return getRate(this.mDiskHits.get());
+    }
+
+    private float getRate(long hits) {
+        long total = this.mMemoryHits.get() + this.mDiskHits.get() + this.mMisses.get();
+        return total == 0 ? 0 : (float)hits / total;
+    }
+
+    /**
+     * Method that clears both tiers.
+     */
+    public void clear() {
+        this.mMemoryCache.evictAll();
+        synchronized (this.mDiskSync) {
+            FileHelper.deleteFolder(this.mCacheDir);
+            this.mDiskSize = 0;
+        }
+        this.mMemoryHits.set(0);
+        this.mDiskHits.set(0);
+        this.mMisses.set(0);
+    }
+
+    private File getCacheFile(String key) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+            byte[] digest = md.digest(key.getBytes(StandardCharsets.UTF_8));
+            return new File(this.mCacheDir,
+                    HexDump.toHexString(digest).toLowerCase(Locale.ROOT));
+        } catch (NoSuchAlgorithmException ex) {
+            // SHA-1 is always available
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Method that decodes a thumbnail of the disk tier.
+     *
+     * @param file The thumbnail file
+     * @return Bitmap The thumbnail, or <code>null</code> if it can't be decoded
+     */
+    private static Bitmap decode(File file) {
+        return BitmapFactory.decodeFile(file.getAbsolutePath());
+    }
+
+    /**
+     * Method that removes the least recently used thumbnails of the disk tier, when it
+     * exceeds its size.
+     */
+    private void trimDisk() {
+        if (this.mDiskSize >= 0 && this.mDiskSize <= this.mMaxDiskSize) {
+            return;
+        }
+        File[] files = this.mCacheDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        if (size > this.mMaxDiskSize) {
+            // Leave some room, so the tier is not trimmed on every put
+            Arrays.sort(files, new Comparator<File>() {
+                @Override
+                public int compare(File lhs, File rhs) {
+                    return Long.compare(lhs.lastModified(), rhs.lastModified());
+                }
+            });
+            long target = this.mMaxDiskSize * 3 / 4;
+            for (int i = 0; i < files.length && size > target; i++) {
+                long length = files[i].length();
+                if (files[i].delete()) {
+                    size -= length;
+                }
+            }
+        }
+        this.mDiskSize = size;
+    }
+}
@@ -0,0 +1,377 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.ash;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.text.Editable;
+import android.text.Spannable;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.TextWatcher;
+import android.text.style.ForegroundColorSpan;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A class for testing the incremental syntax highlighter.
+ *
+ * @see IncrementalSyntaxHighlighter
+ */
+public class IncrementalSyntaxHighlighterTest extends android.test.AndroidTestCase {
+
+    private static final int PLAIN = 1;
+    private static final int COMMENT = 2;
+
+    private static final int LINES = 200;
+
+    /**
+     * A processor that isn't incremental.
+     */
+    private static class PlainProcessor extends SyntaxHighlightProcessor {
+        PlainProcessor() {
+            super(null);
+        }
+
+        @Override
+        protected boolean accept(File file) {
+            return true;
+        }
+
+        @Override
+        public void initialize() {/**NON BLOCK**/}
+
+        @Override
+        public void process(Spannable spanable) {/**NON BLOCK**/}
+
+        @Override
+        public void process(Spannable spanable, int start, int end) {/**NON BLOCK**/}
+
+        @Override
+        public void cancel() {/**NON BLOCK**/}
+    }
+
+    /**
+     * An incremental processor of block comments. The state is 1 inside a comment.
+     */
+    private static class CommentProcessor extends PlainProcessor {
+        final List<String> mTokenized = Collections.synchronizedList(new ArrayList<String>());
+
+        CommentProcessor() {
+            super();
+        }
+
+        @Override
+        public boolean isIncremental() {
+            return true;
+        }
+
+        @Override
+        public int tokenizeLine(CharSequence line, int start, int state, SpanBatch batch) {
+            String s = line.toString();
+            this.mTokenized.add(s);
+            boolean comment = state == 1 || s.contains("/*"); //$NON-NLS-1$
+            batch.add(comment ? COMMENT : PLAIN, start, start + s.length());
+            if (s.contains("*/")) { //$NON-NLS-1$
+                return 0;
+            }
+            return comment ? 1 : 0;
+        }
+    }
+
+    private HandlerThread mThread;
+    private Handler mHandler;
+    private CommentProcessor mProcessor;
+    IncrementalSyntaxHighlighter mHighlighter;
+    SpannableStringBuilder mText;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.mThread = new HandlerThread("highlighter-test"); //$NON-NLS-1$
+        this.mThread.start();
+        this.mHandler = new Handler(this.mThread.getLooper());
+        this.mProcessor = new CommentProcessor();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        if (this.mHighlighter != null) {
+            runOnHandler(new Runnable() {
+                @Override
+                public void run() {
+                    IncrementalSyntaxHighlighterTest.this.mHighlighter.stop();
+                }
+            });
+        }
+        this.mThread.quit();
+        super.tearDown();
+    }
+
+    /**
+     * Method that checks that a processor that isn't incremental is rejected, and
+     * that the default tokenization doesn't highlight.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testNotIncremental() throws Exception {
+        SyntaxHighlightProcessor processor = new PlainProcessor();
+        try {
+            new IncrementalSyntaxHighlighter(processor, this.mHandler);
+            fail("Not an incremental processor"); //$NON-NLS-1$
+        } catch (IllegalArgumentException ex) {
+            /**NON BLOCK**/
+        }
+
+        SpanBatch batch = new SpanBatch();
+        assertEquals(3, processor.tokenizeLine("/* a", 0, 3, batch)); //$NON-NLS-1$
+        assertEquals(0, batch.size());
+    }
+
+    /**
+     * Method that checks that the state of a line is passed to the next lines.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testStatePropagation() throws Exception {
+        setText("a\n/*\nb\n*/\nc", Integer.MAX_VALUE); //$NON-NLS-1$
+
+        assertEquals(5, this.mProcessor.mTokenized.size());
+        assertEquals(PLAIN, getColor(lineOf("a"))); //$NON-NLS-1$
+        assertEquals(COMMENT, getColor(lineOf("/*"))); //$NON-NLS-1$
+        assertEquals(COMMENT, getColor(lineOf("b"))); //$NON-NLS-1$
+        assertEquals(COMMENT, getColor(lineOf("*/"))); //$NON-NLS-1$
+        assertEquals(PLAIN, getColor(lineOf("c"))); //$NON-NLS-1$
+    }
+
+    /**
+     * Method that checks that the tokenization stops after an edit when the state
+     * of the next line doesn't change, and that a state change is painted when
+     * the lines are visible.
+     *
+     * @throws Exception If test failed
+     */
+    @MediumTest
+    public void testEarlyStop() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < LINES; i++) {
+            if (i > 0) {
+                sb.append('\n');
+            }
+            sb.append("line ").append(i); //$NON-NLS-1$
+        }
+        setText(sb.toString(), Integer.MAX_VALUE);
+        assertEquals(LINES, this.mProcessor.mTokenized.size());
+
+        // Only the first lines are visible. Edit a line in the middle
+        setViewport(0, 10);
+        this.mProcessor.mTokenized.clear();
+        insert(lineOf("line 100") + 8, "0"); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals(1, this.mProcessor.mTokenized.size());
+        assertEquals("line 1000", this.mProcessor.mTokenized.get(0)); //$NON-NLS-1$
+
+        // Open a comment. The next lines aren't visible, so they aren't tokenized
+        this.mProcessor.mTokenized.clear();
+        insert(lineOf("line 150"), "/*"); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals(1, this.mProcessor.mTokenized.size());
+        assertEquals(COMMENT, getColor(lineOf("/*line 150"))); //$NON-NLS-1$
+
+        // Show all the lines
+        this.mProcessor.mTokenized.clear();
+        setViewport(0, Integer.MAX_VALUE);
+        assertEquals(LINES - 151, this.mProcessor.mTokenized.size());
+        assertEquals(PLAIN, getColor(lineOf("line 149"))); //$NON-NLS-1$
+        assertEquals(COMMENT, getColor(lineOf("line 151"))); //$NON-NLS-1$
+        assertEquals(COMMENT, getColor(lineOf("line " + (LINES - 1)))); //$NON-NLS-1$
+    }
+
+    /**
+     * Method that checks that the line separators of a CRLF document are not
+     * passed to the processor nor highlighted.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testCrlf() throws Exception {
+        setText("a\r\n/*\r\nb\r\n*/\r\nc", Integer.MAX_VALUE); //$NON-NLS-1$
+
+        assertEquals(5, this.mProcessor.mTokenized.size());
+        for (String line : this.mProcessor.mTokenized) {
+            assertEquals(-1, line.indexOf('\r'));
+        }
+        assertEquals(COMMENT, getColor(lineOf("b"))); //$NON-NLS-1$
+        assertEquals(PLAIN, getColor(lineOf("c"))); //$NON-NLS-1$
+        final List<String> spanned = new ArrayList<String>();
+        runOnHandler(new Runnable() {
+            @Override
+            public void run() {
+                SpannableStringBuilder text = IncrementalSyntaxHighlighterTest.this.mText;
+                for (ForegroundColorSpan span
+                        : text.getSpans(0, text.length(), ForegroundColorSpan.class)) {
+                    spanned.add(text.subSequence(
+                            text.getSpanStart(span), text.getSpanEnd(span)).toString());
+                }
+            }
+        });
+        assertEquals(5, spanned.size());
+        for (String s : spanned) {
+            assertEquals(-1, s.indexOf('\r'));
+            assertEquals(-1, s.indexOf('\n'));
+        }
+    }
+
+    private void setText(final String text, final int viewportEnd) throws Exception {
+        runOnHandler(new Runnable() {
+            @Override
+            public void run() {
+                final IncrementalSyntaxHighlighter highlighter = new IncrementalSyntaxHighlighter(
+                        IncrementalSyntaxHighlighterTest.this.mProcessor,
+                        IncrementalSyntaxHighlighterTest.this.mHandler);
+                SpannableStringBuilder spanable = new SpannableStringBuilder(text);
+                spanable.setSpan(new TextWatcher() {
+                    @Override
+                    public void beforeTextChanged(
+                            CharSequence s, int start, int count, int after) {
+                        highlighter.beforeTextChanged(s, start, count);
+                    }
+
+                    @Override
+                    public void onTextChanged(CharSequence s, int start, int before, int count) {
+                        highlighter.onTextChanged(s, start, before, count);
+                    }
+
+                    @Override
+                    public void afterTextChanged(Editable s) {/**NON BLOCK**/}
+                }, 0, spanable.length(), Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+                highlighter.setViewport(0, viewportEnd);
+                highlighter.setText(spanable);
+                IncrementalSyntaxHighlighterTest.this.mHighlighter = highlighter;
+                IncrementalSyntaxHighlighterTest.this.mText = spanable;
+            }
+        });
+        waitForIdle();
+    }
+
+    private void setViewport(final int start, final int end) throws Exception {
+        runOnHandler(new Runnable() {
+            @Override
+            public void run() {
+                IncrementalSyntaxHighlighterTest.this.mHighlighter.setViewport(start, end);
+            }
+        });
+        waitForIdle();
+    }
+
+    private void insert(final int position, final String s) throws Exception {
+        runOnHandler(new Runnable() {
+            @Override
+            public void run() {
+                IncrementalSyntaxHighlighterTest.this.mText.insert(position, s);
+            }
+        });
+        waitForIdle();
+    }
+
+    /**
+     * Method that returns the start of the first line with the text (without the
+     * line separator).
+     */
+    private int lineOf(String line) {
+        final String text = this.mText.toString();
+        int pos = 0;
+        while (true) {
+            int nl = text.indexOf('\n', pos);
+            String s = text.substring(pos, nl == -1 ? text.length() : nl);
+            if (s.equals(line) || s.equals(line + '\r')) {
+                return pos;
+            }
+            assertTrue(line, nl != -1);
+            pos = nl + 1;
+        }
+    }
+
+    private int getColor(final int position) throws Exception {
+        final int[] color = new int[1];
+        runOnHandler(new Runnable() {
+            @Override
+            public void run() {
+                ForegroundColorSpan[] spans = IncrementalSyntaxHighlighterTest.this.mText.
+                        getSpans(position, position + 1, ForegroundColorSpan.class);
+                assertEquals(1, spans.length);
+                color[0] = spans[0].getForegroundColor();
+            }
+        });
+        return color[0];
+    }
+
+    /**
+     * Method that waits until the highlighter doesn't tokenize more lines.
+     */
+    private void waitForIdle() throws Exception {
+        int stable = 0;
+        int last = -1;
+        while (stable < 3) {
+            Thread.sleep(200L);
+            runOnHandler(new Runnable() {
+                @Override
+                public void run() {/**NON BLOCK**/}
+            });
+            int count = this.mProcessor.mTokenized.size();
+            stable = count == last ? stable + 1 : 0;
+            last = count;
+        }
+    }
+
+    private void runOnHandler(final Runnable r) throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Throwable[] error = new Throwable[1];
+        this.mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    r.run();
+                } catch (Throwable ex) {
+                    error[0] = ex;
+                } finally {
+                    latch.countDown();
+                }
+            }
+        });
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        if (error[0] instanceof Error) {
+            throw (Error)error[0];
+        }
+        if (error[0] != null) {
+            throw new Exception(error[0]);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.ash;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import android.text.SpannableString;
+import android.text.style.ForegroundColorSpan;
+
+/**
+ * A class for testing the batches of spans.
+ *
+ * @see SpanBatch
+ */
+public class SpanBatchTest extends android.test.AndroidTestCase {
+
+    private static final int SPANS = 100;
+
+    /**
+     * Method that checks that the empty spans are ignored, and that the batch grows.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testAdd() throws Exception {
+        SpanBatch batch = new SpanBatch();
+        batch.add(1, 5, 5);
+        assertEquals(0, batch.size());
+
+        for (int i = 0; i < SPANS; i++) {
+            batch.add(i, i, i + 1);
+        }
+        assertEquals(SPANS, batch.size());
+
+        SpannableString text = new SpannableString(new String(new char[SPANS]));
+        batch.apply(text);
+        ForegroundColorSpan[] spans = text.getSpans(0, SPANS, ForegroundColorSpan.class);
+        assertEquals(SPANS, spans.length);
+        for (ForegroundColorSpan span : spans) {
+            int start = text.getSpanStart(span);
+            assertEquals(start, span.getForegroundColor());
+            assertEquals(start + 1, text.getSpanEnd(span));
+        }
+
+        batch.clear();
+        assertEquals(0, batch.size());
+    }
+
+    /**
+     * Method that checks that a range of spans is applied with an offset.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testApplyRange() throws Exception {
+        SpanBatch batch = new SpanBatch();
+        batch.add(1, 0, 2);
+        batch.add(2, 2, 4);
+        batch.add(3, 4, 6);
+
+        SpannableString text = new SpannableString("0123456789"); //$NON-NLS-1$
+        batch.apply(text, 1, 3, 3);
+        ForegroundColorSpan[] spans = text.getSpans(0, text.length(), ForegroundColorSpan.class);
+        assertEquals(2, spans.length);
+        for (ForegroundColorSpan span : spans) {
+            int start = text.getSpanStart(span);
+            if (span.getForegroundColor() == 2) {
+                assertEquals(5, start);
+                assertEquals(7, text.getSpanEnd(span));
+            } else {
+                assertEquals(3, span.getForegroundColor());
+                assertEquals(7, start);
+                assertEquals(9, text.getSpanEnd(span));
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.shell;
+
+import android.os.Environment;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+import com.cyanogenmod.filemanager.util.CommandHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A class for testing the {@link BulkDeleteCommand} command.
+ *
+ * @see BulkDeleteCommand
+ */
+public class BulkDeleteCommandTest extends AbstractConsoleTest {
+
+    private static final String PATH_DELFILE_OK =
+            Environment.getDataDirectory().getAbsolutePath() + "/bulkdeltest.txt"; //$NON-NLS-1$
+    private static final String PATH_DELDIR_OK =
+            Environment.getDataDirectory().getAbsolutePath() + "/bulkdeltestfolder"; //$NON-NLS-1$
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isRootConsoleNeeded() {
+        return true;
+    }
+
+    /**
+     * Method that performs a test to delete a file and a directory at once.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testBulkDeleteOk() throws Exception {
+        CommandHelper.createFile(getContext(), PATH_DELFILE_OK, getConsole());
+        CommandHelper.createDirectory(getContext(), PATH_DELDIR_OK, getConsole());
+        CommandHelper.createFile(getContext(), PATH_DELDIR_OK + "/file.txt", getConsole()); //$NON-NLS-1$
+
+        List<FileSystemObject> files = new ArrayList<FileSystemObject>();
+        files.add(CommandHelper.getFileInfo(getContext(), PATH_DELFILE_OK, getConsole()));
+        files.add(CommandHelper.getFileInfo(getContext(), PATH_DELDIR_OK, getConsole()));
+        List<String> failed = CommandHelper.deleteFiles(getContext(), files, null, getConsole());
+        assertTrue("failed not empty", failed.isEmpty()); //$NON-NLS-1$
+    }
+}
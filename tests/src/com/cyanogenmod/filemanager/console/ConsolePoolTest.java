@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.console;
+
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.cyanogenmod.filemanager.commands.EchoExecutable;
+import com.cyanogenmod.filemanager.console.shell.ShellConsole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A class for testing the concurrent use of the pool of console sessions.
+ *
+ * @see ConsolePool
+ */
+public class ConsolePoolTest extends android.test.AndroidTestCase {
+
+    private static final int THREADS = 8;
+
+    private ShellConsole mPrimary;
+    private ConsolePool mPool;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.mPrimary = (ShellConsole)ConsoleBuilder.createNonPrivilegedConsole(getContext());
+        this.mPool = new ConsolePool(getContext(), this.mPrimary, 2, 0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            this.mPool.dispose();
+            this.mPrimary.dealloc();
+        } catch (Throwable ex) {
+            /**NON BLOCK**/
+        }
+        super.tearDown();
+    }
+
+    /**
+     * Method that checks that a free session can only be reserved by one of the
+     * concurrent callers.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testConcurrentReservation() throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger reserved = new AtomicInteger();
+        final AtomicReference<ShellConsole> session = new AtomicReference<ShellConsole>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < THREADS; i++) {
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    ShellConsole console =
+                            ConsolePoolTest.this.mPool.reserveFreeSession(0);
+                    if (console != null) {
+                        reserved.incrementAndGet();
+                        session.set(console);
+                    }
+                }
+            });
+            t.start();
+            threads.add(t);
+        }
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        // Only the primary console exists, and only one caller can reserve it
+        assertEquals(1, reserved.get());
+        assertSame(this.mPrimary, session.get());
+        assertNull(this.mPool.reserveFreeSession(0));
+        this.mPool.release(session.get());
+        assertSame(this.mPrimary, this.mPool.reserveFreeSession(0));
+        this.mPool.release(this.mPrimary);
+
+        // A spare session is required
+        assertNull(this.mPool.reserveFreeSession(1));
+    }
+
+    /**
+     * Method that checks that the programs executed concurrently release their sessions.
+     *
+     * @throws Exception If test failed
+     */
+    @MediumTest
+    public void testConcurrentExecution() throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger failures = new AtomicInteger();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < THREADS; i++) {
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        EchoExecutable echo = ConsolePoolTest.this.mPrimary.
+                                getExecutableFactory().newCreator().
+                                    createEchoExecutable("pool"); //$NON-NLS-1$
+                        ConsolePoolTest.this.mPool.execute(echo, getContext());
+                        if (!"pool".equals(echo.getResult().trim())) { //$NON-NLS-1$
+                            failures.incrementAndGet();
+                        }
+                    } catch (Exception ex) {
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+            t.start();
+            threads.add(t);
+        }
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        assertEquals(0, failures.get());
+        for (ConsolePool.SessionInfo info : this.mPool.getSessionsInfo()) {
+            assertEquals(0, info.getPendingExecutions());
+        }
+        ShellConsole session = this.mPool.reserveFreeSession(0);
+        assertNotNull(session);
+        this.mPool.release(session);
+    }
+}
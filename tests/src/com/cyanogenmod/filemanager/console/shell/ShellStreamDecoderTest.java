@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.console.shell;
+
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.R;
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+import com.cyanogenmod.filemanager.model.ParentDirectory;
+import com.cyanogenmod.filemanager.util.CommandHelper;
+import com.cyanogenmod.filemanager.util.FileHelper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A class for testing the stream decoder of the shell console.
+ *
+ * @see ShellStreamDecoder
+ */
+public class ShellStreamDecoderTest extends android.test.AndroidTestCase {
+
+    private static final String TAG = "ShellStreamDecoderTest"; //$NON-NLS-1$
+
+    private static final String START_ID1 = "/#1234567890#/"; //$NON-NLS-1$
+    private static final String START_ID2 = "/#-987654321#/"; //$NON-NLS-1$
+    private static final String END_ID1 = "/#5647382910#/"; //$NON-NLS-1$
+    private static final String END_ID2 = "/#-192837465#/"; //$NON-NLS-1$
+
+    private static final String STAT_LINE =
+            "/sdcard/DCIM/Camera/IMG_20170101_000000.jpg 2048123 4001 81b0 0 1028 " + //$NON-NLS-1$
+            "fd00 131078 1 0 0 1483228800 1483228800 1483228800 4096\n"; //$NON-NLS-1$
+
+    /**
+     * A listener that collects the decoded frames.
+     */
+    private static class CollectorListener implements ShellStreamDecoder.OnFrameListener {
+        final ByteArrayOutputStream mPayload = new ByteArrayOutputStream();
+        boolean mStarted;
+        int mExitCode = -1;
+
+        @Override
+        public void onFrameStart() {
+            this.mStarted = true;
+        }
+
+        @Override
+        public void onFramePayload(byte[] data, int offset, int count) {
+            this.mPayload.write(data, offset, count);
+        }
+
+        @Override
+        public void onFrameEnd(int exitCode) {
+            this.mExitCode = exitCode;
+        }
+    }
+
+    /**
+     * Method that performs a test over a frame received one byte at a time, with
+     * a payload that contains partial control patterns.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testDecodeByteByByte() throws Exception {
+        String payload = "a/#5647\n" + END_ID1 + "12/#-19\n/#/" + END_ID1.substring(0, 5); //$NON-NLS-1$ //$NON-NLS-2$
+        byte[] data = createFrame(payload, 2).getBytes();
+
+        ShellStreamDecoder decoder = new ShellStreamDecoder();
+        decoder.reset(START_ID1, START_ID2, END_ID1, END_ID2, true);
+        CollectorListener listener = new CollectorListener();
+        for (int i = 0; i < data.length && !decoder.isFinished(); i++) {
+            decoder.decode(data, i, 1, listener);
+        }
+        assertTrue("not started", listener.mStarted); //$NON-NLS-1$
+        assertTrue("not finished", decoder.isFinished()); //$NON-NLS-1$
+        assertEquals(2, listener.mExitCode);
+        assertEquals(payload, listener.mPayload.toString());
+    }
+
+    /**
+     * Method that performs a test over a frame received in a single block.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testDecodeBlock() throws Exception {
+        String payload = "line1\nline2\n"; //$NON-NLS-1$
+        byte[] data = createFrame(payload, 127).getBytes();
+
+        ShellStreamDecoder decoder = new ShellStreamDecoder();
+        decoder.reset(START_ID1, START_ID2, END_ID1, END_ID2, true);
+        CollectorListener listener = new CollectorListener();
+        decoder.decode(data, 0, data.length, listener);
+        assertTrue("not finished", decoder.isFinished()); //$NON-NLS-1$
+        assertEquals(127, listener.mExitCode);
+        assertEquals(payload, listener.mPayload.toString());
+    }
+
+    /**
+     * Method that measures the listing throughput of the decoder for 1k, 10k
+     * and 100k stat lines.
+     *
+     * @throws Exception If test failed
+     */
+    @LargeTest
+    public void testListingThroughput() throws Exception {
+        final int[] sizes = {1000, 10000, 100000};
+        final int readSize = 16384;
+        for (int lines : sizes) {
+            StringBuilder sb = new StringBuilder(lines * STAT_LINE.length());
+            for (int i = 0; i < lines; i++) {
+                sb.append(STAT_LINE);
+            }
+            byte[] data = createFrame(sb.toString(), 0).getBytes();
+
+            ShellStreamDecoder decoder = new ShellStreamDecoder();
+            decoder.reset(START_ID1, START_ID2, END_ID1, END_ID2, true);
+            CollectorListener listener = new CollectorListener();
+            long start = System.nanoTime();
+            for (int pos = 0; pos < data.length && !decoder.isFinished(); pos += readSize) {
+                decoder.decode(data, pos, Math.min(readSize, data.length - pos), listener);
+            }
+            long elapsed = Math.max(1L, System.nanoTime() - start);
+            assertTrue("not finished", decoder.isFinished()); //$NON-NLS-1$
+            assertEquals(sb.length(), listener.mPayload.size());
+
+            Log.i(TAG, String.format("%d stat lines: %d ms, %d lines/s", //$NON-NLS-1$
+                    Integer.valueOf(lines),
+                    Long.valueOf(elapsed / 1000000L),
+                    Long.valueOf(lines * 1000000000L / elapsed)));
+        }
+    }
+
+    /**
+     * Method that measures the listing of a directory with 2000 files by a console in
+     * stream decoder mode against a console in the legacy mode (byte by byte reads),
+     * and checks that both return the same files. The mode is changed after the
+     * allocation of each console, which must not affect the allocated console.
+     *
+     * @throws Exception If test failed
+     */
+    @LargeTest
+    public void testConsoleListingAgainstLegacy() throws Exception {
+        final int files = 2000;
+        File dir = new File(getContext().getCacheDir(), "decoder-test"); //$NON-NLS-1$
+        FileHelper.deleteFolder(dir);
+        assertTrue("mkdir failed", dir.mkdirs()); //$NON-NLS-1$
+        try {
+            for (int i = 0; i < files; i++) {
+                assertTrue(new File(dir, "file" + i + ".txt").createNewFile()); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+
+            long[] elapsed = new long[2];
+            List<List<String>> names = new ArrayList<List<String>>();
+            boolean[] modes = {false, true};
+            for (int i = 0; i < modes.length; i++) {
+                NonPriviledgeConsole console = new NonPriviledgeConsole();
+                console.setBufferSize(
+                        getContext().getResources().getInteger(R.integer.buffer_size));
+                console.setStreamDecoder(modes[i]);
+                console.alloc();
+                try {
+                    // Only used by the next allocation
+                    console.setStreamDecoder(!modes[i]);
+
+                    long start = System.nanoTime();
+                    List<FileSystemObject> list =
+                            CommandHelper.listFiles(getContext(), dir.getAbsolutePath(), console);
+                    elapsed[i] = Math.max(1L, System.nanoTime() - start);
+
+                    List<String> n = new ArrayList<String>(list.size());
+                    for (FileSystemObject fso : list) {
+                        if (!(fso instanceof ParentDirectory)) {
+                            n.add(fso.getName());
+                        }
+                    }
+                    Collections.sort(n);
+                    names.add(n);
+                } finally {
+                    console.dealloc();
+                }
+            }
+            assertEquals(files, names.get(0).size());
+            assertEquals(names.get(0), names.get(1));
+
+            Log.i(TAG, String.format("%d files: legacy %d ms, stream decoder %d ms", //$NON-NLS-1$
+                    Integer.valueOf(files),
+                    Long.valueOf(elapsed[0] / 1000000L),
+                    Long.valueOf(elapsed[1] / 1000000L)));
+        } finally {
+            FileHelper.deleteFolder(dir);
+        }
+    }
+
+    /**
+     * Method that creates a full frame like the one returned by the shell.
+     *
+     * @param payload The output of the command
+     * @param exitCode The exit code of the command
+     * @return String The frame
+     */
+    private static String createFrame(String payload, int exitCode) {
+        return "\n\n" + START_ID1 + "0" + START_ID2 + payload + //$NON-NLS-1$ //$NON-NLS-2$
+                END_ID1 + exitCode + END_ID2;
+    }
+}
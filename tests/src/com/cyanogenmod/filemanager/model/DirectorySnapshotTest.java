@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.model;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A class for testing the compact directory snapshots.
+ *
+ * @see DirectorySnapshot
+ */
+public class DirectorySnapshotTest extends android.test.AndroidTestCase {
+
+    private static final String PARENT = "/sdcard/test"; //$NON-NLS-1$
+
+    /**
+     * Method that checks that the objects built from the columns are equal to the
+     * stored ones.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testViews() throws Exception {
+        List<FileSystemObject> files = createFiles();
+        DirectorySnapshot snapshot = new DirectorySnapshot(files);
+        assertEquals(files.size(), snapshot.size());
+        assertTrue(snapshot.get(0) instanceof ParentDirectory);
+        for (int i = 1; i < files.size(); i++) {
+            FileSystemObject expected = files.get(i);
+            FileSystemObject fso = snapshot.get(i);
+            assertEquals(expected, fso);
+            assertEquals(expected.getClass(), fso.getClass());
+            assertEquals(expected.getSize(), fso.getSize());
+            assertEquals(expected.getLastModifiedTime(), fso.getLastModifiedTime());
+            assertEquals(expected.getPermissions().toOctalString(),
+                    fso.getPermissions().toOctalString());
+            assertEquals(expected.getUser().getId(), fso.getUser().getId());
+            assertEquals(expected.getGroup().getName(), fso.getGroup().getName());
+        }
+        assertSame(snapshot.get(3).getUser(), snapshot.get(4).getUser());
+    }
+
+    /**
+     * Method that checks the lookups and the modifications of a snapshot.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testModifications() throws Exception {
+        DirectorySnapshot snapshot = new DirectorySnapshot(createFiles());
+        int count = snapshot.size();
+        FileSystemObject fso = snapshot.get(2);
+        assertEquals(2, snapshot.indexOf(fso));
+        assertEquals(2, snapshot.indexOf(PARENT + "/b.txt")); //$NON-NLS-1$
+
+        assertTrue(snapshot.remove(fso));
+        assertFalse(snapshot.contains(fso));
+        assertEquals(count - 1, snapshot.size());
+
+        snapshot.add(1, fso);
+        assertEquals(1, snapshot.indexOf(fso));
+        assertEquals(fso.getName(), snapshot.get(1).getName());
+
+        DirectorySnapshot copy = new DirectorySnapshot(snapshot);
+        assertEquals(snapshot, copy);
+        copy.clear();
+        assertEquals(0, copy.size());
+        assertEquals(count, snapshot.size());
+    }
+
+    /**
+     * Method that checks that the changed attributes of an object are stored in the
+     * columns when the object of the row is replaced.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testReplaceRow() throws Exception {
+        DirectorySnapshot snapshot = new DirectorySnapshot(createFiles());
+        FileSystemObject fso = snapshot.get(2);
+        FileSystemObject changed = new RegularFile(fso.getName(), fso.getParent(),
+                new User(0, "root"), new Group(1015, "sdcard_rw"), //$NON-NLS-1$ //$NON-NLS-2$
+                Permissions.fromRawString("-rwx------"), fso.getSize(), //$NON-NLS-1$
+                fso.getLastAccessedTime(), fso.getLastModifiedTime(),
+                fso.getLastChangedTime());
+        snapshot.set(2, changed);
+
+        // Read the row from a copy of the columns, not from the cached views
+        FileSystemObject row = new DirectorySnapshot(snapshot).get(2);
+        assertEquals(changed, row);
+        assertEquals("0700", row.getPermissions().toOctalString()); //$NON-NLS-1$
+        assertEquals(0, row.getUser().getId());
+        assertEquals("sdcard_rw", row.getGroup().getName()); //$NON-NLS-1$
+    }
+
+    private static List<FileSystemObject> createFiles() {
+        User user = new User(1023, "media_rw"); //$NON-NLS-1$
+        Group group = new Group(1023, "media_rw"); //$NON-NLS-1$
+        Date date = new Date(1500000000000L);
+        List<FileSystemObject> files = new ArrayList<FileSystemObject>();
+        files.add(new ParentDirectory("/sdcard")); //$NON-NLS-1$
+        files.add(new Directory("Music", PARENT, user, group, //$NON-NLS-1$
+                Permissions.createDefaultFolderPermissions(), date, date, date));
+        files.add(new RegularFile("b.txt", PARENT, user, group, //$NON-NLS-1$
+                Permissions.createDefaultFilePermissions(), 10L, date, date, date));
+        files.add(new RegularFile("\u00e9t\u00e9.mp3", PARENT, user, group, //$NON-NLS-1$
+                Permissions.createDefaultFilePermissions(), 4096L, date, date, date));
+        files.add(new RegularFile("a file", PARENT, user, group, //$NON-NLS-1$
+                Permissions.createDefaultFilePermissions(), 0L, date, date, date));
+        return files;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.ui;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.SystemClock;
+import android.test.InstrumentationTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+import android.widget.ImageView;
+
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+import com.cyanogenmod.filemanager.util.FileHelper;
+import com.cyanogenmod.filemanager.util.ThumbnailCache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+/**
+ * A class for benchmarking the icon loader while fling-scrolling a list of pictures.
+ *
+ * @see IconHolder
+ */
+public class IconHolderTest extends InstrumentationTestCase {
+
+    private static final String TAG = "IconHolderTest"; //$NON-NLS-1$
+
+    private static final int PICTURES = 300;
+    // The rows of the list (recycled while scrolling)
+    private static final int ROWS = 12;
+    // The time between the bindings of two rows while flinging (in milliseconds)
+    private static final long FLING_INTERVAL = 4L;
+    private static final long TIMEOUT = 30000L;
+
+    private Context mContext;
+    private File mTestDir;
+    private FileSystemObject[] mPictures;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.mContext = getInstrumentation().getTargetContext();
+        this.mTestDir = new File(this.mContext.getCacheDir(), "icon-holder-test"); //$NON-NLS-1$
+        FileHelper.deleteFolder(this.mTestDir);
+        assertTrue("mkdir failed", this.mTestDir.mkdirs()); //$NON-NLS-1$
+
+        Bitmap bitmap = Bitmap.createBitmap(512, 512, Bitmap.Config.ARGB_8888);
+        this.mPictures = new FileSystemObject[PICTURES];
+        for (int i = 0; i < PICTURES; i++) {
+            bitmap.eraseColor(Color.rgb(i % 256, 0, 0));
+            File file = new File(this.mTestDir, "picture" + i + ".jpg"); //$NON-NLS-1$ //$NON-NLS-2$
+            FileOutputStream fos = new FileOutputStream(file);
+            try {
+                bitmap.compress(Bitmap.CompressFormat.JPEG, 90, fos);
+            } finally {
+                fos.close();
+            }
+            this.mPictures[i] = FileHelper.createFileSystemObject(file);
+        }
+        ThumbnailCache.getInstance(this.mContext).clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        ThumbnailCache.getInstance(this.mContext).clear();
+        FileHelper.deleteFolder(this.mTestDir);
+        super.tearDown();
+    }
+
+    /**
+     * Method that flings the list from the top to the bottom, and measures the time
+     * until the rows on screen show their thumbnails.
+     *
+     * @throws Exception If test failed
+     */
+    @LargeTest
+    public void testFlingLatency() throws Exception {
+        final Drawable defaultIcon = new ColorDrawable(Color.GRAY);
+        final IconHolder[] holder = new IconHolder[1];
+        final ImageView[] rows = new ImageView[ROWS];
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                holder[0] = new IconHolder(IconHolderTest.this.mContext, true);
+                for (int i = 0; i < ROWS; i++) {
+                    rows[i] = new ImageView(IconHolderTest.this.mContext);
+                }
+            }
+        });
+
+        // Fling: every row is bound to a new picture before the previous load ends
+        for (int i = 0; i < PICTURES; i++) {
+            final int picture = i;
+            getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    holder[0].loadDrawable(rows[picture % ROWS],
+                            IconHolderTest.this.mPictures[picture], defaultIcon);
+                }
+            });
+            SystemClock.sleep(FLING_INTERVAL);
+        }
+
+        // Wait for the rows on screen
+        long start = SystemClock.elapsedRealtime();
+        long latency = -1;
+        while (SystemClock.elapsedRealtime() - start < TIMEOUT) {
+            getInstrumentation().waitForIdleSync();
+            boolean loaded = true;
+            for (ImageView row : rows) {
+                loaded &= row.getDrawable() instanceof BitmapDrawable;
+            }
+            if (loaded) {
+                latency = SystemClock.elapsedRealtime() - start;
+                break;
+            }
+            SystemClock.sleep(10L);
+        }
+        Log.i(TAG, String.format("Fling of %d pictures: rows on screen loaded in %d ms, " //$NON-NLS-1$
+                + "average load latency %.1f ms", //$NON-NLS-1$
+                PICTURES, latency, holder[0].getAverageLoadLatency()));
+        assertTrue("rows on screen not loaded", latency >= 0); //$NON-NLS-1$
+
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                holder[0].cleanup();
+            }
+        });
+    }
+}
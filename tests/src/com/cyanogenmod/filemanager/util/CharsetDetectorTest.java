@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+
+/**
+ * A class for testing the charset detection.
+ *
+ * @see CharsetDetector
+ */
+public class CharsetDetectorTest extends android.test.AndroidTestCase {
+
+    private File mFile;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.mFile = new File(getContext().getCacheDir(), "charset-test.txt"); //$NON-NLS-1$
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        this.mFile.delete();
+        super.tearDown();
+    }
+
+    /**
+     * Method that checks the detection of an UTF-8 file bigger than the sample, and
+     * that the result is cached.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testUtf8() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < CharsetDetector.PREFIX_SIZE * 2) {
+            sb.append("Caf\u00e9 cr\u00e8me br\u00fbl\u00e9e \u4e2d\u6587\n"); //$NON-NLS-1$
+        }
+        write(sb.toString().getBytes("UTF-8")); //$NON-NLS-1$
+
+        CharsetDetector.Result result = CharsetDetector.detect(this.mFile);
+        assertFalse(result.isBinary());
+        assertEquals("UTF-8", result.getCharset()); //$NON-NLS-1$
+        assertSame(result, CharsetDetector.detect(this.mFile));
+    }
+
+    /**
+     * Method that checks the detection of a binary file.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testBinary() throws Exception {
+        byte[] data = new byte[4096];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte)(i % 7);
+        }
+        write(data);
+
+        CharsetDetector.Result result = CharsetDetector.detect(this.mFile);
+        assertTrue(result.isBinary());
+        assertNull(result.getCharset());
+    }
+
+    private void write(byte[] data) throws Exception {
+        OutputStream os = new FileOutputStream(this.mFile);
+        try {
+            os.write(data);
+        } finally {
+            os.close();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.cyanogenmod.filemanager.commands.ChecksumExecutable.CHECKSUMS;
+import com.cyanogenmod.filemanager.commands.ChecksumExecutable.OnChecksumProgressListener;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+/**
+ * A class for testing the checksum calculator.
+ *
+ * @see ChecksumCalculator
+ */
+public class ChecksumCalculatorTest extends android.test.AndroidTestCase {
+
+    // "abc" test vectors
+    private static final String ABC_MD5 = "900150983cd24fb0d6963f7d28e17f72"; //$NON-NLS-1$
+    private static final String ABC_SHA1 =
+            "a9993e364706816aba3e25717850c26c9cd0d89d"; //$NON-NLS-1$
+    private static final String ABC_SHA256 =
+            "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad"; //$NON-NLS-1$
+    private static final String ABC_CRC32 = "352441c2"; //$NON-NLS-1$
+
+    // Bigger than several chunks, and not aligned to a chunk
+    private static final int BIG_FILE_SIZE = 3 * 1024 * 1024 + 123;
+
+    private File mTestDir;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.mTestDir = new File(getContext().getCacheDir(), "checksum-test"); //$NON-NLS-1$
+        FileHelper.deleteFolder(this.mTestDir);
+        assertTrue("mkdir failed", this.mTestDir.mkdirs()); //$NON-NLS-1$
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        FileHelper.deleteFolder(this.mTestDir);
+        super.tearDown();
+    }
+
+    /**
+     * Method that checks the checksums of a known content.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testKnownChecksums() throws Exception {
+        File file = createFile("abc.txt", "abc".getBytes("US-ASCII")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        String[] checksums = new ChecksumCalculator(4).calculate(file, null);
+        assertEquals(ABC_MD5, checksums[CHECKSUMS.MD5.ordinal()]);
+        assertEquals(ABC_SHA1, checksums[CHECKSUMS.SHA1.ordinal()]);
+        assertEquals(ABC_SHA256, checksums[CHECKSUMS.SHA256.ordinal()]);
+        assertEquals(ABC_CRC32, checksums[CHECKSUMS.CRC32.ordinal()]);
+    }
+
+    /**
+     * Method that checks that the parallel and the sequential calculations of a file
+     * of several chunks are the same.
+     *
+     * @throws Exception If test failed
+     */
+    @MediumTest
+    public void testParallel() throws Exception {
+        byte[] data = new byte[BIG_FILE_SIZE];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte)(i * 31);
+        }
+        File file = createFile("big.bin", data); //$NON-NLS-1$
+
+        final long[] progress = new long[1];
+        String[] parallel = new ChecksumCalculator(4).calculate(file,
+                new OnChecksumProgressListener() {
+                    @Override
+                    public void onChecksumProgress(String path, long read, long total) {
+                        progress[0] = read;
+                    }
+                });
+        assertEquals(BIG_FILE_SIZE, progress[0]);
+        String[] sequential = new ChecksumCalculator(1).calculate(file, null);
+        for (int i = 0; i < parallel.length; i++) {
+            assertEquals(parallel[i], sequential[i]);
+        }
+    }
+
+    private File createFile(String name, byte[] data) throws Exception {
+        File file = new File(this.mTestDir, name);
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(data);
+        } finally {
+            fos.close();
+        }
+        return file;
+    }
+}
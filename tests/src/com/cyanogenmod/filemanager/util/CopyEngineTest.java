@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.test.suitebuilder.annotation.MediumTest;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+/**
+ * A class for testing the copy engine.
+ *
+ * @see CopyEngine
+ */
+public class CopyEngineTest extends android.test.AndroidTestCase {
+
+    private static final int SMALL_FILES = 20;
+    // Bigger than a chunk, so it's streamed by the calling thread
+    private static final int BIG_FILE_SIZE = 2 * 1024 * 1024 + 17;
+
+    private File mTestDir;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.mTestDir = new File(getContext().getCacheDir(), "copy-engine-test"); //$NON-NLS-1$
+        FileHelper.deleteFolder(this.mTestDir);
+        File src = new File(this.mTestDir, "src/sub"); //$NON-NLS-1$
+        assertTrue("mkdir failed", src.mkdirs()); //$NON-NLS-1$
+        for (int i = 0; i < SMALL_FILES; i++) {
+            createFile(new File(src, "small" + i + ".txt"), 100 + i); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        createFile(new File(src, "big.bin"), BIG_FILE_SIZE); //$NON-NLS-1$
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        FileHelper.deleteFolder(this.mTestDir);
+        super.tearDown();
+    }
+
+    /**
+     * Method that checks the copy of a tree of small and big files.
+     *
+     * @throws Exception If test failed
+     */
+    @MediumTest
+    public void testCopy() throws Exception {
+        File src = new File(this.mTestDir, "src"); //$NON-NLS-1$
+        File dst = new File(this.mTestDir, "dst"); //$NON-NLS-1$
+        CopyEngine engine = new CopyEngine(4, false, null);
+        engine.add(src, dst);
+        engine.execute();
+
+        assertEquals(SMALL_FILES + 1, engine.getTotalFiles());
+        assertEquals(SMALL_FILES + 1, engine.getCopiedFiles());
+        assertEquals(engine.getTotalBytes(), engine.getCopiedBytes());
+        assertEquals(BIG_FILE_SIZE, new File(dst, "sub/big.bin").length()); //$NON-NLS-1$
+        assertEquals(105, new File(dst, "sub/small5.txt").length()); //$NON-NLS-1$
+        assertTrue(new File(src, "sub/big.bin").exists()); //$NON-NLS-1$
+    }
+
+    /**
+     * Method that checks the move of a tree.
+     *
+     * @throws Exception If test failed
+     */
+    @MediumTest
+    public void testMove() throws Exception {
+        File src = new File(this.mTestDir, "src"); //$NON-NLS-1$
+        File dst = new File(this.mTestDir, "moved"); //$NON-NLS-1$
+        CopyEngine engine = new CopyEngine(4, true, null);
+        engine.add(src, dst);
+        engine.execute();
+
+        assertFalse(src.exists());
+        assertEquals(BIG_FILE_SIZE, new File(dst, "sub/big.bin").length()); //$NON-NLS-1$
+        assertEquals(SMALL_FILES + 1, new File(dst, "sub").list().length); //$NON-NLS-1$
+    }
+
+    private static void createFile(File file, int size) throws Exception {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte)i;
+        }
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(data);
+        } finally {
+            fos.close();
+        }
+    }
+}
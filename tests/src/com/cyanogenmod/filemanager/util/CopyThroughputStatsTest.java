@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+/**
+ * A class for testing the copy throughput statistics.
+ *
+ * @see CopyThroughputStats
+ */
+public class CopyThroughputStatsTest extends android.test.AndroidTestCase {
+
+    private static final long DEVICE = 12345L;
+    private static final long MIB = 1024L * 1024L;
+    // 1 second in nanoseconds
+    private static final long SECOND = 1000000000L;
+
+    private CopyThroughputStats mStats;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.mStats = CopyThroughputStats.getInstance();
+        this.mStats.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        this.mStats.clear();
+        super.tearDown();
+    }
+
+    /**
+     * Method that checks that the chunk size is tuned to the throughput of the device.
+     */
+    @SmallTest
+    public void testChunkSize() {
+        assertEquals(FileHelper.NIO_COPY_CHUNK_SIZE, this.mStats.getChunkSize(DEVICE));
+
+        // 10MiB/s: the chunk copied in the target time
+        long chunkSize = this.mStats.record(DEVICE, 10 * MIB, SECOND);
+        assertEquals(10 * MIB * CopyThroughputStats.TARGET_CHUNK_TIME / 1000L, chunkSize);
+
+        // A very slow device still uses reasonable chunks
+        this.mStats.clear();
+        chunkSize = this.mStats.record(DEVICE, 1 * MIB, 100 * SECOND);
+        assertEquals(CopyThroughputStats.MIN_CHUNK_SIZE, chunkSize);
+
+        // And a very fast one chunks that can still be cancelled
+        this.mStats.clear();
+        chunkSize = this.mStats.record(DEVICE, 1024 * MIB, SECOND / 10);
+        assertEquals(CopyThroughputStats.MAX_CHUNK_SIZE, chunkSize);
+    }
+
+    /**
+     * Method that checks the throughput histogram.
+     */
+    @SmallTest
+    public void testThroughput() {
+        assertTrue(this.mStats.getThroughput(DEVICE) < 0);
+        for (int i = 0; i < 5; i++) {
+            this.mStats.record(DEVICE, 20 * MIB, SECOND);
+        }
+        this.mStats.record(DEVICE, 1 * MIB, SECOND);
+        // Too small to be sampled
+        this.mStats.record(DEVICE, 1024, SECOND);
+
+        long[] histogram = this.mStats.getHistogram(DEVICE);
+        long samples = 0;
+        for (long count : histogram) {
+            samples += count;
+        }
+        assertEquals(6, samples);
+
+        // The median ignores the slow chunk
+        double throughput = this.mStats.getThroughput(DEVICE);
+        assertTrue(throughput >= 16 * MIB && throughput < 32 * MIB);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.system.Os;
+import android.test.suitebuilder.annotation.MediumTest;
+
+import com.cyanogenmod.filemanager.commands.BulkDeleteExecutable.OnBulkDeleteListener;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A class for testing the parallel delete walker.
+ *
+ * @see DeleteWalker
+ */
+public class DeleteWalkerTest extends android.test.AndroidTestCase {
+
+    private static final int FILES = 200;
+    private static final int FOLDERS = 10;
+
+    private File mTestDir;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.mTestDir = new File(getContext().getCacheDir(), "delete-test"); //$NON-NLS-1$
+        FileHelper.deleteFolder(this.mTestDir);
+        assertTrue("mkdir failed", this.mTestDir.mkdirs()); //$NON-NLS-1$
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        FileHelper.deleteFolder(this.mTestDir);
+        super.tearDown();
+    }
+
+    /**
+     * Method that checks that files, folder trees and symlinks are deleted, and that
+     * every path is notified.
+     *
+     * @throws Exception If test failed
+     */
+    @MediumTest
+    public void testDelete() throws Exception {
+        List<String> paths = new ArrayList<String>();
+        for (int i = 0; i < FILES; i++) {
+            File file = new File(this.mTestDir, "file" + i + ".txt"); //$NON-NLS-1$ //$NON-NLS-2$
+            assertTrue(file.createNewFile());
+            paths.add(file.getAbsolutePath());
+        }
+        for (int i = 0; i < FOLDERS; i++) {
+            File folder = new File(this.mTestDir, "folder" + i); //$NON-NLS-1$
+            assertTrue(new File(folder, "sub").mkdirs()); //$NON-NLS-1$
+            assertTrue(new File(folder, "sub/file.txt").createNewFile()); //$NON-NLS-1$
+            paths.add(folder.getAbsolutePath());
+        }
+
+        // The target of a symlink must be kept
+        File target = new File(getContext().getCacheDir(), "delete-test-target"); //$NON-NLS-1$
+        File kept = new File(target, "kept.txt"); //$NON-NLS-1$
+        File link = new File(this.mTestDir, "link"); //$NON-NLS-1$
+        try {
+            assertTrue(target.mkdirs() || target.isDirectory());
+            assertTrue(kept.createNewFile() || kept.isFile());
+            Os.symlink(target.getAbsolutePath(), link.getAbsolutePath());
+            paths.add(link.getAbsolutePath());
+            paths.add(new File(this.mTestDir, "missing").getAbsolutePath()); //$NON-NLS-1$
+
+            final AtomicInteger deleted = new AtomicInteger();
+            List<String> failed = new DeleteWalker(4).delete(
+                    paths.toArray(new String[paths.size()]), new OnBulkDeleteListener() {
+                        @Override
+                        public void onDeleteProgress(String path, boolean ok) {
+                            if (ok) {
+                                deleted.incrementAndGet();
+                            }
+                        }
+                    });
+
+            assertTrue(failed.isEmpty());
+            assertEquals(paths.size(), deleted.get());
+            assertEquals(0, this.mTestDir.list().length);
+            assertTrue(kept.exists());
+        } finally {
+            FileHelper.deleteFolder(target);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.commands.ListExecutable;
+import com.cyanogenmod.filemanager.model.Directory;
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A class for testing the java directory listing.
+ *
+ * @see DirectoryListHelper
+ */
+public class DirectoryListHelperTest extends android.test.AndroidTestCase {
+
+    private static final String TAG = "DirectoryListHelperTest"; //$NON-NLS-1$
+
+    private static final int BENCHMARK_FILES = 5000;
+
+    private File mTestDir;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.mTestDir = new File(getContext().getCacheDir(), "list-test"); //$NON-NLS-1$
+        FileHelper.deleteFolder(this.mTestDir);
+        assertTrue("mkdir failed", this.mTestDir.mkdirs()); //$NON-NLS-1$
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        FileHelper.deleteFolder(this.mTestDir);
+        super.tearDown();
+    }
+
+    /**
+     * Method that checks that the listing returns the same information than
+     * {@link FileHelper#createFileSystemObject(File)}, and that chunks are delivered.
+     *
+     * @throws Exception If test failed
+     */
+    @MediumTest
+    public void testListDirectory() throws Exception {
+        createFiles(10);
+        assertTrue(new File(this.mTestDir, "dir").mkdir()); //$NON-NLS-1$
+
+        final List<FileSystemObject> chunks = new ArrayList<FileSystemObject>();
+        List<FileSystemObject> files = DirectoryListHelper.listDirectory(this.mTestDir, 4,
+                new ListExecutable.OnPartialListListener() {
+                    @Override
+                    public void onPartialList(List<FileSystemObject> partial) {
+                        assertEquals(4, partial.size());
+                        chunks.addAll(partial);
+                    }
+                });
+        assertNotNull("files==null", files); //$NON-NLS-1$
+        assertEquals(11, files.size());
+        assertEquals(8, chunks.size());
+
+        for (FileSystemObject fso : files) {
+            FileSystemObject expected =
+                    FileHelper.createFileSystemObject(new File(this.mTestDir, fso.getName()));
+            assertEquals(expected.getFullPath(), fso.getFullPath());
+            assertEquals(expected instanceof Directory, fso instanceof Directory);
+            assertEquals(expected.getSize(), fso.getSize());
+            assertEquals(expected.getLastModifiedTime().getTime() / 1000L,
+                    fso.getLastModifiedTime().getTime() / 1000L);
+        }
+    }
+
+    /**
+     * Method that compares the old (File based) and the new (stat based) listing.
+     *
+     * @throws Exception If test failed
+     */
+    @LargeTest
+    public void testListingBenchmark() throws Exception {
+        createFiles(BENCHMARK_FILES);
+
+        long start = System.nanoTime();
+        File[] legacy = this.mTestDir.listFiles();
+        List<FileSystemObject> legacyFiles = new ArrayList<FileSystemObject>(legacy.length);
+        for (File f : legacy) {
+            legacyFiles.add(FileHelper.createFileSystemObject(f));
+        }
+        long legacyTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        List<FileSystemObject> files = DirectoryListHelper.listDirectory(
+                this.mTestDir, DirectoryListHelper.DEFAULT_CHUNK_SIZE, null);
+        long newTime = System.nanoTime() - start;
+
+        assertEquals(legacyFiles.size(), files.size());
+        Log.i(TAG, String.format("%d files. File: %d ms, stat: %d ms", //$NON-NLS-1$
+                Integer.valueOf(BENCHMARK_FILES),
+                Long.valueOf(legacyTime / 1000000L),
+                Long.valueOf(newTime / 1000000L)));
+    }
+
+    /**
+     * Method that creates test files.
+     *
+     * @param count The number of files to create
+     * @throws Exception If the files can't be created
+     */
+    private void createFiles(int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            assertTrue(new File(this.mTestDir, "file" + i + ".txt").createNewFile()); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+    }
+}
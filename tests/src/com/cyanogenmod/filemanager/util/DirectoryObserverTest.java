@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.test.suitebuilder.annotation.MediumTest;
+
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+import com.cyanogenmod.filemanager.util.DirectoryObserver.OnDirectoryEventsListener;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A class for testing the directory observer.
+ *
+ * @see DirectoryObserver
+ */
+public class DirectoryObserverTest extends android.test.AndroidTestCase {
+
+    private static final int STORM_FILES = 1000;
+
+    private File mTestDir;
+
+    /**
+     * A listener that collects the changes.
+     */
+    private static class CollectorListener implements OnDirectoryEventsListener {
+        final List<String> mRemoved = new ArrayList<String>();
+        final List<String> mChanged = new ArrayList<String>();
+        int mInvalidations;
+        CountDownLatch mLatch;
+
+        @Override
+        public synchronized void onDirectoryEvents(
+                String dir, List<String> removed, List<FileSystemObject> changed) {
+            this.mRemoved.addAll(removed);
+            for (FileSystemObject fso : changed) {
+                this.mChanged.add(fso.getFullPath());
+            }
+            this.mLatch.countDown();
+        }
+
+        @Override
+        public synchronized void onDirectoryInvalidated(String dir) {
+            this.mInvalidations++;
+            this.mLatch.countDown();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.mTestDir = new File(getContext().getCacheDir(), "observer-test"); //$NON-NLS-1$
+        FileHelper.deleteFolder(this.mTestDir);
+        assertTrue("mkdir failed", this.mTestDir.mkdirs()); //$NON-NLS-1$
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        FileHelper.deleteFolder(this.mTestDir);
+        super.tearDown();
+    }
+
+    /**
+     * Method that checks that the created and removed entries are reported.
+     *
+     * @throws Exception If test failed
+     */
+    @MediumTest
+    public void testCreateAndDelete() throws Exception {
+        CollectorListener listener = new CollectorListener();
+        DirectoryObserver observer =
+                new DirectoryObserver(getContext(), this.mTestDir.getAbsolutePath(), listener);
+        observer.startWatching();
+        try {
+            File file = new File(this.mTestDir, "file.txt"); //$NON-NLS-1$
+            listener.mLatch = new CountDownLatch(1);
+            assertTrue(file.createNewFile());
+            assertTrue(listener.mLatch.await(5, TimeUnit.SECONDS));
+            assertTrue(listener.mChanged.contains(file.getAbsolutePath()));
+
+            listener.mLatch = new CountDownLatch(1);
+            assertTrue(file.delete());
+            assertTrue(listener.mLatch.await(5, TimeUnit.SECONDS));
+            assertTrue(listener.mRemoved.contains(file.getAbsolutePath()));
+        } finally {
+            observer.stopWatching();
+        }
+    }
+
+    /**
+     * Method that checks that an event storm is reported as a single invalidation.
+     *
+     * @throws Exception If test failed
+     */
+    @MediumTest
+    public void testStorm() throws Exception {
+        CollectorListener listener = new CollectorListener();
+        DirectoryObserver observer =
+                new DirectoryObserver(getContext(), this.mTestDir.getAbsolutePath(), listener);
+        observer.startWatching();
+        try {
+            listener.mLatch = new CountDownLatch(1);
+            for (int i = 0; i < STORM_FILES; i++) {
+                assertTrue(new File(this.mTestDir, "file" + i).createNewFile()); //$NON-NLS-1$
+            }
+            assertTrue(listener.mLatch.await(5, TimeUnit.SECONDS));
+            assertEquals(1, listener.mInvalidations);
+        } finally {
+            observer.stopWatching();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.test.suitebuilder.annotation.MediumTest;
+
+import com.cyanogenmod.filemanager.commands.ConcurrentAsyncResultListener;
+import com.cyanogenmod.filemanager.console.Console;
+import com.cyanogenmod.filemanager.console.ConsoleBuilder;
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+import com.cyanogenmod.filemanager.model.Query;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A class for testing the file name index.
+ *
+ * @see FileNameIndex
+ */
+public class FileNameIndexTest extends android.test.AndroidTestCase {
+
+    private static final int FOLDERS = 10;
+
+    private File mTestDir;
+    private FileNameIndex mIndex;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.mTestDir = new File(getContext().getCacheDir(), "name-index-test"); //$NON-NLS-1$
+        FileHelper.deleteFolder(this.mTestDir);
+        for (int i = 0; i < FOLDERS; i++) {
+            File folder = new File(this.mTestDir, "folder" + i + "/sub"); //$NON-NLS-1$ //$NON-NLS-2$
+            assertTrue("mkdir failed", folder.mkdirs()); //$NON-NLS-1$
+            assertTrue(new File(folder, "Report" + i + ".txt").createNewFile()); //$NON-NLS-1$ //$NON-NLS-2$
+            assertTrue(new File(folder, "image" + i + ".png").createNewFile()); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        this.mIndex = FileNameIndex.getInstance(getContext());
+        this.mIndex.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        this.mIndex.clear();
+        FileHelper.deleteFolder(this.mTestDir);
+        super.tearDown();
+    }
+
+    /**
+     * Method that checks the queries of an indexed tree.
+     *
+     * @throws Exception If test failed
+     */
+    @MediumTest
+    public void testQuery() throws Exception {
+        final String root = this.mTestDir.getAbsolutePath();
+        assertFalse(this.mIndex.isIndexed(root));
+        assertTrue(this.mIndex.build(root, null));
+        assertTrue(this.mIndex.isIndexed(root + "/folder0")); //$NON-NLS-1$
+
+        List<String> results = this.mIndex.query(root,
+                new Query().setSlot("Report", 0)); //$NON-NLS-1$
+        assertEquals(FOLDERS, results.size());
+        assertTrue(results.contains(root + "/folder3/sub/Report3.txt")); //$NON-NLS-1$
+
+        // The names are matched ignoring the case, like find
+        results = this.mIndex.query(root, new Query().setSlot("report", 0)); //$NON-NLS-1$
+        assertEquals(FOLDERS, results.size());
+
+        // Wildcards, and terms shorter than a trigram
+        results = this.mIndex.query(root, new Query().setSlot("im*5", 0)); //$NON-NLS-1$
+        assertEquals(1, results.size());
+        results = this.mIndex.query(root + "/folder1", //$NON-NLS-1$
+                new Query().setSlot("png", 0).setSlot("txt", 1)); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals(2, results.size());
+    }
+
+    /**
+     * Method that checks that the index and the find command of the shell return the
+     * same results for a term with punctuation and mixed case.
+     *
+     * @throws Exception If test failed
+     */
+    @MediumTest
+    public void testSameResultsAsFind() throws Exception {
+        final String root = this.mTestDir.getAbsolutePath();
+        File folder = new File(this.mTestDir, "folder5/sub"); //$NON-NLS-1$
+        assertTrue(new File(folder, "Release.Notes.TXT").createNewFile()); //$NON-NLS-1$
+        assertTrue(new File(folder, "release-notes.txt").createNewFile()); //$NON-NLS-1$
+        assertTrue(new File(folder, "ReleaseNotesTxt").createNewFile()); //$NON-NLS-1$
+        final String term = "notes.t?t"; //$NON-NLS-1$
+
+        // The tree isn't indexed, so the shell walks it with find
+        List<String> expected = new ArrayList<String>();
+        Console console = ConsoleBuilder.createNonPrivilegedConsole(getContext());
+        try {
+            expected = find(console, root, term);
+        } finally {
+            console.dealloc();
+        }
+        Collections.sort(expected);
+        assertEquals(2, expected.size());
+
+        assertTrue(this.mIndex.build(root, null));
+        List<String> results = this.mIndex.query(root, new Query().setSlot(term, 0));
+        Collections.sort(results);
+        assertEquals(expected, results);
+    }
+
+    /**
+     * Method that checks that the index is brought up to date.
+     *
+     * @throws Exception If test failed
+     */
+    @MediumTest
+    public void testRefresh() throws Exception {
+        final String root = this.mTestDir.getAbsolutePath();
+        assertTrue(this.mIndex.build(root, null));
+
+        File folder = new File(this.mTestDir, "folder2/sub"); //$NON-NLS-1$
+        assertTrue(new File(folder, "notes.txt").createNewFile()); //$NON-NLS-1$
+        assertTrue(new File(folder, "Report2.txt").delete()); //$NON-NLS-1$
+        FileHelper.deleteFolder(new File(this.mTestDir, "folder4")); //$NON-NLS-1$
+        assertTrue(this.mIndex.refresh(root, null));
+
+        Query query = new Query().setSlot("notes", 0); //$NON-NLS-1$
+        assertEquals(1, this.mIndex.query(root, query).size());
+        query = new Query().setSlot("Report", 0); //$NON-NLS-1$
+        assertEquals(FOLDERS - 2, this.mIndex.query(root, query).size());
+    }
+
+    private List<String> find(Console console, String dir, String term) throws Exception {
+        final List<String> paths = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch end = new CountDownLatch(1);
+        CommandHelper.findFiles(getContext(), dir, new Query().setSlot(term, 0),
+                new ConcurrentAsyncResultListener() {
+                    @Override
+                    public void onConcurrentAsyncStart() {/**NON BLOCK**/}
+
+                    @Override
+                    public void onConcurrentAsyncEnd(boolean cancelled) {
+                        end.countDown();
+                    }
+
+                    @Override
+                    public void onConcurrentAsyncExitCode(int exitCode) {/**NON BLOCK**/}
+
+                    @Override
+                    public void onConcurrentException(Exception cause) {
+                        end.countDown();
+                    }
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public void onConcurrentPartialResult(Object results) {
+                        for (FileSystemObject fso : (List<FileSystemObject>)results) {
+                            paths.add(fso.getFullPath());
+                        }
+                    }
+                }, console);
+        assertTrue(end.await(30, TimeUnit.SECONDS));
+        return new ArrayList<String>(paths);
+    }
+}
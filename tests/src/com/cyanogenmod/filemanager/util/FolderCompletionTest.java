@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A class for testing the in-process completion of folders.
+ *
+ * @see FolderCompletion
+ */
+public class FolderCompletionTest extends android.test.AndroidTestCase {
+
+    private static final List<String> FOLDERS = Arrays.asList(
+            "/sdcard/DCIM/", //$NON-NLS-1$
+            "/sdcard/Download/", //$NON-NLS-1$
+            "/sdcard/Music/"); //$NON-NLS-1$
+
+    private File mTestDir;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.mTestDir = new File(getContext().getCacheDir(), "completion-test"); //$NON-NLS-1$
+        FileHelper.deleteFolder(this.mTestDir);
+        assertTrue("mkdir failed", this.mTestDir.mkdirs()); //$NON-NLS-1$
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        FileHelper.deleteFolder(this.mTestDir);
+        super.tearDown();
+    }
+
+    /**
+     * Method that checks the prefix and the fuzzy completions.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testComplete() throws Exception {
+        assertEquals(Arrays.asList("/sdcard/DCIM/", "/sdcard/Download/"), //$NON-NLS-1$ //$NON-NLS-2$
+                FolderCompletion.complete(FOLDERS, "/sdcard/D")); //$NON-NLS-1$
+        assertEquals(Arrays.asList("/sdcard/Download/"), //$NON-NLS-1$
+                FolderCompletion.complete(FOLDERS, "/sdcard/dow")); //$NON-NLS-1$
+        assertEquals(Arrays.asList("/sdcard/Download/"), //$NON-NLS-1$
+                FolderCompletion.complete(FOLDERS, "/sdcard/dwnl")); //$NON-NLS-1$
+        assertEquals(Arrays.asList("/sdcard/Music/", "/sdcard/DCIM/"), //$NON-NLS-1$ //$NON-NLS-2$
+                FolderCompletion.complete(FOLDERS, "/sdcard/m")); //$NON-NLS-1$
+        assertTrue(FolderCompletion.complete(FOLDERS, "/sdcard/xyz").isEmpty()); //$NON-NLS-1$
+    }
+
+    /**
+     * Method that checks that the folders are cached until the parent changes.
+     *
+     * @throws Exception If test failed
+     */
+    @MediumTest
+    public void testLoadFolders() throws Exception {
+        assertTrue(new File(this.mTestDir, "b").mkdir()); //$NON-NLS-1$
+        assertTrue(new File(this.mTestDir, "a").mkdir()); //$NON-NLS-1$
+        assertTrue(new File(this.mTestDir, "file.txt").createNewFile()); //$NON-NLS-1$
+        String parent = this.mTestDir.getAbsolutePath() + File.separator;
+        assertNull(FolderCompletion.getCachedFolders(parent));
+
+        List<String> folders = FolderCompletion.loadFolders(getContext(), parent);
+        assertEquals(Arrays.asList(parent + "a/", parent + "b/"), folders); //$NON-NLS-1$ //$NON-NLS-2$
+        assertSame(folders, FolderCompletion.getCachedFolders(parent));
+
+        assertTrue(new File(this.mTestDir, "c").mkdir()); //$NON-NLS-1$
+        assertTrue(this.mTestDir.setLastModified(this.mTestDir.lastModified() + 2000L));
+        assertNull(FolderCompletion.getCachedFolders(parent));
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.system.Os;
+import android.test.suitebuilder.annotation.MediumTest;
+
+import com.cyanogenmod.filemanager.model.FolderUsage;
+import com.cyanogenmod.filemanager.util.MimeTypeHelper.MimeTypeCategory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+/**
+ * A class for testing the parallel folder usage walker.
+ *
+ * @see FolderUsageWalker
+ */
+public class FolderUsageWalkerTest extends android.test.AndroidTestCase {
+
+    private static final int FOLDERS = 20;
+    private static final int FILES_PER_FOLDER = 10;
+    private static final int FILE_SIZE = 100;
+
+    private File mTestDir;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.mTestDir = new File(getContext().getCacheDir(), "usage-test"); //$NON-NLS-1$
+        FileHelper.deleteFolder(this.mTestDir);
+        for (int i = 0; i < FOLDERS; i++) {
+            File folder = new File(this.mTestDir, "folder" + i + "/sub"); //$NON-NLS-1$ //$NON-NLS-2$
+            assertTrue("mkdir failed", folder.mkdirs()); //$NON-NLS-1$
+            for (int j = 0; j < FILES_PER_FOLDER; j++) {
+                FileOutputStream fos =
+                        new FileOutputStream(new File(folder, "file" + j + ".txt")); //$NON-NLS-1$ //$NON-NLS-2$
+                try {
+                    fos.write(new byte[FILE_SIZE]);
+                } finally {
+                    fos.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        FileHelper.deleteFolder(this.mTestDir);
+        super.tearDown();
+    }
+
+    /**
+     * Method that checks the counters accumulated by several worker threads.
+     *
+     * @throws Exception If test failed
+     */
+    @MediumTest
+    public void testWalk() throws Exception {
+        FolderUsageWalker walker = new FolderUsageWalker(getContext(), 4, false, null);
+        assertTrue("walk cancelled", //$NON-NLS-1$
+                walker.walk(this.mTestDir, 100L, null));
+
+        final int files = FOLDERS * FILES_PER_FOLDER;
+        FolderUsage usage = walker.createFolderUsage(this.mTestDir.getAbsolutePath());
+        assertEquals(FOLDERS * 2, usage.getNumberOfFolders());
+        assertEquals(files, usage.getNumberOfFiles());
+        assertEquals((long)files * FILE_SIZE, usage.getTotalSize());
+        assertEquals(files, usage.getStatisticsForCategory(MimeTypeCategory.TEXT));
+
+        long[] sizes = walker.getSizeByCategory();
+        assertEquals((long)files * FILE_SIZE, sizes[MimeTypeCategory.TEXT.ordinal()]);
+        assertEquals(-1, sizes[MimeTypeCategory.IMAGE.ordinal()]);
+    }
+
+    /**
+     * Method that checks that the unchanged folders are read from the index.
+     *
+     * @throws Exception If test failed
+     */
+    @MediumTest
+    public void testIndex() throws Exception {
+        // Folders modified just now are not indexed
+        long modified = System.currentTimeMillis() - 60000L;
+        this.mTestDir.setLastModified(modified);
+        for (int i = 0; i < FOLDERS; i++) {
+            File folder = new File(this.mTestDir, "folder" + i); //$NON-NLS-1$
+            new File(folder, "sub").setLastModified(modified); //$NON-NLS-1$
+            folder.setLastModified(modified);
+        }
+
+        FolderSizeIndex index = FolderSizeIndex.getInstance(getContext());
+        index.clear();
+        FolderUsageWalker walker = new FolderUsageWalker(getContext(), 4, false, index);
+        walker.walk(this.mTestDir, 100L, null);
+        FolderUsage expected = walker.createFolderUsage(this.mTestDir.getAbsolutePath());
+        assertEquals(0, walker.getIndexHits());
+        assertEquals(FOLDERS * 2 + 1, walker.getIndexMisses());
+
+        walker = new FolderUsageWalker(getContext(), 4, false, index);
+        walker.walk(this.mTestDir, 100L, null);
+        FolderUsage usage = walker.createFolderUsage(this.mTestDir.getAbsolutePath());
+        assertEquals(FOLDERS * 2 + 1, walker.getIndexHits());
+        assertEquals(0, walker.getIndexMisses());
+        assertEquals(expected.getNumberOfFolders(), usage.getNumberOfFolders());
+        assertEquals(expected.getNumberOfFiles(), usage.getNumberOfFiles());
+        assertEquals(expected.getTotalSize(), usage.getTotalSize());
+
+        // A new file only invalidates its folder
+        File folder = new File(this.mTestDir, "folder0/sub"); //$NON-NLS-1$
+        assertTrue(new File(folder, "new.txt").createNewFile()); //$NON-NLS-1$
+        walker = new FolderUsageWalker(getContext(), 4, false, index);
+        walker.walk(this.mTestDir, 100L, null);
+        usage = walker.createFolderUsage(this.mTestDir.getAbsolutePath());
+        assertEquals(1, walker.getIndexMisses());
+        assertEquals(expected.getNumberOfFiles() + 1, usage.getNumberOfFiles());
+        index.clear();
+    }
+
+    /**
+     * Method that checks that the symlinked folders are not walked, so a link to a
+     * parent folder doesn't make the walk loop and nothing is counted twice.
+     *
+     * @throws Exception If test failed
+     */
+    @MediumTest
+    public void testSymlinkedFolder() throws Exception {
+        File folder = new File(this.mTestDir, "folder0"); //$NON-NLS-1$
+        Os.symlink(folder.getAbsolutePath(),
+                new File(folder, "sub/loop").getAbsolutePath()); //$NON-NLS-1$
+        Os.symlink(folder.getAbsolutePath(),
+                new File(this.mTestDir, "copy").getAbsolutePath()); //$NON-NLS-1$
+
+        FolderUsageWalker walker = new FolderUsageWalker(getContext(), 4, false, null);
+        assertTrue("walk cancelled", //$NON-NLS-1$
+                walker.walk(this.mTestDir, 100L, null));
+
+        // The links are counted as files
+        final int files = FOLDERS * FILES_PER_FOLDER;
+        FolderUsage usage = walker.createFolderUsage(this.mTestDir.getAbsolutePath());
+        assertEquals(FOLDERS * 2, usage.getNumberOfFolders());
+        assertEquals(files + 2, usage.getNumberOfFiles());
+    }
+
+    /**
+     * Method that checks that a cancelled walk is reported.
+     *
+     * @throws Exception If test failed
+     */
+    @MediumTest
+    public void testCancel() throws Exception {
+        FolderUsageWalker walker = new FolderUsageWalker(getContext(), 2, false, null);
+        walker.cancel();
+        assertFalse("walk not cancelled", //$NON-NLS-1$
+                walker.walk(this.mTestDir, 100L, null));
+        assertEquals(0, walker.createFolderUsage(
+                this.mTestDir.getAbsolutePath()).getNumberOfFiles());
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.system.Os;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.cyanogenmod.filemanager.model.Directory;
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+import com.cyanogenmod.filemanager.model.Group;
+import com.cyanogenmod.filemanager.model.Permissions;
+import com.cyanogenmod.filemanager.model.RegularFile;
+import com.cyanogenmod.filemanager.model.Symlink;
+import com.cyanogenmod.filemanager.model.User;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A class for testing the on demand load of the attributes of the listed entries.
+ *
+ * @see LazyAttributesLoader
+ */
+public class LazyAttributesLoaderTest extends android.test.AndroidTestCase {
+
+    private static final int FILE_MODE = 0x81a4;
+    private static final int LINK_MODE = 0xa1ff;
+    private static final int UID = 1000;
+    private static final int GID = 1015;
+
+    private static final int FILES = LazyAttributesLoader.BATCH_SIZE * 3;
+    private static final int THREADS = 8;
+
+    /**
+     * Method that checks that the attributes are loaded in batches, on the first access.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testBatchLoad() throws Exception {
+        LazyAttributesLoader loader = new LazyAttributesLoader(0);
+        List<FileSystemObject> files = createFiles(loader, FILES);
+
+        int[] attrs = new int[3];
+        FileSystemObject fso = files.get(LazyAttributesLoader.BATCH_SIZE + 1);
+        assertFalse(fso.isAttributesLoaded());
+        assertTrue(fso.getRawAttributes(attrs));
+        assertEquals(FILE_MODE, attrs[0]);
+        assertEquals(UID, attrs[1]);
+        assertEquals(GID, attrs[2]);
+
+        // Only the batch of the entry is loaded
+        assertEquals("rw-r--r--", fso.getPermissions().toRawString()); //$NON-NLS-1$
+        assertEquals(UID, fso.getUser().getId());
+        assertEquals(GID, fso.getGroup().getId());
+        assertFalse(fso.getRawAttributes(attrs));
+        for (int i = 0; i < FILES; i++) {
+            boolean batch = i / LazyAttributesLoader.BATCH_SIZE == 1;
+            assertEquals(String.valueOf(i), batch, files.get(i).isAttributesLoaded());
+        }
+
+        // The users and groups are shared
+        assertSame(fso.getUser(), files.get(LazyAttributesLoader.BATCH_SIZE).getUser());
+        assertSame(fso.getGroup(), files.get(LazyAttributesLoader.BATCH_SIZE).getGroup());
+    }
+
+    /**
+     * Method that checks that the default permissions don't replace the attributes
+     * set when the entries were created.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testDefaultAttributes() throws Exception {
+        LazyAttributesLoader loader = new LazyAttributesLoader(0);
+        User user = new User(0, "root"); //$NON-NLS-1$
+        Group group = new Group(0, "root"); //$NON-NLS-1$
+        Date date = new Date();
+        Directory dir = new Directory("dir", "/data", user, group, null, date, date, date); //$NON-NLS-1$ //$NON-NLS-2$
+        RegularFile file = new RegularFile(
+                "file", "/data", user, group, null, 0, date, date, date); //$NON-NLS-1$ //$NON-NLS-2$
+        loader.addDefault(dir);
+        loader.addDefault(file);
+
+        assertFalse(dir.getRawAttributes(new int[3]));
+        assertEquals(Permissions.createDefaultFolderPermissions(), dir.getPermissions());
+        assertEquals(Permissions.createDefaultFilePermissions(), file.getPermissions());
+        assertSame(user, dir.getUser());
+        assertSame(group, file.getGroup());
+    }
+
+    /**
+     * Method that checks that the attributes accessed concurrently are loaded once, and
+     * are visible from all the threads.
+     *
+     * @throws Exception If test failed
+     */
+    @MediumTest
+    public void testConcurrentLoad() throws Exception {
+        LazyAttributesLoader loader = new LazyAttributesLoader(0);
+        final List<FileSystemObject> files = createFiles(loader, FILES);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger failures = new AtomicInteger();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < THREADS; i++) {
+            final int offset = i * 37;
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    for (int j = 0; j < FILES; j++) {
+                        FileSystemObject fso = files.get((j + offset) % FILES);
+                        Permissions permissions = fso.getPermissions();
+                        User user = fso.getUser();
+                        if (permissions == null || user == null || user.getId() != UID
+                                || !fso.isAttributesLoaded()) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            t.start();
+            threads.add(t);
+        }
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(0, failures.get());
+    }
+
+    /**
+     * Method that checks that the link targets are resolved by the listing thread, and
+     * not when the attributes are loaded.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testResolveLinks() throws Exception {
+        File dir = new File(getContext().getCacheDir(), "lazy-test"); //$NON-NLS-1$
+        FileHelper.deleteFolder(dir);
+        File target = new File(dir, "target"); //$NON-NLS-1$
+        File link = new File(dir, "link"); //$NON-NLS-1$
+        try {
+            assertTrue(target.mkdirs());
+            Os.symlink(target.getAbsolutePath(), link.getAbsolutePath());
+
+            LazyAttributesLoader loader = new LazyAttributesLoader(0);
+            Date date = new Date();
+            Symlink symlink = new Symlink(
+                    link.getName(), null, dir.getAbsolutePath(), null, null, null,
+                    date, date, date);
+            loader.add(symlink, LINK_MODE, UID, GID);
+            loader.resolveLinks();
+            assertFalse(symlink.isAttributesLoaded());
+
+            // The target was resolved before it was removed
+            assertTrue(target.delete());
+            assertTrue(symlink.getLinkRef() instanceof Directory);
+            assertEquals(dir.getCanonicalPath(), symlink.getLink());
+            assertEquals("rwxrwxrwx", symlink.getPermissions().toRawString()); //$NON-NLS-1$
+        } finally {
+            FileHelper.deleteFolder(dir);
+        }
+    }
+
+    private static List<FileSystemObject> createFiles(LazyAttributesLoader loader, int count) {
+        List<FileSystemObject> files = new ArrayList<FileSystemObject>(count);
+        Date date = new Date();
+        for (int i = 0; i < count; i++) {
+            RegularFile file = new RegularFile(
+                    "file" + i, "/data", null, null, null, 0, date, date, date); //$NON-NLS-1$ //$NON-NLS-2$
+            loader.add(file, FILE_MODE, UID, GID);
+            files.add(file);
+        }
+        return files;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.test.suitebuilder.annotation.MediumTest;
+
+import com.cyanogenmod.filemanager.console.Console;
+import com.cyanogenmod.filemanager.console.java.JavaConsole;
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * A class for testing the cache of the directory listings.
+ *
+ * @see ListingCache
+ */
+public class ListingCacheTest extends android.test.AndroidTestCase {
+
+    private File mTestDir;
+    private Console mConsole;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.mTestDir = new File(getContext().getCacheDir(), "listing-cache-test"); //$NON-NLS-1$
+        FileHelper.deleteFolder(this.mTestDir);
+        assertTrue("mkdir failed", this.mTestDir.mkdirs()); //$NON-NLS-1$
+        this.mConsole = new JavaConsole(getContext(), 4096);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        FileHelper.deleteFolder(this.mTestDir);
+        super.tearDown();
+    }
+
+    /**
+     * Method that checks that a cached listing is returned until its directory
+     * is changed.
+     *
+     * @throws Exception If test failed
+     */
+    @MediumTest
+    public void testValidation() throws Exception {
+        assertTrue(new File(this.mTestDir, "a.txt").createNewFile()); //$NON-NLS-1$
+        assertTrue(new File(this.mTestDir, "dir").mkdir()); //$NON-NLS-1$
+        String path = this.mTestDir.getAbsolutePath();
+        ListingCache cache = ListingCache.getInstance();
+
+        long modified = ListingCache.getModifiedTime(path);
+        List<FileSystemObject> files =
+                DirectoryListHelper.listDirectory(this.mTestDir, 256, null);
+        cache.put(this.mConsole, path, modified, files);
+        List<FileSystemObject> cached = cache.get(this.mConsole, path);
+        assertNotNull(cached);
+        assertTrue(ListingCache.isSameListing(files, cached));
+
+        // Other directory entry (and a different modification time)
+        assertTrue(new File(this.mTestDir, "b.txt").createNewFile()); //$NON-NLS-1$
+        assertTrue(this.mTestDir.setLastModified(modified + 2000L));
+        assertNull(cache.get(this.mConsole, path));
+
+        List<FileSystemObject> changed =
+                DirectoryListHelper.listDirectory(this.mTestDir, 256, null);
+        assertFalse(ListingCache.isSameListing(files, changed));
+    }
+
+    /**
+     * Method that checks that the speculative listings expire.
+     *
+     * @throws Exception If test failed
+     */
+    @MediumTest
+    public void testExpiration() throws Exception {
+        String path = this.mTestDir.getAbsolutePath();
+        ListingCache cache = ListingCache.getInstance();
+        long modified = ListingCache.getModifiedTime(path);
+        List<FileSystemObject> files =
+                DirectoryListHelper.listDirectory(this.mTestDir, 256, null);
+
+        cache.put(this.mConsole, path, modified, files, 50L);
+        assertNotNull(cache.get(this.mConsole, path));
+        Thread.sleep(100L);
+        assertNull(cache.get(this.mConsole, path));
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+import com.cyanogenmod.filemanager.model.RegularFile;
+import com.cyanogenmod.filemanager.util.MimeTypeHelper.MimeTypeCategory;
+
+import java.util.Date;
+
+/**
+ * A class for testing (and benchmarking) the mime/type resolution.
+ *
+ * @see MimeTypeHelper
+ */
+public class MimeTypeHelperTest extends android.test.AndroidTestCase {
+
+    private static final String TAG = "MimeTypeHelperTest"; //$NON-NLS-1$
+
+    private static final String[] NAMES = {
+        "IMG_0001.JPG", "notes.txt", "backup.tar.gz", "song.mp3", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+        "app.apk", "movie.mp4", "README", ".hidden", "archive.Z" //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+    };
+
+    private static final int WARMUP_ITERATIONS = 10000;
+    private static final int ITERATIONS = 100000;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        MimeTypeHelper.loadMimeTypes(getContext());
+    }
+
+    /**
+     * Method that checks the resolution of the mime/types, categories and icons.
+     */
+    @SmallTest
+    public void testResolution() {
+        assertEquals("image/jpeg", //$NON-NLS-1$
+                MimeTypeHelper.getMimeType(getContext(), createFile(NAMES[0])));
+        assertEquals(MimeTypeCategory.IMAGE,
+                MimeTypeHelper.getCategory(getContext(), createFile(NAMES[0])));
+        assertEquals(MimeTypeCategory.COMPRESS,
+                MimeTypeHelper.getCategory(getContext(), createFile(NAMES[2])));
+        assertEquals(MimeTypeCategory.COMPRESS,
+                MimeTypeHelper.getCategory(getContext(), createFile(NAMES[8])));
+        assertEquals(MimeTypeCategory.NONE,
+                MimeTypeHelper.getCategory(getContext(), createFile(NAMES[6])));
+        assertEquals("application/octet-stream", //$NON-NLS-1$
+                MimeTypeHelper.getMimeType(getContext(), createFile(NAMES[7])));
+        assertEquals("ic_fso_default_drawable", //$NON-NLS-1$
+                MimeTypeHelper.getIcon(getContext(), createFile(NAMES[6])));
+        assertEquals(MimeTypeCategory.AUDIO,
+                MimeTypeHelper.getCategoryFromExt(getContext(), "mp3", null)); //$NON-NLS-1$
+    }
+
+    /**
+     * Method that checks the mime/type expressions.
+     */
+    @SmallTest
+    public void testMatchesMimeType() {
+        FileSystemObject fso = createFile(NAMES[0]);
+        assertTrue(MimeTypeHelper.matchesMimeType(getContext(), fso, "*/*")); //$NON-NLS-1$
+        assertTrue(MimeTypeHelper.matchesMimeType(getContext(), fso, "image/*")); //$NON-NLS-1$
+        assertTrue(MimeTypeHelper.matchesMimeType(getContext(), fso, "image/jpeg")); //$NON-NLS-1$
+        assertFalse(MimeTypeHelper.matchesMimeType(getContext(), fso, "video/*")); //$NON-NLS-1$
+        assertTrue(MimeTypeHelper.isMimeTypeKnown(getContext(), "audio/*")); //$NON-NLS-1$
+        assertFalse(MimeTypeHelper.isMimeTypeKnown(getContext(), "foo/*")); //$NON-NLS-1$
+        // Regular expression characters are not special
+        assertTrue(MimeTypeHelper.matchesWildcard("image/svg+xml", "image/svg+xml")); //$NON-NLS-1$ //$NON-NLS-2$
+        assertFalse(MimeTypeHelper.matchesWildcard("image/j.eg", "image/jpeg")); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * Method that measures the resolution of the icon, the category and the mime/type
+     * of a row of the list (the list-binding hot path).
+     */
+    @LargeTest
+    public void testBenchmark() {
+        FileSystemObject[] files = new FileSystemObject[NAMES.length];
+        for (int i = 0; i < NAMES.length; i++) {
+            files[i] = createFile(NAMES[i]);
+        }
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            bind(files[i % files.length]);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            bind(files[i % files.length]);
+        }
+        long elapsed = System.nanoTime() - start;
+        Log.i(TAG, String.format("Mime/type resolution: %d ns/row", //$NON-NLS-1$
+                elapsed / ITERATIONS));
+    }
+
+    private void bind(FileSystemObject fso) {
+        MimeTypeHelper.getIcon(getContext(), fso);
+        MimeTypeHelper.getCategory(getContext(), fso);
+        MimeTypeHelper.getMimeType(getContext(), fso);
+    }
+
+    private static FileSystemObject createFile(String name) {
+        Date now = new Date();
+        return new RegularFile(name, "/sdcard", null, null, null, 0, now, now, now); //$NON-NLS-1$
+    }
+}
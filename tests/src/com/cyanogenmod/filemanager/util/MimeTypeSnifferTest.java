@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+import com.cyanogenmod.filemanager.util.MimeTypeHelper.MimeTypeCategory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A class for testing the content sniffing of the mime/types.
+ *
+ * @see MimeTypeSniffer
+ */
+public class MimeTypeSnifferTest extends android.test.AndroidTestCase {
+
+    private static final byte[] PNG = {
+        (byte)0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n', 0, 0, 0, 0x0d, 'I', 'H', 'D', 'R'
+    };
+    private static final byte[] ZIP = {
+        'P', 'K', 3, 4, 0x14, 0, 0, 0, 8, 0
+    };
+
+    private File mTestDir;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.mTestDir = new File(getContext().getCacheDir(), "sniffer-test"); //$NON-NLS-1$
+        FileHelper.deleteFolder(this.mTestDir);
+        assertTrue("mkdir failed", this.mTestDir.mkdirs()); //$NON-NLS-1$
+        MimeTypeSniffer.getInstance().clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        MimeTypeSniffer.getInstance().clear();
+        FileHelper.deleteFolder(this.mTestDir);
+        super.tearDown();
+    }
+
+    /**
+     * Method that checks the detection of the headers.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testSniffFile() throws Exception {
+        MimeTypeSniffer sniffer = MimeTypeSniffer.getInstance();
+        assertEquals("image/png", //$NON-NLS-1$
+                sniffer.sniff(createFile("image", PNG))); //$NON-NLS-1$
+        assertEquals("application/zip", //$NON-NLS-1$
+                sniffer.sniff(createFile("archive", ZIP))); //$NON-NLS-1$
+        assertNull(sniffer.sniff(createFile("text", "hello".getBytes("US-ASCII")))); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        assertNull(sniffer.sniff(new File(this.mTestDir, "missing"))); //$NON-NLS-1$
+    }
+
+    /**
+     * Method that checks that the sniffed mime/types are used by the mime/type helper,
+     * and that the files with a known extension aren't sniffed.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testSniffDirectory() throws Exception {
+        FileSystemObject noExt = FileHelper.createFileSystemObject(
+                createFile("IMG_0001", PNG)); //$NON-NLS-1$
+        FileSystemObject known = FileHelper.createFileSystemObject(
+                createFile("photo.txt", PNG)); //$NON-NLS-1$
+        List<FileSystemObject> files = new ArrayList<FileSystemObject>();
+        files.add(noExt);
+        files.add(known);
+
+        assertEquals("application/octet-stream", //$NON-NLS-1$
+                MimeTypeHelper.getMimeType(getContext(), noExt));
+        assertEquals(1, MimeTypeSniffer.getInstance().sniff(getContext(), files));
+        assertEquals("image/png", //$NON-NLS-1$
+                MimeTypeHelper.getMimeType(getContext(), noExt));
+        assertEquals(MimeTypeCategory.IMAGE, MimeTypeHelper.getCategory(getContext(), noExt));
+        assertEquals("text/plain", //$NON-NLS-1$
+                MimeTypeHelper.getMimeType(getContext(), known));
+
+        // Cached files aren't read again
+        assertEquals(0, MimeTypeSniffer.getInstance().sniff(getContext(), files));
+    }
+
+    private File createFile(String name, byte[] data) throws Exception {
+        File file = new File(this.mTestDir, name);
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(data);
+        } finally {
+            fos.close();
+        }
+        return file;
+    }
+}
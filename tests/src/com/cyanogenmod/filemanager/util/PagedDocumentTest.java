@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.test.suitebuilder.annotation.MediumTest;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * A class for testing the paged documents.
+ *
+ * @see PagedDocument
+ */
+public class PagedDocumentTest extends android.test.AndroidTestCase {
+
+    private File mFile;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.mFile = new File(getContext().getCacheDir(), "paged-test.txt"); //$NON-NLS-1$
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        this.mFile.delete();
+        super.tearDown();
+    }
+
+    /**
+     * Method that checks that the pages of a document with short lines are the document.
+     *
+     * @throws Exception If test failed
+     */
+    @MediumTest
+    public void testShortLines() throws Exception {
+        checkPages(createText(200, '\n'));
+    }
+
+    /**
+     * Method that checks that the lines longer than a page and the multibyte chars
+     * aren't split or duplicated.
+     *
+     * @throws Exception If test failed
+     */
+    @MediumTest
+    public void testLongLines() throws Exception {
+        checkPages(createText(PagedDocument.PAGE_SIZE * 3, '\u00e9'));
+    }
+
+    private String createText(int maxLineLength, char c) {
+        Random random = new Random(0);
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < PagedDocument.PAGE_SIZE * 10) {
+            int length = random.nextInt(maxLineLength);
+            for (int i = 0; i < length; i++) {
+                sb.append(c == '\n' ? (char)('a' + random.nextInt(26)) : c);
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    private void checkPages(String text) throws Exception {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(this.mFile), "UTF-8"); //$NON-NLS-1$
+        try {
+            writer.write(text);
+        } finally {
+            writer.close();
+        }
+
+        PagedDocument document = new PagedDocument(this.mFile);
+        try {
+            assertTrue(document.isPageable());
+            StringBuilder sb = new StringBuilder();
+            for (int i = document.getPageCount() - 1; i >= 0; i--) {
+                sb.insert(0, document.getPage(i));
+            }
+            assertEquals(text, sb.toString());
+        } finally {
+            document.close();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.cyanogenmod.filemanager.model.Directory;
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+import com.cyanogenmod.filemanager.model.RegularFile;
+
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.List;
+
+/**
+ * A class for testing the parse of the bulk stat listings.
+ *
+ * @see ParseHelper#parseBulkStatOutput(byte[])
+ */
+public class ParseHelperTest extends android.test.AndroidTestCase {
+
+    private static final String FILE_MODE = "81a4"; //$NON-NLS-1$
+    private static final String DIR_MODE = "41ed"; //$NON-NLS-1$
+
+    /**
+     * Method that checks that the names with spaces and new lines are parsed.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testSpacesAndNewLines() throws Exception {
+        List<FileSystemObject> files = ParseHelper.parseBulkStatOutput(bulkStat(
+                new String[]{
+                        "/data/my file.txt", //$NON-NLS-1$
+                        "/data/two\nlines", //$NON-NLS-1$
+                        "/data/ends with space ", //$NON-NLS-1$
+                        "/data/sub dir"}, //$NON-NLS-1$
+                stat(FILE_MODE, 10, "/data/my file.txt"), //$NON-NLS-1$
+                stat(FILE_MODE, 20, "/data/two\nlines"), //$NON-NLS-1$
+                stat(FILE_MODE, 30, "/data/ends with space "), //$NON-NLS-1$
+                stat(DIR_MODE, 4096, "/data/sub dir"))); //$NON-NLS-1$
+
+        assertEquals(4, files.size());
+        assertFile(files.get(0), "my file.txt", 10); //$NON-NLS-1$
+        assertFile(files.get(1), "two\nlines", 20); //$NON-NLS-1$
+        assertFile(files.get(2), "ends with space ", 30); //$NON-NLS-1$
+        assertTrue(files.get(3) instanceof Directory);
+        assertEquals("sub dir", files.get(3).getName()); //$NON-NLS-1$
+        assertEquals(1500000001000L, files.get(0).getLastModifiedTime().getTime());
+        assertEquals("rw-r--r--", files.get(0).getPermissions().toRawString()); //$NON-NLS-1$
+        assertEquals(1000, files.get(0).getUser().getId());
+    }
+
+    /**
+     * Method that checks that the names that aren't valid UTF-8 are parsed.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testNonUtf8Names() throws Exception {
+        // The names are written byte by byte (ISO-8859-1)
+        String utf8 = new String(
+                "caf\u00e9".getBytes(StandardCharsets.UTF_8), //$NON-NLS-1$
+                StandardCharsets.ISO_8859_1);
+        String latin1 = "caf\u00e9\u00ff"; //$NON-NLS-1$
+        List<FileSystemObject> files = ParseHelper.parseBulkStatOutput(bulkStat(
+                new String[]{"/data/" + utf8, "/data/" + latin1}, //$NON-NLS-1$ //$NON-NLS-2$
+                stat(FILE_MODE, 1, "/data/" + utf8), //$NON-NLS-1$
+                stat(FILE_MODE, 2, "/data/" + latin1))); //$NON-NLS-1$
+
+        assertEquals(2, files.size());
+        assertFile(files.get(0), "caf\u00e9", 1); //$NON-NLS-1$
+        // The invalid bytes are replaced
+        assertFile(files.get(1), "caf\ufffd\ufffd", 2); //$NON-NLS-1$
+    }
+
+    /**
+     * Method that checks that the globs that don't match (the listing of an empty
+     * directory) are ignored, and that a file named as a glob is listed.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testUnmatchedGlobs() throws Exception {
+        // Empty directory. The globs are passed as is to stat, that fails
+        String[] globs = new String[]{"/data/.*", "/data/*"}; //$NON-NLS-1$ //$NON-NLS-2$
+        assertTrue(ParseHelper.parseBulkStatOutput(bulkStat(globs)).isEmpty());
+
+        // A file named '*'
+        List<FileSystemObject> files = ParseHelper.parseBulkStatOutput(bulkStat(
+                globs, stat(FILE_MODE, 5, "/data/*"))); //$NON-NLS-1$
+        assertEquals(1, files.size());
+        assertFile(files.get(0), "*", 5); //$NON-NLS-1$
+    }
+
+    /**
+     * Method that checks that the files without a stat line are ignored.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testMissingStatLines() throws Exception {
+        List<FileSystemObject> files = ParseHelper.parseBulkStatOutput(bulkStat(
+                new String[]{
+                        "/data/a", "/data/b", "/data/c", "/data/d"}, //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+                stat(FILE_MODE, 1, "/data/a"), //$NON-NLS-1$
+                "stat: /data/b: No such file or directory", //$NON-NLS-1$
+                stat(FILE_MODE, 3, "/data/c"))); //$NON-NLS-1$
+
+        assertEquals(2, files.size());
+        assertFile(files.get(0), "a", 1); //$NON-NLS-1$
+        assertFile(files.get(1), "c", 3); //$NON-NLS-1$
+    }
+
+    /**
+     * Method that checks the listings without files.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testEmptyDirectory() throws Exception {
+        assertTrue(ParseHelper.parseBulkStatOutput(new byte[0]).isEmpty());
+        assertTrue(ParseHelper.parseBulkStatOutput(new byte[]{0}).isEmpty());
+        try {
+            ParseHelper.parseBulkStatOutput("/data/a".getBytes(StandardCharsets.UTF_8)); //$NON-NLS-1$
+            fail("Unterminated path list"); //$NON-NLS-1$
+        } catch (ParseException ex) {
+            /**NON BLOCK**/
+        }
+    }
+
+    private static void assertFile(FileSystemObject fso, String name, long size) {
+        assertTrue(fso instanceof RegularFile);
+        assertEquals("/data", fso.getParent()); //$NON-NLS-1$
+        assertEquals(name, fso.getName());
+        assertEquals(size, fso.getSize());
+    }
+
+    private static String stat(String mode, long size, String path) {
+        return mode + " " + size + " 1000 1000 1500000000 1500000001 1500000002 " + path; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * Method that returns the output of a bulk stat listing. Every char of the paths and
+     * the lines is a byte.
+     */
+    private static byte[] bulkStat(String[] paths, String... lines) {
+        StringBuilder sb = new StringBuilder();
+        for (String path : paths) {
+            sb.append(path).append('\0');
+        }
+        sb.append('\0');
+        for (String line : lines) {
+            sb.append(line).append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
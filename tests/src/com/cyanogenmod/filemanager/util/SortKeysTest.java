@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.cyanogenmod.filemanager.model.Directory;
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+import com.cyanogenmod.filemanager.model.ParentDirectory;
+import com.cyanogenmod.filemanager.model.RegularFile;
+import com.cyanogenmod.filemanager.preferences.NavigationSortMode;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A class for testing the precomputed sort keys.
+ *
+ * @see SortKeys
+ */
+public class SortKeysTest extends android.test.AndroidTestCase {
+
+    private static final String PARENT = "/sdcard"; //$NON-NLS-1$
+
+    /**
+     * Method that checks the sort by name, case insensitive and with the directories first.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testSortByName() throws Exception {
+        List<FileSystemObject> files = createFiles();
+        SortKeys keys = new SortKeys(files);
+        int[] order = sort(keys, files, NavigationSortMode.NAME_ASC, true, false);
+        assertNames(files, order, "..", "Music", "a.txt", "B.txt", "c.txt"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+
+        order = sort(keys, files, NavigationSortMode.NAME_ASC, false, true);
+        assertNames(files, order, "..", "B.txt", "Music", "a.txt", "c.txt"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+    }
+
+    /**
+     * Method that checks that the permuted keys sort the reordered objects.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testPermute() throws Exception {
+        List<FileSystemObject> files = createFiles();
+        SortKeys keys = new SortKeys(files);
+        int[] order = sort(keys, files, NavigationSortMode.SIZE_DESC, false, false);
+        assertNames(files, order, "..", "c.txt", "a.txt", "B.txt", "Music"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+
+        List<FileSystemObject> sorted = new ArrayList<FileSystemObject>();
+        for (int i = 0; i < order.length; i++) {
+            sorted.add(files.get(order[i]));
+        }
+        SortKeys permuted = keys.permute(order);
+        order = sort(permuted, sorted, NavigationSortMode.DATE_ASC, false, false);
+        assertNames(sorted, order, "..", "B.txt", "Music", "a.txt", "c.txt"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+    }
+
+    private static int[] sort(SortKeys keys, List<FileSystemObject> files,
+            NavigationSortMode mode, boolean dirsFirst, boolean caseSensitive) {
+        int[] order = new int[files.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        keys.sort(order, files, mode, dirsFirst, caseSensitive);
+        return order;
+    }
+
+    private static void assertNames(List<FileSystemObject> files, int[] order, String... names) {
+        assertEquals(names.length, order.length);
+        for (int i = 0; i < names.length; i++) {
+            assertEquals(names[i], files.get(order[i]).getName());
+        }
+    }
+
+    private static List<FileSystemObject> createFiles() {
+        List<FileSystemObject> files = new ArrayList<FileSystemObject>();
+        files.add(createFile("c.txt", 300L, 4000L)); //$NON-NLS-1$
+        files.add(createFile("B.txt", 100L, 1000L)); //$NON-NLS-1$
+        files.add(new Directory("Music", PARENT, null, null, null, //$NON-NLS-1$
+                new Date(2000L), new Date(2000L), new Date(2000L)));
+        files.add(new ParentDirectory("/")); //$NON-NLS-1$
+        files.add(createFile("a.txt", 200L, 3000L)); //$NON-NLS-1$
+        return files;
+    }
+
+    private static RegularFile createFile(String name, long size, long time) {
+        Date date = new Date(time);
+        return new RegularFile(name, PARENT, null, null, null, size, date, date, date);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2017 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.test.suitebuilder.annotation.SmallTest;
+
+/**
+ * A class for testing the thumbnail cache.
+ *
+ * @see ThumbnailCache
+ */
+public class ThumbnailCacheTest extends android.test.AndroidTestCase {
+
+    private static final String PATH = "/sdcard/DCIM/photo.jpg"; //$NON-NLS-1$
+
+    private ThumbnailCache mCache;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.mCache = ThumbnailCache.getInstance(getContext());
+        this.mCache.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        this.mCache.clear();
+        super.tearDown();
+    }
+
+    /**
+     * Method that checks the memory and the disk tiers.
+     */
+    @SmallTest
+    public void testTiers() {
+        String key = ThumbnailCache.getKey(PATH, 1000, 1234);
+        assertNull(this.mCache.get(key));
+
+        Bitmap thumb = Bitmap.createBitmap(96, 96, Bitmap.Config.ARGB_8888);
+        thumb.eraseColor(Color.RED);
+        this.mCache.put(key, thumb);
+        assertSame(thumb, this.mCache.getFromMemory(key));
+
+        // Once trimmed, the thumbnail is read from disk
+        this.mCache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        assertNull(this.mCache.getFromMemory(key));
+        Bitmap cached = this.mCache.get(key);
+        assertNotNull(cached);
+        assertEquals(96, cached.getWidth());
+        assertEquals(96, cached.getHeight());
+        assertNotNull(this.mCache.getFromMemory(key));
+
+        // A changed file doesn't return the old thumbnail
+        assertNull(this.mCache.get(ThumbnailCache.getKey(PATH, 1000, 5678)));
+
+        // 2 memory hits, 1 disk hit and 2 misses
+        assertEquals(2f / 5f, this.mCache.getMemoryHitRate(), 0.001f);
+        assertEquals(1f / 5f, this.mCache.getDiskHitRate(), 0.001f);
+    }
+
+    /**
+     * Method that checks the removal of the thumbnails of a file.
+     */
+    @SmallTest
+    public void testRemove() {
+        String key = ThumbnailCache.getKey(PATH, 1000, 1234);
+        this.mCache.put(key, Bitmap.createBitmap(96, 96, Bitmap.Config.RGB_565));
+        this.mCache.remove(PATH);
+        assertNull(this.mCache.getFromMemory(key));
+    }
+}